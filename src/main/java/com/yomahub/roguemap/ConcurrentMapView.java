@@ -0,0 +1,444 @@
+package com.yomahub.roguemap;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * RogueMap 的 {@link ConcurrentMap} 视图
+ * <p>
+ * 所有操作直接委托给底层 RogueMap，不在堆上保存任何条目。按 ConcurrentMap 的约定，
+ * null 键和 null 值抛出 NullPointerException，类型不匹配的键视为不存在。
+ * 集合视图的 removeIf 在调用线程上顺序执行谓词，且不持有索引锁。
+ * </p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+class ConcurrentMapView<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private final RogueMap<K, V> map;
+
+    private transient KeySetView keySet;
+    private transient ValuesView values;
+    private transient EntrySetView entrySet;
+
+    ConcurrentMapView(RogueMap<K, V> map) {
+        this.map = map;
+    }
+
+    // ========== 查询 ==========
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        Objects.requireNonNull(key);
+        try {
+            return map.containsKey((K) key);
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Objects.requireNonNull(key);
+        try {
+            return map.get((K) key);
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    // ========== 修改 ==========
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return map.put(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        try {
+            return map.remove((K) key);
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            Objects.requireNonNull(entry.getKey());
+            Objects.requireNonNull(entry.getValue());
+        }
+        map.putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    // ========== ConcurrentMap 原子操作 ==========
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return map.putIfAbsent(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        if (value == null) {
+            return false;
+        }
+        try {
+            return map.remove((K) key, (V) value);
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        return map.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return map.replace(key, value);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(mappingFunction);
+        return map.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        return map.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        return map.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return map.merge(key, value, remappingFunction);
+    }
+
+    // ========== 批量操作 ==========
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        Iterator<Map.Entry<K, V>> it = map.entries();
+        while (it.hasNext()) {
+            Map.Entry<K, V> entry = it.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        map.replaceAll(function);
+    }
+
+    // ========== 视图 ==========
+
+    @Override
+    public Set<K> keySet() {
+        KeySetView view = keySet;
+        return view != null ? view : (keySet = new KeySetView());
+    }
+
+    @Override
+    public Collection<V> values() {
+        ValuesView view = values;
+        return view != null ? view : (values = new ValuesView());
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySetView view = entrySet;
+        return view != null ? view : (entrySet = new EntrySetView());
+    }
+
+    /**
+     * 支持 remove() 的迭代器基类，remove 删除最近一次返回的键
+     */
+    private abstract class ViewIterator<T> implements Iterator<T> {
+        private final Iterator<Map.Entry<K, V>> entries;
+        private K lastKey;
+
+        ViewIterator(Iterator<Map.Entry<K, V>> entries) {
+            this.entries = entries;
+        }
+
+        abstract T extract(Map.Entry<K, V> entry);
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!entries.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = entries.next();
+            lastKey = entry.getKey();
+            return extract(entry);
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            map.delete(lastKey);
+            lastKey = null;
+        }
+    }
+
+    private final class KeySetView extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            Iterator<K> keys = map.keys();
+            return new Iterator<K>() {
+                private K lastKey;
+
+                @Override
+                public boolean hasNext() {
+                    return keys.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    lastKey = keys.next();
+                    return lastKey;
+                }
+
+                @Override
+                public void remove() {
+                    if (lastKey == null) {
+                        throw new IllegalStateException();
+                    }
+                    map.delete(lastKey);
+                    lastKey = null;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<K> spliterator() {
+            return map.keySpliterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            Objects.requireNonNull(o);
+            try {
+                return map.delete((K) o);
+            } catch (ClassCastException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            // 逐个删除，类型不匹配的元素视为不存在
+            boolean modified = false;
+            for (Object o : c) {
+                modified |= remove(o);
+            }
+            return modified;
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super K> filter) {
+            Objects.requireNonNull(filter);
+            return map.removeIf((k, v) -> filter.test(k), false) > 0;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    private final class ValuesView extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ViewIterator<V>(map.entries()) {
+                @Override
+                V extract(Map.Entry<K, V> entry) {
+                    return entry.getValue();
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.NONNULL | Spliterator.CONCURRENT);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super V> filter) {
+            Objects.requireNonNull(filter);
+            return map.removeIf((k, v) -> filter.test(v), false) > 0;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    private final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new ViewIterator<Map.Entry<K, V>>(map.entries()) {
+                @Override
+                Map.Entry<K, V> extract(Map.Entry<K, V> entry) {
+                    return new WriteThroughEntry(entry.getKey(), entry.getValue());
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return map.entrySpliterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            if (entry.getKey() == null) {
+                return false;
+            }
+            V value = get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return entry.getKey() != null && ConcurrentMapView.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super Map.Entry<K, V>> filter) {
+            Objects.requireNonNull(filter);
+            return map.removeIf((k, v) -> filter.test(new SimpleImmutableEntry<>(k, v)), false) > 0;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * setValue 写回底层 map 的条目
+     */
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        WriteThroughEntry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            Objects.requireNonNull(value);
+            V oldValue = super.setValue(value);
+            map.put(getKey(), value);
+            return oldValue;
+        }
+    }
+}
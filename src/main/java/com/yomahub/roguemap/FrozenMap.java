@@ -0,0 +1,781 @@
+package com.yomahub.roguemap;
+
+import com.yomahub.roguemap.memory.Crc32c;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+import com.yomahub.roguemap.storage.SnapshotFormat;
+import com.yomahub.roguemap.util.TempFileManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * 只读的冻结 map 文件
+ * <p>
+ * 适合离线构建、之后只读的数据：用 {@link RogueMap#freezeTo(Path)}、{@link #fromSnapshot(Path, Path)}
+ * 或 {@link #writer(Path, Codec, Codec)} 生成不可变文件，再用 {@link #open(Path, Codec, Codec)} 打开。
+ * 值按写入顺序紧凑排列；索引是按键编码字节的 64 位哈希排序的条目表，外加每 {@value #FENCE_INTERVAL}
+ * 个条目一项的稀疏栅栏索引。打开时只读映射文件并校验文件头，不加载也不反序列化索引；
+ * 查找先在栅栏索引中二分，再在块内二分，只读取映射内存，不加锁。
+ * 多个进程打开同一个文件时共享操作系统页缓存中的同一份数据。
+ * </p>
+ * <pre>
+ * 文件布局（本机字节序）：
+ * [文件头 64 字节]
+ * [记录区]   每条记录 [键长度 int][值长度 int][键编码][值编码]，记录不跨越 1GB 映射分段
+ * [条目表]   每项 [哈希 long][记录偏移 long]，按哈希排序
+ * [栅栏索引] 第 i 项为条目表第 i * FENCE_INTERVAL 项的哈希
+ * </pre>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public final class FrozenMap<K, V> implements AutoCloseable {
+
+    public static final int MAGIC_NUMBER = 0x524D465A; // "RMFZ"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int FENCE_INTERVAL = 64;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int ENTRY_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_SCRATCH_SIZE = 1024; // 超过的键每次查找临时分配
+
+    // 文件头字段偏移
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_ENTRY_COUNT = 8;
+    private static final int OFFSET_TABLE = 16;
+    private static final int OFFSET_FENCE = 24;
+    private static final int OFFSET_FENCE_INTERVAL = 32;
+    private static final int OFFSET_DATA_CRC = 36;
+    private static final int OFFSET_TABLE_CRC = 40;
+    private static final int OFFSET_HEADER_CRC = 60;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Path file;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentBases;
+    private final long fileSize;
+    private final long entryCount;
+    private final long tableOffset;
+    private final long fenceOffset;
+    private final long fenceCount;
+    private final int fenceInterval;
+    private final int dataCrc;
+    private final int tableCrc;
+    private volatile boolean closed;
+
+    private FrozenMap(Path file, Codec<K> keyCodec, Codec<V> valueCodec, MappedByteBuffer[] segments, long fileSize) {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.segments = segments;
+        this.fileSize = fileSize;
+        this.segmentBases = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segmentBases[i] = UnsafeOps.getDirectBufferAddress(segments[i]);
+        }
+
+        long header = segmentBases[0];
+        if (UnsafeOps.getInt(header + OFFSET_MAGIC) != MAGIC_NUMBER) {
+            throw new IllegalStateException("不是有效的冻结文件: " + file);
+        }
+        int version = UnsafeOps.getInt(header + OFFSET_VERSION);
+        if (version != VERSION) {
+            throw new IllegalStateException("不支持的冻结文件版本: " + version);
+        }
+        if (Crc32c.compute(header, OFFSET_HEADER_CRC) != UnsafeOps.getInt(header + OFFSET_HEADER_CRC)) {
+            throw new IllegalStateException("冻结文件头已损坏: " + file);
+        }
+        this.entryCount = UnsafeOps.getLong(header + OFFSET_ENTRY_COUNT);
+        this.tableOffset = UnsafeOps.getLong(header + OFFSET_TABLE);
+        this.fenceOffset = UnsafeOps.getLong(header + OFFSET_FENCE);
+        this.fenceInterval = UnsafeOps.getInt(header + OFFSET_FENCE_INTERVAL);
+        this.dataCrc = UnsafeOps.getInt(header + OFFSET_DATA_CRC);
+        this.tableCrc = UnsafeOps.getInt(header + OFFSET_TABLE_CRC);
+        this.fenceCount = fenceInterval > 0 ? (entryCount + fenceInterval - 1) / fenceInterval : -1;
+        if (fenceCount < 0 || tableOffset < HEADER_SIZE || (tableOffset & (ENTRY_SIZE - 1)) != 0
+                || fenceOffset != tableOffset + entryCount * ENTRY_SIZE || fenceOffset + fenceCount * 8 != fileSize) {
+            throw new IllegalStateException("冻结文件已损坏（长度不符）: " + file);
+        }
+    }
+
+    /**
+     * 只读映射冻结文件
+     * <p>
+     * 打开时只校验文件头，不读取索引和数据；需要完整校验时调用 {@link #verify()}。
+     * 编解码器必须与构建文件时相同。
+     * </p>
+     *
+     * @param file       冻结文件
+     * @param keyCodec   键编解码器
+     * @param valueCodec 值编解码器
+     * @param <K>        键类型
+     * @param <V>        值类型
+     * @return 冻结 map
+     */
+    public static <K, V> FrozenMap<K, V> open(Path file, Codec<K> keyCodec, Codec<V> valueCodec) {
+        if (file == null || keyCodec == null || valueCodec == null) {
+            throw new IllegalArgumentException("文件和编解码器不能为 null");
+        }
+        MappedByteBuffer[] segments = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long size = raf.length();
+            if (size < HEADER_SIZE) {
+                throw new IllegalStateException("不是有效的冻结文件: " + file);
+            }
+            FileChannel channel = raf.getChannel();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+            // 关闭通道后映射仍然有效
+            return new FrozenMap<>(file, keyCodec, valueCodec, segments, size);
+        } catch (IOException e) {
+            unmap(segments);
+            throw new RuntimeException("打开冻结文件失败: " + file, e);
+        } catch (RuntimeException e) {
+            unmap(segments);
+            throw e;
+        }
+    }
+
+    /**
+     * 创建冻结文件的写入器
+     * <p>
+     * 条目可以按任意顺序写入，同一个键写入多次时以最后一次为准。
+     * 写入器先写临时文件 file + ".tmp"，{@link Writer#finish()} 时再原子替换目标文件，
+     * 已经打开旧文件的读者不受影响。
+     * </p>
+     *
+     * @param file       目标文件
+     * @param keyCodec   键编解码器
+     * @param valueCodec 值编解码器
+     * @param <K>        键类型
+     * @param <V>        值类型
+     * @return 写入器
+     */
+    public static <K, V> Writer<K, V> writer(Path file, Codec<K> keyCodec, Codec<V> valueCodec) {
+        if (keyCodec == null || valueCodec == null) {
+            throw new IllegalArgumentException("编解码器不能为 null");
+        }
+        return new Writer<>(file, keyCodec, valueCodec);
+    }
+
+    /**
+     * 把 {@link RogueMap#exportTo(Path, boolean)} 导出的快照转换为冻结文件
+     *
+     * @param snapshot 快照文件
+     * @param file     目标文件
+     * @return 写入的条目数
+     */
+    public static long fromSnapshot(Path snapshot, Path file) {
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            return fromSnapshot(in, file);
+        } catch (IOException e) {
+            throw new RuntimeException("读取快照失败: " + snapshot, e);
+        }
+    }
+
+    /**
+     * 把快照流转换为冻结文件，键和值的编码字节原样写入，不需要编解码器
+     *
+     * @param in   快照流，完成后不会被关闭
+     * @param file 目标文件
+     * @return 写入的条目数
+     */
+    public static long fromSnapshot(InputStream in, Path file) {
+        if (in == null) {
+            throw new IllegalArgumentException("快照流不能为 null");
+        }
+        try (Writer<Object, Object> writer = new Writer<>(file, null, null)) {
+            SnapshotFormat.Reader reader = new SnapshotFormat.Reader(in);
+            while (reader.next()) {
+                writer.addEncoded(reader.key(), 0, reader.keyLength(), reader.value(), 0, reader.valueLength());
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("读取快照失败", e);
+        }
+    }
+
+    /**
+     * 根据键获取值
+     *
+     * @param key 键
+     * @return 值，如果未找到则返回 null
+     */
+    public V get(K key) {
+        long address = find(key);
+        return address != 0 ? valueCodec.decode(address) : null;
+    }
+
+    /**
+     * 检查是否包含指定的键
+     *
+     * @param key 键
+     * @return 如果包含则返回 true
+     */
+    public boolean containsKey(K key) {
+        return find(key) != 0;
+    }
+
+    /**
+     * 获取条目数量
+     *
+     * @return 条目数量
+     */
+    public long size() {
+        return entryCount;
+    }
+
+    /**
+     * 判断是否为空
+     *
+     * @return 如果为空则返回 true
+     */
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    /**
+     * 按哈希顺序遍历全部条目
+     *
+     * @param action 对每个键值对执行的操作
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        checkOpen();
+        for (long i = 0; i < entryCount; i++) {
+            long record = address(UnsafeOps.getLong(address(tableOffset + i * ENTRY_SIZE + 8)));
+            int keyLength = UnsafeOps.getInt(record);
+            action.accept(keyCodec.decode(record + RECORD_HEADER_SIZE),
+                    valueCodec.decode(record + RECORD_HEADER_SIZE + keyLength));
+        }
+    }
+
+    /**
+     * 校验整个文件的 CRC32C
+     * <p>
+     * 顺序读取全部数据和索引，文件损坏时抛出 {@link IllegalStateException}。
+     * </p>
+     */
+    public void verify() {
+        checkOpen();
+        if (checksum(HEADER_SIZE, tableOffset) != dataCrc) {
+            throw new IllegalStateException("冻结文件数据已损坏: " + file);
+        }
+        if (checksum(tableOffset, fileSize) != tableCrc) {
+            throw new IllegalStateException("冻结文件索引已损坏: " + file);
+        }
+    }
+
+    /**
+     * 解除映射
+     * <p>
+     * 关闭后不能再访问此 map，调用方需要保证关闭时没有进行中的查找。
+     * </p>
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unmap(segments);
+    }
+
+    private long find(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        checkOpen();
+        if (entryCount == 0) {
+            return 0;
+        }
+        int keySize = keyCodec.calculateSize(key);
+        boolean temporary = keySize > MAX_SCRATCH_SIZE;
+        long buffer = temporary ? UnsafeOps.allocate(keySize) : SCRATCH.get().address;
+        try {
+            keySize = keyCodec.encode(buffer, key);
+            long hash = UnsafeOps.hash(buffer, keySize);
+
+            // 哈希相等的条目都在 [上一个小于 hash 的栅栏, 第一个大于 hash 的栅栏) 之间
+            long below = countFences(hash, false);
+            long upTo = countFences(hash, true);
+            long from = Math.max(below - 1, 0) * fenceInterval;
+            long to = Math.min(entryCount, upTo * fenceInterval);
+            while (from < to) {
+                long mid = (from + to) >>> 1;
+                if (entryHash(mid) < hash) {
+                    from = mid + 1;
+                } else {
+                    to = mid;
+                }
+            }
+            for (long i = from; i < entryCount && entryHash(i) == hash; i++) {
+                long record = address(UnsafeOps.getLong(address(tableOffset + i * ENTRY_SIZE + 8)));
+                if (UnsafeOps.getInt(record) == keySize
+                        && UnsafeOps.memoryEquals(buffer, record + RECORD_HEADER_SIZE, keySize)) {
+                    return record + RECORD_HEADER_SIZE + keySize;
+                }
+            }
+            return 0;
+        } finally {
+            if (temporary) {
+                UnsafeOps.free(buffer);
+            }
+        }
+    }
+
+    /**
+     * 统计哈希小于（inclusive 时小于等于）hash 的栅栏数量
+     */
+    private long countFences(long hash, boolean inclusive) {
+        long low = 0;
+        long high = fenceCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long fence = UnsafeOps.getLong(address(fenceOffset + mid * 8));
+            if (fence < hash || (inclusive && fence == hash)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long entryHash(long i) {
+        return UnsafeOps.getLong(address(tableOffset + i * ENTRY_SIZE));
+    }
+
+    private long address(long offset) {
+        return segmentBases[(int) (offset >>> SEGMENT_SHIFT)] + (offset & SEGMENT_MASK);
+    }
+
+    private int checksum(long from, long to) {
+        Crc32c crc = new Crc32c();
+        while (from < to) {
+            long length = Math.min(to, (from | SEGMENT_MASK) + 1) - from;
+            crc.update(address(from), length);
+            from += length;
+        }
+        return crc.getValue();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("冻结文件已关闭");
+        }
+    }
+
+    private static void unmap(MappedByteBuffer[] segments) {
+        if (segments != null) {
+            for (MappedByteBuffer segment : segments) {
+                TempFileManager.forceUnmap(segment);
+            }
+        }
+    }
+
+    /**
+     * 查找时编码键的线程私有缓冲区
+     */
+    private static final class Scratch {
+        final long address = UnsafeOps.allocate(MAX_SCRATCH_SIZE);
+    }
+
+    /**
+     * 冻结文件写入器，不是线程安全的
+     * <p>
+     * 记录顺序追加到临时文件，内存中只保留每个条目 16 字节的（哈希，偏移）对；
+     * {@link #finish()} 时排序、去重，写出条目表和栅栏索引，再原子替换目标文件。
+     * 未调用 finish 就关闭时删除临时文件。
+     * </p>
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     */
+    public static final class Writer<K, V> implements AutoCloseable {
+
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        private final Path target;
+        private final Path temp;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+        private final long bufferAddress = UnsafeOps.getDirectBufferAddress(buffer);
+        private final Crc32c dataCrc = new Crc32c();
+        private final Crc32c tableCrc = new Crc32c();
+        private Crc32c crc = dataCrc;
+        private long position = HEADER_SIZE; // 下一个字节的文件偏移
+        private long entries;                 // 堆外的（哈希，偏移）对
+        private long entryCapacity;
+        private long count;
+        private long scratch;
+        private long scratchSize;
+        private boolean finished;
+        private boolean closed;
+
+        Writer(Path target, Codec<K> keyCodec, Codec<V> valueCodec) {
+            if (target == null) {
+                throw new IllegalArgumentException("目标文件不能为 null");
+            }
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            try {
+                this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(HEADER_SIZE);
+            } catch (IOException e) {
+                throw new RuntimeException("创建冻结文件失败: " + temp, e);
+            }
+        }
+
+        /**
+         * 写入一个条目
+         *
+         * @param key   键
+         * @param value 值
+         */
+        public void add(K key, V value) {
+            if (keyCodec == null) {
+                throw new IllegalStateException("此写入器只接受编码后的条目");
+            }
+            if (key == null) {
+                throw new IllegalArgumentException("键不能为 null");
+            }
+            int keySize = keyCodec.calculateSize(key);
+            int valueSize = valueCodec.calculateSize(value);
+            ensureScratch((long) keySize + valueSize);
+            keySize = keyCodec.encode(scratch, key);
+            valueSize = valueCodec.encode(scratch + keySize, value);
+            append(keySize, valueSize);
+        }
+
+        /**
+         * 写入一个已经编码的条目
+         */
+        void addEncoded(byte[] bytes, int keyOffset, int keyLength, int valueOffset, int valueLength) {
+            addEncoded(bytes, keyOffset, keyLength, bytes, valueOffset, valueLength);
+        }
+
+        void addEncoded(byte[] keyBytes, int keyOffset, int keyLength,
+                        byte[] valueBytes, int valueOffset, int valueLength) {
+            ensureScratch((long) keyLength + valueLength);
+            UnsafeOps.copyFromArray(keyBytes, keyOffset, scratch, keyLength);
+            UnsafeOps.copyFromArray(valueBytes, valueOffset, scratch + keyLength, valueLength);
+            append(keyLength, valueLength);
+        }
+
+        /**
+         * 写出索引并原子替换目标文件
+         *
+         * @return 去重后的条目数
+         */
+        public long finish() {
+            checkWritable();
+            try {
+                writeZeros(-position & (ENTRY_SIZE - 1));
+                flushBuffer();
+                long tableOffset = position;
+
+                crc = tableCrc;
+                if (count > 1) {
+                    sort(0, count - 1);
+                }
+                long unique = deduplicate();
+                writeMemory(entries, unique * ENTRY_SIZE);
+                long fenceOffset = position;
+                for (long i = 0; i < unique; i += FENCE_INTERVAL) {
+                    writeLong(UnsafeOps.getLong(entries + i * ENTRY_SIZE));
+                }
+                flushBuffer();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+                header.putInt(OFFSET_MAGIC, MAGIC_NUMBER);
+                header.putInt(OFFSET_VERSION, VERSION);
+                header.putLong(OFFSET_ENTRY_COUNT, unique);
+                header.putLong(OFFSET_TABLE, tableOffset);
+                header.putLong(OFFSET_FENCE, fenceOffset);
+                header.putInt(OFFSET_FENCE_INTERVAL, FENCE_INTERVAL);
+                header.putInt(OFFSET_DATA_CRC, dataCrc.getValue());
+                header.putInt(OFFSET_TABLE_CRC, tableCrc.getValue());
+                header.putInt(OFFSET_HEADER_CRC, new Crc32c().update(header.array(), 0, OFFSET_HEADER_CRC).getValue());
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+                channel.close();
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                finished = true;
+                return unique;
+            } catch (IOException e) {
+                throw new RuntimeException("写入冻结文件失败: " + target, e);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (entries != 0) {
+                UnsafeOps.free(entries);
+            }
+            if (scratch != 0) {
+                UnsafeOps.free(scratch);
+            }
+            if (!finished) {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    System.err.println("警告: 删除冻结文件的临时文件失败: " + e.getMessage());
+                }
+            }
+        }
+
+        private void append(int keySize, int valueSize) {
+            checkWritable();
+            long size = RECORD_HEADER_SIZE + (long) keySize + valueSize;
+            if (size > SEGMENT_SIZE) {
+                throw new IllegalArgumentException("记录过大，无法写入冻结文件: " + size + " 字节");
+            }
+            try {
+                if ((position >>> SEGMENT_SHIFT) != ((position + size - 1) >>> SEGMENT_SHIFT)) {
+                    writeZeros(SEGMENT_SIZE - (position & SEGMENT_MASK));
+                }
+                addEntry(UnsafeOps.hash(scratch, keySize), position);
+                writeInt(keySize);
+                writeInt(valueSize);
+                writeMemory(scratch, (long) keySize + valueSize);
+            } catch (IOException e) {
+                throw new RuntimeException("写入冻结文件失败: " + temp, e);
+            }
+        }
+
+        private void addEntry(long hash, long offset) {
+            if (count == entryCapacity) {
+                entryCapacity = Math.max(1024, entryCapacity * 2);
+                entries = entries == 0 ? UnsafeOps.allocate(entryCapacity * ENTRY_SIZE)
+                        : UnsafeOps.reallocate(entries, entryCapacity * ENTRY_SIZE);
+            }
+            UnsafeOps.putLong(entries + count * ENTRY_SIZE, hash);
+            UnsafeOps.putLong(entries + count * ENTRY_SIZE + 8, offset);
+            count++;
+        }
+
+        private void ensureScratch(long size) {
+            if (size > scratchSize) {
+                scratchSize = Math.max(size, Math.max(256, scratchSize * 2));
+                scratch = scratch == 0 ? UnsafeOps.allocate(scratchSize) : UnsafeOps.reallocate(scratch, scratchSize);
+            }
+        }
+
+        private void writeInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flushBuffer();
+            }
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        private void writeLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flushBuffer();
+            }
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        private void writeMemory(long address, long length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flushBuffer();
+                }
+                int chunk = (int) Math.min(buffer.remaining(), length);
+                UnsafeOps.copyMemory(address, bufferAddress + buffer.position(), chunk);
+                buffer.position(buffer.position() + chunk);
+                address += chunk;
+                length -= chunk;
+                position += chunk;
+            }
+        }
+
+        private void writeZeros(long length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    flushBuffer();
+                }
+                int chunk = (int) Math.min(buffer.remaining(), length);
+                UnsafeOps.setMemory(bufferAddress + buffer.position(), chunk, (byte) 0);
+                buffer.position(buffer.position() + chunk);
+                length -= chunk;
+                position += chunk;
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            crc.update(bufferAddress, buffer.limit());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * 按（哈希，偏移）排序条目对
+         */
+        private void sort(long low, long high) {
+            while (high - low > 16) {
+                long mid = (low + high) >>> 1;
+                if (compare(mid, low) < 0) {
+                    swap(mid, low);
+                }
+                if (compare(high, low) < 0) {
+                    swap(high, low);
+                }
+                if (compare(high, mid) < 0) {
+                    swap(high, mid);
+                }
+                long pivotHash = hashAt(mid);
+                long pivotOffset = offsetAt(mid);
+                long i = low;
+                long j = high;
+                while (i <= j) {
+                    while (compare(i, pivotHash, pivotOffset) < 0) {
+                        i++;
+                    }
+                    while (compare(j, pivotHash, pivotOffset) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // 递归处理较短的一侧，较长的一侧继续循环
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+            for (long i = low + 1; i <= high; i++) {
+                for (long j = i; j > low && compare(j, j - 1) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        /**
+         * 去掉重复的键，保留最后写入（偏移最大）的一条
+         *
+         * @return 剩余的条目数
+         */
+        private long deduplicate() throws IOException {
+            long unique = 0;
+            long runStart = 0;
+            while (runStart < count) {
+                long runEnd = runStart + 1;
+                while (runEnd < count && hashAt(runEnd) == hashAt(runStart)) {
+                    runEnd++;
+                }
+                for (long i = runStart; i < runEnd; i++) {
+                    boolean superseded = false;
+                    for (long j = i + 1; j < runEnd && !superseded; j++) {
+                        superseded = Arrays.equals(readKey(offsetAt(i)), readKey(offsetAt(j)));
+                    }
+                    if (!superseded) {
+                        UnsafeOps.putLong(entries + unique * ENTRY_SIZE, hashAt(i));
+                        UnsafeOps.putLong(entries + unique * ENTRY_SIZE + 8, offsetAt(i));
+                        unique++;
+                    }
+                }
+                runStart = runEnd;
+            }
+            return unique;
+        }
+
+        private byte[] readKey(long offset) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.nativeOrder());
+            readFully(header, offset);
+            ByteBuffer key = ByteBuffer.allocate(header.getInt(0));
+            readFully(key, offset + RECORD_HEADER_SIZE);
+            return key.array();
+        }
+
+        private void readFully(ByteBuffer target, long offset) throws IOException {
+            while (target.hasRemaining()) {
+                if (channel.read(target, offset + target.position()) < 0) {
+                    throw new IOException("读取冻结文件的临时文件失败: " + temp);
+                }
+            }
+        }
+
+        private long hashAt(long i) {
+            return UnsafeOps.getLong(entries + i * ENTRY_SIZE);
+        }
+
+        private long offsetAt(long i) {
+            return UnsafeOps.getLong(entries + i * ENTRY_SIZE + 8);
+        }
+
+        private int compare(long i, long j) {
+            return compare(i, hashAt(j), offsetAt(j));
+        }
+
+        private int compare(long i, long hash, long offset) {
+            int result = Long.compare(hashAt(i), hash);
+            return result != 0 ? result : Long.compare(offsetAt(i), offset);
+        }
+
+        private void swap(long i, long j) {
+            long hash = hashAt(i);
+            long offset = offsetAt(i);
+            UnsafeOps.putLong(entries + i * ENTRY_SIZE, hashAt(j));
+            UnsafeOps.putLong(entries + i * ENTRY_SIZE + 8, offsetAt(j));
+            UnsafeOps.putLong(entries + j * ENTRY_SIZE, hash);
+            UnsafeOps.putLong(entries + j * ENTRY_SIZE + 8, offset);
+        }
+
+        private void checkWritable() {
+            if (closed) {
+                throw new IllegalStateException("冻结文件写入器已关闭");
+            }
+        }
+    }
+}
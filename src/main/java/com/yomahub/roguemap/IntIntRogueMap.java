@@ -0,0 +1,192 @@
+package com.yomahub.roguemap;
+
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IntPrimitiveIndex;
+import com.yomahub.roguemap.memory.Allocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+
+/**
+ * Integer -> Integer 的原始类型 RogueMap 视图
+ * <p>
+ * 直接基于 IntPrimitiveIndex 和 UnsafeOps 读写原始类型键值，热路径上没有自动装箱。
+ * 底层 RogueMap 必须使用 primitiveIndex()，且键值编解码器均为 PrimitiveCodecs.INTEGER：
+ * </p>
+ * <pre>
+ * IntIntRogueMap map = IntIntRogueMap.wrap(RogueMap.&lt;Integer, Integer&gt;offHeap()
+ *         .keyCodec(PrimitiveCodecs.INTEGER)
+ *         .valueCodec(PrimitiveCodecs.INTEGER)
+ *         .primitiveIndex()
+ *         .build());
+ * </pre>
+ */
+public class IntIntRogueMap implements AutoCloseable {
+
+    private static final int VALUE_SIZE = 4;
+
+    private final RogueMap<Integer, Integer> map;
+    private final IntPrimitiveIndex index;
+    private final Allocator allocator;
+
+    private IntIntRogueMap(RogueMap<Integer, Integer> map) {
+        this.map = map;
+        this.index = (IntPrimitiveIndex) map.getIndex();
+        this.allocator = map.getAllocator();
+    }
+
+    /**
+     * 将 RogueMap 包装为原始类型视图
+     *
+     * @param map 使用 IntPrimitiveIndex 且值编解码器为 PrimitiveCodecs.INTEGER 的 RogueMap
+     * @return 原始类型视图
+     */
+    public static IntIntRogueMap wrap(RogueMap<Integer, Integer> map) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为 null");
+        }
+        if (!map.supportsPrimitiveView()) {
+            throw new IllegalArgumentException("IntIntRogueMap 不支持缓存模式、两级存储或启用了过期、近端缓存、预写日志、后台检查点、自描述记录、延迟校验、共享索引或只读打开的 map");
+        }
+        if (!(map.getIndex() instanceof IntPrimitiveIndex)) {
+            throw new IllegalArgumentException("IntIntRogueMap 需要使用 primitiveIndex() 且键编解码器为 PrimitiveCodecs.INTEGER");
+        }
+        if (map.getValueCodec() != PrimitiveCodecs.INTEGER) {
+            throw new IllegalArgumentException("IntIntRogueMap 的值编解码器必须为 PrimitiveCodecs.INTEGER");
+        }
+        return new IntIntRogueMap(map);
+    }
+
+    /**
+     * 根据键获取值
+     *
+     * @param key          键
+     * @param defaultValue 键不存在时返回的默认值
+     * @return 值，如果未找到则返回 defaultValue
+     */
+    public int get(int key, int defaultValue) {
+        long address = index.get(key);
+        if (address == 0) {
+            return defaultValue;
+        }
+        return UnsafeOps.getInt(address);
+    }
+
+    /**
+     * 将键值对放入 map
+     *
+     * @param key   键
+     * @param value 值
+     * @return 之前的值，如果没有则返回 0
+     */
+    public int put(int key, int value) {
+        long newAddress = allocator.allocate(VALUE_SIZE);
+        if (newAddress == 0) {
+            throw new OutOfMemoryError("分配 " + VALUE_SIZE + " 字节失败");
+        }
+
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        boolean wasPresent;
+        try {
+            UnsafeOps.putInt(newAddress, value);
+            allocator.markDirty(newAddress, VALUE_SIZE);
+            wasPresent = index.putAndGetOld(key, newAddress, VALUE_SIZE, holder);
+        } catch (RuntimeException e) {
+            allocator.free(newAddress, VALUE_SIZE);
+            throw e;
+        }
+
+        if (!wasPresent) {
+            return 0;
+        }
+
+        long oldAddress = holder.address;
+        int oldValue = UnsafeOps.getInt(oldAddress);
+        allocator.free(oldAddress, holder.size);
+        return oldValue;
+    }
+
+    /**
+     * 原子性地将增量累加到键对应的值上，键不存在时视为 0
+     *
+     * @param key       键
+     * @param increment 增量
+     * @return 累加前的值，如果键之前不存在则返回 0
+     */
+    public int addTo(int key, int increment) {
+        return index.addToInt(key, increment, allocator);
+    }
+
+    /**
+     * 删除键值对
+     *
+     * @param key 键
+     * @return 之前的值，如果没有则返回 0
+     */
+    public int remove(int key) {
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        if (!index.removeAndGet(key, holder)) {
+            return 0;
+        }
+
+        long address = holder.address;
+        int oldValue = UnsafeOps.getInt(address);
+        allocator.free(address, holder.size);
+        return oldValue;
+    }
+
+    /**
+     * 检查键是否存在
+     *
+     * @param key 键
+     * @return 如果存在返回 true，否则返回 false
+     */
+    public boolean containsKey(int key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * 获取条目数量
+     *
+     * @return 条目数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 检查 map 是否为空
+     *
+     * @return 如果为空返回 true
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * 移除所有条目
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * 刷新所有待处理的更改（用于持久化存储）
+     */
+    public void flush() {
+        map.flush();
+    }
+
+    /**
+     * 获取底层的 RogueMap（装箱 API）
+     *
+     * @return 底层 RogueMap
+     */
+    public RogueMap<Integer, Integer> unwrap() {
+        return map;
+    }
+
+    @Override
+    public void close() {
+        map.close();
+    }
+}
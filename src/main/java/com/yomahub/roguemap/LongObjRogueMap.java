@@ -0,0 +1,245 @@
+package com.yomahub.roguemap;
+
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.LongPrimitiveIndex;
+import com.yomahub.roguemap.memory.Allocator;
+import com.yomahub.roguemap.serialization.Codec;
+
+/**
+ * Long -> V 的原始类型键 RogueMap 视图
+ * <p>
+ * 键以原始 long 直接传入 LongPrimitiveIndex，避免键的自动装箱；值仍通过值编解码器编解码。
+ * 底层 RogueMap 必须使用 primitiveIndex()，且键编解码器为 PrimitiveCodecs.LONG。
+ * </p>
+ *
+ * @param <V> 值类型
+ */
+public class LongObjRogueMap<V> implements AutoCloseable {
+
+    private final RogueMap<Long, V> map;
+    private final LongPrimitiveIndex index;
+    private final Allocator allocator;
+    private final Codec<V> valueCodec;
+
+    private LongObjRogueMap(RogueMap<Long, V> map) {
+        this.map = map;
+        this.index = (LongPrimitiveIndex) map.getIndex();
+        this.allocator = map.getAllocator();
+        this.valueCodec = map.getValueCodec();
+    }
+
+    /**
+     * 将 RogueMap 包装为原始类型键视图
+     *
+     * @param map 使用 LongPrimitiveIndex 的 RogueMap
+     * @param <V> 值类型
+     * @return 原始类型键视图
+     */
+    public static <V> LongObjRogueMap<V> wrap(RogueMap<Long, V> map) {
+        if (map == null) {
+            throw new IllegalArgumentException("map 不能为 null");
+        }
+        if (!map.supportsPrimitiveView()) {
+            throw new IllegalArgumentException("LongObjRogueMap 不支持缓存模式、两级存储或启用了过期、近端缓存、预写日志、后台检查点、自描述记录、延迟校验、共享索引或只读打开的 map");
+        }
+        if (!(map.getIndex() instanceof LongPrimitiveIndex)) {
+            throw new IllegalArgumentException("LongObjRogueMap 需要使用 primitiveIndex() 且键编解码器为 PrimitiveCodecs.LONG");
+        }
+        return new LongObjRogueMap<>(map);
+    }
+
+    /**
+     * 根据键获取值
+     *
+     * @param key 键
+     * @return 值，如果未找到则返回 null
+     */
+    public V get(long key) {
+        long address = index.get(key);
+        if (address == 0) {
+            return null;
+        }
+        return valueCodec.decode(address);
+    }
+
+    /**
+     * 根据键获取值
+     *
+     * @param key          键
+     * @param defaultValue 键不存在时返回的默认值
+     * @return 值，如果未找到则返回 defaultValue
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        long address = index.get(key);
+        if (address == 0) {
+            return defaultValue;
+        }
+        return valueCodec.decode(address);
+    }
+
+    /**
+     * 将键值对放入 map
+     *
+     * @param key   键
+     * @param value 值
+     * @return 之前的值，如果没有则返回 null
+     */
+    public V put(long key, V value) {
+        int valueSize = valueCodec.calculateSize(value);
+        if (valueSize < 0) {
+            throw new IllegalStateException("无法确定值的大小");
+        }
+
+        long newAddress = allocator.allocate(valueSize);
+        if (newAddress == 0) {
+            throw new OutOfMemoryError("分配 " + valueSize + " 字节失败");
+        }
+
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        boolean wasPresent;
+        try {
+            int actualSize = valueCodec.encode(newAddress, value);
+            allocator.markDirty(newAddress, actualSize);
+            wasPresent = index.putAndGetOld(key, newAddress, actualSize, holder);
+        } catch (RuntimeException e) {
+            allocator.free(newAddress, valueSize);
+            throw e;
+        }
+
+        if (!wasPresent) {
+            return null;
+        }
+
+        long oldAddress = holder.address;
+        int oldSize = holder.size;
+        V oldValue = valueCodec.decode(oldAddress);
+        allocator.free(oldAddress, oldSize);
+        return oldValue;
+    }
+
+    /**
+     * 删除键值对
+     *
+     * @param key 键
+     * @return 之前的值，如果没有则返回 null
+     */
+    public V remove(long key) {
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        if (!index.removeAndGet(key, holder)) {
+            return null;
+        }
+
+        long address = holder.address;
+        int size = holder.size;
+        V oldValue = valueCodec.decode(address);
+        allocator.free(address, size);
+        return oldValue;
+    }
+
+    /**
+     * 将键值对放入 map，不解码也不返回旧值
+     *
+     * @param key   键
+     * @param value 值
+     * @return 如果键之前不存在（新增）返回 true，覆盖已有值返回 false
+     */
+    public boolean set(long key, V value) {
+        int valueSize = valueCodec.calculateSize(value);
+        if (valueSize < 0) {
+            throw new IllegalStateException("无法确定值的大小");
+        }
+
+        long newAddress = allocator.allocate(valueSize);
+        if (newAddress == 0) {
+            throw new OutOfMemoryError("分配 " + valueSize + " 字节失败");
+        }
+
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        boolean wasPresent;
+        try {
+            int actualSize = valueCodec.encode(newAddress, value);
+            allocator.markDirty(newAddress, actualSize);
+            wasPresent = index.putAndGetOld(key, newAddress, actualSize, holder);
+        } catch (RuntimeException e) {
+            allocator.free(newAddress, valueSize);
+            throw e;
+        }
+
+        if (wasPresent) {
+            allocator.free(holder.address, holder.size);
+        }
+        return !wasPresent;
+    }
+
+    /**
+     * 删除键值对，不解码也不返回旧值
+     *
+     * @param key 键
+     * @return 如果键存在并已删除返回 true，否则返回 false
+     */
+    public boolean delete(long key) {
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        if (!index.removeAndGet(key, holder)) {
+            return false;
+        }
+
+        allocator.free(holder.address, holder.size);
+        return true;
+    }
+
+    /**
+     * 检查键是否存在
+     *
+     * @param key 键
+     * @return 如果存在返回 true，否则返回 false
+     */
+    public boolean containsKey(long key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * 获取条目数量
+     *
+     * @return 条目数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 检查 map 是否为空
+     *
+     * @return 如果为空返回 true
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * 移除所有条目
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * 刷新所有待处理的更改（用于持久化存储）
+     */
+    public void flush() {
+        map.flush();
+    }
+
+    /**
+     * 获取底层的 RogueMap（装箱 API）
+     *
+     * @return 底层 RogueMap
+     */
+    public RogueMap<Long, V> unwrap() {
+        return map;
+    }
+
+    @Override
+    public void close() {
+        map.close();
+    }
+}
@@ -1,20 +1,81 @@
 package com.yomahub.roguemap;
 
+import com.yomahub.roguemap.cache.ClockEvictor;
+import com.yomahub.roguemap.cache.EvictionListener;
+import com.yomahub.roguemap.cache.Expiration;
+import com.yomahub.roguemap.cache.ExpiringCodec;
+import com.yomahub.roguemap.cache.NearCache;
+import com.yomahub.roguemap.cache.TierManager;
 import com.yomahub.roguemap.index.HashIndex;
 import com.yomahub.roguemap.index.Index;
-import com.yomahub.roguemap.index.IndexRemoveResult;
-import com.yomahub.roguemap.index.IndexUpdateResult;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexSpliterator;
 import com.yomahub.roguemap.index.IntPrimitiveIndex;
 import com.yomahub.roguemap.index.LongPrimitiveIndex;
 import com.yomahub.roguemap.index.SegmentedHashIndex;
 import com.yomahub.roguemap.memory.Allocator;
 import com.yomahub.roguemap.memory.MmapAllocator;
 import com.yomahub.roguemap.memory.SlabAllocator;
+import com.yomahub.roguemap.memory.TieredAllocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
 import com.yomahub.roguemap.serialization.Codec;
+import com.yomahub.roguemap.serialization.MutableTarget;
+import com.yomahub.roguemap.serialization.OffHeapValuePredicate;
+import com.yomahub.roguemap.serialization.OffHeapValueReader;
 import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.storage.CheckpointIndex;
+import com.yomahub.roguemap.storage.Checkpointer;
+import com.yomahub.roguemap.storage.ChecksumVerification;
+import com.yomahub.roguemap.storage.ForwardingIndex;
+import com.yomahub.roguemap.storage.LiveIndex;
+import com.yomahub.roguemap.storage.LiveReaderIndex;
+import com.yomahub.roguemap.storage.LiveTable;
+import com.yomahub.roguemap.storage.MmapFileHeader;
 import com.yomahub.roguemap.storage.MmapStorage;
 import com.yomahub.roguemap.storage.OffHeapStorage;
+import com.yomahub.roguemap.storage.PageChecksums;
+import com.yomahub.roguemap.storage.ReadOnlyIndex;
+import com.yomahub.roguemap.storage.RecordIndex;
+import com.yomahub.roguemap.storage.SnapshotFormat;
 import com.yomahub.roguemap.storage.StorageEngine;
+import com.yomahub.roguemap.storage.VerifyingIndex;
+import com.yomahub.roguemap.storage.WalDurability;
+import com.yomahub.roguemap.storage.WalIndex;
+import com.yomahub.roguemap.storage.WriteAheadLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * RogueMap - 高性能堆外键值存储
@@ -24,20 +85,86 @@ import com.yomahub.roguemap.storage.StorageEngine;
  */
 public class RogueMap<K, V> implements AutoCloseable {
 
+    /**
+     * Remapping.apply 返回此标记表示保持当前条目不变
+     */
+    private static final Object KEEP = new Object();
+
     private final Index<K> index;
     private final StorageEngine storage;
     private final Codec<K> keyCodec;
     private final Codec<V> valueCodec;
     private final Allocator allocator;
+    private final ClockEvictor<K, V> evictor; // 缓存模式的淘汰器，非缓存模式为 null
+    private final Expiration<K> expiration; // 过期管理，未启用过期时为 null
+    private final int valueOffset; // 值编码字节相对值地址的偏移（过期头部大小）
+    private final NearCache<V> nearCache; // 堆上的热点值缓存，未启用时为 null
+    private final TierManager<K> tierManager; // 两级存储的降级与提升，非两级模式为 null
+    private final WriteAheadLog wal; // 持久化模式的预写日志，未启用时为 null
+    private final Checkpointer<K> checkpointer; // 持久化模式的后台检查点，未启用时为 null
+    private final RecordIndex<K> records; // 持久化模式的自描述记录，未启用时为 null
+    private final boolean verifying; // 索引中有读取时验证校验和的包装
+    private final boolean dataPageChecksums; // 持久化模式正常关闭时是否为数据区计算页校验和
+    private final boolean readOnly; // 只读打开的映射文件
+    private final LiveTable<K> live; // 持久化模式发布给其他进程的共享索引，未启用时为 null
+    private final RogueStore store; // 所属的多 map 存储，独占文件时为 null
+
+    private RogueMap(Index<K> index, StorageEngine storage,
+            Codec<K> keyCodec, Codec<V> valueCodec,
+            Allocator allocator, NearCache<V> nearCache, Checkpointer<K> checkpointer,
+            boolean dataPageChecksums) {
+        this(index, storage, keyCodec, valueCodec, allocator, null, null, nearCache, null, checkpointer,
+                dataPageChecksums, null);
+    }
+
+    private RogueMap(Index<K> index, StorageEngine storage,
+            Codec<K> keyCodec, Codec<V> valueCodec,
+            Allocator allocator, NearCache<V> nearCache, RogueStore store) {
+        this(index, storage, keyCodec, valueCodec, allocator, null, null, nearCache, null, null, false, store);
+    }
+
+    private RogueMap(Index<K> index, StorageEngine storage,
+            Codec<K> keyCodec, Codec<V> valueCodec,
+            Allocator allocator, ClockEvictor<K, V> evictor, Expiration<K> expiration,
+            NearCache<V> nearCache, TierManager<K> tierManager) {
+        this(index, storage, keyCodec, valueCodec, allocator, evictor, expiration, nearCache, tierManager, null, false,
+                null);
+    }
 
     private RogueMap(Index<K> index, StorageEngine storage,
             Codec<K> keyCodec, Codec<V> valueCodec,
-            Allocator allocator) {
+            Allocator allocator, ClockEvictor<K, V> evictor, Expiration<K> expiration,
+            NearCache<V> nearCache, TierManager<K> tierManager, Checkpointer<K> checkpointer,
+            boolean dataPageChecksums, RogueStore store) {
         this.index = index;
         this.storage = storage;
         this.keyCodec = keyCodec;
         this.valueCodec = valueCodec;
         this.allocator = allocator;
+        this.evictor = evictor;
+        this.expiration = expiration;
+        this.valueOffset = expiration != null ? Expiration.HEADER_SIZE : 0;
+        this.nearCache = nearCache;
+        this.tierManager = tierManager;
+        this.wal = index instanceof WalIndex ? ((WalIndex<?>) index).getLog() : null;
+        this.checkpointer = checkpointer;
+        this.records = index instanceof RecordIndex ? (RecordIndex<K>) index : null;
+        boolean verifying = false;
+        LiveTable<K> live = null;
+        for (Index<?> layer = index; layer instanceof ForwardingIndex; layer = ((ForwardingIndex<?>) layer).getDelegate()) {
+            verifying |= layer instanceof VerifyingIndex;
+            if (layer instanceof LiveIndex) {
+                // 包装链上的每一层都包装同一个 Index<K>，共享索引的键类型与 map 一致
+                @SuppressWarnings("unchecked")
+                LiveTable<K> table = (LiveTable<K>) ((LiveIndex<?>) layer).getTable();
+                live = table;
+            }
+        }
+        this.verifying = verifying;
+        this.live = live;
+        this.store = store;
+        this.dataPageChecksums = dataPageChecksums;
+        this.readOnly = index instanceof ReadOnlyIndex;
     }
 
     /**
@@ -48,6 +175,37 @@ public class RogueMap<K, V> implements AutoCloseable {
      * @return 之前的值，如果没有则返回 null
      */
     public V put(K key, V value) {
+        V oldValue = putAndDecodeOld(key, value, 0);
+        afterWrite(key);
+        return oldValue;
+    }
+
+    /**
+     * 将键值对放入 map，并指定该条目的存活时间
+     * <p>
+     * 需要在构建时启用过期（expireAfterWrite、expireAfterAccess 或 variableExpiration）。
+     * 之后不带存活时间的写入（put、compute 等）按构建时的默认策略重新计算到期时间。
+     * </p>
+     *
+     * @param key   键
+     * @param value 值
+     * @param ttl   存活时间，必须为正数
+     * @return 之前的值，如果没有则返回 null
+     */
+    public V put(K key, V value, Duration ttl) {
+        if (expiration == null) {
+            throw new IllegalStateException("put(K, V, Duration) 需要在构建时启用过期");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl 必须为正数");
+        }
+        long expireAt = System.currentTimeMillis() + ttl.toMillis();
+        V oldValue = putAndDecodeOld(key, value, expireAt < 0 ? Expiration.NEVER : expireAt);
+        afterWrite(key);
+        return oldValue;
+    }
+
+    private V putAndDecodeOld(K key, V value, long expireAt) {
         if (key == null) {
             throw new IllegalArgumentException("键不能为 null");
         }
@@ -59,28 +217,31 @@ public class RogueMap<K, V> implements AutoCloseable {
         }
 
         // 为值分配内存
-        long newAddress = allocator.allocate(valueSize);
-        if (newAddress == 0) {
-            throw new OutOfMemoryError("分配 " + valueSize + " 字节失败");
-        }
+        long newAddress = allocateValue(key, valueSize);
 
         try {
             // 将值编码到新内存
             int actualSize = valueCodec.encode(newAddress, value);
+            if (expireAt != 0) {
+                Expiration.setExpireAt(newAddress, expireAt);
+            }
+            sealValue(newAddress, actualSize);
 
             // 原子性地更新索引并获取旧值信息
             // 这确保了在多线程环境下，获取旧地址和更新索引是原子操作
-            IndexUpdateResult result = index.putAndGetOld(key, newAddress, actualSize);
+            // 旧值信息写入线程复用的持有者，避免每次写入分配结果对象
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            if (!index.putAndGetOld(key, newAddress, actualSize, holder)) {
+                return null;
+            }
+            long oldAddress = holder.address;
+            int oldSize = holder.size;
 
-            // 处理旧值
-            V oldValue = null;
-            if (result.wasPresent) {
-                // 先解码旧值（此时旧地址还未被释放，是安全的）
-                oldValue = valueCodec.decode(result.oldAddress);
+            // 先解码旧值（此时旧地址还未被释放，是安全的），已过期的旧值视为不存在
+            V oldValue = isLive(oldAddress) ? valueCodec.decode(oldAddress) : null;
 
-                // 解码完成后才释放旧内存
-                allocator.free(result.oldAddress, result.oldSize);
-            }
+            // 解码完成后才释放旧内存
+            allocator.free(oldAddress, oldSize);
 
             return oldValue;
         } catch (Exception e) {
@@ -101,209 +262,2113 @@ public class RogueMap<K, V> implements AutoCloseable {
             return null;
         }
 
+        if (evictor != null) {
+            evictor.recordAccess(key);
+        }
+
+        if (expiration != null) {
+            // 先维护再查找：避免查到的值在本线程的回收中被释放
+            expiration.afterRead();
+        }
+
+        if (tierManager != null) {
+            return getTiered(key);
+        }
+
         long address = index.get(key);
         if (address == 0) {
             return null;
         }
 
+        if (expiration != null) {
+            if (expiration.isExpired(address)) {
+                return null;
+            }
+            expiration.touch(key, address);
+        }
+
+        if (nearCache != null) {
+            V cached = nearCache.get(key, address);
+            if (cached != null) {
+                return cached;
+            }
+            V value = valueCodec.decode(address);
+            nearCache.put(key, address, nearCache.weighsByBytes() ? index.getSize(key) : 0, value);
+            return value;
+        }
+
         return valueCodec.decode(address);
     }
 
     /**
-     * 删除键值对
-     *
-     * @param key 键
-     * @return 之前的值，如果没有则返回 null
+     * 两级存储模式的读取：后台降级会并发迁移并释放值，解码在键所在的锁内进行
      */
-    public V remove(K key) {
-        if (key == null) {
-            return null;
+    @SuppressWarnings("unchecked")
+    private V getTiered(K key) {
+        long address;
+        V value;
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                address = holder.address;
+                value = address != 0 ? decodeCaching(key, address, holder.size) : null;
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        } else {
+            Object[] decoded = new Object[2];
+            index.compute(key, (current, size, result) -> {
+                if (current != 0) {
+                    decoded[0] = decodeCaching(key, current, size);
+                    decoded[1] = current;
+                }
+            });
+            value = (V) decoded[0];
+            address = value != null ? (Long) decoded[1] : 0;
         }
 
-        // 原子性地删除并获取值信息
-        IndexRemoveResult result = index.removeAndGet(key);
-        if (!result.wasPresent) {
-            return null;
+        if (address != 0) {
+            // 锁释放后才能迁移：提升需要键的独占锁
+            tierManager.recordRead(key, address);
         }
+        return value;
+    }
 
-        // 先解码值
-        V oldValue = valueCodec.decode(result.address);
-
-        // 释放内存
-        allocator.free(result.address, result.size);
-
-        return oldValue;
+    private V decodeCaching(K key, long address, int size) {
+        if (nearCache == null) {
+            return valueCodec.decode(address);
+        }
+        V value = nearCache.get(key, address);
+        if (value == null) {
+            value = valueCodec.decode(address);
+            nearCache.put(key, address, nearCache.weighsByBytes() ? size : 0, value);
+        }
+        return value;
     }
 
     /**
-     * 检查键是否存在
+     * 将键对应的值直接解码到调用方复用的目标对象中，不创建新对象
      *
-     * @param key 键
-     * @return 如果存在返回 true，否则返回 false
+     * @param key    键
+     * @param target 复用的解码目标
+     * @return 键存在并已填充返回 true，否则返回 false
      */
-    public boolean containsKey(K key) {
-        return key != null && index.containsKey(key);
+    public boolean getInto(K key, MutableTarget target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target 不能为 null");
+        }
+        if (key == null) {
+            return false;
+        }
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                long address = holder.address;
+                if (!isLive(address)) {
+                    return false;
+                }
+                target.readFrom(address + valueOffset, holder.size - valueOffset);
+                return true;
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        }
+
+        return withValue(key, (address, size) -> {
+            target.readFrom(address, size);
+            return Boolean.TRUE;
+        }) != null;
     }
 
     /**
-     * 获取条目数量
+     * 在值的内存保证有效的前提下，直接从堆外地址读取值
+     * <p>
+     * 回调执行期间持有键所在的共享读锁（HashIndex 为桶锁），应当简短，且不能对本 map 做写操作。
+     * </p>
      *
-     * @return 条目数量
+     * @param key    键
+     * @param reader 读取回调，参数为值的地址和大小
+     * @param <R>    读取结果类型
+     * @return 回调的返回值，键不存在时返回 null
      */
-    public int size() {
-        return index.size();
+    @SuppressWarnings("unchecked")
+    public <R> R withValue(K key, OffHeapValueReader<R> reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader 不能为 null");
+        }
+        if (key == null) {
+            return null;
+        }
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                long address = holder.address;
+                return isLive(address) ? reader.read(address + valueOffset, holder.size - valueOffset) : null;
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        }
+
+        // 索引不支持共享锁（HashIndex）：在键所在的桶锁内读取，条目保持不变
+        Object[] result = new Object[1];
+        index.compute(key, (address, size, entry) -> {
+            if (isLive(address)) {
+                result[0] = reader.read(address + valueOffset, size - valueOffset);
+            }
+        });
+        return (R) result[0];
     }
 
     /**
-     * 检查 map 是否为空
+     * 以只读 ByteBuffer 视图（本机字节序）访问值的编码字节，不复制数据
+     * <p>
+     * 视图只在回调执行期间有效，不能在回调外保存或使用。
+     * </p>
      *
-     * @return 如果为空返回 true
+     * @param key      键
+     * @param function 读取视图的回调
+     * @param <R>      读取结果类型
+     * @return 回调的返回值，键不存在时返回 null
      */
-    public boolean isEmpty() {
-        return size() == 0;
+    public <R> R withValueBuffer(K key, Function<? super ByteBuffer, ? extends R> function) {
+        if (function == null) {
+            throw new IllegalArgumentException("function 不能为 null");
+        }
+        return withValue(key, (address, size) -> function.apply(UnsafeOps.wrapReadOnly(address, size)));
     }
 
     /**
-     * 移除所有条目
+     * 删除键值对
+     *
+     * @param key 键
+     * @return 之前的值，如果没有则返回 null
      */
-    public void clear() {
-        // 遍历所有条目并释放内存
-        index.forEach((key, address, size) -> {
-            allocator.free(address, size);
-        });
+    public V remove(K key) {
+        if (key == null) {
+            return null;
+        }
 
-        // 清空索引
-        index.clear();
-    }
+        // 原子性地删除并获取值信息
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        if (!index.removeAndGet(key, holder)) {
+            return null;
+        }
+        invalidateNearCache(key);
+        long address = holder.address;
+        int size = holder.size;
 
-    /**
-     * 刷新所有待处理的更改（用于持久化存储）
-     */
-    public void flush() {
-        storage.flush();
+        // 先解码值，已过期的值视为不存在
+        V oldValue = isLive(address) ? valueCodec.decode(address) : null;
+
+        // 释放内存
+        allocator.free(address, size);
+
+        return oldValue;
     }
 
     /**
-     * 获取存储引擎（用于测试）
+     * 将键值对放入 map，不解码也不返回旧值
+     * <p>
+     * 与 {@link #put(Object, Object)} 相比省去了旧值的反序列化，适合不关心旧值的写入路径。
+     * </p>
+     *
+     * @param key   键
+     * @param value 值
+     * @return 如果键之前不存在（新增）返回 true，覆盖已有值返回 false
      */
-    public StorageEngine getStorage() {
-        return storage;
-    }
+    public boolean set(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
 
-    @Override
-    public void close() {
-        // 如果是 MMAP 模式，检查是否需要保存索引
-        if (storage instanceof MmapStorage) {
-            MmapStorage mmapStorage = (MmapStorage) storage;
-            MmapAllocator mmapAllocator = mmapStorage.getAllocator();
+        int valueSize = valueCodec.calculateSize(value);
+        if (valueSize < 0) {
+            throw new IllegalStateException("无法确定值的大小");
+        }
 
-            // 临时文件模式：跳过持久化
-            // 持久化模式：保存索引
-            if (!mmapAllocator.isTemporary()) {
-                saveMmapIndex();
-            }
+        long newAddress = allocateValue(key, valueSize);
+
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        boolean wasPresent;
+        try {
+            int actualSize = valueCodec.encode(newAddress, value);
+            sealValue(newAddress, actualSize);
+            wasPresent = index.putAndGetOld(key, newAddress, actualSize, holder);
+        } catch (Exception e) {
+            allocator.free(newAddress, valueSize);
+            throw e;
         }
 
-        index.close();
-        storage.close();
-        allocator.close();
+        // 旧值直接释放，不解码
+        if (wasPresent) {
+            allocator.free(holder.address, holder.size);
+        }
+
+        afterWrite(key);
+        return !wasPresent;
     }
 
     /**
-     * 保存 MMAP 索引到文件
+     * 仅当键不存在时放入键值对，不解码已有值
+     *
+     * @param key   键
+     * @param value 值
+     * @return 如果插入成功返回 true，键已存在返回 false
      */
-    private void saveMmapIndex() {
-        MmapStorage mmapStorage = (MmapStorage) storage;
-        MmapAllocator mmapAllocator = mmapStorage.getAllocator();
+    public boolean setIfAbsent(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
 
-        // 获取当前数据使用的偏移量
-        long currentDataOffset = allocator.usedMemory();
+        // 快速路径：键已存在时无需编码值
+        if (containsKey(key)) {
+            return false;
+        }
 
-        // 计算索引大小
-        int indexSize = index.serializedSize();
+        // 已过期未回收的条目仍占据索引，需要在锁内替换
+        if (expiration != null) {
+            Remapping remapping = new Remapping() {
+                @Override
+                Object apply(long address, int size) {
+                    return address != 0 ? KEEP : value;
+                }
+            };
+            remapping.run(key);
+            return remapping.changed;
+        }
 
-        // 索引数据放在所有数据之后（避免覆盖数据）
-        long indexOffset = currentDataOffset;
-        long baseAddress = mmapAllocator.getBaseAddress();
-        long indexAddress = baseAddress + indexOffset;
+        int valueSize = valueCodec.calculateSize(value);
+        if (valueSize < 0) {
+            throw new IllegalStateException("无法确定值的大小");
+        }
 
-        // 序列化索引（使用相对偏移量）
-        index.serializeWithOffsets(indexAddress, baseAddress);
+        long newAddress = allocateValue(key, valueSize);
 
-        // 更新头部
-        com.yomahub.roguemap.storage.MmapFileHeader header =
-            new com.yomahub.roguemap.storage.MmapFileHeader();
-        header.setMagicNumber(com.yomahub.roguemap.storage.MmapFileHeader.MAGIC_NUMBER);
-        header.setVersion(com.yomahub.roguemap.storage.MmapFileHeader.VERSION);
-        header.setIndexType(getIndexType(index));
-        header.setEntryCount(index.size());
-        header.setCurrentOffset(currentDataOffset);
-        header.setIndexOffset(indexOffset);
-        header.setIndexSize(indexSize);
+        boolean inserted;
+        try {
+            int actualSize = valueCodec.encode(newAddress, value);
+            sealValue(newAddress, actualSize);
+            inserted = index.putIfAbsent(key, newAddress, actualSize);
+        } catch (Exception e) {
+            allocator.free(newAddress, valueSize);
+            throw e;
+        }
 
-        mmapAllocator.writeHeader(header);
+        // 并发插入竞争失败，释放刚编码的值
+        if (!inserted) {
+            allocator.free(newAddress, valueSize);
+        }
+
+        afterWrite(key);
+        return inserted;
     }
 
     /**
-     * 获取索引类型
+     * 删除键值对，不解码也不返回旧值
+     *
+     * @param key 键
+     * @return 如果键存在并已删除返回 true，否则返回 false
      */
-    private int getIndexType(Index<K> index) {
-        if (index instanceof HashIndex) {
-            return 0;
-        } else if (index instanceof SegmentedHashIndex) {
-            return 1;
-        } else if (index instanceof LongPrimitiveIndex) {
-            return 2;
-        } else if (index instanceof IntPrimitiveIndex) {
-            return 3;
+    public boolean delete(K key) {
+        if (key == null) {
+            return false;
         }
-        // 未知索引类型，返回默认值
-        return 0;
+
+        IndexResultHolder holder = IndexResultHolder.threadLocal();
+        if (!index.removeAndGet(key, holder)) {
+            return false;
+        }
+        invalidateNearCache(key);
+
+        boolean live = isLive(holder.address);
+        allocator.free(holder.address, holder.size);
+        return live;
     }
 
     /**
-     * 创建堆外内存模式的构建器
+     * 仅当键不存在时放入键值对
      *
-     * @param <K> 键类型
-     * @param <V> 值类型
-     * @return OffHeap 构建器
+     * @param key   键
+     * @param value 值
+     * @return 已存在的值，如果键之前不存在（插入成功）则返回 null
      */
-    public static <K, V> OffHeapBuilder<K, V> offHeap() {
-        return new OffHeapBuilder<>();
+    public V putIfAbsent(K key, V value) {
+        checkKeyAndValue(key, value);
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                if (address != 0) {
+                    returnValue = valueCodec.decode(address);
+                    return KEEP;
+                }
+                return value;
+            }
+        };
+        return remapping.run(key);
     }
 
     /**
-     * 创建内存映射文件模式的构建器
+     * 仅当键当前映射到 expectedValue 时替换为 newValue
+     * <p>
+     * 比较的是编码后的字节而不是 equals：expectedValue 先被编码到临时的堆外内存（不占用 map 的空间），
+     * 再在键所在的锁内与当前值的字节逐段比较，无需解码当前值。
+     * </p>
      *
-     * @param <K> 键类型
-     * @param <V> 值类型
-     * @return MMAP 构建器
+     * @param key           键
+     * @param expectedValue 期望的当前值
+     * @param newValue      新值
+     * @return 替换成功返回 true
      */
-    public static <K, V> MmapBuilder<K, V> mmap() {
-        return new MmapBuilder<>();
+    public boolean replace(K key, V expectedValue, V newValue) {
+        checkKeyAndValue(key, newValue);
+        return replaceIfEncodedEquals(key, expectedValue, newValue);
     }
 
     /**
-     * RogueMap 的抽象构建器基类
-     * 包含 MMAP 和 OffHeap 模式的共同配置
+     * 仅当键当前映射到 value 时删除该键，按编码后的字节比较
      *
-     * @param <K> 键类型
-     * @param <V> 值类型
-     * @param <B> 具体的构建器类型（用于链式调用）
+     * @param key   键
+     * @param value 期望的当前值
+     * @return 删除成功返回 true
+     * @see #replace(Object, Object, Object)
      */
-    @SuppressWarnings("unchecked")
-    public abstract static class BaseBuilder<K, V, B extends BaseBuilder<K, V, B>> {
-        protected Codec<K> keyCodec;
-        protected Codec<V> valueCodec;
-        protected boolean useSegmentedIndex = true;
-        protected boolean usePrimitiveIndex = false;
-        protected int segmentCount = 64;
-        protected int initialCapacity = 16;
-
-        protected BaseBuilder() {
+    public boolean remove(K key, V value) {
+        if (key == null) {
+            return false;
         }
+        return replaceIfEncodedEquals(key, value, null);
+    }
 
-        /**
+    /**
+     * 仅当键存在时替换其值
+     *
+     * @param key   键
+     * @param value 新值
+     * @return 被替换的旧值，键不存在时返回 null
+     */
+    public V replace(K key, V value) {
+        checkKeyAndValue(key, value);
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                if (address == 0) {
+                    return KEEP;
+                }
+                returnValue = valueCodec.decode(address);
+                return value;
+            }
+        };
+        return remapping.run(key);
+    }
+
+    /**
+     * 仅当键的当前值编码后与 expectedValue 的编码字节相同时，替换为 newValue（为 null 时删除）
+     */
+    private boolean replaceIfEncodedEquals(K key, V expectedValue, V newValue) {
+        if (expectedValue == null) {
+            throw new IllegalArgumentException("值不能为 null");
+        }
+
+        int expectedAllocSize = valueCodec.calculateSize(expectedValue);
+        if (expectedAllocSize < 0) {
+            throw new IllegalStateException("无法确定值的大小");
+        }
+        // 临时内存不能来自 map 的分配器：Mmap 的 free 不回收空间，自描述记录会写入记录头，缓存模式还可能触发淘汰
+        long expectedAddress = UnsafeOps.allocate(Math.max(expectedAllocSize, 1));
+
+        try {
+            int expectedSize = valueCodec.encode(expectedAddress, expectedValue);
+
+            Remapping remapping = new Remapping() {
+                @Override
+                Object apply(long address, int size) {
+                    if (address != 0 && size == expectedSize
+                            && UnsafeOps.memoryEquals(address + valueOffset, expectedAddress + valueOffset,
+                            size - valueOffset)) {
+                        return newValue;
+                    }
+                    return KEEP;
+                }
+            };
+            remapping.run(key);
+            return remapping.changed;
+        } finally {
+            UnsafeOps.free(expectedAddress);
+        }
+    }
+
+    /**
+     * 原子性地根据当前值计算新值
+     * <p>
+     * 函数在键所在的锁内执行，应当简短，并且不能访问本 map。函数返回 null 时删除该键。
+     * </p>
+     *
+     * @param key               键
+     * @param remappingFunction 根据键和当前值（不存在时为 null）计算新值的函数
+     * @return 新值，如果被删除则返回 null
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKeyAndFunction(key, remappingFunction);
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                V oldValue = address != 0 ? valueCodec.decode(address) : null;
+                V newValue = remappingFunction.apply(key, oldValue);
+                returnValue = newValue;
+                return (newValue == null && address == 0) ? KEEP : newValue;
+            }
+        };
+        return remapping.run(key);
+    }
+
+    /**
+     * 键不存在时原子性地计算并放入值
+     * <p>
+     * 函数在键所在的锁内执行，应当简短，并且不能访问本 map。函数返回 null 时不插入。
+     * </p>
+     *
+     * @param key             键
+     * @param mappingFunction 根据键计算值的函数
+     * @return 当前值（已存在的值或新计算的值），如果函数返回 null 则返回 null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        checkKeyAndFunction(key, mappingFunction);
+
+        // 快速路径：键已存在时不获取写锁
+        V existing = get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                if (address != 0) {
+                    returnValue = valueCodec.decode(address);
+                    return KEEP;
+                }
+                V newValue = mappingFunction.apply(key);
+                returnValue = newValue;
+                return newValue != null ? newValue : KEEP;
+            }
+        };
+        return remapping.run(key);
+    }
+
+    /**
+     * 键存在时原子性地根据当前值计算新值
+     * <p>
+     * 函数在键所在的锁内执行，应当简短，并且不能访问本 map。函数返回 null 时删除该键。
+     * </p>
+     *
+     * @param key               键
+     * @param remappingFunction 根据键和当前值计算新值的函数
+     * @return 新值，如果键不存在或被删除则返回 null
+     */
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKeyAndFunction(key, remappingFunction);
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                if (address == 0) {
+                    return KEEP;
+                }
+                V newValue = remappingFunction.apply(key, valueCodec.decode(address));
+                returnValue = newValue;
+                return newValue;
+            }
+        };
+        return remapping.run(key);
+    }
+
+    /**
+     * 原子性地合并值：键不存在时放入 value，否则放入 remappingFunction(当前值, value)
+     * <p>
+     * 函数在键所在的锁内执行，应当简短，并且不能访问本 map。函数返回 null 时删除该键。
+     * </p>
+     *
+     * @param key               键
+     * @param value             键不存在时放入的值，也是合并函数的第二个参数
+     * @param remappingFunction 合并函数
+     * @return 新值，如果被删除则返回 null
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkKeyAndValue(key, value);
+        checkKeyAndFunction(key, remappingFunction);
+
+        Remapping remapping = new Remapping() {
+            @Override
+            Object apply(long address, int size) {
+                V newValue = address != 0
+                        ? remappingFunction.apply(valueCodec.decode(address), value)
+                        : value;
+                returnValue = newValue;
+                return newValue;
+            }
+        };
+        return remapping.run(key);
+    }
+
+    /**
+     * 原子性地累加数值并返回累加后的值，键不存在时以 0 为初始值插入
+     * <p>
+     * 仅支持值编解码器为 PrimitiveCodecs.LONG 或 PrimitiveCodecs.INTEGER（按 int 溢出回绕）。
+     * 键已存在时直接在值的堆外内存上做 CAS：只持有键所在的共享读锁（保证值不会被并发释放），
+     * 不获取写锁，也不分配任何内存。
+     * </p>
+     *
+     * @param key   键
+     * @param delta 增量
+     * @return 累加后的值
+     */
+    public long addAndGet(K key, long delta) {
+        return addNumber(key, delta, true);
+    }
+
+    /**
+     * 原子性地累加数值并返回累加前的值，键不存在时以 0 为初始值插入
+     *
+     * @param key   键
+     * @param delta 增量
+     * @return 累加前的值
+     * @see #addAndGet(Object, long)
+     */
+    public long getAndAdd(K key, long delta) {
+        return addNumber(key, delta, false);
+    }
+
+    /**
+     * 原子性地加 1 并返回累加后的值
+     *
+     * @param key 键
+     * @return 累加后的值
+     * @see #addAndGet(Object, long)
+     */
+    public long incrementAndGet(K key) {
+        return addNumber(key, 1, true);
+    }
+
+    /**
+     * 原子性地累加浮点数值并返回累加后的值，键不存在时以 0 为初始值插入
+     * <p>
+     * 仅支持值编解码器为 PrimitiveCodecs.DOUBLE，对值的 IEEE 754 位做 CAS。
+     * </p>
+     *
+     * @param key   键
+     * @param delta 增量
+     * @return 累加后的值
+     */
+    public double addAndGet(K key, double delta) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (valueCodec != PrimitiveCodecs.DOUBLE) {
+            throw new IllegalStateException("addAndGet(K, double) 要求值编解码器为 PrimitiveCodecs.DOUBLE");
+        }
+        checkInPlaceUpdates();
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                long address = holder.address;
+                if (address != 0 && (address & 7) == 0) {
+                    while (true) {
+                        long current = UnsafeOps.getLongVolatile(address);
+                        double next = Double.longBitsToDouble(current) + delta;
+                        if (UnsafeOps.compareAndSwapLong(address, current, Double.doubleToRawLongBits(next))) {
+                            allocator.markDirty(address, 8);
+                            return next;
+                        }
+                    }
+                }
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        }
+
+        // 键不存在、地址未对齐或索引不支持共享值锁：在键所在的独占锁内完成
+        double[] result = new double[1];
+        boolean[] inserted = new boolean[1];
+        boolean[] full = new boolean[1];
+        do {
+            full[0] = false;
+            index.compute(key, (address, size, newEntry) -> {
+                if (address != 0) {
+                    result[0] = UnsafeOps.getDouble(address) + delta;
+                    UnsafeOps.putDouble(address, result[0]);
+                    allocator.markDirty(address, 8);
+                    return;
+                }
+                long newAddress = allocateNumber();
+                if (newAddress == 0) {
+                    full[0] = true;
+                    return;
+                }
+                UnsafeOps.putDouble(newAddress, delta);
+                allocator.markDirty(newAddress, 8);
+                newEntry.set(newAddress, 8);
+                result[0] = delta;
+                inserted[0] = true;
+            });
+        } while (full[0] && makeRoom(valueCodec.getFixedSize()));
+        if (inserted[0]) {
+            afterWrite(key);
+        }
+        return result[0];
+    }
+
+    /**
+     * 仅当键当前的数值等于 expect 时原子性地设置为 update
+     * <p>
+     * 仅支持值编解码器为 PrimitiveCodecs.LONG 或 PrimitiveCodecs.INTEGER。键不存在时返回 false。
+     * </p>
+     *
+     * @param key    键
+     * @param expect 期望的当前值
+     * @param update 新值
+     * @return 设置成功返回 true
+     */
+    public boolean compareAndSet(K key, long expect, long update) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        boolean isLong = checkIntegralCodec();
+        if (!isLong && (expect != (int) expect || update != (int) update)) {
+            return false;
+        }
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                long address = holder.address;
+                if (address == 0) {
+                    return false;
+                }
+                if (isAligned(address, isLong)) {
+                    boolean swapped = isLong
+                            ? UnsafeOps.compareAndSwapLong(address, expect, update)
+                            : UnsafeOps.compareAndSwapInt(address, (int) expect, (int) update);
+                    if (swapped) {
+                        allocator.markDirty(address, isLong ? 8 : 4);
+                    }
+                    return swapped;
+                }
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        }
+
+        boolean[] swapped = new boolean[1];
+        index.compute(key, (address, size, newEntry) -> {
+            if (address != 0 && readNumber(address, isLong) == expect) {
+                writeNumber(address, update, isLong);
+                swapped[0] = true;
+            }
+        });
+        return swapped[0];
+    }
+
+    private long addNumber(K key, long delta, boolean returnNew) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        boolean isLong = checkIntegralCodec();
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                long address = holder.address;
+                if (address != 0 && isAligned(address, isLong)) {
+                    return casAdd(address, delta, returnNew, isLong);
+                }
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        }
+
+        // 键不存在、地址未对齐或索引不支持共享值锁：在键所在的独占锁内完成
+        long[] result = new long[1];
+        boolean[] inserted = new boolean[1];
+        boolean[] full = new boolean[1];
+        do {
+            full[0] = false;
+            index.compute(key, (address, size, newEntry) -> {
+                if (address != 0) {
+                    long current = readNumber(address, isLong);
+                    long next = isLong ? current + delta : (int) (current + delta);
+                    writeNumber(address, next, isLong);
+                    result[0] = returnNew ? next : current;
+                    return;
+                }
+                long newAddress = allocateNumber();
+                if (newAddress == 0) {
+                    full[0] = true;
+                    return;
+                }
+                long next = isLong ? delta : (int) delta;
+                writeNumber(newAddress, next, isLong);
+                newEntry.set(newAddress, valueCodec.getFixedSize());
+                result[0] = returnNew ? next : 0;
+                inserted[0] = true;
+            });
+        } while (full[0] && makeRoom(valueCodec.getFixedSize()));
+        if (inserted[0]) {
+            afterWrite(key);
+        }
+        return result[0];
+    }
+
+    /**
+     * 原子数值操作原地修改值且不改变地址，近端缓存无法发现这种修改，预写日志也无法按修改顺序记录，
+     * 自描述记录的 CRC 也会失效
+     */
+    private void checkInPlaceUpdates() {
+        if (readOnly) {
+            throw new IllegalStateException("只读模式不支持写入");
+        }
+        if (nearCache != null) {
+            throw new IllegalStateException("启用近端缓存的 map 不支持原子数值操作");
+        }
+        if (wal != null) {
+            throw new IllegalStateException("启用预写日志的 map 不支持原子数值操作");
+        }
+        if (records != null) {
+            throw new IllegalStateException("启用自描述记录的 map 不支持原子数值操作");
+        }
+    }
+
+    /**
+     * 检查值编解码器是否为 LONG 或 INTEGER
+     *
+     * @return LONG 返回 true，INTEGER 返回 false
+     */
+    private boolean checkIntegralCodec() {
+        checkInPlaceUpdates();
+        if (valueCodec == PrimitiveCodecs.LONG) {
+            return true;
+        }
+        if (valueCodec == PrimitiveCodecs.INTEGER) {
+            return false;
+        }
+        throw new IllegalStateException("原子数值操作要求值编解码器为 PrimitiveCodecs.LONG 或 PrimitiveCodecs.INTEGER");
+    }
+
+    /**
+     * 在索引锁内为新的数值分配内存；缓存模式下分配失败返回 0，由调用方释放锁后淘汰再重试
+     */
+    private long allocateNumber() {
+        int size = valueCodec.getFixedSize();
+        long address = allocator.allocate(size);
+        if (address == 0 && evictor == null) {
+            throw new OutOfMemoryError("分配 " + size + " 字节失败");
+        }
+        return address;
+    }
+
+    /**
+     * 缓存模式下在索引锁内分配失败后，释放锁再淘汰腾出空间；淘汰不出空间时抛出 OutOfMemoryError
+     *
+     * @return 总是返回 true，便于在重试循环的条件中调用
+     */
+    private boolean makeRoom(int size) {
+        if (!evictor.makeRoom(size)) {
+            throw new OutOfMemoryError("分配 " + size + " 字节失败");
+        }
+        return true;
+    }
+
+    /**
+     * CAS 要求地址按值的大小对齐（Mmap 的紧凑分配可能产生未对齐的地址）
+     */
+    private static boolean isAligned(long address, boolean isLong) {
+        return (address & (isLong ? 7 : 3)) == 0;
+    }
+
+    private long casAdd(long address, long delta, boolean returnNew, boolean isLong) {
+        if (isLong) {
+            while (true) {
+                long current = UnsafeOps.getLongVolatile(address);
+                long next = current + delta;
+                if (UnsafeOps.compareAndSwapLong(address, current, next)) {
+                    allocator.markDirty(address, 8);
+                    return returnNew ? next : current;
+                }
+            }
+        }
+        while (true) {
+            int current = UnsafeOps.getIntVolatile(address);
+            int next = (int) (current + delta);
+            if (UnsafeOps.compareAndSwapInt(address, current, next)) {
+                allocator.markDirty(address, 4);
+                return returnNew ? next : current;
+            }
+        }
+    }
+
+    private static long readNumber(long address, boolean isLong) {
+        return isLong ? UnsafeOps.getLong(address) : UnsafeOps.getInt(address);
+    }
+
+    /**
+     * 写入数值并标记为脏区
+     */
+    private void writeNumber(long address, long value, boolean isLong) {
+        if (isLong) {
+            UnsafeOps.putLong(address, value);
+        } else {
+            UnsafeOps.putInt(address, (int) value);
+        }
+        allocator.markDirty(address, isLong ? 8 : 4);
+    }
+
+    /**
+     * 在不持有索引锁的路径上分配值内存；缓存模式下分配失败时先淘汰再重试，直到分配成功或没有可淘汰的条目
+     */
+    private long allocateValue(int size) {
+        long address = allocator.allocate(size);
+        while (address == 0 && evictor != null && evictor.makeRoom(size)) {
+            address = allocator.allocate(size);
+        }
+        if (address == 0) {
+            throw new OutOfMemoryError("分配 " + size + " 字节失败");
+        }
+        return address;
+    }
+
+    /**
+     * 为键的值分配内存；启用自描述记录时连同记录头和键一起分配，返回值的起始地址
+     */
+    private long allocateValue(K key, int size) {
+        if (records == null) {
+            return allocateValue(size);
+        }
+        long address = records.allocate(key, size);
+        if (address == 0) {
+            throw new OutOfMemoryError("分配 " + size + " 字节失败");
+        }
+        return address;
+    }
+
+    /**
+     * 值编码完成后调用：把写入的值标记为脏区，启用自描述记录时写入值长度和校验和并标记整条记录
+     */
+    private void sealValue(long address, int size) {
+        if (records != null) {
+            records.seal(address, size);
+        } else {
+            allocator.markDirty(address, size);
+        }
+    }
+
+    /**
+     * 写操作完成（索引锁已释放）后调用：缓存模式下记录访问频率，并在超出最大权重时淘汰；
+     * 启用过期时调度键的当前值并回收已到期的条目
+     */
+    private void afterWrite(K key) {
+        recordWrite(key);
+        if (evictor != null) {
+            evictor.evictIfNeeded();
+        }
+    }
+
+    /**
+     * 单个键写入后的记录工作，单个写入和批量写入共用：使近端缓存项失效，记录两级存储和淘汰的访问频率，
+     * 启用过期时调度键的当前值
+     */
+    private void recordWrite(K key) {
+        invalidateNearCache(key);
+        if (tierManager != null) {
+            tierManager.recordWrite(key);
+        }
+        if (evictor != null) {
+            evictor.recordAccess(key);
+        }
+        if (expiration != null) {
+            expiration.afterWrite(key);
+        }
+    }
+
+    /**
+     * 索引更新后使键的近端缓存项失效
+     */
+    private void invalidateNearCache(Object key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 值地址有效且未过期
+     */
+    boolean isLive(long address) {
+        return address != 0 && (expiration == null || !expiration.isExpired(address));
+    }
+
+    /**
+     * 立即回收所有已到期的条目
+     * <p>
+     * 回收通常在读写操作之后增量进行，长时间没有读写时可以调用本方法主动回收。未启用过期时不做任何事。
+     * </p>
+     */
+    public void cleanUp() {
+        if (expiration != null) {
+            expiration.cleanUp();
+        }
+    }
+
+    /**
+     * 获取累计回收的过期条目数量
+     *
+     * @return 回收数量，未启用过期返回 0
+     */
+    public long expiredCount() {
+        return expiration != null ? expiration.expiredCount() : 0;
+    }
+
+    /**
+     * 是否可以包装为原始类型视图：视图直接访问底层索引和分配器，绕过缓存淘汰、两级存储的值锁、过期头部、近端缓存失效、预写日志、延迟校验和共享索引
+     */
+    boolean supportsPrimitiveView() {
+        return evictor == null && tierManager == null && expiration == null && nearCache == null
+                && wal == null && checkpointer == null && records == null && !verifying && !readOnly && live == null;
+    }
+
+    /**
+     * 获取缓存模式下累计淘汰的条目数量
+     *
+     * @return 淘汰数量，非缓存模式返回 0
+     */
+    public long evictionCount() {
+        return evictor != null ? evictor.evictionCount() : 0;
+    }
+
+    /**
+     * 获取两级存储模式下累计从热层降级到冷层的条目数量
+     *
+     * @return 降级数量，非两级模式返回 0
+     */
+    public long demotionCount() {
+        return tierManager != null ? tierManager.demotionCount() : 0;
+    }
+
+    /**
+     * 获取两级存储模式下累计从冷层提升到热层的条目数量
+     *
+     * @return 提升数量，非两级模式返回 0
+     */
+    public long promotionCount() {
+        return tierManager != null ? tierManager.promotionCount() : 0;
+    }
+
+    private static void checkKeyAndValue(Object key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("值不能为 null");
+        }
+    }
+
+    private static void checkKeyAndFunction(Object key, Object function) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (function == null) {
+            throw new IllegalArgumentException("函数不能为 null");
+        }
+    }
+
+    /**
+     * 在索引锁内执行的读-改-写
+     * <p>
+     * 子类在 apply 中根据当前值决定结果：返回 KEEP 保持不变，返回 null 删除，返回值则编码后替换。
+     * 新值的内存在锁内分配和编码，被替换的旧值在锁释放后才释放。
+     * 缓存模式下锁内分配失败时保持条目不变，释放锁后淘汰腾出空间再重新执行 apply，因此 apply 可能被调用多次。
+     * </p>
+     */
+    private abstract class Remapping implements IndexRemapper {
+
+        V returnValue;
+        boolean changed;
+
+        private K key;
+        private long newAddress;
+        private int newAllocSize;
+        private long freeAddress;
+        private int freeSize;
+        private int roomNeeded; // 缓存模式下锁内分配失败的字节数，0 表示未失败
+
+        abstract Object apply(long address, int size);
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void remap(long address, int size, IndexResultHolder result) {
+            // 已过期未回收的条目按不存在处理，即使结果不变也顺带删除
+            boolean expired = address != 0 && expiration != null && expiration.isExpired(address);
+            Object next = expired ? apply(0, 0) : apply(address, size);
+            if (next == KEEP && !expired) {
+                return;
+            }
+
+            if (next == null || next == KEEP) {
+                result.reset();
+            } else {
+                V value = (V) next;
+                int valueSize = valueCodec.calculateSize(value);
+                if (valueSize < 0) {
+                    throw new IllegalStateException("无法确定值的大小");
+                }
+                long valueAddress = records != null ? records.allocate(key, valueSize) : allocator.allocate(valueSize);
+                if (valueAddress == 0) {
+                    if (evictor == null) {
+                        throw new OutOfMemoryError("分配 " + valueSize + " 字节失败");
+                    }
+                    roomNeeded = Math.max(valueSize, 1);
+                    return;
+                }
+                int actualSize;
+                try {
+                    actualSize = valueCodec.encode(valueAddress, value);
+                    sealValue(valueAddress, actualSize);
+                } catch (RuntimeException e) {
+                    allocator.free(valueAddress, valueSize);
+                    throw e;
+                }
+                newAddress = valueAddress;
+                newAllocSize = valueSize;
+                result.set(valueAddress, actualSize);
+            }
+
+            freeAddress = address;
+            freeSize = size;
+            changed = next != KEEP;
+        }
+
+        V run(K key) {
+            this.key = key;
+            do {
+                roomNeeded = 0;
+                try {
+                    index.compute(key, this);
+                } catch (RuntimeException e) {
+                    // 索引未更新，释放锁内分配的新值
+                    if (newAddress != 0) {
+                        allocator.free(newAddress, newAllocSize);
+                    }
+                    throw e;
+                }
+            } while (roomNeeded != 0 && makeRoom(roomNeeded));
+
+            if (freeAddress != 0) {
+                allocator.free(freeAddress, freeSize);
+            }
+            afterWrite(key);
+            return returnValue;
+        }
+    }
+
+    /**
+     * 批量放入键值对，不解码也不返回旧值
+     * <p>
+     * 固定大小的值一次性批量分配内存，索引更新按段分组，每个段的锁在整批中只获取一次。
+     * </p>
+     *
+     * @param entries 要放入的键值对
+     */
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("entries 不能为 null");
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<K> keys = new ArrayList<>(entries.size());
+        List<V> values = new ArrayList<>(entries.size());
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new IllegalArgumentException("键不能为 null");
+            }
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        putAllInternal(keys, values);
+    }
+
+    /**
+     * 批量放入键值对，不解码也不返回旧值
+     *
+     * @param keys   键数组
+     * @param values 值数组，长度必须与键数组一致
+     */
+    public void putAll(K[] keys, V[] values) {
+        if (keys == null || values == null) {
+            throw new IllegalArgumentException("keys 和 values 不能为 null");
+        }
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys 和 values 长度不一致: " + keys.length + " != " + values.length);
+        }
+        for (K key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("键不能为 null");
+            }
+        }
+        if (keys.length == 0) {
+            return;
+        }
+        putAllInternal(Arrays.asList(keys), Arrays.asList(values));
+    }
+
+    private void putAllInternal(List<K> keys, List<V> values) {
+        int n = keys.size();
+        long[] newAddresses = new long[n];
+        int[] allocSizes = new int[n];
+        int[] actualSizes = new int[n];
+        long[] oldAddresses = new long[n];
+        int[] oldSizes = new int[n];
+
+        int allocated = 0;
+        boolean success = false;
+        try {
+            if (valueCodec.isFixedSize() && records == null) {
+                // 固定大小：整批一次分配
+                Arrays.fill(allocSizes, valueCodec.getFixedSize());
+                if (!allocator.allocateBatch(allocSizes, newAddresses, n)
+                        && !(evictor != null
+                        && evictor.makeRoom(n * valueCodec.getFixedSize())
+                        && allocator.allocateBatch(allocSizes, newAddresses, n))) {
+                    throw new OutOfMemoryError("批量分配 " + n + " 个值失败");
+                }
+                allocated = n;
+                for (int i = 0; i < n; i++) {
+                    actualSizes[i] = valueCodec.encode(newAddresses[i], values.get(i));
+                    allocator.markDirty(newAddresses[i], actualSizes[i]);
+                }
+            } else {
+                // 变长编解码器可能在 calculateSize 与 encode 之间缓存序列化结果，必须逐个计算并编码；
+                // 自描述记录带有各自的键，也逐个分配
+                for (int i = 0; i < n; i++) {
+                    V value = values.get(i);
+                    int valueSize = valueCodec.calculateSize(value);
+                    if (valueSize < 0) {
+                        throw new IllegalStateException("无法确定值的大小");
+                    }
+                    long address = allocateValue(keys.get(i), valueSize);
+                    newAddresses[i] = address;
+                    allocSizes[i] = valueSize;
+                    allocated++;
+                    actualSizes[i] = valueCodec.encode(address, value);
+                    sealValue(address, actualSizes[i]);
+                }
+            }
+
+            index.putAll(keys, newAddresses, actualSizes, oldAddresses, oldSizes);
+            success = true;
+        } finally {
+            if (!success) {
+                for (int i = 0; i < allocated; i++) {
+                    allocator.free(newAddresses[i], allocSizes[i]);
+                }
+            }
+        }
+
+        // 被覆盖的旧值直接释放，不解码
+        for (int i = 0; i < n; i++) {
+            if (oldAddresses[i] != 0) {
+                allocator.free(oldAddresses[i], oldSizes[i]);
+            }
+        }
+
+        for (K key : keys) {
+            recordWrite(key);
+        }
+        if (evictor != null) {
+            evictor.evictIfNeeded();
+        }
+    }
+
+    /**
+     * 批量获取值
+     * <p>
+     * 索引查找按段分组，值按内存地址顺序解码以改善访问局部性。
+     * </p>
+     *
+     * @param keys 键集合，null 键会被忽略
+     * @return 存在的键及其值，不存在的键不会出现在结果中
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        List<K> keyList = nonNullKeys(keys);
+        int n = keyList.size();
+        if (n == 0) {
+            return new HashMap<>();
+        }
+
+        if (tierManager != null) {
+            // 两级存储模式下值可能被并发迁移，逐个在键的锁内读取
+            Map<K, V> result = new HashMap<>((int) (n / 0.75f) + 1);
+            for (K key : keyList) {
+                V value = getTiered(key);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+            return result;
+        }
+
+        long[] addresses = new long[n];
+        index.getAll(keyList, addresses);
+
+        Map<K, V> result = new HashMap<>((int) (n / 0.75f) + 1);
+        for (int i : orderByAddress(addresses)) {
+            long address = addresses[i];
+            if (isLive(address)) {
+                K key = keyList.get(i);
+                V cached = nearCache != null ? nearCache.get(key, address) : null;
+                result.put(key, cached != null ? cached : valueCodec.decode(address));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量删除键值对，不解码也不返回旧值
+     *
+     * @param keys 键集合，null 键会被忽略
+     * @return 实际删除的条目数量
+     */
+    public int removeAll(Collection<? extends K> keys) {
+        List<K> keyList = nonNullKeys(keys);
+        int n = keyList.size();
+        if (n == 0) {
+            return 0;
+        }
+
+        long[] oldAddresses = new long[n];
+        int[] oldSizes = new int[n];
+        index.removeAll(keyList, oldAddresses, oldSizes);
+
+        int removed = 0;
+        for (int i = 0; i < n; i++) {
+            if (oldAddresses[i] != 0) {
+                invalidateNearCache(keyList.get(i));
+                // 已过期但尚未回收的条目不计入删除数量，与 delete 一致
+                if (isLive(oldAddresses[i])) {
+                    removed++;
+                }
+                allocator.free(oldAddresses[i], oldSizes[i]);
+            }
+        }
+        return removed;
+    }
+
+    private static <K> List<K> nonNullKeys(Collection<? extends K> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys 不能为 null");
+        }
+        List<K> keyList = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            if (key != null) {
+                keyList.add(key);
+            }
+        }
+        return keyList;
+    }
+
+    /**
+     * 返回按地址升序排列的下标
+     */
+    private static int[] orderByAddress(long[] addresses) {
+        int[] order = new int[addresses.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sortByAddress(addresses, order, 0, order.length - 1);
+        return order;
+    }
+
+    private static void sortByAddress(long[] addresses, int[] order, int lo, int hi) {
+        while (hi - lo >= 16) {
+            long pivot = addresses[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (addresses[order[i]] < pivot) {
+                    i++;
+                }
+                while (addresses[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // 先递归较小的一侧，限制栈深度
+            if (j - lo < hi - i) {
+                sortByAddress(addresses, order, lo, j);
+                lo = i;
+            } else {
+                sortByAddress(addresses, order, i, hi);
+                hi = j;
+            }
+        }
+
+        // 小区间使用插入排序
+        for (int i = lo + 1; i <= hi; i++) {
+            int current = order[i];
+            long address = addresses[current];
+            int j = i - 1;
+            while (j >= lo && addresses[order[j]] > address) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    /**
+     * 弱一致的键迭代器
+     * <p>
+     * 按段（或表区间）分块遍历索引，块与块之间不持有锁，遍历不会长时间阻塞写入。
+     * 遍历期间并发写入或删除的键可能可见也可能不可见。
+     * </p>
+     *
+     * @return 键迭代器
+     */
+    public Iterator<K> keys() {
+        return Spliterators.iterator(keySpliterator());
+    }
+
+    /**
+     * 弱一致的条目迭代器，值在段锁内解码
+     *
+     * @return 条目迭代器（条目不可修改）
+     * @see #keys()
+     */
+    public Iterator<Map.Entry<K, V>> entries() {
+        return Spliterators.iterator(entrySpliterator());
+    }
+
+    /**
+     * 弱一致的键流，并行流按段（或表区间）拆分
+     *
+     * @return 键流
+     */
+    public Stream<K> keyStream() {
+        return StreamSupport.stream(keySpliterator(), false);
+    }
+
+    /**
+     * 弱一致的条目流，并行流按段（或表区间）拆分
+     *
+     * @return 条目流（条目不可修改）
+     */
+    public Stream<Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(entrySpliterator(), false);
+    }
+
+    /**
+     * 并行遍历所有条目
+     * <p>
+     * 按段（或表区间）拆分到 ForkJoinPool 公共池上执行，遍历是弱一致的。
+     * action 在锁外执行，可以访问本 map。
+     * </p>
+     *
+     * @param action 条目处理函数
+     */
+    public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action 不能为 null");
+        }
+        StreamSupport.stream(entrySpliterator(), true)
+                .forEach(entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * 并行地对所有条目做映射-归约
+     *
+     * @param transformer 把条目转换为归约元素的函数，返回 null 的条目被忽略
+     * @param reducer     满足结合律的归约函数
+     * @param <U>         归约结果类型
+     * @return 归约结果，没有任何元素时返回 null
+     * @see #parallelForEach(BiConsumer)
+     */
+    public <U> U parallelReduce(BiFunction<? super K, ? super V, ? extends U> transformer,
+                                BinaryOperator<U> reducer) {
+        if (transformer == null || reducer == null) {
+            throw new IllegalArgumentException("transformer 和 reducer 不能为 null");
+        }
+        return StreamSupport.stream(entrySpliterator(), true)
+                .<U>map(entry -> transformer.apply(entry.getKey(), entry.getValue()))
+                .filter(Objects::nonNull)
+                .reduce(reducer)
+                .orElse(null);
+    }
+
+    /**
+     * 并行删除所有满足条件的条目
+     * <p>
+     * 各分片在 ForkJoinPool 公共池上并行扫描，扫描时在分片锁内复制每个条目的值字节，谓词在锁外基于副本判断，
+     * 因此谓词可以访问本 map；但它会在多个公共池线程上被并发调用，必须是线程安全的，也不应长时间阻塞。
+     * 满足条件的键在删除前会在键所在的独占锁内与副本比较编码字节，扫描后被并发修改的条目不会被误删。
+     * </p>
+     *
+     * @param filter 判断条件
+     * @return 删除的条目数量
+     */
+    public int removeIf(BiPredicate<? super K, ? super V> filter) {
+        return removeIf(filter, true);
+    }
+
+    /**
+     * 删除所有满足条件的条目，parallel 为 false 时在调用线程上按分片顺序执行
+     *
+     * @see #removeIf(BiPredicate)
+     */
+    @SuppressWarnings("unchecked")
+    int removeIf(BiPredicate<? super K, ? super V> filter, boolean parallel) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter 不能为 null");
+        }
+        return removeMatching((key, address, size) -> filter.test((K) key, valueCodec.decode(address)), parallel);
+    }
+
+    /**
+     * 并行删除所有编码字节满足条件的条目，全程不解码值
+     * <p>
+     * 谓词拿到的是值字节在锁外的副本，与 {@link #removeIf(BiPredicate)} 一样会被并发调用。
+     * </p>
+     *
+     * @param filter 基于值编码字节的判断条件
+     * @return 删除的条目数量
+     * @see #removeIf(BiPredicate)
+     */
+    public int removeIfRaw(OffHeapValuePredicate filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter 不能为 null");
+        }
+        return removeMatching((key, address, size) -> filter.test(address + valueOffset, size - valueOffset), true);
+    }
+
+    /**
+     * 并行地用函数结果替换每个条目的值
+     * <p>
+     * 每个条目在键所在的独占锁内读-改-写，函数在锁内执行，不能访问本 map，也不能返回 null。
+     * 遍历开始后新插入的条目可能不会被处理。
+     * </p>
+     *
+     * @param function 根据键和当前值计算新值的函数
+     */
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new IllegalArgumentException("function 不能为 null");
+        }
+
+        forEachShardParallel(shard -> {
+            List<K> keys = new ArrayList<>(IndexSpliterator.CHUNK_SIZE);
+            IndexCursor cursor = index.cursor(shard);
+            boolean more;
+            do {
+                keys.clear();
+                more = cursor.advance(IndexSpliterator.CHUNK_SIZE, (key, address, size) -> keys.add(castKey(key)));
+                for (K key : keys) {
+                    new Remapping() {
+                        @Override
+                        Object apply(long address, int size) {
+                            if (address == 0) {
+                                return KEEP; // 已被并发删除
+                            }
+                            V newValue = function.apply(key, valueCodec.decode(address));
+                            if (newValue == null) {
+                                throw new IllegalArgumentException("replaceAll 的函数不能返回 null");
+                            }
+                            return newValue;
+                        }
+                    }.run(key);
+                }
+            } while (more);
+        });
+    }
+
+    private int removeMatching(EntryPredicate filter, boolean parallel) {
+        AtomicInteger removed = new AtomicInteger();
+        IntConsumer shardTask = shard -> {
+            ShardRemoval removal = new ShardRemoval(filter);
+            try {
+                removed.addAndGet(removal.run(shard));
+            } finally {
+                removal.close();
+            }
+        };
+        if (parallel) {
+            forEachShardParallel(shardTask);
+        } else {
+            for (int shard = 0; shard < index.shardCount(); shard++) {
+                shardTask.accept(shard);
+            }
+        }
+        return removed.get();
+    }
+
+    /**
+     * 在 ForkJoinPool 公共池上并行处理每个索引分片
+     */
+    private void forEachShardParallel(IntConsumer shardTask) {
+        IntStream.range(0, index.shardCount()).parallel().forEach(shardTask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private K castKey(Object key) {
+        return (K) key;
+    }
+
+    /**
+     * 基于键和值字节的判断条件，在索引锁外对值字节的副本调用
+     */
+    @FunctionalInterface
+    private interface EntryPredicate {
+        boolean test(Object key, long address, int size);
+    }
+
+    /**
+     * 按条件删除一个分片中的条目，在分片任务内复用
+     * <p>
+     * 每批条目在分片锁内把键和值字节复制到临时的堆外内存（已过期的条目交给过期回收，不复制），
+     * 释放锁后对副本调用判断条件；满足条件的键在键所在的独占锁内与副本逐字节比较，仍然相同时才删除。
+     * </p>
+     */
+    private final class ShardRemoval implements IndexEntryConsumer, IndexRemapper {
+        private static final int INITIAL_SCRATCH_SIZE = 4096;
+
+        private final EntryPredicate predicate;
+        private final List<K> keys = new ArrayList<>(IndexSpliterator.CHUNK_SIZE);
+        private int[] offsets = new int[IndexSpliterator.CHUNK_SIZE];
+        private int[] sizes = new int[IndexSpliterator.CHUNK_SIZE];
+        private long scratch;
+        private long scratchSize;
+        private long used;
+        private long expectedAddress;
+        private int expectedSize;
+        private long freedAddress;
+        private int freedSize;
+
+        ShardRemoval(EntryPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        int run(int shard) {
+            int removed = 0;
+            IndexCursor cursor = index.cursor(shard);
+            boolean more;
+            do {
+                keys.clear();
+                used = 0;
+                more = cursor.advance(IndexSpliterator.CHUNK_SIZE, this);
+                for (int i = 0; i < keys.size(); i++) {
+                    long address = scratch + offsets[i];
+                    if (predicate.test(keys.get(i), address, sizes[i]) && remove(keys.get(i), address, sizes[i])) {
+                        removed++;
+                    }
+                }
+            } while (more);
+            return removed;
+        }
+
+        @Override
+        public void accept(Object key, long address, int size) {
+            if (!isLive(address)) {
+                return;
+            }
+            int n = keys.size();
+            if (n == offsets.length) {
+                offsets = Arrays.copyOf(offsets, n * 2);
+                sizes = Arrays.copyOf(sizes, n * 2);
+            }
+            if (used + size > scratchSize) {
+                long newSize = Math.max(Math.max(scratchSize * 2, used + size), INITIAL_SCRATCH_SIZE);
+                scratch = scratch == 0 ? UnsafeOps.allocate(newSize) : UnsafeOps.reallocate(scratch, newSize);
+                scratchSize = newSize;
+            }
+            UnsafeOps.copyMemory(address, scratch + used, size);
+            offsets[n] = (int) used;
+            sizes[n] = size;
+            keys.add(castKey(key));
+            used += size;
+        }
+
+        private boolean remove(K key, long address, int size) {
+            expectedAddress = address;
+            expectedSize = size;
+            freedAddress = 0;
+            index.compute(key, this);
+            if (freedAddress == 0) {
+                return false;
+            }
+            invalidateNearCache(key);
+            allocator.free(freedAddress, freedSize);
+            return true;
+        }
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            if (address != 0 && size == expectedSize && UnsafeOps.memoryEquals(
+                    address + valueOffset, expectedAddress + valueOffset, size - valueOffset)) {
+                freedAddress = address;
+                freedSize = size;
+                result.reset();
+            }
+        }
+
+        void close() {
+            UnsafeOps.free(scratch);
+            scratch = 0;
+        }
+    }
+
+    /**
+     * 返回实现 {@link ConcurrentMap} 接口的视图
+     * <p>
+     * 视图的读写直接作用于本 map：原子操作映射到 putIfAbsent/replace/compute 等段锁内的实现，
+     * putAll 映射到批量写入，keySet/values/entrySet 是基于索引的弱一致惰性视图。
+     * 与 ConcurrentHashMap 一样，键和值都不能为 null。
+     * </p>
+     *
+     * @return ConcurrentMap 视图
+     */
+    public ConcurrentMap<K, V> asConcurrentMap() {
+        return new ConcurrentMapView<>(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    Spliterator<K> keySpliterator() {
+        return new IndexSpliterator<>(index, (key, address, size) -> isLive(address) ? (K) key : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    Spliterator<Map.Entry<K, V>> entrySpliterator() {
+        return new IndexSpliterator<>(index, (key, address, size) -> isLive(address)
+                ? new AbstractMap.SimpleImmutableEntry<>((K) key, valueCodec.decode(address)) : null);
+    }
+
+    /**
+     * 检查键是否存在
+     *
+     * @param key 键
+     * @return 如果存在返回 true，否则返回 false
+     */
+    public boolean containsKey(K key) {
+        if (key == null) {
+            return false;
+        }
+        if (expiration != null) {
+            return isLive(index.get(key));
+        }
+        return index.containsKey(key);
+    }
+
+    /**
+     * 获取条目数量
+     *
+     * @return 条目数量
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 检查 map 是否为空
+     *
+     * @return 如果为空返回 true
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 移除所有条目
+     */
+    public void clear() {
+        // 遍历所有条目并释放内存
+        index.forEach((key, address, size) -> {
+            allocator.free(address, size);
+        });
+
+        // 清空索引
+        index.clear();
+
+        if (nearCache != null) {
+            nearCache.clear();
+        }
+    }
+
+    /**
+     * 刷新所有待处理的更改（用于持久化存储）
+     * <p>
+     * 多 map 存储的子 map 提交整个存储，见 {@link RogueStore#flush()}。
+     * </p>
+     */
+    public void flush() {
+        if (store != null) {
+            store.flush();
+            return;
+        }
+        if (wal != null) {
+            wal.sync();
+        }
+        storage.flush();
+    }
+
+    /**
+     * 把存活条目导出为快照文件
+     *
+     * @param path     目标文件，已存在时被覆盖
+     * @param compress 是否 GZIP 压缩
+     * @return 导出的条目数
+     * @see #exportTo(OutputStream, boolean)
+     */
+    public long exportTo(Path path, boolean compress) {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            return exportTo(out, compress);
+        } catch (IOException e) {
+            throw new RuntimeException("导出快照失败: " + path, e);
+        }
+    }
+
+    /**
+     * 把存活条目按 {@link SnapshotFormat} 顺序写出，只包含键和值的编码字节
+     * <p>
+     * 导出不阻塞读写：按索引分片分批遍历，每批在分片锁内复制键和值的字节，锁外写出。
+     * 导出期间并发的写入可能只有一部分进入快照（与后台检查点相同的模糊快照），每个条目的值都是完整的；
+     * 原始类型索引在导出期间扩容时同一个键可能出现两次，加载时以后出现的为准。已过期的条目不导出。
+     * 可以用 {@link #bulkLoad(InputStream, MmapBuilder)} 加载到新的映射文件。
+     * </p>
+     *
+     * @param out      目标流，完成后不会被关闭
+     * @param compress 是否 GZIP 压缩
+     * @return 导出的条目数
+     */
+    public long exportTo(OutputStream out, boolean compress) {
+        if (out == null) {
+            throw new IllegalArgumentException("输出流不能为 null");
+        }
+        try {
+            SnapshotFormat.Writer writer = new SnapshotFormat.Writer(out, compress, index.size());
+            SnapshotTransfer.exportEntries(this, writer::write);
+            return writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("导出快照失败", e);
+        }
+    }
+
+    /**
+     * 把存活条目写成只读的冻结文件，用 {@link FrozenMap#open(Path, Codec, Codec)} 打开
+     * <p>
+     * 与 {@link #exportTo(OutputStream, boolean)} 一样分批遍历、不阻塞读写，写入的是模糊快照。
+     * 目标文件在写完后被原子替换。
+     * </p>
+     *
+     * @param file 目标文件
+     * @return 写入的条目数
+     */
+    public long freezeTo(Path file) {
+        try (FrozenMap.Writer<K, V> writer = FrozenMap.writer(file, keyCodec, valueCodec)) {
+            SnapshotTransfer.exportEntries(this, writer::addEncoded);
+            return writer.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("写入冻结文件失败: " + file, e);
+        }
+    }
+
+    /**
+     * 从快照文件批量加载到新的映射文件
+     *
+     * @param snapshot 快照文件
+     * @param target   目标映射文件的构建器
+     * @param <K>      键类型
+     * @param <V>      值类型
+     * @return 加载完成的 map
+     * @see #bulkLoad(InputStream, MmapBuilder)
+     */
+    public static <K, V> RogueMap<K, V> bulkLoad(Path snapshot, MmapBuilder<K, V> target) {
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            return bulkLoad(in, target);
+        } catch (IOException e) {
+            throw new RuntimeException("读取快照失败: " + snapshot, e);
+        }
+    }
+
+    /**
+     * 把 {@link #exportTo(OutputStream, boolean)} 导出的快照加载到新的映射文件
+     * <p>
+     * 目标文件必须不存在（或为空），构建器的编解码器必须与导出时相同，且不能启用预写日志、
+     * 后台检查点或自描述记录（加载完成后可以带这些选项重新打开）。索引按快照中的条目数预先确定容量，
+     * 值的字节不经过解码直接顺序写入数据区，索引按批写入，每批每个分片只加锁一次。
+     * 加载失败时删除新建的文件。返回的 map 关闭时保存索引。
+     * </p>
+     *
+     * @param in     快照流，完成后不会被关闭
+     * @param target 目标映射文件的构建器
+     * @param <K>    键类型
+     * @param <V>    值类型
+     * @return 加载完成的 map
+     */
+    public static <K, V> RogueMap<K, V> bulkLoad(InputStream in, MmapBuilder<K, V> target) {
+        if (in == null || target == null) {
+            throw new IllegalArgumentException("快照流和目标构建器不能为 null");
+        }
+        return SnapshotTransfer.bulkLoad(in, target);
+    }
+
+    /**
+     * 立即写入一个检查点（需要在构建时启用后台检查点）
+     */
+    public void checkpoint() {
+        if (checkpointer == null) {
+            throw new IllegalStateException("checkpoint() 需要在构建时启用后台检查点");
+        }
+        checkpointer.checkpoint();
+    }
+
+    /**
+     * 获取存储引擎（用于测试）
+     */
+    public StorageEngine getStorage() {
+        return storage;
+    }
+
+    /**
+     * 获取索引（供同包的原始类型视图使用）
+     */
+    Index<K> getIndex() {
+        return index;
+    }
+
+    /**
+     * 获取分配器（供同包的原始类型视图使用）
+     */
+    Allocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * 获取值编解码器（供同包的原始类型视图使用）
+     */
+    Codec<V> getValueCodec() {
+        return valueCodec;
+    }
+
+    /**
+     * 获取键编解码器（供同包的快照导出与批量加载使用）
+     */
+    Codec<K> getKeyCodec() {
+        return keyCodec;
+    }
+
+    /**
+     * 值编码字节相对值地址的偏移，启用过期时为过期头部大小
+     */
+    int getValueOffset() {
+        return valueOffset;
+    }
+
+    @Override
+    public void close() {
+        if (store != null) {
+            // 多 map 存储的子 map：索引镜像交给存储在下次提交时写入，映射文件由存储关闭
+            store.detach(this);
+            index.close();
+            return;
+        }
+
+        // 如果是 MMAP 模式，检查是否需要保存索引
+        if (storage instanceof MmapStorage) {
+            MmapStorage mmapStorage = (MmapStorage) storage;
+            MmapAllocator mmapAllocator = mmapStorage.getAllocator();
+
+            // 临时文件和只读模式：跳过持久化
+            // 后台检查点模式：只需要补齐上一个检查点之后的部分（日志落盘或最后一个检查点）
+            // 持久化模式：保存索引
+            if (checkpointer != null) {
+                checkpointer.close();
+                if (wal != null) {
+                    wal.sync();
+                }
+            } else if (!mmapAllocator.isTemporary() && !mmapAllocator.isReadOnly()) {
+                saveMmapIndex();
+            }
+        }
+
+        if (tierManager != null) {
+            tierManager.close();
+        }
+
+        if (wal != null) {
+            wal.close();
+        }
+        index.close();
+        if (evictor != null) {
+            evictor.close();
+        }
+        storage.close();
+        allocator.close();
+    }
+
+    /**
+     * 保存 MMAP 索引到文件
+     */
+    private void saveMmapIndex() {
+        MmapStorage mmapStorage = (MmapStorage) storage;
+        MmapAllocator mmapAllocator = mmapStorage.getAllocator();
+
+        // 获取当前数据使用的偏移量
+        long currentDataOffset = allocator.usedMemory();
+
+        // 计算索引大小
+        int indexSize = index.serializedSize();
+
+        // 索引数据放在所有数据之后（避免覆盖数据）
+        long indexOffset = currentDataOffset;
+        long baseAddress = mmapAllocator.getBaseAddress();
+        long indexAddress = baseAddress + indexOffset;
+
+        // 序列化索引（使用相对偏移量）
+        index.serializeWithOffsets(indexAddress, baseAddress);
+
+        // 页校验和表紧跟在索引镜像之后，文件剩余空间不够时不写
+        long indexEnd = indexOffset + indexSize;
+        long tableOffset = (indexEnd + 7) & ~7L;
+        long checksumStart = dataPageChecksums
+                ? MmapFileHeader.HEADER_SIZE : indexOffset;
+        boolean pageTable = tableOffset + PageChecksums.tableSize(checksumStart, indexEnd)
+                <= mmapAllocator.getFileSize();
+        int pageTableChecksum = pageTable
+                ? PageChecksums.write(baseAddress, checksumStart, indexEnd, tableOffset) : 0;
+        // 索引镜像和页校验和表不经过分配器，手动标记为脏区
+        mmapAllocator.markDirtyOffset(indexOffset, pageTable
+                ? tableOffset + PageChecksums.tableSize(checksumStart, indexEnd) - indexOffset : indexSize);
+        if (wal != null || records != null) {
+            // 索引落盘后才能把头部标记为正常关闭，否则掉电可能留下指向不完整索引的干净头部
+            mmapAllocator.flush();
+        }
+
+        // 更新头部
+        MmapFileHeader header = new MmapFileHeader();
+        header.setMagicNumber(MmapFileHeader.MAGIC_NUMBER);
+        header.setVersion(MmapFileHeader.VERSION);
+        header.setIndexType(getIndexType(index));
+        header.setEntryCount(index.size());
+        header.setCurrentOffset(currentDataOffset);
+        header.setIndexOffset(indexOffset);
+        header.setIndexSize(indexSize);
+        if (records != null) {
+            header.setFlags(MmapFileHeader.FLAG_RECORDS);
+            header.setRecordSequence(records.currentSequence());
+        }
+        if (pageTable) {
+            header.setPageTable(checksumStart, tableOffset, pageTableChecksum);
+        }
+        if (live != null) {
+            header.setLiveTableOffset(live.offset());
+        }
+
+        mmapAllocator.writeHeader(header);
+
+        if (wal != null) {
+            // 检查点已完整落盘，之前的日志不再需要
+            mmapAllocator.flush();
+            wal.reset();
+        }
+    }
+
+    /**
+     * 获取索引类型
+     */
+    static int getIndexType(Index<?> mapIndex) {
+        Index<?> index = ForwardingIndex.unwrap(mapIndex);
+        if (index instanceof HashIndex) {
+            return 0;
+        } else if (index instanceof SegmentedHashIndex) {
+            return 1;
+        } else if (index instanceof LongPrimitiveIndex) {
+            return 2;
+        } else if (index instanceof IntPrimitiveIndex) {
+            return 3;
+        }
+        // 未知索引类型，返回默认值
+        return 0;
+    }
+
+    /**
+     * 创建堆外内存模式的构建器
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     * @return OffHeap 构建器
+     */
+    public static <K, V> OffHeapBuilder<K, V> offHeap() {
+        return new OffHeapBuilder<>();
+    }
+
+    /**
+     * 创建内存映射文件模式的构建器
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     * @return MMAP 构建器
+     */
+    public static <K, V> MmapBuilder<K, V> mmap() {
+        return new MmapBuilder<>();
+    }
+
+    /**
+     * 创建两级存储模式的构建器：热层为堆外内存，冷层为内存映射文件
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     * @return 两级存储构建器
+     */
+    public static <K, V> TieredBuilder<K, V> tiered() {
+        return new TieredBuilder<>();
+    }
+
+    /**
+     * RogueMap 的抽象构建器基类
+     * 包含 MMAP 和 OffHeap 模式的共同配置
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     * @param <B> 具体的构建器类型（用于链式调用）
+     */
+    @SuppressWarnings("unchecked")
+    public abstract static class BaseBuilder<K, V, B extends BaseBuilder<K, V, B>> {
+        protected Codec<K> keyCodec;
+        protected Codec<V> valueCodec;
+        protected boolean useSegmentedIndex = true;
+        protected boolean usePrimitiveIndex = false;
+        protected int segmentCount = 64;
+        protected int initialCapacity = 16;
+        protected long nearCacheWeight; // 0 表示不启用近端缓存
+        protected boolean nearCacheWeighByBytes;
+
+        protected BaseBuilder() {
+        }
+
+        /**
          * 设置键编解码器
          *
          * @param keyCodec 键编解码器
@@ -375,6 +2440,48 @@ public class RogueMap<K, V> implements AutoCloseable {
             return (B) this;
         }
 
+        /**
+         * 启用堆上的近端缓存，按条目数量限制容量
+         * <p>
+         * 近端缓存保存热点键解码后的值对象，命中时跳过反序列化；值对象会被多次读取共享，调用方不应修改。
+         * 启用后不支持原子数值操作和原始类型视图。
+         * </p>
+         *
+         * @param maxEntries 最大条目数量
+         * @return 此构建器
+         */
+        public B nearCache(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("近端缓存条目数量必须为正数");
+            }
+            this.nearCacheWeight = maxEntries;
+            this.nearCacheWeighByBytes = false;
+            return (B) this;
+        }
+
+        /**
+         * 启用堆上的近端缓存，按估计字节数限制容量
+         * <p>
+         * 每个缓存项按"值的编码大小 + {@link NearCache#ENTRY_OVERHEAD}"估计堆占用。
+         * </p>
+         *
+         * @param maxBytes 最大估计字节数
+         * @return 此构建器
+         * @see #nearCache(int)
+         */
+        public B nearCacheBytes(long maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("近端缓存字节数必须为正数");
+            }
+            this.nearCacheWeight = maxBytes;
+            this.nearCacheWeighByBytes = true;
+            return (B) this;
+        }
+
+        protected NearCache<V> createNearCache() {
+            return nearCacheWeight > 0 ? new NearCache<>(nearCacheWeight, nearCacheWeighByBytes) : null;
+        }
+
         /**
          * 根据索引类型创建索引（用于恢复）
          *
@@ -424,23 +2531,198 @@ public class RogueMap<K, V> implements AutoCloseable {
         /**
          * 构建 RogueMap 实例
          *
-         * @return 新的 RogueMap
+         * @return 新的 RogueMap
+         */
+        public abstract RogueMap<K, V> build();
+    }
+
+    /**
+     * 内存映射文件模式的构建器
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     */
+    public static class MmapBuilder<K, V> extends BaseBuilder<K, V, MmapBuilder<K, V>> {
+        private String persistentFilePath;
+        private long allocateSize = 2L * 1024 * 1024 * 1024; // 默认 2GB
+        private boolean isTemporary = false;
+        private WalDurability walDurability; // null 表示不启用预写日志
+        private long walFlushIntervalMillis;
+        private long checkpointIntervalMillis; // 0 表示不按时间触发检查点
+        private long checkpointMutations; // 0 表示不按修改次数触发检查点
+        private boolean selfDescribingRecords;
+        private boolean rebuildIndex;
+        private ChecksumVerification checksumVerification = ChecksumVerification.LAZY;
+        private boolean pageChecksums;
+        private long flushIntervalMillis; // 0 表示不按时间后台刷盘
+        private long flushBytes; // 0 表示不按字节数后台刷盘
+        private boolean readOnly;
+        private long liveEntries; // 0 表示不维护共享索引
+        private boolean liveReader;
+
+        private MmapBuilder() {
+        }
+
+        /**
+         * 启用后台刷盘：每隔指定时间把写入过的区域同步到磁盘
+         * <p>
+         * 仅用于持久化模式。刷盘只同步标记为脏的 64KB 区域，不会扫描整个映射；
+         * 未启用时只有调用 {@link RogueMap#flush()} 或关闭时才同步。
+         * </p>
+         *
+         * @param interval 刷盘间隔，必须为正数；间隔内没有写入时只同步文件头
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> backgroundFlush(Duration interval) {
+            if (interval == null || interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("刷盘间隔必须为正数");
+            }
+            this.flushIntervalMillis = Math.max(1, interval.toMillis());
+            return this;
+        }
+
+        /**
+         * 启用后台刷盘：写入累计到指定字节数时同步，可与 {@link #backgroundFlush(Duration)} 同时使用
+         *
+         * @param bytes 字节数阈值，必须为正数
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> backgroundFlushBytes(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("刷盘字节数阈值必须为正数");
+            }
+            this.flushBytes = bytes;
+            return this;
+        }
+
+        /**
+         * 设置打开已有文件时验证 CRC32C 校验和的方式，默认 {@link ChecksumVerification#LAZY}
+         * <p>
+         * 文件头、检查点槽位、检查点分片块和正常关闭时保存的索引镜像总是带校验和，
+         * LAZY 和 ALL 在打开时并行验证它们；数据页（需要 {@link #pageChecksums()}）和自描述记录
+         * 在 LAZY 下第一次读取时验证，在 ALL 下打开时全部并行验证。校验和不匹配时抛出 IllegalStateException。
+         * </p>
+         *
+         * @param verification 验证方式
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> verifyChecksums(ChecksumVerification verification) {
+            if (verification == null) {
+                throw new IllegalArgumentException("校验方式不能为 null");
+            }
+            this.checksumVerification = verification;
+            return this;
+        }
+
+        /**
+         * 正常关闭时为整个数据区按 64KB 分页计算 CRC32C，下次打开时按 {@link #verifyChecksums} 验证
+         * <p>
+         * 仅用于持久化模式，关闭时多一次数据区的并行读取。不能与后台检查点同时使用：
+         * 检查点模式关闭时不保存索引镜像，也就没有页校验和表。启用延迟验证时不支持原始类型视图。
+         * </p>
+         *
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> pageChecksums() {
+            this.pageChecksums = true;
+            return this;
+        }
+
+        /**
+         * 启用自描述记录：数据区的每个值连同键、长度、CRC 和序号一起写成一条记录
+         * <p>
+         * 仅用于持久化模式。上次没有正常关闭时，打开时顺序扫描数据区重建索引，不需要预写日志。
+         * 每个值额外占用 32 字节加上键的编码大小；删除和 clear 追加墓碑记录。
+         * 不能与预写日志或后台检查点同时使用，启用后不支持原子数值操作和原始类型视图。
+         * 已有数据的文件必须以同样的格式打开。
+         * </p>
+         *
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> selfDescribingRecords() {
+            this.selfDescribingRecords = true;
+            return this;
+        }
+
+        /**
+         * 打开时忽略文件中保存的索引，扫描数据区的自描述记录重建索引
+         * <p>
+         * 用于索引镜像损坏后的修复，需要同时启用 {@link #selfDescribingRecords()}。
+         * </p>
+         *
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> rebuildIndex() {
+            this.rebuildIndex = true;
+            return this;
+        }
+
+        /**
+         * 启用后台检查点：每隔指定时间把索引快照写入文件，进程崩溃后从最近的检查点恢复
+         * <p>
+         * 仅用于持久化模式。检查点交替写入文件头中的两个槽位，落盘后再切换，文件中始终有一个完整的检查点。
+         * 同时启用预写日志时，崩溃恢复从检查点开始重放日志，关闭时只需要把日志落盘；
+         * 未启用预写日志时，关闭时如有修改再写一次检查点。启用后不支持原始类型视图。
+         * </p>
+         *
+         * @param interval 检查点间隔，必须为正数；间隔内没有修改时不写入
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> checkpointInterval(Duration interval) {
+            if (interval == null || interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("检查点间隔必须为正数");
+            }
+            this.checkpointIntervalMillis = Math.max(1, interval.toMillis());
+            return this;
+        }
+
+        /**
+         * 启用后台检查点：索引累计修改到指定次数时写入检查点，可与 {@link #checkpointInterval(Duration)} 同时使用
+         *
+         * @param mutations 修改次数阈值，必须为正数
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> checkpointMutations(long mutations) {
+            if (mutations <= 0) {
+                throw new IllegalArgumentException("检查点修改次数阈值必须为正数");
+            }
+            this.checkpointMutations = mutations;
+            return this;
+        }
+
+        /**
+         * 启用预写日志：每个写操作记录到数据文件旁的 ".wal" 文件，进程崩溃后下次打开时重放
+         * <p>
+         * 仅用于持久化模式。正常关闭时保存索引并清空日志；启用后不支持原子数值操作和原始类型视图。
+         * </p>
+         *
+         * @param durability 刷盘策略，SYNC 或 OS（PERIODIC 请使用 {@link #writeAheadLog(Duration)}）
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> writeAheadLog(WalDurability durability) {
+            if (durability == null) {
+                throw new IllegalArgumentException("刷盘策略不能为 null");
+            }
+            if (durability == WalDurability.PERIODIC) {
+                throw new IllegalArgumentException("PERIODIC 策略请使用 writeAheadLog(Duration) 指定刷盘间隔");
+            }
+            this.walDurability = durability;
+            return this;
+        }
+
+        /**
+         * 启用预写日志，后台线程按固定间隔刷盘（PERIODIC）
+         *
+         * @param flushInterval 刷盘间隔，必须为正数
+         * @return 此构建器
          */
-        public abstract RogueMap<K, V> build();
-    }
-
-    /**
-     * 内存映射文件模式的构建器
-     *
-     * @param <K> 键类型
-     * @param <V> 值类型
-     */
-    public static class MmapBuilder<K, V> extends BaseBuilder<K, V, MmapBuilder<K, V>> {
-        private String persistentFilePath;
-        private long allocateSize = 2L * 1024 * 1024 * 1024; // 默认 2GB
-        private boolean isTemporary = false;
-
-        private MmapBuilder() {
+        public MmapBuilder<K, V> writeAheadLog(Duration flushInterval) {
+            if (flushInterval == null || flushInterval.isNegative() || flushInterval.isZero()) {
+                throw new IllegalArgumentException("刷盘间隔必须为正数");
+            }
+            this.walDurability = WalDurability.PERIODIC;
+            this.walFlushIntervalMillis = Math.max(1, flushInterval.toMillis());
+            return this;
         }
 
         /**
@@ -470,6 +2752,61 @@ public class RogueMap<K, V> implements AutoCloseable {
             return this;
         }
 
+        /**
+         * 只读打开已有的持久化文件
+         * <p>
+         * 文件以 READ_ONLY 方式映射并持有共享文件锁，多个进程可以同时只读打开同一个文件，
+         * 共享页缓存中的同一份数据；文件正被读写打开时抛出 IllegalStateException，反之亦然。
+         * 索引从文件中保存的索引镜像（或检查点）加载到本进程，关闭时不保存索引。
+         * 写操作（包括原子数值操作）抛出 IllegalStateException，不支持原始类型视图。
+         * 上次没有正常关闭的文件需要先以读写模式打开一次完成恢复。
+         * 不能与临时文件、预写日志、后台检查点、重建索引、后台刷盘或页校验和同时使用。
+         * </p>
+         *
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> readOnly() {
+            this.readOnly = true;
+            return this;
+        }
+
+        /**
+         * 在映射文件中维护共享索引，其他进程可以用 {@link #liveReader()} 实时读取
+         * <p>
+         * 仅用于持久化模式。每个写操作在键所在的锁内同步发布到数据区中的哈希表，
+         * 同一台机器上的读取进程不加锁、不经过网络就能在微秒级看到新值。共享索引按最大条目数一次分配
+         * （每个槽位 40 字节，槽位数为不小于 4/3 倍条目数的 2 的幂），超过时写入新键抛出 IllegalStateException；
+         * 每个键第一次写入时额外追加一条键记录。重新打开时复用已有的共享索引并与加载的索引对齐，
+         * 打开着的读取方不受影响；最大条目数改变或以不带本选项的读写模式打开时旧的共享索引失效，读取方需要重新打开。
+         * 不能与临时文件、自描述记录或只读模式同时使用，启用后不支持原始类型视图。
+         * </p>
+         *
+         * @param maxEntries 最大条目数
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> liveIndex(long maxEntries) {
+            LiveTable.slotCountFor(maxEntries);
+            this.liveEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 打开正被其他进程以 {@link #liveIndex(long)} 写入的文件，直接读取文件中的共享索引
+         * <p>
+         * 文件以 READ_ONLY 方式映射且不持有文件锁，查找在共享索引上无锁进行，本进程不加载也不保存索引，
+         * 写入进程发布的变更立即可见，写入进程重启期间也可以继续读取。遍历是弱一致的，
+         * 写操作（包括原子数值操作）抛出 IllegalStateException，不支持原始类型视图。
+         * 文件没有共享索引或共享索引已失效时抛出 IllegalStateException。
+         * 只能与键值编解码器和近端缓存一起使用。
+         * </p>
+         *
+         * @return 此构建器
+         */
+        public MmapBuilder<K, V> liveReader() {
+            this.liveReader = true;
+            return this;
+        }
+
         /**
          * 设置预分配文件大小
          *
@@ -498,12 +2835,69 @@ public class RogueMap<K, V> implements AutoCloseable {
                 throw new IllegalStateException("MMAP 模式必须设置文件路径，请使用 persistent(filePath) 或 temporary()");
             }
 
+            if (isTemporary && walDurability != null) {
+                throw new IllegalStateException("临时文件模式不支持预写日志");
+            }
+            boolean checkpointing = checkpointIntervalMillis > 0 || checkpointMutations > 0;
+            if (isTemporary && checkpointing) {
+                throw new IllegalStateException("临时文件模式不支持后台检查点");
+            }
+            if (selfDescribingRecords) {
+                if (isTemporary) {
+                    throw new IllegalStateException("临时文件模式不支持自描述记录");
+                }
+                if (walDurability != null || checkpointing) {
+                    throw new IllegalStateException("自描述记录不能与预写日志或后台检查点同时使用");
+                }
+            } else if (rebuildIndex) {
+                throw new IllegalStateException("rebuildIndex() 需要同时启用 selfDescribingRecords()");
+            }
+            if (isTemporary && (flushIntervalMillis > 0 || flushBytes > 0)) {
+                throw new IllegalStateException("临时文件模式不支持后台刷盘");
+            }
+            if (pageChecksums && (isTemporary || checkpointing)) {
+                throw new IllegalStateException("页校验和不能用于临时文件模式或后台检查点");
+            }
+            if (readOnly && (isTemporary || walDurability != null || checkpointing || rebuildIndex
+                    || flushIntervalMillis > 0 || flushBytes > 0 || pageChecksums)) {
+                throw new IllegalStateException("只读模式不能与临时文件、预写日志、后台检查点、重建索引、后台刷盘或页校验和同时使用");
+            }
+            if (liveEntries > 0 && (isTemporary || selfDescribingRecords || readOnly)) {
+                throw new IllegalStateException("共享索引不能与临时文件、自描述记录或只读模式同时使用");
+            }
+            if (liveReader) {
+                if (isTemporary || walDurability != null || checkpointing || selfDescribingRecords
+                        || flushIntervalMillis > 0 || flushBytes > 0 || pageChecksums || readOnly || liveEntries > 0) {
+                    throw new IllegalStateException("liveReader() 只能与键值编解码器和近端缓存一起使用");
+                }
+                return openLiveReader();
+            }
+
             // 创建 MmapAllocator（临时模式会自动生成文件路径）
-            MmapAllocator mmapAllocator = new MmapAllocator(persistentFilePath, allocateSize, isTemporary);
+            MmapAllocator mmapAllocator = readOnly ? MmapAllocator.openReadOnly(persistentFilePath)
+                    : new MmapAllocator(persistentFilePath, allocateSize, isTemporary);
+            try {
+                return open(mmapAllocator, checkpointing);
+            } catch (RuntimeException | Error e) {
+                // 释放映射和文件锁
+                mmapAllocator.close();
+                throw e;
+            }
+        }
+
+        private RogueMap<K, V> open(MmapAllocator mmapAllocator, boolean checkpointing) {
             Allocator allocator = mmapAllocator;
             StorageEngine storage = new MmapStorage(mmapAllocator);
 
             Index<K> index;
+            MmapFileHeader header = null;
+            long walBaseLsn = 0;
+            long walValidLength = 0;
+            boolean replayed = false;
+            long recordSequence = 0;
+            boolean verify = false;
+            PageChecksums pageTable = null;
+            long verifyRecordsBefore = 0; // 自描述记录延迟验证的范围，0 表示不需要
 
             // 临时文件模式：总是创建新索引（不恢复）
             if (isTemporary) {
@@ -512,26 +2906,349 @@ public class RogueMap<K, V> implements AutoCloseable {
                 // 持久化模式：检查是否是已存在的文件
                 if (mmapAllocator.isExistingFile()) {
                     // 恢复模式
-                    com.yomahub.roguemap.storage.MmapFileHeader header = mmapAllocator.readHeader();
+                    header = mmapAllocator.readHeader();
+                    if (header.isStore()) {
+                        throw new IllegalStateException("文件是多 map 存储，需要使用 RogueStore 打开: "
+                                + mmapAllocator.getFilePath());
+                    }
+                    if (readOnly && header.isDirty()) {
+                        throw new IllegalStateException("文件上次没有正常关闭，需要先以读写模式打开完成恢复: "
+                                + mmapAllocator.getFilePath());
+                    }
+                    if (header.hasRecords() != selfDescribingRecords
+                            && header.getCurrentOffset() > MmapFileHeader.HEADER_SIZE) {
+                        throw new IllegalStateException(header.hasRecords()
+                                ? "文件使用自描述记录格式，需要在构建时启用 selfDescribingRecords()"
+                                : "文件中已有数据且不是自描述记录格式，不能启用 selfDescribingRecords()");
+                    }
+                    verify = header.hasChecksums() && checksumVerification != ChecksumVerification.NONE;
+                    if (verify) {
+                        if (!header.isChecksumValid()) {
+                            throw new IllegalStateException("文件头校验和不匹配: " + mmapAllocator.getFilePath());
+                        }
+                        if (!header.isDirty() && header.getActiveSlot() == 0) {
+                            // 页校验和表只描述正常关闭时的文件内容
+                            pageTable = PageChecksums.read(mmapAllocator.getBaseAddress(),
+                                    mmapAllocator.getFileSize(), header);
+                        }
+                    }
+                }
 
+                if (header != null && selfDescribingRecords) {
+                    index = createIndexFromType(header.getIndexType(), keyCodec);
+                    recordSequence = header.getRecordSequence();
+                    if (header.isDirty() || rebuildIndex) {
+                        // 上次没有正常关闭时分配偏移量和索引都已过时，扫描到最后一条完整的记录
+                        long limit = header.isDirty() ? mmapAllocator.getFileSize() : header.getCurrentOffset();
+                        RecordIndex.RebuildResult rebuilt = RecordIndex.rebuild(mmapAllocator, limit, keyCodec, index);
+                        mmapAllocator.restoreOffset(header.isDirty() ? rebuilt.endOffset : header.getCurrentOffset());
+                        recordSequence = Math.max(recordSequence, rebuilt.maxSequence);
+                    } else {
+                        mmapAllocator.restoreOffset(header.getCurrentOffset());
+                        if (header.getIndexSize() > 0) {
+                            verifyIndexImage(pageTable, header);
+                            long baseAddress = mmapAllocator.getBaseAddress();
+                            index.deserializeWithOffsets(baseAddress + header.getIndexOffset(),
+                                    (int) header.getIndexSize(), baseAddress);
+                        }
+                        if (checksumVerification == ChecksumVerification.ALL) {
+                            long corrupt = RecordIndex.verifyAll(index);
+                            if (corrupt != 0) {
+                                throw new IllegalStateException("记录校验和不匹配，偏移: "
+                                        + (corrupt - mmapAllocator.getBaseAddress()));
+                            }
+                        } else if (checksumVerification == ChecksumVerification.LAZY) {
+                            verifyRecordsBefore = mmapAllocator.getBaseAddress() + header.getCurrentOffset();
+                        }
+                    }
+                } else if (header != null) {
                     // 恢复 allocator 的 offset
-                    mmapAllocator.restoreOffset(header.getCurrentOffset());
+                    // 启用预写日志或后台检查点时，关闭时保存的索引要保留到下一个检查点，新数据分配在它之后
+                    long restoredOffset = header.getCurrentOffset();
+                    if (walDurability != null || checkpointing || header.isDirty()) {
+                        restoredOffset = Math.max(restoredOffset, header.getIndexOffset() + header.getIndexSize());
+                    }
+                    MmapFileHeader.CheckpointSlot activeSlot = null;
+                    if (header.getActiveSlot() != 0) {
+                        // 上次使用后台检查点：两个槽位和检查点引用的数据都不能被新数据覆盖
+                        activeSlot = header.getSlot(header.getActiveSlot());
+                        if (verify && !activeSlot.isChecksumValid()) {
+                            throw new IllegalStateException("检查点槽位校验和不匹配: " + header.getActiveSlot());
+                        }
+                        restoredOffset = Math.max(restoredOffset, activeSlot.dataOffset);
+                        restoredOffset = Math.max(restoredOffset, header.getSlot(1).end());
+                        restoredOffset = Math.max(restoredOffset, header.getSlot(2).end());
+                    }
+                    mmapAllocator.restoreOffset(restoredOffset);
 
                     // 创建索引并恢复数据
                     index = createIndexFromType(header.getIndexType(), keyCodec);
 
-                    if (header.getIndexSize() > 0) {
+                    if (activeSlot != null) {
+                        Checkpointer.load(mmapAllocator, activeSlot, keyCodec, index, verify);
+                    } else if (header.getIndexSize() > 0) {
+                        verifyIndexImage(pageTable, header);
                         long baseAddress = mmapAllocator.getBaseAddress();
                         long indexAddress = baseAddress + header.getIndexOffset();
                         index.deserializeWithOffsets(indexAddress, (int) header.getIndexSize(), baseAddress);
                     }
+
+                    // 上次没有正常关闭：在检查点之上重放预写日志
+                    if (header.isDirty()) {
+                        long fromLsn = activeSlot != null ? activeSlot.walStartLsn : -1;
+                        WriteAheadLog.ReplayResult replay = WriteAheadLog.replay(
+                                WriteAheadLog.logFile(mmapAllocator.getFilePath()), fromLsn, keyCodec, index,
+                                mmapAllocator.getBaseAddress(), mmapAllocator.getFileSize());
+                        mmapAllocator.restoreOffset(Math.max(restoredOffset, replay.maxDataEnd));
+                        walBaseLsn = replay.baseLsn;
+                        walValidLength = replay.validLength;
+                        replayed = true;
+                        // 重放直接写入了数据区，没有经过脏区标记
+                        mmapAllocator.forceAll();
+                    }
+                } else if (readOnly) {
+                    throw new IllegalStateException("只读模式需要已有数据的文件: " + mmapAllocator.getFilePath());
                 } else {
                     // 新文件模式
                     index = createNewIndex(keyCodec);
                 }
             }
 
-            return new RogueMap<>(index, storage, keyCodec, valueCodec, allocator);
+            if (pageTable != null && pageTable.start() < header.getIndexOffset()) {
+                // 数据页：ALL 在打开时全部验证，LAZY 在第一次读取时验证
+                if (checksumVerification == ChecksumVerification.ALL) {
+                    long corrupt = pageTable.verifyRange(pageTable.start(), pageTable.end() - pageTable.start());
+                    if (corrupt >= 0) {
+                        throw new IllegalStateException("数据页校验和不匹配，偏移: " + corrupt);
+                    }
+                } else {
+                    index = new VerifyingIndex<>(index, pageTable);
+                }
+            } else if (verifyRecordsBefore != 0) {
+                index = new VerifyingIndex<>(index, verifyRecordsBefore);
+            }
+
+            LiveTable<K> liveTable = null;
+            if (liveEntries > 0) {
+                // 共享索引位于最内层：外层包装在它之前确定新条目，发布发生在键所在的锁内
+                liveTable = openLiveTable(mmapAllocator, header, index);
+                index = new LiveIndex<>(index, liveTable);
+            } else if (header != null && header.hasLiveIndex() && !readOnly) {
+                // 不再维护共享索引：让打开着的读取方失效，新的读取方因文件头没有共享索引而被拒绝
+                LiveTable.attach(mmapAllocator, keyCodec, header.getLiveTableOffset()).invalidate();
+            }
+
+            if (!readOnly && (walDurability != null || checkpointing || selfDescribingRecords
+                    || liveTable != null || (header != null && header.hasLiveIndex()))) {
+                // 先写入头部并落盘：启用预写日志或自描述记录时标记为打开中，崩溃后下次打开才会重放日志或扫描重建；
+                // 后台检查点需要有效的头部才能写入槽位
+                if (header == null) {
+                    header = new MmapFileHeader();
+                    header.setCurrentOffset(mmapAllocator.usedMemory());
+                }
+                header.setIndexType(getIndexType(index));
+                // 打开之后数据和索引镜像会被覆盖，页校验和表不再有效
+                header.setPageTable(0, 0, 0);
+                if (walDurability != null || selfDescribingRecords) {
+                    header.setDirty(1);
+                }
+                if (selfDescribingRecords) {
+                    header.setFlags(MmapFileHeader.FLAG_RECORDS);
+                    header.setCurrentOffset(mmapAllocator.usedMemory());
+                    header.setRecordSequence(recordSequence);
+                }
+                // 共享索引和键记录必须在崩溃恢复后的分配偏移之前
+                header.setLiveTableOffset(liveTable != null ? liveTable.offset() : 0);
+                if (liveTable != null) {
+                    header.setCurrentOffset(Math.max(header.getCurrentOffset(), mmapAllocator.usedMemory()));
+                }
+                mmapAllocator.writeHeader(header);
+                mmapAllocator.flush();
+            }
+
+            CheckpointIndex<K> checkpointIndex = null;
+            if (checkpointing) {
+                checkpointIndex = new CheckpointIndex<>(index);
+                index = checkpointIndex;
+            }
+
+            WriteAheadLog wal = null;
+            if (walDurability != null) {
+                wal = new WriteAheadLog(WriteAheadLog.logFile(mmapAllocator.getFilePath()),
+                        walDurability, walFlushIntervalMillis, walBaseLsn, walValidLength);
+                index = new WalIndex<>(index, keyCodec, wal, mmapAllocator.getBaseAddress());
+            }
+
+            if (selfDescribingRecords && !readOnly) {
+                index = new RecordIndex<>(index, keyCodec, mmapAllocator, recordSequence);
+            }
+            if (readOnly) {
+                index = new ReadOnlyIndex<>(index);
+            }
+
+            Checkpointer<K> checkpointer = null;
+            if (checkpointing) {
+                checkpointer = new Checkpointer<>(checkpointIndex, keyCodec, mmapAllocator, wal,
+                        checkpointIntervalMillis, checkpointMutations);
+                if (replayed && wal == null) {
+                    // 重放的日志不会再被写入，立即写一个检查点覆盖它
+                    checkpointer.checkpoint();
+                }
+            }
+
+            if (flushIntervalMillis > 0 || flushBytes > 0) {
+                mmapAllocator.startBackgroundFlush(flushIntervalMillis, flushBytes);
+            }
+
+            return new RogueMap<>(index, storage, keyCodec, valueCodec, allocator, createNearCache(), checkpointer,
+                    pageChecksums);
+        }
+
+        /**
+         * 写入方打开时复用文件中槽位数相同的共享索引并与加载的索引对齐，否则分配新的共享索引
+         */
+        private LiveTable<K> openLiveTable(MmapAllocator mmapAllocator,
+                                           MmapFileHeader header, Index<K> index) {
+            LiveTable<K> previous = null;
+            if (header != null && header.hasLiveIndex()) {
+                try {
+                    previous = LiveTable.attach(mmapAllocator, keyCodec, header.getLiveTableOffset());
+                } catch (IllegalStateException e) {
+                    // 已失效或已损坏的共享索引不再使用，分配新的
+                }
+            }
+            if (previous != null && previous.slotCount() == LiveTable.slotCountFor(liveEntries)) {
+                previous.republish(index);
+                return previous;
+            }
+            if (previous != null) {
+                previous.invalidate();
+            }
+            LiveTable<K> table = LiveTable.create(mmapAllocator, keyCodec, liveEntries);
+            table.republish(index);
+            return table;
+        }
+
+        /**
+         * 打开其他进程正在写入的文件，索引直接读取文件中的共享索引
+         */
+        private RogueMap<K, V> openLiveReader() {
+            MmapAllocator mmapAllocator = MmapAllocator.openLiveReader(persistentFilePath);
+            try {
+                MmapFileHeader header = mmapAllocator.readHeader();
+                if (header.getMagicNumber() != MmapFileHeader.MAGIC_NUMBER
+                        || !header.hasLiveIndex()) {
+                    throw new IllegalStateException("文件没有共享索引，写入进程需要启用 liveIndex(maxEntries): "
+                            + mmapAllocator.getFilePath());
+                }
+                if (header.hasChecksums() && checksumVerification != ChecksumVerification.NONE
+                        && !header.isChecksumValid()) {
+                    throw new IllegalStateException("文件头校验和不匹配: " + mmapAllocator.getFilePath());
+                }
+                LiveTable<K> table = LiveTable.attach(mmapAllocator, keyCodec, header.getLiveTableOffset());
+                Index<K> index = new ReadOnlyIndex<>(new LiveReaderIndex<>(table));
+                return new RogueMap<>(index, new MmapStorage(mmapAllocator), keyCodec, valueCodec, mmapAllocator,
+                        createNearCache(), null, false);
+            } catch (RuntimeException | Error e) {
+                mmapAllocator.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 为批量加载构建新文件上的 map，索引按预计条目数预先确定容量
+         */
+        RogueMap<K, V> buildForBulkLoad(long entryHint) {
+            if (isTemporary || persistentFilePath == null) {
+                throw new IllegalStateException("批量加载需要使用 persistent(filePath) 指定新文件");
+            }
+            File file = new File(persistentFilePath);
+            if (file.exists() && file.length() > 0) {
+                throw new IllegalStateException("批量加载需要新的文件: " + file.getAbsolutePath());
+            }
+            if (walDurability != null || checkpointIntervalMillis > 0 || checkpointMutations > 0
+                    || selfDescribingRecords) {
+                throw new IllegalStateException("批量加载的目标不能启用预写日志、后台检查点或自描述记录，加载完成后可以带这些选项重新打开");
+            }
+            int configuredCapacity = initialCapacity;
+            long capacity = usePrimitiveIndex || !useSegmentedIndex ? entryHint : entryHint / segmentCount + 1;
+            initialCapacity = (int) Math.max(initialCapacity, Math.min(capacity, 1 << 30));
+            try {
+                return build();
+            } finally {
+                initialCapacity = configuredCapacity;
+            }
+        }
+
+        /**
+         * 批量加载失败时关闭 map 并删除新建的文件
+         */
+        void discardBulkLoad(RogueMap<K, V> map) {
+            map.close();
+            new File(persistentFilePath).delete();
+        }
+
+        /**
+         * 反序列化之前验证索引镜像覆盖到的页
+         */
+        private void verifyIndexImage(PageChecksums pageTable, MmapFileHeader header) {
+            if (pageTable == null) {
+                return;
+            }
+            long corrupt = pageTable.verifyRange(header.getIndexOffset(), header.getIndexSize());
+            if (corrupt >= 0) {
+                throw new IllegalStateException("索引镜像校验和不匹配，偏移: " + corrupt
+                        + (selfDescribingRecords ? "，可以使用 rebuildIndex() 从自描述记录重建索引" : ""));
+            }
+        }
+    }
+
+    /**
+     * 多 map 存储中子 map 的构建器，通过 {@link RogueStore#map(String)} 获取
+     * <p>
+     * 子 map 共享存储的映射文件和分配器，只有自己的编解码器和索引；已有的子 map 按目录中记录的索引类型恢复。
+     * 不支持过期、淘汰、预写日志、检查点等独占文件的选项，持久化由存储统一提交。
+     * </p>
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     */
+    public static class StoreMapBuilder<K, V> extends BaseBuilder<K, V, StoreMapBuilder<K, V>> {
+        private final RogueStore store;
+        private final String name;
+
+        StoreMapBuilder(RogueStore store, String name) {
+            this.store = store;
+            this.name = name;
+        }
+
+        @Override
+        public RogueMap<K, V> build() {
+            if (keyCodec == null) {
+                throw new IllegalStateException("必须设置键编解码器");
+            }
+            if (valueCodec == null) {
+                throw new IllegalStateException("必须设置值编解码器");
+            }
+            return store.attach(name, this);
+        }
+
+        /**
+         * 由存储在持有存储锁时调用，从目录中的索引镜像恢复或创建新索引
+         */
+        RogueMap<K, V> open(MmapAllocator allocator, MmapFileHeader.MapEntry image) {
+            Index<K> index;
+            if (image != null) {
+                index = createIndexFromType(image.indexType, keyCodec);
+                if (image.indexSize > 0) {
+                    long baseAddress = allocator.getBaseAddress();
+                    index.deserializeWithOffsets(baseAddress + image.indexOffset, (int) image.indexSize, baseAddress);
+                }
+            } else {
+                index = createNewIndex(keyCodec);
+            }
+            return new RogueMap<>(index, new MmapStorage(allocator), keyCodec, valueCodec, allocator,
+                    createNearCache(), store);
         }
     }
 
@@ -543,10 +3260,87 @@ public class RogueMap<K, V> implements AutoCloseable {
      */
     public static class OffHeapBuilder<K, V> extends BaseBuilder<K, V, OffHeapBuilder<K, V>> {
         private long maxMemory = 1024L * 1024 * 1024; // 默认 1GB
+        private long maximumWeight = -1; // 缓存模式的最大权重，-1 表示不启用
+        private EvictionListener<K, V> evictionListener;
+        private long expireAfterWriteMillis; // 0 表示未设置
+        private long expireAfterAccessMillis; // 0 表示未设置
+        private boolean variableExpiration;
 
         private OffHeapBuilder() {
         }
 
+        /**
+         * 条目在写入（或最近一次更新）后经过指定时间过期
+         *
+         * @param duration 存活时间，必须为正数
+         * @return 此构建器
+         */
+        public OffHeapBuilder<K, V> expireAfterWrite(Duration duration) {
+            this.expireAfterWriteMillis = toPositiveMillis(duration);
+            return this;
+        }
+
+        /**
+         * 条目在最近一次读取或写入后经过指定时间过期
+         * <p>
+         * 读取续期以约 1 秒为粒度写入值头部，同时设置 expireAfterWrite 时写入按 expireAfterWrite 计算。
+         * </p>
+         *
+         * @param duration 存活时间，必须为正数
+         * @return 此构建器
+         */
+        public OffHeapBuilder<K, V> expireAfterAccess(Duration duration) {
+            this.expireAfterAccessMillis = toPositiveMillis(duration);
+            return this;
+        }
+
+        /**
+         * 启用按条目指定存活时间：只有通过 {@link RogueMap#put(Object, Object, Duration)} 写入的条目会过期
+         *
+         * @return 此构建器
+         */
+        public OffHeapBuilder<K, V> variableExpiration() {
+            this.variableExpiration = true;
+            return this;
+        }
+
+        private static long toPositiveMillis(Duration duration) {
+            if (duration == null || duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("存活时间必须为正数");
+            }
+            return Math.max(1, duration.toMillis());
+        }
+
+        /**
+         * 启用缓存模式：已使用内存超过 maximumWeight 时淘汰条目，而不是抛出 OutOfMemoryError
+         * <p>
+         * 权重按分配器的实际占用计算（值大小向上取整到 slab 大小类别）。
+         * maximumWeight 是软上限，并发写入时可能短暂超出；maxMemory 仍是硬上限，
+         * 建议为 maxMemory 留出一定余量。
+         * </p>
+         *
+         * @param maximumWeight 最大权重（字节），不能超过 maxMemory
+         * @return 此构建器
+         */
+        public OffHeapBuilder<K, V> maximumWeight(long maximumWeight) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("maximumWeight 必须为正数");
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * 设置缓存模式下的淘汰监听器
+         *
+         * @param evictionListener 淘汰监听器
+         * @return 此构建器
+         */
+        public OffHeapBuilder<K, V> evictionListener(EvictionListener<K, V> evictionListener) {
+            this.evictionListener = evictionListener;
+            return this;
+        }
+
         /**
          * 设置最大内存大小
          *
@@ -570,12 +3364,138 @@ public class RogueMap<K, V> implements AutoCloseable {
                 throw new IllegalStateException("必须设置值编解码器");
             }
 
+            if (maximumWeight > maxMemory) {
+                throw new IllegalStateException("maximumWeight 不能超过 maxMemory");
+            }
+            if (evictionListener != null && maximumWeight < 0) {
+                throw new IllegalStateException("evictionListener 需要同时设置 maximumWeight");
+            }
+
             // 堆外内存模式
             Allocator allocator = new SlabAllocator(maxMemory);
             StorageEngine storage = new OffHeapStorage(allocator);
             Index<K> index = createNewIndex(keyCodec);
 
-            return new RogueMap<>(index, storage, keyCodec, valueCodec, allocator);
+            // 启用过期时每个值前加上到期时间头部
+            Expiration<K> expiration = null;
+            Codec<V> storedValueCodec = valueCodec;
+            if (expireAfterWriteMillis > 0 || expireAfterAccessMillis > 0 || variableExpiration) {
+                expiration = new Expiration<>(index, allocator, expireAfterWriteMillis, expireAfterAccessMillis);
+                storedValueCodec = new ExpiringCodec<>(valueCodec, expiration);
+            }
+
+            ClockEvictor<K, V> evictor = null;
+            if (maximumWeight > 0) {
+                // 按最小 slab（16 字节）与常见值大小的折中估计条目数，用于确定频率草图大小
+                evictor = new ClockEvictor<>(index, allocator, storedValueCodec,
+                        maximumWeight, maximumWeight / 64, evictionListener);
+            }
+
+            return new RogueMap<>(index, storage, keyCodec, storedValueCodec, allocator, evictor, expiration,
+                    createNearCache(), null);
+        }
+    }
+
+    /**
+     * 两级存储模式的构建器
+     * <p>
+     * 热层为 SlabAllocator 管理的堆外内存，冷层为临时内存映射文件。新值优先写入热层，
+     * 热层使用率超过高水位时后台线程把访问频率最低的值降级到冷层，直到低于低水位；
+     * 冷层中被反复读取的值在读取时提升回热层。索引始终在内存中，冷层文件在关闭时删除。
+     * </p>
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     */
+    public static class TieredBuilder<K, V> extends BaseBuilder<K, V, TieredBuilder<K, V>> {
+        private long hotMemory = 1024L * 1024 * 1024; // 默认 1GB
+        private long coldSize = 2L * 1024 * 1024 * 1024; // 默认 2GB
+        private String coldFilePath;
+        private double lowWatermark = 0.75;
+        private double highWatermark = 0.9;
+
+        private TieredBuilder() {
+        }
+
+        /**
+         * 设置热层（堆外内存）的最大容量
+         *
+         * @param hotMemory 最大字节数
+         * @return 此构建器
+         */
+        public TieredBuilder<K, V> hotMemory(long hotMemory) {
+            if (hotMemory <= 0) {
+                throw new IllegalArgumentException("hotMemory 必须为正数");
+            }
+            this.hotMemory = hotMemory;
+            return this;
+        }
+
+        /**
+         * 设置冷层文件的预分配大小
+         *
+         * @param coldSize 文件大小（字节）
+         * @return 此构建器
+         */
+        public TieredBuilder<K, V> coldSize(long coldSize) {
+            if (coldSize <= 0) {
+                throw new IllegalArgumentException("coldSize 必须为正数");
+            }
+            this.coldSize = coldSize;
+            return this;
+        }
+
+        /**
+         * 设置冷层文件路径（例如放在指定的数据盘上），不设置时自动生成临时文件
+         *
+         * @param filePath 文件路径
+         * @return 此构建器
+         */
+        public TieredBuilder<K, V> coldFile(String filePath) {
+            if (filePath == null || filePath.isEmpty()) {
+                throw new IllegalArgumentException("文件路径不能为空");
+            }
+            this.coldFilePath = filePath;
+            return this;
+        }
+
+        /**
+         * 设置热层降级的水位（热层已使用内存占 hotMemory 的比例）
+         *
+         * @param low  低水位，降级到此为止
+         * @param high 高水位，超过时开始降级，读取时也只在低于高水位时提升
+         * @return 此构建器
+         */
+        public TieredBuilder<K, V> watermarks(double low, double high) {
+            if (!(low > 0 && low < high && high <= 1)) {
+                throw new IllegalArgumentException("水位必须满足 0 < low < high <= 1");
+            }
+            this.lowWatermark = low;
+            this.highWatermark = high;
+            return this;
+        }
+
+        @Override
+        public RogueMap<K, V> build() {
+            if (keyCodec == null) {
+                throw new IllegalStateException("必须设置键编解码器");
+            }
+            if (valueCodec == null) {
+                throw new IllegalStateException("必须设置值编解码器");
+            }
+
+            SlabAllocator hot = new SlabAllocator(hotMemory);
+            MmapAllocator cold = new MmapAllocator(coldFilePath, coldSize, true);
+            TieredAllocator allocator = new TieredAllocator(hot, cold);
+            StorageEngine storage = new OffHeapStorage(allocator);
+            Index<K> index = createNewIndex(keyCodec);
+
+            // 按热层与平均值大小的折中估计热层条目数，用于确定频率草图大小
+            TierManager<K> tierManager = new TierManager<>(index, allocator,
+                    lowWatermark, highWatermark, hotMemory / 64);
+
+            return new RogueMap<>(index, storage, keyCodec, valueCodec, allocator, null, null,
+                    createNearCache(), tierManager);
         }
     }
 }
@@ -0,0 +1,250 @@
+package com.yomahub.roguemap;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.memory.Crc32c;
+import com.yomahub.roguemap.memory.MmapAllocator;
+import com.yomahub.roguemap.storage.MmapFileHeader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 多个命名子 map 共享一个映射文件的存储
+ * <p>
+ * 每个 {@code RogueMap.mmap().persistent(path)} 独占一个文件、一次预分配和一组映射；
+ * 许多小 map 放在同一个存储中时只需要一个文件、一次预分配和一个分配器。
+ * 每个子 map 有自己的编解码器和索引，值分配在共享的数据区中。
+ * </p>
+ * <p>
+ * 子 map 的索引镜像记录在文件头的目录中（最多 {@link MmapFileHeader#MAX_MAPS} 个，名称不超过 32 字节）。
+ * {@link #flush()} 把所有子 map 的索引镜像追加到数据区并落盘，最后用一次文件头写入切换目录，
+ * 因此提交对所有子 map 是原子的：崩溃后重新打开，所有子 map 一起回到最近一次提交的状态
+ * （之后原地修改的值，即原子数值操作，可能已经写入）。关闭存储时先关闭所有子 map 再提交一次。
+ * 提交期间不能有子 map 在写入。
+ * </p>
+ * <p>
+ * 数据区只追加，每次提交追加一份索引镜像，旧的镜像和被替换的值不会回收。
+ * 存储文件不能用 {@code RogueMap.mmap()} 打开，反之亦然。
+ * </p>
+ */
+public final class RogueStore implements AutoCloseable {
+
+    private static final long DEFAULT_ALLOCATE_SIZE = 2L * 1024 * 1024 * 1024;
+
+    private final MmapAllocator allocator;
+    private final Map<String, MmapFileHeader.MapEntry> images = new TreeMap<>(); // 已提交或已关闭子 map 的最新镜像
+    private final Map<String, RogueMap<?, ?>> openMaps = new TreeMap<>();
+    private final Map<RogueMap<?, ?>, String> names = new IdentityHashMap<>();
+    private boolean closed;
+
+    private RogueStore(MmapAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * 打开或创建存储文件，新文件预分配 2GB
+     *
+     * @param filePath 文件路径
+     * @return 存储
+     */
+    public static RogueStore open(String filePath) {
+        return open(filePath, DEFAULT_ALLOCATE_SIZE);
+    }
+
+    /**
+     * 打开或创建存储文件
+     *
+     * @param filePath     文件路径
+     * @param allocateSize 预分配文件大小（字节），已有文件按其实际大小映射
+     * @return 存储
+     */
+    public static RogueStore open(String filePath, long allocateSize) {
+        if (filePath == null || filePath.isEmpty()) {
+            throw new IllegalArgumentException("文件路径不能为空");
+        }
+        if (allocateSize <= 0) {
+            throw new IllegalArgumentException("分配大小必须为正数");
+        }
+        MmapAllocator allocator = new MmapAllocator(filePath, allocateSize, false);
+        try {
+            RogueStore store = new RogueStore(allocator);
+            store.load();
+            return store;
+        } catch (RuntimeException | Error e) {
+            allocator.close();
+            throw e;
+        }
+    }
+
+    private void load() {
+        if (allocator.isExistingFile()) {
+            MmapFileHeader header = allocator.readHeader();
+            if (header.isStore()) {
+                if (header.hasChecksums() && !header.isChecksumValid()) {
+                    throw new IllegalStateException("文件头校验和不匹配: " + allocator.getFilePath());
+                }
+                allocator.restoreOffset(header.getCurrentOffset());
+                for (MmapFileHeader.MapEntry entry : header.getMaps()) {
+                    images.put(entry.name, entry);
+                }
+                return;
+            }
+            if (header.getCurrentOffset() > MmapFileHeader.HEADER_SIZE) {
+                throw new IllegalStateException("文件中已有数据且不是多 map 存储，需要使用 RogueMap.mmap() 打开: "
+                        + allocator.getFilePath());
+            }
+        }
+        // 新文件立即写入空目录，之后只能作为存储打开
+        writeDirectory();
+    }
+
+    /**
+     * 获取子 map 的构建器，设置编解码器和索引后 build() 打开或创建该子 map
+     * <p>
+     * 同一个子 map 同时只能打开一次，关闭之后可以再次打开。
+     * </p>
+     *
+     * @param name 子 map 名称，UTF-8 编码后不超过 32 字节
+     * @return 子 map 构建器
+     */
+    public <K, V> RogueMap.StoreMapBuilder<K, V> map(String name) {
+        MmapFileHeader.MapEntry.checkMapName(name);
+        return new RogueMap.StoreMapBuilder<>(this, name);
+    }
+
+    /**
+     * 获取所有子 map 的名称，包括未打开的
+     *
+     * @return 按名称排序的集合
+     */
+    public synchronized Set<String> mapNames() {
+        Set<String> result = new TreeSet<>(images.keySet());
+        result.addAll(openMaps.keySet());
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * 删除一个未打开的子 map，下次提交时从目录中移除
+     *
+     * @param name 子 map 名称
+     * @return 子 map 存在返回 true
+     */
+    public synchronized boolean removeMap(String name) {
+        checkOpen();
+        if (openMaps.containsKey(name)) {
+            throw new IllegalStateException("子 map 正在使用，需要先关闭: " + name);
+        }
+        return images.remove(name) != null;
+    }
+
+    /**
+     * 提交：把所有打开的子 map 的索引镜像追加到数据区，落盘后写入新的目录
+     * <p>
+     * 调用期间不能有子 map 在写入。
+     * </p>
+     */
+    public synchronized void flush() {
+        checkOpen();
+        for (Map.Entry<String, RogueMap<?, ?>> entry : openMaps.entrySet()) {
+            images.put(entry.getKey(), writeImage(entry.getKey(), entry.getValue().getIndex()));
+        }
+        commit();
+    }
+
+    /**
+     * 关闭所有子 map，提交并释放映射文件
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            for (RogueMap<?, ?> map : new ArrayList<>(openMaps.values())) {
+                map.close();
+            }
+            commit();
+        } finally {
+            closed = true;
+            allocator.close();
+        }
+    }
+
+    /**
+     * 由子 map 构建器调用：按目录中的镜像恢复或创建子 map
+     */
+    synchronized <K, V> RogueMap<K, V> attach(String name, RogueMap.StoreMapBuilder<K, V> builder) {
+        checkOpen();
+        if (openMaps.containsKey(name)) {
+            throw new IllegalStateException("子 map 已经打开: " + name);
+        }
+        MmapFileHeader.MapEntry image = images.get(name);
+        if (image == null && mapNames().size() >= MmapFileHeader.MAX_MAPS) {
+            throw new IllegalStateException("子 map 数量不能超过 " + MmapFileHeader.MAX_MAPS);
+        }
+        if (image != null && image.indexSize > 0
+                && Crc32c.compute(allocator.getBaseAddress() + image.indexOffset, image.indexSize) != image.checksum) {
+            throw new IllegalStateException("子 map 索引镜像校验和不匹配: " + name);
+        }
+        RogueMap<K, V> map = builder.open(allocator, image);
+        images.remove(name);
+        openMaps.put(name, map);
+        names.put(map, name);
+        return map;
+    }
+
+    /**
+     * 由子 map 关闭时调用：立即追加它的索引镜像，下次提交时写入目录
+     */
+    synchronized void detach(RogueMap<?, ?> map) {
+        String name = names.remove(map);
+        if (name == null) {
+            return;
+        }
+        openMaps.remove(name);
+        images.put(name, writeImage(name, map.getIndex()));
+    }
+
+    private MmapFileHeader.MapEntry writeImage(String name, Index<?> index) {
+        int size = index.serializedSize();
+        long offset = 0;
+        int checksum = 0;
+        if (size > 0) {
+            long address = allocator.allocate(size);
+            if (address == 0) {
+                throw new IllegalStateException("文件空间不足，无法写入子 map 索引镜像: " + name);
+            }
+            long baseAddress = allocator.getBaseAddress();
+            index.serializeWithOffsets(address, baseAddress);
+            allocator.markDirty(address, size);
+            offset = address - baseAddress;
+            checksum = Crc32c.compute(address, size);
+        }
+        return new MmapFileHeader.MapEntry(name, RogueMap.getIndexType(index), index.size(), checksum, offset, size);
+    }
+
+    private void commit() {
+        // 镜像和它们引用的值先落盘，目录切换之前崩溃时仍停留在上一次提交
+        allocator.flush();
+        writeDirectory();
+    }
+
+    private void writeDirectory() {
+        MmapFileHeader header = new MmapFileHeader();
+        header.setCurrentOffset(allocator.usedMemory());
+        header.setMaps(new ArrayList<>(images.values()));
+        allocator.writeHeader(header);
+        allocator.flush();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("存储已关闭");
+        }
+    }
+}
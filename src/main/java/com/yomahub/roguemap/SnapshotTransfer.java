@@ -0,0 +1,206 @@
+package com.yomahub.roguemap;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexSpliterator;
+import com.yomahub.roguemap.memory.Allocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+import com.yomahub.roguemap.storage.SnapshotFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 快照导出与批量加载
+ * <p>
+ * 导出按索引分片分批遍历，每批在分片锁内复制键和值的编码字节，锁外交给写出方；
+ * 批量加载把快照中的值字节不经过解码顺序写入新映射文件的数据区，索引按批写入。
+ * </p>
+ */
+final class SnapshotTransfer {
+
+    private SnapshotTransfer() {
+    }
+
+    /**
+     * 接收导出的条目编码字节
+     */
+    interface EncodedEntrySink {
+        void accept(byte[] bytes, int keyOffset, int keyLength, int valueOffset, int valueLength) throws IOException;
+    }
+
+    /**
+     * 把 map 的存活条目依次交给 sink，已过期的条目不导出
+     */
+    static <K> void exportEntries(RogueMap<K, ?> map, EncodedEntrySink sink) throws IOException {
+        Index<K> index = map.getIndex();
+        SnapshotBatch<K> batch = new SnapshotBatch<>(map);
+        try {
+            for (int shard = 0; shard < index.shardCount(); shard++) {
+                IndexCursor cursor = index.cursor(shard);
+                boolean more;
+                do {
+                    more = cursor.advance(IndexSpliterator.CHUNK_SIZE, batch);
+                    batch.writeTo(sink);
+                } while (more);
+            }
+        } finally {
+            batch.free();
+        }
+    }
+
+    /**
+     * 在目标构建器的新文件上加载快照，失败时删除新建的文件
+     */
+    static <K, V> RogueMap<K, V> bulkLoad(InputStream in, RogueMap.MmapBuilder<K, V> target) {
+        SnapshotFormat.Reader reader;
+        try {
+            reader = new SnapshotFormat.Reader(in);
+        } catch (IOException e) {
+            throw new RuntimeException("读取快照失败", e);
+        }
+        RogueMap<K, V> map = target.buildForBulkLoad(reader.entryHint());
+        try {
+            loadSnapshot(map, reader);
+            return map;
+        } catch (IOException e) {
+            target.discardBulkLoad(map);
+            throw new RuntimeException("读取快照失败", e);
+        } catch (RuntimeException | Error e) {
+            target.discardBulkLoad(map);
+            throw e;
+        }
+    }
+
+    private static <K> void loadSnapshot(RogueMap<K, ?> map, SnapshotFormat.Reader reader) throws IOException {
+        Index<K> index = map.getIndex();
+        Allocator allocator = map.getAllocator();
+        Codec<K> keyCodec = map.getKeyCodec();
+        int batchSize = IndexSpliterator.CHUNK_SIZE;
+        List<K> keys = new ArrayList<>(batchSize);
+        long[] addresses = new long[batchSize];
+        int[] sizes = new int[batchSize];
+        long[] oldAddresses = new long[batchSize];
+        int[] oldSizes = new int[batchSize];
+        long scratchSize = 256;
+        long scratch = UnsafeOps.allocate(scratchSize);
+        try {
+            while (true) {
+                boolean more = reader.next();
+                if (more) {
+                    if (reader.keyLength() > scratchSize) {
+                        scratchSize = Math.max(reader.keyLength(), scratchSize * 2);
+                        scratch = UnsafeOps.reallocate(scratch, scratchSize);
+                    }
+                    UnsafeOps.copyFromArray(reader.key(), 0, scratch, reader.keyLength());
+                    long address = allocator.allocate(reader.valueLength());
+                    if (address == 0) {
+                        throw new IllegalStateException("MMAP 文件空间不足，无法加载快照");
+                    }
+                    UnsafeOps.copyFromArray(reader.value(), 0, address, reader.valueLength());
+                    allocator.markDirty(address, reader.valueLength());
+                    addresses[keys.size()] = address;
+                    sizes[keys.size()] = reader.valueLength();
+                    keys.add(keyCodec.decode(scratch));
+                }
+                if (keys.size() == batchSize || (!more && !keys.isEmpty())) {
+                    index.putAll(keys, addresses, sizes, oldAddresses, oldSizes);
+                    for (int i = 0; i < keys.size(); i++) {
+                        if (oldAddresses[i] != 0) {
+                            // 导出期间扩容造成的重复键
+                            allocator.free(oldAddresses[i], oldSizes[i]);
+                        }
+                    }
+                    keys.clear();
+                }
+                if (!more) {
+                    return;
+                }
+            }
+        } finally {
+            UnsafeOps.free(scratch);
+        }
+    }
+
+    /**
+     * 导出快照时在分片锁内收集一批条目的字节，锁外写出
+     */
+    private static final class SnapshotBatch<K> implements IndexEntryConsumer {
+        private final RogueMap<K, ?> map;
+        private final Codec<K> keyCodec;
+        private final int valueOffset;
+        private byte[] bytes = new byte[64 * 1024];
+        private int position;
+        private long scratch;
+        private long scratchSize;
+
+        SnapshotBatch(RogueMap<K, ?> map) {
+            this.map = map;
+            this.keyCodec = map.getKeyCodec();
+            this.valueOffset = map.getValueOffset();
+            this.scratchSize = 256;
+            this.scratch = UnsafeOps.allocate(scratchSize);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Object key, long address, int size) {
+            if (!map.isLive(address)) {
+                return;
+            }
+            K typedKey = (K) key;
+            int keySize = keyCodec.calculateSize(typedKey);
+            if (keySize > scratchSize) {
+                scratchSize = Math.max(keySize, scratchSize * 2);
+                scratch = UnsafeOps.reallocate(scratch, scratchSize);
+            }
+            keySize = keyCodec.encode(scratch, typedKey);
+            int valueSize = size - valueOffset;
+            ensureCapacity(8 + keySize + valueSize);
+            putInt(keySize);
+            UnsafeOps.copyToArray(scratch, bytes, position, keySize);
+            position += keySize;
+            putInt(valueSize);
+            UnsafeOps.copyToArray(address + valueOffset, bytes, position, valueSize);
+            position += valueSize;
+        }
+
+        void writeTo(EncodedEntrySink sink) throws IOException {
+            int p = 0;
+            while (p < position) {
+                int keySize = getInt(p);
+                int valueSize = getInt(p + 4 + keySize);
+                sink.accept(bytes, p + 4, keySize, p + 8 + keySize, valueSize);
+                p += 8 + keySize + valueSize;
+            }
+            position = 0;
+        }
+
+        void free() {
+            UnsafeOps.free(scratch);
+        }
+
+        private void ensureCapacity(int required) {
+            if (position + required > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(position + required, bytes.length * 2));
+            }
+        }
+
+        private void putInt(int value) {
+            bytes[position] = (byte) (value >>> 24);
+            bytes[position + 1] = (byte) (value >>> 16);
+            bytes[position + 2] = (byte) (value >>> 8);
+            bytes[position + 3] = (byte) value;
+            position += 4;
+        }
+
+        private int getInt(int p) {
+            return (bytes[p] << 24) | ((bytes[p + 1] & 0xFF) << 16) | ((bytes[p + 2] & 0xFF) << 8) | (bytes[p + 3] & 0xFF);
+        }
+    }
+}
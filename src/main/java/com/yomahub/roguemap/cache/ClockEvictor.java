@@ -0,0 +1,229 @@
+package com.yomahub.roguemap.cache;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.memory.Allocator;
+import com.yomahub.roguemap.serialization.Codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存模式的淘汰器：由频率草图引导的 CLOCK 淘汰
+ * <p>
+ * 时钟指针按分片顺序循环扫描索引，每次淘汰从指针处取一小批样本，
+ * 淘汰其中在 {@link FrequencySketch} 中频率最低的条目；频率较高的条目相当于获得了"第二次机会"，
+ * 草图的周期性减半让长期不再访问的条目逐渐失去保护。
+ * </p>
+ * <p>
+ * 权重以字节计，直接取分配器的已使用内存（SlabAllocator 按大小类别向上取整后的块大小）。
+ * 淘汰在写操作完成、索引锁释放之后执行；调用方不能在持有索引锁时调用本类的方法。
+ * </p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class ClockEvictor<K, V> implements AutoCloseable {
+
+    private static final int SAMPLE_SIZE = 8;
+
+    private final Index<K> index;
+    private final Allocator allocator;
+    private final Codec<V> valueCodec;
+    private final long maximumWeight;
+    private final EvictionListener<K, V> listener;
+    private final FrequencySketch sketch;
+    private final AtomicLong evictionCount;
+
+    // 以下字段只在 synchronized(this) 内访问
+    private final Object[] sampleKeys = new Object[SAMPLE_SIZE];
+    private final long[] sampleAddresses = new long[SAMPLE_SIZE];
+    private final VictimRemoval removal = new VictimRemoval();
+    private int sampleCount;
+    private int handShard;
+    private IndexCursor handCursor;
+
+    /**
+     * 创建淘汰器
+     *
+     * @param index           索引
+     * @param allocator       分配器
+     * @param valueCodec      值编解码器（仅在设置了监听器时用于解码被淘汰的值）
+     * @param maximumWeight   最大权重（字节）
+     * @param expectedEntries 预计条目数量，用于确定频率草图的大小
+     * @param listener        淘汰监听器，可以为 null
+     */
+    public ClockEvictor(Index<K> index, Allocator allocator, Codec<V> valueCodec,
+                        long maximumWeight, long expectedEntries, EvictionListener<K, V> listener) {
+        this.index = index;
+        this.allocator = allocator;
+        this.valueCodec = valueCodec;
+        this.maximumWeight = maximumWeight;
+        this.listener = listener;
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.evictionCount = new AtomicLong();
+    }
+
+    /**
+     * 记录一次访问，用于频率估计
+     *
+     * @param key 键
+     */
+    public void recordAccess(Object key) {
+        sketch.increment(key.hashCode());
+    }
+
+    /**
+     * 已使用内存超过最大权重时淘汰条目
+     */
+    public void evictIfNeeded() {
+        if (allocator.usedMemory() > maximumWeight) {
+            makeRoom(0);
+        }
+    }
+
+    /**
+     * 淘汰条目，直到再分配 bytes 字节后已使用内存不超过最大权重
+     * <p>
+     * 至少淘汰一个条目：调用方在分配失败后调用，即使已使用内存没有超过最大权重，
+     * 分配器也可能因为大小等级的碎片分配不出来。
+     * </p>
+     *
+     * @param bytes 即将分配的字节数
+     * @return 至少淘汰了一个条目返回 true
+     */
+    public synchronized boolean makeRoom(int bytes) {
+        boolean evicted = false;
+        do {
+            if (!evictOne()) {
+                break;
+            }
+            evicted = true;
+        } while (allocator.usedMemory() + bytes > maximumWeight);
+        return evicted;
+    }
+
+    /**
+     * 获取累计淘汰的条目数量
+     *
+     * @return 淘汰数量
+     */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 从时钟指针处取样并淘汰频率最低的条目
+     *
+     * @return 索引为空（转完一圈没有找到任何条目）时返回 false
+     */
+    private boolean evictOne() {
+        while (true) {
+            sample();
+            if (sampleCount == 0) {
+                return false;
+            }
+
+            int victim = 0;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < sampleCount; i++) {
+                int frequency = sketch.frequency(sampleKeys[i].hashCode());
+                if (frequency < victimFrequency) {
+                    victim = i;
+                    victimFrequency = frequency;
+                }
+            }
+
+            Object victimKey = sampleKeys[victim];
+            long victimAddress = sampleAddresses[victim];
+            // 先清空样本：监听器可能写入 map 并重入淘汰
+            clearSample();
+            if (removal.run(victimKey, victimAddress)) {
+                return true;
+            }
+            // 样本在取样后被并发修改，重新取样
+        }
+    }
+
+    /**
+     * 从时钟指针处收集最多 SAMPLE_SIZE 个条目，指针循环前进
+     */
+    private void sample() {
+        int shardCount = index.shardCount();
+        int emptyShards = 0;
+        while (sampleCount < SAMPLE_SIZE && emptyShards <= shardCount) {
+            if (handCursor == null) {
+                handCursor = index.cursor(handShard);
+            }
+
+            int before = sampleCount;
+            boolean more = handCursor.advance(SAMPLE_SIZE - sampleCount, (key, address, size) -> {
+                if (sampleCount < SAMPLE_SIZE) {
+                    sampleKeys[sampleCount] = key;
+                    sampleAddresses[sampleCount] = address;
+                    sampleCount++;
+                }
+            });
+
+            if (!more) {
+                handCursor = null;
+                handShard = (handShard + 1) % shardCount;
+                emptyShards = sampleCount == before ? emptyShards + 1 : 0;
+            }
+        }
+    }
+
+    private void clearSample() {
+        for (int i = 0; i < sampleCount; i++) {
+            sampleKeys[i] = null;
+        }
+        sampleCount = 0;
+    }
+
+    /**
+     * 仅当键仍指向取样时的地址时删除，避免误删并发写入的新值
+     */
+    private final class VictimRemoval implements IndexRemapper {
+        private long expectedAddress;
+        private int freedSize;
+        private V value;
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            if (address != 0 && address == expectedAddress) {
+                freedSize = size;
+                if (listener != null) {
+                    value = valueCodec.decode(address);
+                }
+                result.reset();
+            } else {
+                expectedAddress = 0;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean run(Object key, long address) {
+            expectedAddress = address;
+            value = null;
+            index.compute((K) key, this);
+            if (expectedAddress == 0) {
+                return false;
+            }
+
+            allocator.free(expectedAddress, freedSize);
+            evictionCount.incrementAndGet();
+            if (listener != null) {
+                V evictedValue = value;
+                value = null;
+                listener.onEviction((K) key, evictedValue);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        sketch.close();
+    }
+}
@@ -0,0 +1,22 @@
+package com.yomahub.roguemap.cache;
+
+/**
+ * 缓存模式下条目被淘汰时的回调
+ * <p>
+ * 在淘汰线程上、索引锁释放之后调用，可以访问 map，但应当尽量简短。
+ * </p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+@FunctionalInterface
+public interface EvictionListener<K, V> {
+
+    /**
+     * 条目被淘汰
+     *
+     * @param key   被淘汰的键
+     * @param value 被淘汰的值（淘汰前在索引锁内解码）
+     */
+    void onEviction(K key, V value);
+}
@@ -0,0 +1,266 @@
+package com.yomahub.roguemap.cache;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.memory.Allocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 条目过期管理
+ * <p>
+ * 每个值前有 8 字节的头部，存放到期时间（毫秒时间戳，{@link #NEVER} 表示永不过期），
+ * 值的读写在头部之后进行（见 {@link ExpiringCodec}）。读取时按头部判断是否已过期，
+ * 已过期但尚未回收的条目对外表现为不存在。
+ * </p>
+ * <p>
+ * 写操作完成后把（键、值地址、到期时间）放入待调度队列，维护时批量移入 {@link TimerWheel}，
+ * 再推进时间轮回收到期条目：只有键仍指向调度时的地址、且头部的到期时间确已过去时才删除并释放内存；
+ * 地址已变化的节点属于被覆盖的旧值，直接丢弃；到期时间被访问延长的节点按新时间重新调度。
+ * 维护在写操作之后（以及读操作跨过时间轮的最小刻度时）以 tryLock 方式执行，不阻塞读写；
+ * 调用方不能在持有索引锁时调用本类的方法。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class Expiration<K> {
+
+    /**
+     * 值头部大小
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * 永不过期
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    // 访问续期的最大间隔，与时间轮最低层的桶宽一致，避免每次读取都写头部
+    private static final long TOUCH_GRANULARITY = 1L << TimerWheel.SHIFTS[0];
+
+    private final Index<K> index;
+    private final Allocator allocator;
+    private final long expireAfterWriteMillis;
+    private final long expireAfterAccessMillis;
+    private final long touchInterval;
+    private final TimerWheel<K> wheel;
+    private final Queue<TimerWheel.Node<K>> pending;
+    private final ReentrantLock lock;
+    private final ExpiredRemoval removal;
+    private final AtomicLong expiredCount;
+
+    /**
+     * 创建过期管理器
+     *
+     * @param index                   索引
+     * @param allocator               分配器
+     * @param expireAfterWriteMillis  写入后的存活时间（毫秒），0 表示默认不过期
+     * @param expireAfterAccessMillis 访问后的存活时间（毫秒），0 表示读取不续期
+     */
+    public Expiration(Index<K> index, Allocator allocator,
+                      long expireAfterWriteMillis, long expireAfterAccessMillis) {
+        this.index = index;
+        this.allocator = allocator;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.expireAfterAccessMillis = expireAfterAccessMillis;
+        this.touchInterval = Math.min(TOUCH_GRANULARITY, expireAfterAccessMillis / 4);
+        this.wheel = new TimerWheel<>(now());
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.lock = new ReentrantLock();
+        this.removal = new ExpiredRemoval();
+        this.expiredCount = new AtomicLong();
+    }
+
+    /**
+     * 获取写入时使用的默认到期时间
+     *
+     * @return 到期时间（毫秒时间戳）
+     */
+    public long defaultExpireAt() {
+        long ttl = expireAfterWriteMillis > 0 ? expireAfterWriteMillis : expireAfterAccessMillis;
+        return ttl > 0 ? now() + ttl : NEVER;
+    }
+
+    /**
+     * 读取值头部的到期时间
+     *
+     * @param address 值地址（头部起始位置）
+     * @return 到期时间
+     */
+    public static long expireAt(long address) {
+        return UnsafeOps.getLong(address);
+    }
+
+    /**
+     * 写入值头部的到期时间
+     *
+     * @param address  值地址（头部起始位置）
+     * @param expireAt 到期时间
+     */
+    public static void setExpireAt(long address, long expireAt) {
+        UnsafeOps.putLong(address, expireAt);
+    }
+
+    /**
+     * 检查值是否已过期
+     *
+     * @param address 值地址（头部起始位置）
+     * @return 已过期返回 true
+     */
+    public boolean isExpired(long address) {
+        return expireAt(address) <= now();
+    }
+
+    /**
+     * 读取命中后调用：配置了 expireAfterAccess 时延长到期时间
+     * <p>
+     * 续期幅度不足 min(约 1 秒, 存活时间的 1/4) 时跳过；头部在键所在的锁内、且地址未变化时才写入。
+     * 时间轮中的节点不需要移动，到期检查时会发现新的到期时间并重新调度。
+     * </p>
+     *
+     * @param key     键
+     * @param address 读取到的值地址
+     */
+    public void touch(K key, long address) {
+        if (expireAfterAccessMillis <= 0) {
+            return;
+        }
+        long expireAt = now() + expireAfterAccessMillis;
+        if (expireAt - expireAt(address) < touchInterval) {
+            return;
+        }
+
+        if (index.supportsValueLock()) {
+            IndexResultHolder holder = IndexResultHolder.threadLocal();
+            long stamp = index.lockValue(key, holder);
+            try {
+                if (holder.address == address) {
+                    setExpireAt(address, expireAt);
+                }
+            } finally {
+                index.unlockValue(key, stamp);
+            }
+        } else {
+            index.compute(key, (current, size, result) -> {
+                if (current == address) {
+                    setExpireAt(address, expireAt);
+                }
+            });
+        }
+    }
+
+    /**
+     * 写操作完成后调用：调度键当前的值，并尝试执行维护
+     *
+     * @param key 键
+     */
+    public void afterWrite(K key) {
+        // 不持有锁读取头部：地址可能已被释放重用，读到的时间只用于调度，回收时会在锁内重新校验
+        long address = index.get(key);
+        if (address != 0) {
+            long expireAt = expireAt(address);
+            if (expireAt != NEVER) {
+                pending.offer(new TimerWheel.Node<>(key, address, expireAt));
+            }
+        }
+        tryMaintain();
+    }
+
+    /**
+     * 读操作后调用：跨过时间轮的最小刻度时尝试执行维护
+     */
+    public void afterRead() {
+        if ((now() >>> TimerWheel.SHIFTS[0]) != (wheel.currentTime() >>> TimerWheel.SHIFTS[0])) {
+            tryMaintain();
+        }
+    }
+
+    /**
+     * 立即执行维护，回收所有已到期的条目
+     */
+    public void cleanUp() {
+        lock.lock();
+        try {
+            maintain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取累计回收的过期条目数量
+     *
+     * @return 回收数量
+     */
+    public long expiredCount() {
+        return expiredCount.get();
+    }
+
+    private void tryMaintain() {
+        if (lock.tryLock()) {
+            try {
+                maintain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void maintain() {
+        TimerWheel.Node<K> node;
+        while ((node = pending.poll()) != null) {
+            wheel.schedule(node);
+        }
+        wheel.advance(now(), removal);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 到期节点的回收：在键所在的锁内校验地址和头部，只删除确实过期的当前值
+     */
+    private final class ExpiredRemoval implements TimerWheel.Expirer<K>, IndexRemapper {
+        private long expectedAddress;
+        private long now;
+        private long freedAddress;
+        private int freedSize;
+        private long rescheduleAt;
+
+        @Override
+        public long expire(TimerWheel.Node<K> node, long now) {
+            this.expectedAddress = node.address();
+            this.now = now;
+            this.freedAddress = 0;
+            this.rescheduleAt = 0;
+            index.compute(node.key(), this);
+
+            if (freedAddress != 0) {
+                allocator.free(freedAddress, freedSize);
+                expiredCount.incrementAndGet();
+            }
+            return rescheduleAt;
+        }
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            if (address == 0 || address != expectedAddress) {
+                return; // 已删除或已被覆盖，新值有自己的节点
+            }
+            long expireAt = expireAt(address);
+            if (expireAt <= now) {
+                freedAddress = address;
+                freedSize = size;
+                result.reset();
+            } else if (expireAt != NEVER) {
+                rescheduleAt = expireAt;
+            }
+        }
+    }
+}
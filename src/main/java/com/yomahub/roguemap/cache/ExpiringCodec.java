@@ -0,0 +1,58 @@
+package com.yomahub.roguemap.cache;
+
+import com.yomahub.roguemap.serialization.Codec;
+
+/**
+ * 在值前加上 8 字节到期时间头部的编解码器
+ * <p>
+ * 编码时写入 {@link Expiration#defaultExpireAt()}，值本身由被包装的编解码器编码在头部之后。
+ * </p>
+ *
+ * @param <V> 值类型
+ */
+public class ExpiringCodec<V> implements Codec<V> {
+
+    private final Codec<V> delegate;
+    private final Expiration<?> expiration;
+
+    public ExpiringCodec(Codec<V> delegate, Expiration<?> expiration) {
+        this.delegate = delegate;
+        this.expiration = expiration;
+    }
+
+    @Override
+    public int encode(long address, V value) {
+        Expiration.setExpireAt(address, expiration.defaultExpireAt());
+        return Expiration.HEADER_SIZE + delegate.encode(address + Expiration.HEADER_SIZE, value);
+    }
+
+    @Override
+    public V decode(long address) {
+        return delegate.decode(address + Expiration.HEADER_SIZE);
+    }
+
+    @Override
+    public int calculateSize(V value) {
+        int size = delegate.calculateSize(value);
+        return size < 0 ? size : Expiration.HEADER_SIZE + size;
+    }
+
+    @Override
+    public boolean isFixedSize() {
+        return delegate.isFixedSize();
+    }
+
+    @Override
+    public int getFixedSize() {
+        return Expiration.HEADER_SIZE + delegate.getFixedSize();
+    }
+
+    /**
+     * 获取被包装的编解码器
+     *
+     * @return 值本身的编解码器
+     */
+    public Codec<V> getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,118 @@
+package com.yomahub.roguemap.cache;
+
+import com.yomahub.roguemap.memory.UnsafeOps;
+
+/**
+ * 堆外的 Count-Min 频率草图（4 位计数器）
+ * <p>
+ * 每个 long 存放 16 个 4 位计数器，计数上限为 15。每个键通过 4 个哈希函数映射到 4 个计数器，
+ * 频率取其中的最小值。累计增量达到采样周期后所有计数器减半，使历史热度逐渐衰减（TinyLFU 的老化机制）。
+ * </p>
+ * <p>
+ * 计数器以普通读写更新，并发时可能丢失少量增量，这对近似频率统计是可以接受的。
+ * </p>
+ */
+public class FrequencySketch implements AutoCloseable {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MIN_TABLE_SIZE = 64;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    private final long address;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * 创建频率草图
+     *
+     * @param expectedEntries 预计的条目数量，决定计数器表的大小
+     */
+    public FrequencySketch(long expectedEntries) {
+        int tableSize = (int) Math.min(MAX_TABLE_SIZE,
+                Long.highestOneBit(Math.max(MIN_TABLE_SIZE, expectedEntries) - 1) << 1);
+        this.tableMask = tableSize - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * tableSize);
+        this.address = UnsafeOps.allocate((long) tableSize * 8);
+        UnsafeOps.setMemory(address, (long) tableSize * 8, (byte) 0);
+    }
+
+    /**
+     * 估计键的访问频率
+     *
+     * @param hashCode 键的哈希值
+     * @return 频率估计值（0-15）
+     */
+    public int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            long slot = address + ((long) indexOf(hash, i) << 3);
+            int offset = (start + i) << 2;
+            int count = (int) ((UnsafeOps.getLong(slot) >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param hashCode 键的哈希值
+     */
+    public void increment(int hashCode) {
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            long slot = address + ((long) indexOf(hash, i) << 3);
+            int offset = (start + i) << 2;
+            long value = UnsafeOps.getLong(slot);
+            long mask = 0xfL << offset;
+            if ((value & mask) != mask) {
+                UnsafeOps.putLong(slot, value + (1L << offset));
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i <= tableMask; i++) {
+            long slot = address + ((long) i << 3);
+            long value = UnsafeOps.getLong(slot);
+            odd += Long.bitCount(value & ONE_MASK);
+            UnsafeOps.putLong(slot, (value >>> 1) & RESET_MASK);
+        }
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    @Override
+    public void close() {
+        UnsafeOps.free(address);
+    }
+}
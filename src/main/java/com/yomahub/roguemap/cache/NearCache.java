@@ -0,0 +1,175 @@
+package com.yomahub.roguemap.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆上的近端缓存，保存热点键解码后的值对象
+ * <p>
+ * 每个缓存项记录值解码时所在的堆外地址，命中时要求索引中键的当前地址与之相同，
+ * 因此被覆盖或删除的值不会被返回；写入路径在索引更新后再显式失效该键，避免地址被重用时误命中。
+ * </p>
+ * <p>
+ * 容量按条目数量或估计字节数限制（每项权重为 1 或"值的编码大小 + 固定开销"），
+ * 超出时按 CLOCK（二次机会 FIFO）淘汰：队首的项如果自上次经过后被命中过，清除标记并移到队尾，否则淘汰。
+ * </p>
+ *
+ * @param <V> 值类型
+ */
+public class NearCache<V> {
+
+    /**
+     * 按字节计权重时，每个缓存项在值的编码大小之外估计的堆开销（对象头、节点与映射表槽位）
+     */
+    public static final int ENTRY_OVERHEAD = 64;
+
+    // 单次插入最多检查的队列节点数，避免标记全部被置位时长时间循环
+    private static final int MAX_EVICTION_SCAN = 64;
+
+    private final ConcurrentHashMap<Object, Node<V>> map;
+    private final Queue<Node<V>> clock;
+    private final long maximumWeight;
+    private final boolean weighByBytes;
+    private final AtomicLong weight;
+    private final AtomicInteger queued; // 队列中的节点数（含已失效的节点）
+
+    private static final class Node<V> {
+        final Object key;
+        final long address;
+        final V value;
+        final int weight;
+        volatile boolean referenced;
+
+        Node(Object key, long address, V value, int weight) {
+            this.key = key;
+            this.address = address;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 创建近端缓存
+     *
+     * @param maximumWeight 最大条目数量（weighByBytes 为 false）或最大估计字节数
+     * @param weighByBytes  是否按估计字节数计算权重
+     */
+    public NearCache(long maximumWeight, boolean weighByBytes) {
+        this.map = new ConcurrentHashMap<>();
+        this.clock = new ConcurrentLinkedQueue<>();
+        this.maximumWeight = maximumWeight;
+        this.weighByBytes = weighByBytes;
+        this.weight = new AtomicLong();
+        this.queued = new AtomicInteger();
+    }
+
+    /**
+     * 查找缓存的值
+     *
+     * @param key     键
+     * @param address 键在索引中的当前值地址
+     * @return 地址一致时返回缓存的值，否则返回 null
+     */
+    public V get(Object key, long address) {
+        Node<V> node = map.get(key);
+        if (node == null || node.address != address) {
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * 缓存解码后的值
+     *
+     * @param key     键
+     * @param address 值解码时所在的地址
+     * @param size    值的编码大小（按字节计权重时使用）
+     * @param value   解码后的值
+     */
+    public void put(Object key, long address, int size, V value) {
+        int nodeWeight = weighByBytes ? size + ENTRY_OVERHEAD : 1;
+        if (nodeWeight > maximumWeight) {
+            return;
+        }
+
+        Node<V> node = new Node<>(key, address, value, nodeWeight);
+        Node<V> previous = map.put(key, node);
+        weight.addAndGet(previous != null ? nodeWeight - previous.weight : nodeWeight);
+        clock.offer(node);
+
+        if (weight.get() > maximumWeight) {
+            evict();
+        }
+        // 容量未满时失效的节点不会被淘汰扫描到，累积过多时统一清理
+        if (queued.incrementAndGet() > 2 * map.size() + MAX_EVICTION_SCAN) {
+            clock.removeIf(n -> map.get(n.key) != n);
+            queued.set(clock.size());
+        }
+    }
+
+    /**
+     * 使键的缓存项失效
+     *
+     * @param key 键
+     */
+    public void invalidate(Object key) {
+        Node<V> node = map.remove(key);
+        if (node != null) {
+            weight.addAndGet(-node.weight);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        map.clear();
+        clock.clear();
+        weight.set(0);
+        queued.set(0);
+    }
+
+    /**
+     * 是否按估计字节数计算权重
+     *
+     * @return 按字节计返回 true，按条目数量计返回 false
+     */
+    public boolean weighsByBytes() {
+        return weighByBytes;
+    }
+
+    /**
+     * 获取缓存项数量
+     *
+     * @return 缓存项数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    private void evict() {
+        int scanned = 0;
+        Node<V> node;
+        while (weight.get() > maximumWeight && (node = clock.poll()) != null) {
+            queued.decrementAndGet();
+            if (map.get(node.key) != node) {
+                continue; // 已失效或已被新节点替换，新节点在队列中有自己的位置
+            }
+            if (node.referenced && scanned++ < MAX_EVICTION_SCAN) {
+                node.referenced = false;
+                clock.offer(node);
+                queued.incrementAndGet();
+                continue;
+            }
+            if (map.remove(node.key, node)) {
+                weight.addAndGet(-node.weight);
+            }
+        }
+    }
+}
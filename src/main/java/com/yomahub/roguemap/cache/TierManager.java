@@ -0,0 +1,262 @@
+package com.yomahub.roguemap.cache;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.memory.TieredAllocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 两级存储的降级与提升
+ * <p>
+ * 后台线程定期检查热层使用率：超过高水位时，时钟指针按分片循环扫描索引，每次取一小批位于热层的条目，
+ * 把其中在 {@link FrequencySketch} 中频率最低的一个复制到冷层，直到使用率降到低水位以下。
+ * 读取命中冷层且频率达到阈值的条目时，在读取线程中把它提升回热层（热层低于高水位时）。
+ * </p>
+ * <p>
+ * 迁移在键所在的独占锁内进行：只有键仍指向原地址时才复制数据并把索引改指向新地址，
+ * 原地址在锁释放后释放；迁移不改变值的编码字节。调用方不能在持有索引锁时调用本类的方法。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class TierManager<K> implements AutoCloseable {
+
+    private static final int SAMPLE_SIZE = 8;
+    private static final int PROMOTION_FREQUENCY = 2;
+    private static final long CHECK_INTERVAL_MILLIS = 10;
+
+    private final Index<K> index;
+    private final TieredAllocator allocator;
+    private final double lowWatermark;
+    private final double highWatermark;
+    private final FrequencySketch sketch;
+    private final ScheduledExecutorService demoter;
+    private final AtomicLong demotionCount;
+    private final AtomicLong promotionCount;
+
+    // 以下字段只在 synchronized(this) 内访问
+    private final Object[] sampleKeys = new Object[SAMPLE_SIZE];
+    private final long[] sampleAddresses = new long[SAMPLE_SIZE];
+    private final Migration demotion = new Migration();
+    private int sampleCount;
+    private int handShard;
+    private IndexCursor handCursor;
+
+    /**
+     * 创建两级存储管理器并启动后台降级线程
+     *
+     * @param index           索引
+     * @param allocator       两级分配器
+     * @param lowWatermark    低水位（热层使用率），降级到此为止
+     * @param highWatermark   高水位（热层使用率），超过时开始降级
+     * @param expectedEntries 预计条目数量，用于确定频率草图的大小
+     */
+    public TierManager(Index<K> index, TieredAllocator allocator,
+                       double lowWatermark, double highWatermark, long expectedEntries) {
+        this.index = index;
+        this.allocator = allocator;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.demotionCount = new AtomicLong();
+        this.promotionCount = new AtomicLong();
+        this.demoter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "roguemap-tier-demoter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        demoter.scheduleWithFixedDelay(this::demoteIfNeeded,
+                CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 写操作完成后调用，记录访问频率
+     *
+     * @param key 键
+     */
+    public void recordWrite(Object key) {
+        sketch.increment(key.hashCode());
+    }
+
+    /**
+     * 读取命中后调用：记录访问频率，冷层的热点条目提升回热层
+     *
+     * @param key     键
+     * @param address 读取到的值地址
+     */
+    @SuppressWarnings("unchecked")
+    public void recordRead(Object key, long address) {
+        sketch.increment(key.hashCode());
+        if (allocator.isCold(address)
+                && allocator.hotUsageRatio() < highWatermark
+                && sketch.frequency(key.hashCode()) >= PROMOTION_FREQUENCY) {
+            if (new Migration().run((K) key, address, true)) {
+                promotionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 热层使用率超过高水位时把冷条目降级到冷层，直到低于低水位
+     */
+    public synchronized void demoteIfNeeded() {
+        if (allocator.hotUsageRatio() <= highWatermark) {
+            return;
+        }
+        while (allocator.hotUsageRatio() > lowWatermark) {
+            if (!demoteOne()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 获取累计降级的条目数量
+     *
+     * @return 降级数量
+     */
+    public long demotionCount() {
+        return demotionCount.get();
+    }
+
+    /**
+     * 获取累计提升的条目数量
+     *
+     * @return 提升数量
+     */
+    public long promotionCount() {
+        return promotionCount.get();
+    }
+
+    /**
+     * 从时钟指针处取样并降级频率最低的热层条目
+     *
+     * @return 热层没有可降级的条目或冷层已满时返回 false
+     */
+    private boolean demoteOne() {
+        while (true) {
+            sample();
+            if (sampleCount == 0) {
+                return false;
+            }
+
+            int victim = 0;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < sampleCount; i++) {
+                int frequency = sketch.frequency(sampleKeys[i].hashCode());
+                if (frequency < victimFrequency) {
+                    victim = i;
+                    victimFrequency = frequency;
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            K victimKey = (K) sampleKeys[victim];
+            long victimAddress = sampleAddresses[victim];
+            clearSample();
+            if (demotion.run(victimKey, victimAddress, false)) {
+                demotionCount.incrementAndGet();
+                return true;
+            }
+            if (demotion.outOfSpace) {
+                return false;
+            }
+            // 样本在取样后被并发修改，重新取样
+        }
+    }
+
+    /**
+     * 从时钟指针处收集最多 SAMPLE_SIZE 个位于热层的条目，指针循环前进
+     */
+    private void sample() {
+        int shardCount = index.shardCount();
+        int emptyShards = 0;
+        while (sampleCount < SAMPLE_SIZE && emptyShards <= shardCount) {
+            if (handCursor == null) {
+                handCursor = index.cursor(handShard);
+            }
+
+            int before = sampleCount;
+            boolean more = handCursor.advance(SAMPLE_SIZE, (key, address, size) -> {
+                if (sampleCount < SAMPLE_SIZE && !allocator.isCold(address)) {
+                    sampleKeys[sampleCount] = key;
+                    sampleAddresses[sampleCount] = address;
+                    sampleCount++;
+                }
+            });
+
+            if (!more) {
+                handCursor = null;
+                handShard = (handShard + 1) % shardCount;
+                emptyShards = sampleCount == before ? emptyShards + 1 : 0;
+            }
+        }
+    }
+
+    private void clearSample() {
+        for (int i = 0; i < sampleCount; i++) {
+            sampleKeys[i] = null;
+        }
+        sampleCount = 0;
+    }
+
+    /**
+     * 在键所在的锁内把值复制到另一层并改指向新地址，仅当键仍指向期望的地址时执行
+     */
+    private final class Migration implements IndexRemapper {
+        private long expectedAddress;
+        private boolean toHot;
+        private long freedAddress;
+        private int freedSize;
+        private boolean outOfSpace;
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            if (address == 0 || address != expectedAddress) {
+                return;
+            }
+            long target = toHot ? allocator.allocateHot(size) : allocator.allocateCold(size);
+            if (target == 0) {
+                outOfSpace = true;
+                return;
+            }
+            UnsafeOps.copyMemory(address, target, size);
+            result.set(target, size);
+            freedAddress = address;
+            freedSize = size;
+        }
+
+        boolean run(K key, long address, boolean toHot) {
+            this.expectedAddress = address;
+            this.toHot = toHot;
+            this.freedAddress = 0;
+            this.outOfSpace = false;
+            index.compute(key, this);
+            if (freedAddress == 0) {
+                return false;
+            }
+            allocator.free(freedAddress, freedSize);
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        demoter.shutdownNow();
+        try {
+            demoter.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            sketch.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.yomahub.roguemap.cache;
+
+/**
+ * 分层时间轮
+ * <p>
+ * 共 4 层，每层 64 个桶，桶宽依次为 2^10、2^16、2^22、2^28 毫秒（约 1 秒、65 秒、70 分钟、3 天），
+ * 最高层可覆盖约 199 天，更远的时间放入最高层后在到期检查时重新调度。
+ * 推进时间时只访问跨过的桶：到期的节点交给回调处理，未到期的节点按剩余时间降级到更低的层，
+ * 因此每次推进的开销与到期（及降级）的节点数量成正比，而不是与全部节点数量成正比。
+ * 到期精度为最低层的桶宽（约 1 秒）。
+ * </p>
+ * <p>
+ * 本类不是线程安全的，由调用方加锁。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class TimerWheel<K> {
+
+    static final int BUCKETS = 64;
+    static final int[] SHIFTS = {10, 16, 22, 28};
+
+    private static final int MASK = BUCKETS - 1;
+
+    /**
+     * 到期回调
+     *
+     * @param <K> 键类型
+     */
+    @FunctionalInterface
+    public interface Expirer<K> {
+        /**
+         * 处理到期的节点
+         *
+         * @param node 到期的节点
+         * @param now  当前时间（毫秒）
+         * @return 需要重新调度时返回新的到期时间，否则返回 0
+         */
+        long expire(Node<K> node, long now);
+    }
+
+    /**
+     * 时间轮节点，记录键、调度时值所在的地址与到期时间
+     *
+     * @param <K> 键类型
+     */
+    public static final class Node<K> {
+        final K key;
+        final long address;
+        long fireAt;
+        Node<K> next;
+
+        public Node(K key, long address, long fireAt) {
+            this.key = key;
+            this.address = address;
+            this.fireAt = fireAt;
+        }
+
+        public K key() {
+            return key;
+        }
+
+        public long address() {
+            return address;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Node<K>[][] wheel = new Node[SHIFTS.length][BUCKETS];
+    private volatile long currentTime;
+    private long size;
+
+    /**
+     * 创建时间轮
+     *
+     * @param now 当前时间（毫秒）
+     */
+    public TimerWheel(long now) {
+        this.currentTime = now;
+    }
+
+    /**
+     * 调度节点，到期时间早于当前时间的节点在下一次推进时到期
+     *
+     * @param node 节点
+     */
+    public void schedule(Node<K> node) {
+        long time = Math.max(node.fireAt, currentTime);
+        long delay = time - currentTime;
+        int level = SHIFTS.length - 1;
+        for (int i = 0; i < SHIFTS.length - 1; i++) {
+            if (delay < ((long) BUCKETS << SHIFTS[i])) {
+                level = i;
+                break;
+            }
+        }
+        int bucket = (int) ((time >>> SHIFTS[level]) & MASK);
+        node.next = wheel[level][bucket];
+        wheel[level][bucket] = node;
+        size++;
+    }
+
+    /**
+     * 推进时间，处理所有跨过的桶
+     *
+     * @param now     当前时间（毫秒）
+     * @param expirer 到期回调
+     */
+    public void advance(long now, Expirer<K> expirer) {
+        long previousTime = currentTime;
+        if (now <= previousTime) {
+            return;
+        }
+        currentTime = now;
+
+        for (int level = 0; level < SHIFTS.length; level++) {
+            long previousTicks = previousTime >>> SHIFTS[level];
+            long currentTicks = now >>> SHIFTS[level];
+            if (currentTicks == previousTicks) {
+                break;
+            }
+            // 最低层从上一个桶开始处理（其中剩余的节点已全部到期）；
+            // 更高层只处理新进入的桶，把其中的节点降级到更低的层
+            long from = level == 0 ? previousTicks : previousTicks + 1;
+            long steps = Math.min(currentTicks - from + 1, BUCKETS);
+            for (long i = 0; i < steps; i++) {
+                expireBucket(level, (int) ((from + i) & MASK), now, expirer);
+            }
+        }
+    }
+
+    private void expireBucket(int level, int bucket, long now, Expirer<K> expirer) {
+        Node<K> node = wheel[level][bucket];
+        wheel[level][bucket] = null;
+        while (node != null) {
+            Node<K> next = node.next;
+            node.next = null;
+            size--;
+            if (node.fireAt <= now) {
+                long fireAt = expirer.expire(node, now);
+                if (fireAt != 0) {
+                    node.fireAt = fireAt;
+                    schedule(node);
+                }
+            } else {
+                schedule(node);
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * 获取时间轮最近一次推进到的时间
+     *
+     * @return 时间（毫秒）
+     */
+    public long currentTime() {
+        return currentTime;
+    }
+
+    /**
+     * 获取时间轮中的节点数量
+     *
+     * @return 节点数量
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 移除所有节点
+     */
+    public void clear() {
+        for (Node<K>[] buckets : wheel) {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = null;
+            }
+        }
+        size = 0;
+    }
+}
@@ -3,6 +3,7 @@ package com.yomahub.roguemap.index;
 import com.yomahub.roguemap.memory.UnsafeOps;
 import com.yomahub.roguemap.serialization.Codec;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -56,6 +57,51 @@ public class HashIndex<K> implements Index<K> {
         }
     }
 
+    @Override
+    public boolean putIfAbsent(K key, long address, int valueSize) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (address == 0) {
+            throw new IllegalArgumentException("无效的地址: 0");
+        }
+
+        if (map.putIfAbsent(key, new Entry(address, valueSize)) == null) {
+            size.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+
+        IndexResultHolder result = new IndexResultHolder();
+        // ConcurrentHashMap.compute 在桶锁内执行回调，保证同一个键的读-改-写是原子的
+        map.compute(key, (k, entry) -> {
+            long oldAddress = entry != null ? entry.address : 0;
+            int oldSize = entry != null ? entry.size : 0;
+            result.set(oldAddress, oldSize);
+            remapper.remap(oldAddress, oldSize, result);
+
+            if (result.address == 0) {
+                if (entry != null) {
+                    size.decrementAndGet();
+                }
+                return null;
+            }
+            if (entry == null) {
+                size.incrementAndGet();
+            } else if (result.address == oldAddress && result.size == oldSize) {
+                return entry;
+            }
+            return new Entry(result.address, result.size);
+        });
+    }
+
     @Override
     public long get(K key) {
         if (key == null) {
@@ -124,6 +170,38 @@ public class HashIndex<K> implements Index<K> {
         return IndexRemoveResult.notPresent();
     }
 
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (newAddress == 0) {
+            throw new IllegalArgumentException("无效的地址: 0");
+        }
+
+        Entry oldEntry = map.put(key, new Entry(newAddress, newSize));
+
+        if (oldEntry == null) {
+            size.incrementAndGet();
+            holder.reset();
+            return false;
+        }
+        holder.set(oldEntry.address, oldEntry.size);
+        return true;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        Entry entry = key != null ? map.remove(key) : null;
+        if (entry == null) {
+            holder.reset();
+            return false;
+        }
+        size.decrementAndGet();
+        holder.set(entry.address, entry.size);
+        return true;
+    }
+
     @Override
     public void forEach(IndexEntryConsumer consumer) {
         if (consumer == null) {
@@ -135,6 +213,19 @@ public class HashIndex<K> implements Index<K> {
         }
     }
 
+    @Override
+    public IndexCursor cursor(int shard) {
+        // ConcurrentHashMap 的迭代器本身就是弱一致的，无需加锁
+        Iterator<Map.Entry<K, Entry>> iterator = map.entrySet().iterator();
+        return (limit, consumer) -> {
+            for (int i = 0; i < limit && iterator.hasNext(); i++) {
+                Map.Entry<K, Entry> entry = iterator.next();
+                consumer.accept(entry.getKey(), entry.getValue().address, entry.getValue().size);
+            }
+            return iterator.hasNext();
+        };
+    }
+
     @Override
     public boolean containsKey(K key) {
         return key != null && map.containsKey(key);
@@ -1,5 +1,8 @@
 package com.yomahub.roguemap.index;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * 索引接口，用于键值查找
  *
@@ -17,6 +20,30 @@ public interface Index<K> {
      */
     long put(K key, long address, int size);
 
+    /**
+     * 仅当键不存在时将键值对放入索引
+     * <p>
+     * 检查与插入在同一个锁（或原子操作）内完成，键已存在时索引保持不变。
+     * </p>
+     *
+     * @param key 键
+     * @param address 值存储的内存地址
+     * @param size 值的字节大小
+     * @return 如果插入成功返回 true，键已存在返回 false
+     */
+    boolean putIfAbsent(K key, long address, int size);
+
+    /**
+     * 在键所在的锁内原子性地执行读-改-写
+     * <p>
+     * 被替换或删除的旧值不会被释放，调用方需要在方法返回（锁已释放）后自行释放。
+     * </p>
+     *
+     * @param key      键
+     * @param remapper 计算新条目的回调
+     */
+    void compute(K key, IndexRemapper remapper);
+
     /**
      * 获取键对应的内存地址
      *
@@ -77,6 +104,194 @@ public interface Index<K> {
      */
     IndexRemoveResult removeAndGet(K key);
 
+    /**
+     * 原子性地更新索引，并将旧值信息写入调用方提供的持有者（不分配结果对象）
+     * <p>
+     * 语义与 {@link #putAndGetOld(Object, long, int)} 相同。旧值不存在时持有者被重置为 0。
+     * 默认实现委托给分配结果对象的版本，内置索引均重写了此方法。
+     * </p>
+     *
+     * @param key        键
+     * @param newAddress 新值的内存地址
+     * @param newSize    新值的大小
+     * @param holder     用于接收旧值地址和大小的持有者
+     * @return 如果存在旧值返回 true，否则返回 false
+     */
+    default boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        IndexUpdateResult result = putAndGetOld(key, newAddress, newSize);
+        holder.set(result.oldAddress, result.oldSize);
+        return result.wasPresent;
+    }
+
+    /**
+     * 原子性地删除键，并将被删除值的信息写入调用方提供的持有者（不分配结果对象）
+     * <p>
+     * 语义与 {@link #removeAndGet(Object)} 相同。键不存在时持有者被重置为 0。
+     * 默认实现委托给分配结果对象的版本，内置索引均重写了此方法。
+     * </p>
+     *
+     * @param key    键
+     * @param holder 用于接收被删除值地址和大小的持有者
+     * @return 如果键存在并已删除返回 true，否则返回 false
+     */
+    default boolean removeAndGet(K key, IndexResultHolder holder) {
+        IndexRemoveResult result = removeAndGet(key);
+        holder.set(result.address, result.size);
+        return result.wasPresent;
+    }
+
+    /**
+     * 分块遍历使用的分片数量（段数或表区间数），用于拆分并行遍历
+     *
+     * @return 分片数量
+     */
+    default int shardCount() {
+        return 1;
+    }
+
+    /**
+     * 创建分片的分块遍历游标
+     * <p>
+     * 与 {@link #forEach(IndexEntryConsumer)} 不同，游标每次只在锁内处理一小块条目，
+     * 不会在整个遍历期间阻塞写入。
+     * </p>
+     *
+     * @param shard 分片下标，范围 [0, shardCount())
+     * @return 游标
+     */
+    IndexCursor cursor(int shard);
+
+    /**
+     * 取出自上次调用以来被修改过的分片并清除标记，用于增量检查点只重写变化的分片
+     * <p>
+     * 分片与 {@link #cursor(int)} 的划分相同。标记在写入时设置，取出之后的写入会留到下一次。
+     * 默认实现不跟踪修改，把所有分片都视为已修改。
+     * </p>
+     *
+     * @param dirty 长度不小于 {@link #shardCount()} 的数组，被修改过的分片对应位置置为 true（已有的 true 保持不变）
+     */
+    default void drainDirtyShards(boolean[] dirty) {
+        Arrays.fill(dirty, 0, shardCount(), true);
+    }
+
+    /**
+     * 分片划分的版本号
+     * <p>
+     * 按表区间划分分片的索引在扩容或清空时递增，此时条目会换到其他分片，所有分片都被标记为已修改；
+     * 遍历前后版本号不同说明遍历期间划分发生过变化。分片划分固定的索引始终返回 0。
+     * </p>
+     *
+     * @return 版本号
+     */
+    default long shardLayoutVersion() {
+        return 0;
+    }
+
+    /**
+     * 键所在的分片是否只由键决定（与插入顺序和容量无关）
+     * <p>
+     * 为 true 时，重新打开后增量检查点可以继续沿用上一次会话写入的分片数据；
+     * 否则新会话的第一个检查点需要重写全部分片。
+     * </p>
+     *
+     * @return 只由键决定返回 true
+     */
+    default boolean hasStableShards() {
+        return shardCount() == 1;
+    }
+
+    /**
+     * 是否支持共享值锁 {@link #lockValue(Object, IndexResultHolder)}
+     *
+     * @return 支持返回 true
+     */
+    default boolean supportsValueLock() {
+        return false;
+    }
+
+    /**
+     * 获取键所在的共享（读）锁，并返回键当前的值地址
+     * <p>
+     * 持有锁期间该键的值不会被替换、删除或释放，多个线程可以同时持有，
+     * 适合在值的堆外内存上直接做 CAS 更新。持有期间不能再对本索引做写操作，否则会死锁。
+     * 必须在 finally 中调用 {@link #unlockValue(Object, long)} 释放。
+     * </p>
+     *
+     * @param key    键
+     * @param result 输出：值的地址和大小，键不存在时为 0
+     * @return 锁票据
+     */
+    default long lockValue(K key, IndexResultHolder result) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " 不支持共享值锁");
+    }
+
+    /**
+     * 释放 {@link #lockValue(Object, IndexResultHolder)} 获取的锁
+     *
+     * @param key   键
+     * @param stamp 锁票据
+     */
+    default void unlockValue(K key, long stamp) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " 不支持共享值锁");
+    }
+
+    /**
+     * 批量放入键值对并返回旧值信息
+     * <p>
+     * 默认实现逐个调用 putAndGetOld；内置索引会按锁粒度分组，每个锁在一批中只获取一次。
+     * 同一批中出现重复键时按顺序生效，前一次写入的地址会作为后一次的旧值返回。
+     * </p>
+     *
+     * @param keys         键列表
+     * @param addresses    新值的内存地址，与 keys 一一对应
+     * @param sizes        新值的大小，与 keys 一一对应
+     * @param oldAddresses 输出：旧值的内存地址，不存在时为 0
+     * @param oldSizes     输出：旧值的大小，不存在时为 0
+     */
+    default void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                        long[] oldAddresses, int[] oldSizes) {
+        IndexResultHolder holder = new IndexResultHolder();
+        for (int i = 0; i < keys.size(); i++) {
+            putAndGetOld(keys.get(i), addresses[i], sizes[i], holder);
+            oldAddresses[i] = holder.address;
+            oldSizes[i] = holder.size;
+        }
+    }
+
+    /**
+     * 批量获取键对应的内存地址
+     * <p>
+     * 默认实现逐个调用 get；内置索引会按锁粒度分组，每个锁在一批中只获取一次。
+     * </p>
+     *
+     * @param keys      键列表
+     * @param addresses 输出：内存地址，未找到时为 0
+     */
+    default void getAll(List<? extends K> keys, long[] addresses) {
+        for (int i = 0; i < keys.size(); i++) {
+            addresses[i] = get(keys.get(i));
+        }
+    }
+
+    /**
+     * 批量删除键并返回被删除值的信息
+     * <p>
+     * 默认实现逐个调用 removeAndGet；内置索引会按锁粒度分组，每个锁在一批中只获取一次。
+     * </p>
+     *
+     * @param keys         键列表
+     * @param oldAddresses 输出：被删除值的内存地址，不存在时为 0
+     * @param oldSizes     输出：被删除值的大小，不存在时为 0
+     */
+    default void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        IndexResultHolder holder = new IndexResultHolder();
+        for (int i = 0; i < keys.size(); i++) {
+            removeAndGet(keys.get(i), holder);
+            oldAddresses[i] = holder.address;
+            oldSizes[i] = holder.size;
+        }
+    }
+
     /**
      * 遍历所有索引条目
      * <p>
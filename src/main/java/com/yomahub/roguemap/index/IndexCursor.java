@@ -0,0 +1,24 @@
+package com.yomahub.roguemap.index;
+
+/**
+ * 索引分片的分块遍历游标
+ * <p>
+ * 每次 {@link #advance(int, IndexEntryConsumer)} 只在分片锁内处理有限数量的条目，
+ * 两次调用之间不持有任何锁，因此遍历是弱一致的：遍历开始后才写入或删除的条目可能可见也可能不可见。
+ * 游标不是线程安全的。
+ * </p>
+ */
+public interface IndexCursor {
+
+    /**
+     * 继续遍历，最多检查 limit 个位置
+     * <p>
+     * consumer 在分片锁内被调用，可以安全地读取值的内存，但不能对索引做写操作。
+     * </p>
+     *
+     * @param limit    本次最多检查的条目（或槽位）数
+     * @param consumer 条目消费者
+     * @return 分片中还有未遍历的条目返回 true，已遍历完返回 false
+     */
+    boolean advance(int limit, IndexEntryConsumer consumer);
+}
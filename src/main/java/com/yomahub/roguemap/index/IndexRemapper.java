@@ -0,0 +1,25 @@
+package com.yomahub.roguemap.index;
+
+/**
+ * 索引条目的读-改-写回调
+ * <p>
+ * 由 {@link Index#compute(Object, IndexRemapper)} 在键所在的锁（段锁、槽锁或整表写锁）内调用，
+ * 因此回调中不能再访问同一个索引，否则可能死锁。
+ * </p>
+ */
+@FunctionalInterface
+public interface IndexRemapper {
+
+    /**
+     * 根据当前条目计算新条目
+     * <p>
+     * 调用前 result 已被设置为当前条目（不存在时为 0）。回调不修改 result 表示保持不变；
+     * 将 result 设置为新的地址和大小表示替换；将地址设置为 0 表示删除。
+     * </p>
+     *
+     * @param address 当前值的内存地址，不存在时为 0
+     * @param size    当前值的大小，不存在时为 0
+     * @param result  输出：新值的地址和大小
+     */
+    void remap(long address, int size, IndexResultHolder result);
+}
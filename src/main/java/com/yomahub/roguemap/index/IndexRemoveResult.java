@@ -7,6 +7,12 @@ package com.yomahub.roguemap.index;
  * </p>
  */
 public class IndexRemoveResult {
+
+    /**
+     * 共享的"不存在"结果（不可变，可安全复用）
+     */
+    private static final IndexRemoveResult NOT_PRESENT = new IndexRemoveResult(0, 0, false);
+
     /**
      * 被删除值的内存地址（0 表示不存在）
      */
@@ -36,12 +42,12 @@ public class IndexRemoveResult {
     }
 
     /**
-     * 创建一个表示"不存在"的结果
+     * 获取表示"不存在"的结果
      *
      * @return 不存在的结果
      */
     public static IndexRemoveResult notPresent() {
-        return new IndexRemoveResult(0, 0, false);
+        return NOT_PRESENT;
     }
 
     /**
@@ -0,0 +1,53 @@
+package com.yomahub.roguemap.index;
+
+/**
+ * 可复用的索引操作结果持有者
+ * <p>
+ * 作为 putAndGetOld/removeAndGet 的输出参数使用，索引把旧值的地址和大小写入其中，
+ * 从而避免每次操作都分配 IndexUpdateResult/IndexRemoveResult 对象。
+ * 持有者不是线程安全的，通常每个线程复用一个实例，并在下一次索引操作前读出其中的值。
+ * </p>
+ */
+public class IndexResultHolder {
+
+    private static final ThreadLocal<IndexResultHolder> THREAD_LOCAL =
+            ThreadLocal.withInitial(IndexResultHolder::new);
+
+    /**
+     * 旧值（或被删除值）的内存地址，不存在时为 0
+     */
+    public long address;
+
+    /**
+     * 旧值（或被删除值）的大小（字节），不存在时为 0
+     */
+    public int size;
+
+    /**
+     * 获取当前线程复用的持有者
+     *
+     * @return 当前线程的持有者
+     */
+    public static IndexResultHolder threadLocal() {
+        return THREAD_LOCAL.get();
+    }
+
+    /**
+     * 设置结果
+     *
+     * @param address 内存地址
+     * @param size    大小
+     */
+    public void set(long address, int size) {
+        this.address = address;
+        this.size = size;
+    }
+
+    /**
+     * 重置为"不存在"的结果
+     */
+    public void reset() {
+        this.address = 0;
+        this.size = 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.yomahub.roguemap.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 基于 {@link IndexCursor} 的弱一致 Spliterator
+ * <p>
+ * 覆盖索引的一段分片区间，按分片（段或表区间）拆分以支持并行流；
+ * 每个分片按固定大小的块遍历，块之间不持有锁。元素在分片锁内由 mapper 生成，
+ * 因此 mapper 可以安全地解码值。
+ * </p>
+ *
+ * @param <T> 元素类型
+ */
+public class IndexSpliterator<T> implements Spliterator<T> {
+
+    /**
+     * 每次在分片锁内处理的最大条目数
+     */
+    public static final int CHUNK_SIZE = 256;
+
+    /**
+     * 在分片锁内把索引条目转换为元素，返回 null 时跳过该条目
+     *
+     * @param <T> 元素类型
+     */
+    @FunctionalInterface
+    public interface EntryMapper<T> {
+        T map(Object key, long address, int size);
+    }
+
+    private final Index<?> index;
+    private final EntryMapper<T> mapper;
+    private final List<T> buffer;
+    private final IndexEntryConsumer collector;
+    private int shard;
+    private int shardEnd;
+    private IndexCursor cursor;
+    private int bufferIndex;
+
+    public IndexSpliterator(Index<?> index, EntryMapper<T> mapper) {
+        this(index, mapper, 0, index.shardCount());
+    }
+
+    private IndexSpliterator(Index<?> index, EntryMapper<T> mapper, int shard, int shardEnd) {
+        this.index = index;
+        this.mapper = mapper;
+        this.shard = shard;
+        this.shardEnd = shardEnd;
+        this.buffer = new ArrayList<>();
+        this.collector = (key, address, size) -> {
+            T element = mapper.map(key, address, size);
+            if (element != null) {
+                buffer.add(element);
+            }
+        };
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action 不能为 null");
+        }
+        while (bufferIndex >= buffer.size()) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        action.accept(buffer.get(bufferIndex++));
+        return true;
+    }
+
+    /**
+     * 从当前分片读取下一块条目到缓冲区
+     *
+     * @return 全部分片已遍历完返回 false
+     */
+    private boolean fill() {
+        buffer.clear();
+        bufferIndex = 0;
+        while (shard < shardEnd) {
+            if (cursor == null) {
+                cursor = index.cursor(shard);
+            }
+            boolean more = cursor.advance(CHUNK_SIZE, collector);
+            if (!more) {
+                cursor = null;
+                shard++;
+            }
+            if (!buffer.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        // 正在遍历的分片留在当前 Spliterator 中，只拆分之后尚未开始的分片
+        int from = cursor == null ? shard : shard + 1;
+        int remaining = shardEnd - from;
+        if (remaining < (cursor == null ? 2 : 1)) {
+            return null;
+        }
+        int mid = from + remaining / 2;
+        IndexSpliterator<T> split = new IndexSpliterator<>(index, mapper, mid, shardEnd);
+        shardEnd = mid;
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        int totalShards = index.shardCount();
+        if (totalShards <= 0) {
+            return 0;
+        }
+        return (long) index.size() * (shardEnd - shard) / totalShards + (buffer.size() - bufferIndex);
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | CONCURRENT;
+    }
+}
@@ -7,6 +7,12 @@ package com.yomahub.roguemap.index;
  * </p>
  */
 public class IndexUpdateResult {
+
+    /**
+     * 共享的"不存在旧值"结果（不可变，可安全复用）
+     */
+    private static final IndexUpdateResult NO_OLD_VALUE = new IndexUpdateResult(0, 0, false);
+
     /**
      * 旧值的内存地址（0 表示之前不存在）
      */
@@ -36,12 +42,12 @@ public class IndexUpdateResult {
     }
 
     /**
-     * 创建一个表示"不存在旧值"的结果
+     * 获取表示"不存在旧值"的结果
      *
      * @return 不存在旧值的结果
      */
     public static IndexUpdateResult noOldValue() {
-        return new IndexUpdateResult(0, 0, false);
+        return NO_OLD_VALUE;
     }
 
     /**
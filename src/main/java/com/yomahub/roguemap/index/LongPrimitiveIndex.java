@@ -1,6 +1,9 @@
 package com.yomahub.roguemap.index;
 
+import com.yomahub.roguemap.memory.Allocator;
 import com.yomahub.roguemap.memory.UnsafeOps;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.StampedLock;
 
 /**
@@ -20,6 +23,7 @@ public class LongPrimitiveIndex implements Index<Long> {
     private static final long DELETED_KEY = Long.MIN_VALUE;
     private static final int DEFAULT_CAPACITY = 16;
     private static final float LOAD_FACTOR = 0.75f;
+    private static final int SCAN_SHARDS = 64; // 分块遍历的表区间数
 
     private long[] keys;           // 键数组（原始类型）
     private long[] addresses;      // 地址数组
@@ -27,6 +31,8 @@ public class LongPrimitiveIndex implements Index<Long> {
     private int size;              // 当前元素数量
     private int threshold;         // 扩容阈值
     private final StampedLock lock;
+    private final boolean[] dirtyRegions = new boolean[SCAN_SHARDS]; // 自上次检查点以来被修改过的表区间，由 lock 保护
+    private long layoutVersion;    // 扩容或清空时递增，由 lock 保护
 
     public LongPrimitiveIndex() {
         this(DEFAULT_CAPACITY);
@@ -72,6 +78,7 @@ public class LongPrimitiveIndex implements Index<Long> {
             size++;
         }
 
+        markDirty(index);
         keys[index] = key;
         addresses[index] = address;
         sizes[index] = valueSize;
@@ -79,9 +86,55 @@ public class LongPrimitiveIndex implements Index<Long> {
         return oldAddress;
     }
 
+    @Override
+    public boolean putIfAbsent(Long key, long address, int valueSize) {
+        if (key == null) {
+            throw new IllegalArgumentException("无效的键: null");
+        }
+        return putIfAbsent(key.longValue(), address, valueSize);
+    }
+
+    /**
+     * 仅当键不存在时将键值对放入索引（原始类型键，无装箱）
+     *
+     * @param key       键
+     * @param address   值存储的内存地址
+     * @param valueSize 值的字节大小
+     * @return 如果插入成功返回 true，键已存在返回 false
+     */
+    public boolean putIfAbsent(long key, long address, int valueSize) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
+            throw new IllegalArgumentException("无效的键: " + key);
+        }
+        if (address == 0) {
+            throw new IllegalArgumentException("无效的地址: 0");
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (probe(key) >= 0) {
+                return false;
+            }
+            putInternal(key, address, valueSize);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
     @Override
     public long get(Long key) {
-        if (key == null || key == EMPTY_KEY || key == DELETED_KEY) {
+        return key == null ? 0 : get(key.longValue());
+    }
+
+    /**
+     * 获取键对应的内存地址（原始类型键，无装箱）
+     *
+     * @param key 键
+     * @return 内存地址，如果未找到则返回 0
+     */
+    public long get(long key) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
             return 0;
         }
 
@@ -142,6 +195,7 @@ public class LongPrimitiveIndex implements Index<Long> {
             }
 
             long oldAddress = addresses[index];
+            markDirty(index);
             keys[index] = DELETED_KEY;  // 标记为已删除
             addresses[index] = 0;
             sizes[index] = 0;
@@ -155,7 +209,35 @@ public class LongPrimitiveIndex implements Index<Long> {
 
     @Override
     public IndexUpdateResult putAndGetOld(Long key, long newAddress, int newSize) {
-        if (key == null || key == EMPTY_KEY || key == DELETED_KEY) {
+        if (key == null) {
+            throw new IllegalArgumentException("无效的键: null");
+        }
+        IndexResultHolder holder = new IndexResultHolder();
+        if (putAndGetOld(key.longValue(), newAddress, newSize, holder)) {
+            return IndexUpdateResult.withOldValue(holder.address, holder.size);
+        }
+        return IndexUpdateResult.noOldValue();
+    }
+
+    @Override
+    public boolean putAndGetOld(Long key, long newAddress, int newSize, IndexResultHolder holder) {
+        if (key == null) {
+            throw new IllegalArgumentException("无效的键: null");
+        }
+        return putAndGetOld(key.longValue(), newAddress, newSize, holder);
+    }
+
+    /**
+     * 原子性地更新索引，并将旧值信息写入持有者（原始类型键，无装箱、无分配）
+     *
+     * @param key        键
+     * @param newAddress 新值的内存地址
+     * @param newSize    新值的大小
+     * @param holder     用于接收旧值地址和大小的持有者
+     * @return 如果存在旧值返回 true，否则返回 false
+     */
+    public boolean putAndGetOld(long key, long newAddress, int newSize, IndexResultHolder holder) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
             throw new IllegalArgumentException("无效的键: " + key);
         }
         if (newAddress == 0) {
@@ -169,23 +251,21 @@ public class LongPrimitiveIndex implements Index<Long> {
             }
 
             int index = findSlot(key);
-            long oldAddress = addresses[index];
-            int oldSize = sizes[index];
             boolean wasPresent = (keys[index] != EMPTY_KEY && keys[index] != DELETED_KEY);
 
-            if (!wasPresent) {
+            if (wasPresent) {
+                holder.set(addresses[index], sizes[index]);
+            } else {
+                holder.reset();
                 size++;
             }
 
+            markDirty(index);
             keys[index] = key;
             addresses[index] = newAddress;
             sizes[index] = newSize;
 
-            if (wasPresent) {
-                return IndexUpdateResult.withOldValue(oldAddress, oldSize);
-            } else {
-                return IndexUpdateResult.noOldValue();
-            }
+            return wasPresent;
         } finally {
             lock.unlockWrite(stamp);
         }
@@ -193,26 +273,287 @@ public class LongPrimitiveIndex implements Index<Long> {
 
     @Override
     public IndexRemoveResult removeAndGet(Long key) {
-        if (key == null || key == EMPTY_KEY || key == DELETED_KEY) {
+        if (key == null) {
             return IndexRemoveResult.notPresent();
         }
+        IndexResultHolder holder = new IndexResultHolder();
+        if (removeAndGet(key.longValue(), holder)) {
+            return IndexRemoveResult.removed(holder.address, holder.size);
+        }
+        return IndexRemoveResult.notPresent();
+    }
+
+    @Override
+    public boolean removeAndGet(Long key, IndexResultHolder holder) {
+        if (key == null) {
+            holder.reset();
+            return false;
+        }
+        return removeAndGet(key.longValue(), holder);
+    }
+
+    /**
+     * 原子性地删除键，并将被删除值的信息写入持有者（原始类型键，无装箱、无分配）
+     *
+     * @param key    键
+     * @param holder 用于接收被删除值地址和大小的持有者
+     * @return 如果键存在并已删除返回 true，否则返回 false
+     */
+    public boolean removeAndGet(long key, IndexResultHolder holder) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
+            holder.reset();
+            return false;
+        }
 
         long stamp = lock.writeLock();
         try {
             int index = probe(key);
             if (index < 0) {
-                return IndexRemoveResult.notPresent();
+                holder.reset();
+                return false;
             }
 
-            long oldAddress = addresses[index];
-            int oldSize = sizes[index];
+            holder.set(addresses[index], sizes[index]);
 
+            markDirty(index);
             keys[index] = DELETED_KEY;
             addresses[index] = 0;
             sizes[index] = 0;
             size--;
 
-            return IndexRemoveResult.removed(oldAddress, oldSize);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void compute(Long key, IndexRemapper remapper) {
+        if (key == null) {
+            throw new IllegalArgumentException("无效的键: null");
+        }
+        compute(key.longValue(), remapper);
+    }
+
+    /**
+     * 在写锁内执行读-改-写（原始类型键，无装箱）
+     *
+     * @param key      键
+     * @param remapper 计算新条目的回调
+     */
+    public void compute(long key, IndexRemapper remapper) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
+            throw new IllegalArgumentException("无效的键: " + key);
+        }
+
+        IndexResultHolder result = new IndexResultHolder();
+        long stamp = lock.writeLock();
+        try {
+            int index = probe(key);
+            long oldAddress = index >= 0 ? addresses[index] : 0;
+            int oldSize = index >= 0 ? sizes[index] : 0;
+            result.set(oldAddress, oldSize);
+            remapper.remap(oldAddress, oldSize, result);
+
+            if (result.address == 0) {
+                if (index >= 0) {
+                    markDirty(index);
+                    keys[index] = DELETED_KEY;
+                    addresses[index] = 0;
+                    sizes[index] = 0;
+                    size--;
+                }
+            } else if (index >= 0) {
+                markDirty(index);
+                addresses[index] = result.address;
+                sizes[index] = result.size;
+            } else {
+                putInternal(key, result.address, result.size);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int shardCount() {
+        return SCAN_SHARDS;
+    }
+
+    /**
+     * 按表区间分块遍历：分片 shard 覆盖当前表的 [len * shard / SCAN_SHARDS, len * (shard + 1) / SCAN_SHARDS) 槽位。
+     * 两块之间若发生扩容，游标按新旧容量比例换算位置，此时被搬迁的条目可能被重复或遗漏。
+     */
+    @Override
+    public IndexCursor cursor(int shard) {
+        return new IndexCursor() {
+            private int tableLength = -1;
+            private int next;
+            private int end;
+
+            @Override
+            public boolean advance(int limit, IndexEntryConsumer consumer) {
+                long stamp = lock.readLock();
+                try {
+                    int length = keys.length;
+                    if (tableLength != length) {
+                        next = tableLength < 0
+                                ? (int) ((long) length * shard / SCAN_SHARDS)
+                                : (int) ((long) next * length / tableLength);
+                        end = (int) ((long) length * (shard + 1) / SCAN_SHARDS);
+                        tableLength = length;
+                    }
+
+                    int stop = Math.min(end, next + limit);
+                    for (; next < stop; next++) {
+                        long key = keys[next];
+                        if (key != EMPTY_KEY && key != DELETED_KEY) {
+                            consumer.accept(key, addresses[next], sizes[next]);
+                        }
+                    }
+                    return next < end;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+        };
+    }
+
+    /**
+     * 写入时标记槽位所在的表区间，扩容和清空时标记全部区间
+     */
+    @Override
+    public void drainDirtyShards(boolean[] dirty) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < SCAN_SHARDS; i++) {
+                if (dirtyRegions[i]) {
+                    dirtyRegions[i] = false;
+                    dirty[i] = true;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long shardLayoutVersion() {
+        long stamp = lock.readLock();
+        try {
+            return layoutVersion;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void markDirty(int index) {
+        dirtyRegions[(int) ((long) index * SCAN_SHARDS / keys.length)] = true;
+    }
+
+    @Override
+    public boolean supportsValueLock() {
+        return true;
+    }
+
+    @Override
+    public long lockValue(Long key, IndexResultHolder result) {
+        if (key == null) {
+            throw new IllegalArgumentException("无效的键: null");
+        }
+        long stamp = lock.readLock();
+        long rawKey = key;
+        int index = (rawKey == EMPTY_KEY || rawKey == DELETED_KEY) ? -1 : probe(rawKey);
+        if (index >= 0) {
+            result.set(addresses[index], sizes[index]);
+        } else {
+            result.reset();
+        }
+        return stamp;
+    }
+
+    @Override
+    public void unlockValue(Long key, long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    @Override
+    public void putAll(List<? extends Long> batchKeys, long[] newAddresses, int[] newSizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        int n = batchKeys.size();
+        long[] rawKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            Long key = batchKeys.get(i);
+            if (key == null || key == EMPTY_KEY || key == DELETED_KEY) {
+                throw new IllegalArgumentException("无效的键: " + key);
+            }
+            rawKeys[i] = key;
+        }
+
+        // 整批只获取一次写锁
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < n; i++) {
+                if (size >= threshold) {
+                    resize();
+                }
+
+                int index = findSlot(rawKeys[i]);
+                if (keys[index] != EMPTY_KEY && keys[index] != DELETED_KEY) {
+                    oldAddresses[i] = addresses[index];
+                    oldSizes[i] = sizes[index];
+                } else {
+                    oldAddresses[i] = 0;
+                    oldSizes[i] = 0;
+                    size++;
+                }
+
+                markDirty(index);
+                keys[index] = rawKeys[i];
+                addresses[index] = newAddresses[i];
+                sizes[index] = newSizes[i];
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void getAll(List<? extends Long> batchKeys, long[] foundAddresses) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < batchKeys.size(); i++) {
+                Long key = batchKeys.get(i);
+                int index = (key == null || key == EMPTY_KEY || key == DELETED_KEY) ? -1 : probe(key);
+                foundAddresses[i] = (index >= 0) ? addresses[index] : 0;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void removeAll(List<? extends Long> batchKeys, long[] oldAddresses, int[] oldSizes) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < batchKeys.size(); i++) {
+                Long key = batchKeys.get(i);
+                int index = (key == null || key == EMPTY_KEY || key == DELETED_KEY) ? -1 : probe(key);
+                if (index < 0) {
+                    oldAddresses[i] = 0;
+                    oldSizes[i] = 0;
+                    continue;
+                }
+
+                oldAddresses[i] = addresses[index];
+                oldSizes[i] = sizes[index];
+
+                markDirty(index);
+                keys[index] = DELETED_KEY;
+                addresses[index] = 0;
+                sizes[index] = 0;
+                size--;
+            }
         } finally {
             lock.unlockWrite(stamp);
         }
@@ -242,6 +583,57 @@ public class LongPrimitiveIndex implements Index<Long> {
         return get(key) != 0;
     }
 
+    /**
+     * 检查键是否存在于索引中（原始类型键，无装箱）
+     *
+     * @param key 键
+     * @return 如果存在返回 true，否则返回 false
+     */
+    public boolean containsKey(long key) {
+        return get(key) != 0;
+    }
+
+    /**
+     * 原子性地将增量累加到键对应的 long 值上（要求值为 8 字节的 long）
+     * <p>
+     * 键已存在时在写锁保护下原地修改值，不分配新内存；
+     * 键不存在时从分配器申请 8 字节写入增量并插入索引。
+     * </p>
+     *
+     * @param key       键
+     * @param delta     增量
+     * @param allocator 键不存在时用于分配值内存的分配器
+     * @return 累加前的值，如果键之前不存在则返回 0
+     */
+    public long addToLong(long key, long delta, Allocator allocator) {
+        if (key == EMPTY_KEY || key == DELETED_KEY) {
+            throw new IllegalArgumentException("无效的键: " + key);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int index = probe(key);
+            if (index >= 0) {
+                long address = addresses[index];
+                long oldValue = UnsafeOps.getLong(address);
+                UnsafeOps.putLong(address, oldValue + delta);
+                allocator.markDirty(address, 8);
+                return oldValue;
+            }
+
+            long address = allocator.allocate(8);
+            if (address == 0) {
+                throw new OutOfMemoryError("分配 8 字节失败");
+            }
+            UnsafeOps.putLong(address, delta);
+            allocator.markDirty(address, 8);
+            putInternal(key, address, 8);
+            return 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
     @Override
     public int size() {
         return size;
@@ -251,6 +643,8 @@ public class LongPrimitiveIndex implements Index<Long> {
     public void clear() {
         long stamp = lock.writeLock();
         try {
+            layoutVersion++;
+            Arrays.fill(dirtyRegions, true);
             keys = new long[DEFAULT_CAPACITY];
             addresses = new long[DEFAULT_CAPACITY];
             sizes = new int[DEFAULT_CAPACITY];
@@ -346,6 +740,8 @@ public class LongPrimitiveIndex implements Index<Long> {
         long[] oldAddresses = addresses;
         int[] oldSizes = sizes;
 
+        layoutVersion++;
+        Arrays.fill(dirtyRegions, true);
         keys = new long[newCapacity];
         addresses = new long[newCapacity];
         sizes = new int[newCapacity];
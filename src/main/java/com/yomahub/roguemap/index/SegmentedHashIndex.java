@@ -4,7 +4,9 @@ import com.yomahub.roguemap.memory.UnsafeOps;
 import com.yomahub.roguemap.serialization.Codec;
 
 import java.util.concurrent.locks.StampedLock;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -74,6 +76,37 @@ public class SegmentedHashIndex<K> implements Index<K> {
         return oldAddress;
     }
 
+    @Override
+    public boolean putIfAbsent(K key, long address, int valueSize) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (address == 0) {
+            throw new IllegalArgumentException("无效的地址: 0");
+        }
+
+        Segment<K> segment = getSegment(key);
+        boolean inserted = segment.putIfAbsent(key, address, valueSize);
+
+        if (inserted) {
+            size.incrementAndGet();
+        }
+
+        return inserted;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+
+        int delta = getSegment(key).compute(key, remapper);
+        if (delta != 0) {
+            size.addAndGet(delta);
+        }
+    }
+
     @Override
     public long get(K key) {
         if (key == null) {
@@ -145,6 +178,176 @@ public class SegmentedHashIndex<K> implements Index<K> {
         return result;
     }
 
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        if (newAddress == 0) {
+            throw new IllegalArgumentException("无效的地址: 0");
+        }
+
+        Segment<K> segment = getSegment(key);
+        boolean wasPresent = segment.putAndGetOld(key, newAddress, newSize, holder);
+
+        if (!wasPresent) {
+            size.incrementAndGet();
+        }
+
+        return wasPresent;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        if (key == null) {
+            holder.reset();
+            return false;
+        }
+
+        Segment<K> segment = getSegment(key);
+        boolean wasPresent = segment.removeAndGet(key, holder);
+
+        if (wasPresent) {
+            size.decrementAndGet();
+        }
+
+        return wasPresent;
+    }
+
+    @Override
+    public int shardCount() {
+        return segments.length;
+    }
+
+    @Override
+    public IndexCursor cursor(int shard) {
+        return segments[shard].cursor();
+    }
+
+    /**
+     * 每个段有一个修改标记，写锁内设置，取出时清除
+     */
+    @Override
+    public void drainDirtyShards(boolean[] dirty) {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].dirty) {
+                segments[i].dirty = false;
+                dirty[i] = true;
+            }
+        }
+    }
+
+    /**
+     * 键按哈希值分段，所在的段只由键决定
+     */
+    @Override
+    public boolean hasStableShards() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsValueLock() {
+        return true;
+    }
+
+    @Override
+    public long lockValue(K key, IndexResultHolder result) {
+        if (key == null) {
+            throw new IllegalArgumentException("键不能为 null");
+        }
+        return getSegment(key).lockValue(key, result);
+    }
+
+    @Override
+    public void unlockValue(K key, long stamp) {
+        getSegment(key).lock.unlockRead(stamp);
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        int[] segmentStarts = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, segmentStarts);
+
+        int added = 0;
+        for (int s = 0; s < segments.length; s++) {
+            int from = segmentStarts[s];
+            int to = segmentStarts[s + 1];
+            if (from < to) {
+                added += segments[s].putAll(keys, order, from, to, addresses, sizes, oldAddresses, oldSizes);
+            }
+        }
+
+        if (added != 0) {
+            size.addAndGet(added);
+        }
+    }
+
+    @Override
+    public void getAll(List<? extends K> keys, long[] addresses) {
+        int[] segmentStarts = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, segmentStarts);
+
+        for (int s = 0; s < segments.length; s++) {
+            int from = segmentStarts[s];
+            int to = segmentStarts[s + 1];
+            if (from < to) {
+                segments[s].getAll(keys, order, from, to, addresses);
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        int[] segmentStarts = new int[segments.length + 1];
+        int[] order = groupBySegment(keys, segmentStarts);
+
+        int removed = 0;
+        for (int s = 0; s < segments.length; s++) {
+            int from = segmentStarts[s];
+            int to = segmentStarts[s + 1];
+            if (from < to) {
+                removed += segments[s].removeAll(keys, order, from, to, oldAddresses, oldSizes);
+            }
+        }
+
+        if (removed != 0) {
+            size.addAndGet(-removed);
+        }
+    }
+
+    /**
+     * 按段对一批键分组（稳定的计数排序）
+     *
+     * @param keys          键列表（不能包含 null）
+     * @param segmentStarts 输出：长度为段数 + 1，第 s 段的键位于 order[segmentStarts[s], segmentStarts[s + 1])
+     * @return 按段排列的键下标
+     */
+    private int[] groupBySegment(List<? extends K> keys, int[] segmentStarts) {
+        int n = keys.size();
+        int[] segmentOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            K key = keys.get(i);
+            if (key == null) {
+                throw new IllegalArgumentException("键不能为 null");
+            }
+            int s = getSegmentIndex(key);
+            segmentOf[i] = s;
+            segmentStarts[s + 1]++;
+        }
+
+        for (int s = 0; s < segments.length; s++) {
+            segmentStarts[s + 1] += segmentStarts[s];
+        }
+
+        int[] next = Arrays.copyOf(segmentStarts, segments.length);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[next[segmentOf[i]]++] = i;
+        }
+        return order;
+    }
+
     @Override
     public void forEach(IndexEntryConsumer consumer) {
         if (consumer == null) {
@@ -272,6 +475,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
     private static class Segment<K> {
         private final StampedLock lock;
         private final Map<K, Entry> map;
+        volatile boolean dirty; // 自上次检查点以来是否被修改过，在写锁内设置
 
         Segment(int initialCapacity) {
             this.lock = new StampedLock();
@@ -341,6 +545,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         int deserialize(long address, Codec<K> keyCodec) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 map.clear();
                 long currentAddr = address;
@@ -420,6 +625,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         int deserializeWithOffsets(long address, Codec<K> keyCodec, long baseAddress) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 map.clear();
                 long currentAddr = address;
@@ -460,6 +666,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         long put(K key, long address, int size) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 Entry oldEntry = map.put(key, new Entry(address, size));
                 return oldEntry != null ? oldEntry.address : 0;
@@ -468,6 +675,100 @@ public class SegmentedHashIndex<K> implements Index<K> {
             }
         }
 
+        boolean putIfAbsent(K key, long address, int size) {
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                if (map.containsKey(key)) {
+                    return false;
+                }
+                map.put(key, new Entry(address, size));
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 段内分块遍历：首次前进时在读锁内复制段的键快照，
+         * 之后每块重新获取读锁并按键查找，跳过已被删除的键
+         */
+        IndexCursor cursor() {
+            return new IndexCursor() {
+                private Object[] snapshot;
+                private int next;
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public boolean advance(int limit, IndexEntryConsumer consumer) {
+                    long stamp = lock.readLock();
+                    try {
+                        if (snapshot == null) {
+                            snapshot = map.keySet().toArray();
+                        }
+                        int end = Math.min(snapshot.length, next + limit);
+                        for (; next < end; next++) {
+                            Object key = snapshot[next];
+                            Entry entry = map.get((K) key);
+                            if (entry != null) {
+                                consumer.accept(key, entry.address, entry.size);
+                            }
+                        }
+                        return next < snapshot.length;
+                    } finally {
+                        lock.unlockRead(stamp);
+                    }
+                }
+            };
+        }
+
+        long lockValue(K key, IndexResultHolder result) {
+            long stamp = lock.readLock();
+            Entry entry = map.get(key);
+            if (entry != null) {
+                result.set(entry.address, entry.size);
+            } else {
+                result.reset();
+            }
+            return stamp;
+        }
+
+        /**
+         * 在段写锁内执行读-改-写
+         *
+         * @return 条目数量的变化（+1 新增，-1 删除，0 不变或替换）
+         */
+        int compute(K key, IndexRemapper remapper) {
+            IndexResultHolder result = new IndexResultHolder();
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                Entry entry = map.get(key);
+                long oldAddress = entry != null ? entry.address : 0;
+                int oldSize = entry != null ? entry.size : 0;
+                result.set(oldAddress, oldSize);
+                remapper.remap(oldAddress, oldSize, result);
+
+                if (result.address == 0) {
+                    if (entry != null) {
+                        map.remove(key);
+                        return -1;
+                    }
+                    return 0;
+                }
+                if (entry == null) {
+                    map.put(key, new Entry(result.address, result.size));
+                    return 1;
+                }
+                if (result.address != oldAddress || result.size != oldSize) {
+                    entry.update(result.address, result.size);
+                }
+                return 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
         // 用于反序列化时强制放入数据（不需要锁，因为此时没有其他线程访问）
         void forcePut(K key, Entry entry) {
             map.put(key, entry);
@@ -511,6 +812,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         long remove(K key) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 Entry entry = map.remove(key);
                 return entry != null ? entry.address : 0;
@@ -521,6 +823,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 Entry oldEntry = map.put(key, new Entry(newAddress, newSize));
                 if (oldEntry != null) {
@@ -535,6 +838,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         IndexRemoveResult removeAndGet(K key) {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 Entry entry = map.remove(key);
                 if (entry != null) {
@@ -547,6 +851,107 @@ public class SegmentedHashIndex<K> implements Index<K> {
             }
         }
 
+        /**
+         * 键已存在时原地更新 Entry，稳态覆盖写不产生任何堆分配
+         */
+        boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                Entry entry = map.get(key);
+                if (entry != null) {
+                    holder.set(entry.address, entry.size);
+                    entry.update(newAddress, newSize);
+                    return true;
+                }
+                map.put(key, new Entry(newAddress, newSize));
+                holder.reset();
+                return false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean removeAndGet(K key, IndexResultHolder holder) {
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                Entry entry = map.remove(key);
+                if (entry != null) {
+                    holder.set(entry.address, entry.size);
+                    return true;
+                }
+                holder.reset();
+                return false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int putAll(List<? extends K> keys, int[] order, int from, int to,
+                   long[] addresses, int[] sizes, long[] oldAddresses, int[] oldSizes) {
+            int added = 0;
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                for (int j = from; j < to; j++) {
+                    int i = order[j];
+                    K key = keys.get(i);
+                    Entry entry = map.get(key);
+                    if (entry != null) {
+                        oldAddresses[i] = entry.address;
+                        oldSizes[i] = entry.size;
+                        entry.update(addresses[i], sizes[i]);
+                    } else {
+                        oldAddresses[i] = 0;
+                        oldSizes[i] = 0;
+                        map.put(key, new Entry(addresses[i], sizes[i]));
+                        added++;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            return added;
+        }
+
+        void getAll(List<? extends K> keys, int[] order, int from, int to, long[] addresses) {
+            long stamp = lock.readLock();
+            try {
+                for (int j = from; j < to; j++) {
+                    int i = order[j];
+                    Entry entry = map.get(keys.get(i));
+                    addresses[i] = entry != null ? entry.address : 0;
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int removeAll(List<? extends K> keys, int[] order, int from, int to,
+                      long[] oldAddresses, int[] oldSizes) {
+            int removed = 0;
+            long stamp = lock.writeLock();
+            dirty = true;
+            try {
+                for (int j = from; j < to; j++) {
+                    int i = order[j];
+                    Entry entry = map.remove(keys.get(i));
+                    if (entry != null) {
+                        oldAddresses[i] = entry.address;
+                        oldSizes[i] = entry.size;
+                        removed++;
+                    } else {
+                        oldAddresses[i] = 0;
+                        oldSizes[i] = 0;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            return removed;
+        }
+
         void forEach(IndexEntryConsumer consumer) {
             long stamp = lock.readLock();
             try {
@@ -578,6 +983,7 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
         void clear() {
             long stamp = lock.writeLock();
+            dirty = true;
             try {
                 map.clear();
             } finally {
@@ -588,15 +994,23 @@ public class SegmentedHashIndex<K> implements Index<K> {
 
     /**
      * Entry 保存值的内存地址和大小
+     * <p>
+     * 字段只在段写锁内修改；使用 volatile 保证乐观读在锁外读取时的可见性。
+     * </p>
      */
     private static class Entry {
-        final long address;
-        final int size;
+        volatile long address;
+        volatile int size;
 
         Entry(long address, int size) {
             this.address = address;
             this.size = size;
         }
+
+        void update(long address, int size) {
+            this.address = address;
+            this.size = size;
+        }
     }
 
     @Override
@@ -21,6 +21,46 @@ public interface Allocator extends AutoCloseable {
      */
     void free(long address, int size);
 
+    /**
+     * 批量分配内存，要么全部成功，要么全部失败
+     * <p>
+     * 默认实现逐个调用 {@link #allocate(int)}，失败时释放本批已分配的内存；
+     * 实现类可以覆盖此方法以减少批量分配时的同步开销。
+     * </p>
+     *
+     * @param sizes     每块内存的字节大小
+     * @param addresses 输出：每块内存的地址
+     * @param count     要分配的块数
+     * @return 全部分配成功返回 true，否则返回 false（此时不保留任何已分配内存）
+     */
+    default boolean allocateBatch(int[] sizes, long[] addresses, int count) {
+        for (int i = 0; i < count; i++) {
+            long address = allocate(sizes[i]);
+            if (address == 0) {
+                for (int j = 0; j < i; j++) {
+                    free(addresses[j], sizes[j]);
+                    addresses[j] = 0;
+                }
+                return false;
+            }
+            addresses[i] = address;
+        }
+        return true;
+    }
+
+    /**
+     * 标记一段已分配的内存被写入过
+     * <p>
+     * 持久化分配器只把标记过的区域同步到磁盘，分配本身不标记：写入方在写完新分配的内存（值编码完成后）
+     * 或原地修改已有的值（例如原子数值操作）之后调用。默认实现不做任何事。
+     * </p>
+     *
+     * @param address 内存地址
+     * @param size    字节数
+     */
+    default void markDirty(long address, long size) {
+    }
+
     /**
      * 获取总分配内存字节数
      *
@@ -0,0 +1,156 @@
+package com.yomahub.roguemap.memory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * 计算内存区域的 CRC32C（Castagnoli）校验和
+ * <p>
+ * 运行在 Java 9 及以上时使用 java.util.zip.CRC32C（JIT 内建为 SSE4.2 / ARMv8 CRC 指令），
+ * Java 8 上退回查表实现，两者结果相同，同一个文件可以在不同版本的 JVM 之间校验。
+ * 实例不是线程安全的。
+ * </p>
+ */
+public final class Crc32c {
+
+    private static final int POLYNOMIAL = 0x82F63B78; // 反射形式的 Castagnoli 多项式
+    private static final int MAX_CHUNK = 1 << 30;
+
+    private static final MethodHandle NEW_CRC32C;   // () -> Checksum，不可用时为 null
+    private static final MethodHandle UPDATE_BUFFER; // (Checksum, ByteBuffer) -> void
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+
+        MethodHandle constructor = null;
+        MethodHandle update = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> type = Class.forName("java.util.zip.CRC32C");
+            constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            update = lookup.findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            constructor = null;
+            update = null;
+        }
+        NEW_CRC32C = constructor;
+        UPDATE_BUFFER = update;
+    }
+
+    private final Checksum checksum; // JDK 的 CRC32C，不可用时为 null
+    private int crc = ~0;            // 查表实现的中间状态
+
+    public Crc32c() {
+        this.checksum = NEW_CRC32C != null ? newChecksum() : null;
+    }
+
+    /**
+     * 计算内存区域的 CRC32C
+     *
+     * @param address 起始地址
+     * @param size    字节数
+     * @return 校验和
+     */
+    public static int compute(long address, long size) {
+        return new Crc32c().update(address, size).getValue();
+    }
+
+    /**
+     * 把内存区域追加到校验和
+     *
+     * @param address 起始地址
+     * @param size    字节数
+     * @return 此实例
+     */
+    public Crc32c update(long address, long size) {
+        while (size > 0) {
+            int chunk = (int) Math.min(size, MAX_CHUNK);
+            if (checksum != null) {
+                updateBuffer(UnsafeOps.wrapReadOnly(address, chunk));
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    crc = TABLE[(crc ^ UnsafeOps.getByte(address + i)) & 0xFF] ^ (crc >>> 8);
+                }
+            }
+            address += chunk;
+            size -= chunk;
+        }
+        return this;
+    }
+
+    /**
+     * 把字节数组的一段追加到校验和
+     *
+     * @param bytes  字节数组
+     * @param offset 起始位置
+     * @param length 字节数
+     * @return 此实例
+     */
+    public Crc32c update(byte[] bytes, int offset, int length) {
+        if (checksum != null) {
+            checksum.update(bytes, offset, length);
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                crc = TABLE[(crc ^ bytes[i]) & 0xFF] ^ (crc >>> 8);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 获取当前的校验和
+     *
+     * @return 校验和
+     */
+    public int getValue() {
+        return checksum != null ? (int) checksum.getValue() : ~crc;
+    }
+
+    /**
+     * 是否使用 JDK 内建的硬件加速实现
+     *
+     * @return Java 9 及以上返回 true
+     */
+    public static boolean isIntrinsic() {
+        return NEW_CRC32C != null;
+    }
+
+    /**
+     * 只使用查表实现计算（供测试与 JDK 实现对照）
+     */
+    static int computeTable(long address, int size) {
+        int crc = ~0;
+        for (int i = 0; i < size; i++) {
+            crc = TABLE[(crc ^ UnsafeOps.getByte(address + i)) & 0xFF] ^ (crc >>> 8);
+        }
+        return ~crc;
+    }
+
+    private static Checksum newChecksum() {
+        try {
+            return (Checksum) NEW_CRC32C.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建 CRC32C 失败", e);
+        }
+    }
+
+    private void updateBuffer(ByteBuffer buffer) {
+        try {
+            UPDATE_BUFFER.invokeExact(checksum, buffer);
+        } catch (Throwable e) {
+            throw new IllegalStateException("计算 CRC32C 失败", e);
+        }
+    }
+}
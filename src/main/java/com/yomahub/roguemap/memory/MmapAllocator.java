@@ -3,12 +3,27 @@ package com.yomahub.roguemap.memory;
 import com.yomahub.roguemap.util.TempFileManager;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 基于内存映射文件的内存分配器
@@ -18,11 +33,49 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * 注意：Java 8 的 MappedByteBuffer 单个分段最大支持 Integer.MAX_VALUE (约2GB)
  * 对于更大的文件，会自动分成多个分段
+ *
+ * 写入的区域按 64KB 记在脏区位图中：写入方在写完分配到的内存或原地修改之后通过 {@link #markDirty} 标记，
+ * 分配本身不标记，因此跨过一次刷新才写完的值由下一次刷新同步。
+ * {@link #flush()} 只同步脏区合并成的连续区间（Java 13 及以上使用 MappedByteBuffer.force(index, length)，
+ * 更早的版本只同步含有脏区的分段），写入量小时不需要让内核扫描整个映射。
+ *
+ * 持久化文件用文件锁协调多个进程：读写打开持有排他锁，{@link #openReadOnly(String)} 只读映射并持有共享锁，
+ * 因此多个进程可以同时只读打开同一个文件，但不能与读写打开同时存在；
+ * {@link #openLiveReader(String)} 不加锁，用于与写入进程同时读取共享索引。
  */
 public class MmapAllocator implements Allocator {
 
     private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE; // 约 2GB
 
+    /**
+     * 脏区位图的粒度
+     */
+    public static final int DIRTY_REGION_SIZE = 64 * 1024;
+
+    private static final long FLUSH_POLL_MILLIS = 100;
+
+    // 文件锁锁住文件末尾之外的一个字节，不与映射的数据重叠（Windows 上文件锁是强制的）
+    private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+
+    /**
+     * 同一个 JVM 内对同一文件的文件锁不能重叠，按文件记录本进程的打开情况，由自身同步
+     */
+    private static final Map<String, ProcessLock> PROCESS_LOCKS = new HashMap<>();
+
+    private static final MethodHandle FORCE_RANGE; // (MappedByteBuffer, int, int) -> void，Java 13 以下为 null
+
+    static {
+        MethodHandle force = null;
+        try {
+            force = MethodHandles.publicLookup().findVirtual(MappedByteBuffer.class, "force",
+                    MethodType.methodType(MappedByteBuffer.class, int.class, int.class))
+                    .asType(MethodType.methodType(void.class, MappedByteBuffer.class, int.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            force = null;
+        }
+        FORCE_RANGE = force;
+    }
+
     private final File file;
     private final long fileSize;
     private final List<MappedByteBuffer> segments;
@@ -33,6 +86,17 @@ public class MmapAllocator implements Allocator {
     private final long segmentSize;
     private final int segmentCount;
     private final boolean isTemporary;
+    private final boolean readOnly;
+    private final boolean fileLocking; // 实时读者不持有文件锁
+    private ProcessLock processLock; // 持有文件锁时不为 null
+    private long[] sortedSegmentBases = new long[0];
+    private long[] sortedSegmentEnds = new long[0];
+    private long[] sortedSegmentOffsets = new long[0];
+    private final AtomicLongArray dirtyRegions;  // 上次刷新之后标记的脏区
+    private final LongAdder dirtyBytes = new LongAdder();
+    private final Object flushLock = new Object();
+    private volatile long lastFlushMillis = System.currentTimeMillis();
+    private ScheduledExecutorService flusher; // 后台刷盘线程，未启动时为 null
 
     /**
      * 创建 MmapAllocator（持久化模式）
@@ -52,11 +116,59 @@ public class MmapAllocator implements Allocator {
      * @param isTemporary 是否为临时文件模式
      */
     public MmapAllocator(String filePath, long fileSize, boolean isTemporary) {
+        this(filePath, fileSize, isTemporary, false, true);
+    }
+
+    /**
+     * 只读映射已有的持久化文件
+     * <p>
+     * 文件按实际长度以 READ_ONLY 方式映射，不能分配也不会刷盘；持有共享文件锁，
+     * 文件正被其他进程读写打开时抛出 IllegalStateException。
+     * </p>
+     *
+     * @param filePath 文件路径
+     * @return 只读分配器
+     */
+    public static MmapAllocator openReadOnly(String filePath) {
+        if (filePath == null || filePath.isEmpty()) {
+            throw new IllegalArgumentException("文件路径不能为空");
+        }
+        File file = new File(filePath);
+        if (file.length() < com.yomahub.roguemap.storage.MmapFileHeader.HEADER_SIZE) {
+            throw new IllegalStateException("只读模式需要已有数据的文件: " + file.getAbsolutePath());
+        }
+        return new MmapAllocator(filePath, file.length(), false, true, true);
+    }
+
+    /**
+     * 只读映射正被其他进程写入的持久化文件，不持有文件锁
+     * <p>
+     * 用于读取共享索引：写入进程以固定大小创建文件且从不扩展，映射整个文件后就能看到之后的所有写入。
+     * </p>
+     *
+     * @param filePath 文件路径
+     * @return 只读分配器
+     */
+    public static MmapAllocator openLiveReader(String filePath) {
+        if (filePath == null || filePath.isEmpty()) {
+            throw new IllegalArgumentException("文件路径不能为空");
+        }
+        File file = new File(filePath);
+        if (file.length() < com.yomahub.roguemap.storage.MmapFileHeader.HEADER_SIZE) {
+            throw new IllegalStateException("只读模式需要已有数据的文件: " + file.getAbsolutePath());
+        }
+        return new MmapAllocator(filePath, file.length(), false, true, false);
+    }
+
+    private MmapAllocator(String filePath, long fileSize, boolean isTemporary, boolean readOnly,
+                          boolean fileLocking) {
         if (fileSize <= 0) {
             throw new IllegalArgumentException("文件大小必须为正数");
         }
 
         this.isTemporary = isTemporary;
+        this.readOnly = readOnly;
+        this.fileLocking = fileLocking;
 
         // 如果是临时文件模式且未指定路径，自动生成临时文件
         if (isTemporary && (filePath == null || filePath.isEmpty())) {
@@ -77,6 +189,8 @@ public class MmapAllocator implements Allocator {
         // 计算需要的分段数
         this.segmentCount = (int) ((fileSize + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
         this.segmentSize = MAX_SEGMENT_SIZE;
+        int regionWords = (int) (((fileSize + DIRTY_REGION_SIZE - 1) / DIRTY_REGION_SIZE + 63) >>> 6);
+        this.dirtyRegions = new AtomicLongArray(regionWords);
 
         // 检查文件是否已存在
         boolean fileExists = file.exists() && file.length() > 0;
@@ -88,11 +202,13 @@ public class MmapAllocator implements Allocator {
                 parent.mkdirs();
             }
 
-            // 打开文件
-            this.raf = new RandomAccessFile(file, "rw");
+            // 打开文件：持久化文件使用本进程共享的已加锁句柄
+            this.raf = isTemporary ? new RandomAccessFile(file, "rw") : acquireLock();
             this.channel = raf.getChannel();
 
-            if (!fileExists) {
+            if (readOnly) {
+                // 只读：按文件实际长度映射
+            } else if (!fileExists) {
                 // 新文件：预分配空间
                 raf.setLength(fileSize);
             } else {
@@ -110,7 +226,8 @@ public class MmapAllocator implements Allocator {
 
             for (int i = 0; i < segmentCount; i++) {
                 long size = Math.min(remainingSize, segmentSize);
-                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+                MappedByteBuffer buffer = channel.map(
+                        readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, offset, size);
                 segments.add(buffer);
 
                 // 获取分段的底层地址
@@ -121,6 +238,8 @@ public class MmapAllocator implements Allocator {
                 remainingSize -= size;
             }
 
+            indexSegmentRanges();
+
             // 注意：不在这里初始化头部，而是在第一次 close() 时初始化
             // 这样可以区分新文件和已有数据的文件
 
@@ -129,12 +248,155 @@ public class MmapAllocator implements Allocator {
                 TempFileManager.registerCleanupHook(file, segments.toArray(new MappedByteBuffer[0]));
             }
 
+        } catch (IllegalStateException e) {
+            close();
+            throw e;
         } catch (Exception e) {
             close();
             throw new RuntimeException("创建内存映射文件失败: " + file.getAbsolutePath(), e);
         }
     }
 
+    /**
+     * 打开持久化文件并获取文件锁：读写打开取排他锁，只读打开取共享锁，实时读者不加锁
+     * <p>
+     * 在 Linux 等系统上关闭同一文件的任意句柄都会释放本进程在该文件上的全部锁，
+     * 因此本进程对同一文件的所有打开共享句柄和锁，最后一个关闭时才关闭句柄。
+     * 读写打开之间不互相排斥，保持单进程内原来的行为。
+     * </p>
+     *
+     * @return 共享的文件句柄
+     */
+    private RandomAccessFile acquireLock() throws IOException {
+        String key = file.getCanonicalPath();
+        synchronized (PROCESS_LOCKS) {
+            ProcessLock local = PROCESS_LOCKS.get(key);
+            if (local == null || !file.exists() || !local.isSameFile(fileKey(file))) {
+                // 文件被删除或替换过，旧的句柄指向原来的文件
+                local = new ProcessLock(key);
+            }
+            if (fileLocking && (readOnly ? local.writers > 0 : local.readers > 0)) {
+                throw new IllegalStateException((readOnly ? "文件已在当前进程中以读写模式打开: "
+                        : "文件已在当前进程中以只读模式打开: ") + file.getAbsolutePath());
+            }
+            if (local.raf == null || (!readOnly && !local.writable)) {
+                // 之前的句柄都已保留到最后，不会因为关闭而释放锁
+                local.raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+                local.writable = !readOnly;
+                local.handles.add(local.raf);
+                local.fileKey = fileKey(file);
+            }
+            if (fileLocking && local.lock == null) {
+                local.lock = local.raf.getChannel().tryLock(LOCK_POSITION, 1, readOnly);
+                if (local.lock == null) {
+                    if (local.users() == 0) {
+                        local.closeHandles();
+                    }
+                    throw new IllegalStateException((readOnly ? "文件正被其他进程以读写模式打开: "
+                            : "文件正被其他进程打开: ") + file.getAbsolutePath());
+                }
+            }
+            if (!fileLocking) {
+                local.liveReaders++;
+            } else if (readOnly) {
+                local.readers++;
+            } else {
+                local.writers++;
+            }
+            PROCESS_LOCKS.put(key, local);
+            this.processLock = local;
+            return local.raf;
+        }
+    }
+
+    private void releaseLock() throws IOException {
+        if (processLock == null) {
+            return;
+        }
+        synchronized (PROCESS_LOCKS) {
+            ProcessLock local = processLock;
+            processLock = null;
+            if (!fileLocking) {
+                local.liveReaders--;
+            } else if (readOnly) {
+                local.readers--;
+            } else {
+                local.writers--;
+            }
+            if (local.readers == 0 && local.writers == 0 && local.lock != null) {
+                local.lock.release();
+                local.lock = null;
+            }
+            if (local.users() == 0) {
+                PROCESS_LOCKS.remove(local.key, local);
+                local.closeHandles();
+            }
+        }
+    }
+
+    private static Object fileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 本进程对一个文件持有的句柄和文件锁
+     */
+    private static final class ProcessLock {
+        final String key;
+        final List<RandomAccessFile> handles = new ArrayList<>();
+        RandomAccessFile raf;  // 新的打开使用的句柄
+        boolean writable;
+        FileLock lock;
+        Object fileKey; // 文件标识（Unix 上为 inode），平台不支持时为 null
+        int readers;
+        int writers;
+        int liveReaders;
+
+        ProcessLock(String key) {
+            this.key = key;
+        }
+
+        boolean isSameFile(Object currentKey) {
+            return fileKey == null || fileKey.equals(currentKey);
+        }
+
+        int users() {
+            return readers + writers + liveReaders;
+        }
+
+        void closeHandles() throws IOException {
+            for (RandomAccessFile handle : handles) {
+                handle.close();
+            }
+            handles.clear();
+            raf = null;
+        }
+    }
+
+    private void indexSegmentRanges() {
+        int count = segments.size();
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(segmentBaseAddresses.get(a), segmentBaseAddresses.get(b)));
+        long[] bases = new long[count];
+        long[] ends = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            bases[i] = segmentBaseAddresses.get(order[i]);
+            ends[i] = bases[i] + segments.get(order[i]).capacity();
+            offsets[i] = order[i] * segmentSize;
+        }
+        this.sortedSegmentBases = bases;
+        this.sortedSegmentEnds = ends;
+        this.sortedSegmentOffsets = offsets;
+    }
+
     /**
      * 初始化文件头（新文件）
      */
@@ -184,6 +446,60 @@ public class MmapAllocator implements Allocator {
         this.currentOffset.set(offset);
     }
 
+    /**
+     * 检查地址是否位于本分配器映射的文件内存中
+     *
+     * @param address 内存地址
+     * @return 属于某个映射分段返回 true
+     */
+    public boolean containsAddress(long address) {
+        int segment = findSegment(address);
+        return segment >= 0 && address < sortedSegmentEnds[segment];
+    }
+
+    /**
+     * 查找地址所在的分段在排序数组中的位置
+     */
+    private int findSegment(long address) {
+        // 各分段的映射地址互不重叠但不一定连续，按基地址排序后二分查找
+        long[] bases = sortedSegmentBases;
+        int low = 0;
+        int high = bases.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bases[mid] <= address) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * 把文件偏移转换为映射地址
+     *
+     * @param offset 文件偏移
+     * @return 内存地址
+     */
+    public long addressOf(long offset) {
+        return segmentBaseAddresses.get((int) (offset / segmentSize)) + offset % segmentSize;
+    }
+
+    /**
+     * 把映射地址转换为文件偏移，与 {@link #addressOf(long)} 互逆
+     *
+     * @param address 内存地址
+     * @return 文件偏移，地址不在映射内时为 -1
+     */
+    public long offsetOf(long address) {
+        int segment = findSegment(address);
+        if (segment < 0 || address >= sortedSegmentEnds[segment]) {
+            return -1;
+        }
+        return sortedSegmentOffsets[segment] + address - sortedSegmentBases[segment];
+    }
+
     /**
      * 获取第一个分段的基地址
      */
@@ -196,6 +512,7 @@ public class MmapAllocator implements Allocator {
         if (size <= 0) {
             throw new IllegalArgumentException("大小必须为正数: " + size);
         }
+        checkWritable();
 
         // 使用 CAS 操作分配偏移量
         long offset;
@@ -218,6 +535,40 @@ public class MmapAllocator implements Allocator {
         return segmentBaseAddresses.get(segmentIndex) + segmentOffset;
     }
 
+    /**
+     * 批量分配：整批只做一次 CAS 推进偏移量，再按顺序切分出每块内存
+     */
+    @Override
+    public boolean allocateBatch(int[] sizes, long[] addresses, int count) {
+        checkWritable();
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (sizes[i] <= 0) {
+                throw new IllegalArgumentException("大小必须为正数: " + sizes[i]);
+            }
+            total += sizes[i];
+        }
+
+        long offset;
+        long newOffset;
+        do {
+            offset = currentOffset.get();
+            newOffset = offset + total;
+
+            if (newOffset > fileSize) {
+                return false; // 空间不足
+            }
+        } while (!currentOffset.compareAndSet(offset, newOffset));
+
+        for (int i = 0; i < count; i++) {
+            int segmentIndex = (int) (offset / segmentSize);
+            long segmentOffset = offset % segmentSize;
+            addresses[i] = segmentBaseAddresses.get(segmentIndex) + segmentOffset;
+            offset += sizes[i];
+        }
+        return true;
+    }
+
     @Override
     public void free(long address, int size) {
         // MMAP 模式下不需要单独释放内存
@@ -226,6 +577,45 @@ public class MmapAllocator implements Allocator {
         // 但为了简化实现，暂时不处理
     }
 
+    @Override
+    public void markDirty(long address, long size) {
+        int segment = findSegment(address);
+        if (segment >= 0 && address < sortedSegmentEnds[segment] && size > 0) {
+            markDirtyOffset(sortedSegmentOffsets[segment] + address - sortedSegmentBases[segment], size);
+        }
+    }
+
+    /**
+     * 标记文件中的一段区域需要同步到磁盘，用于分配器之外写入的区域（例如关闭时保存的索引）
+     *
+     * @param offset 文件偏移
+     * @param size   字节数
+     */
+    public void markDirtyOffset(long offset, long size) {
+        if (isTemporary || readOnly || size <= 0) {
+            return;
+        }
+        long end = Math.min(offset + size, fileSize);
+        for (long region = offset / DIRTY_REGION_SIZE; region * DIRTY_REGION_SIZE < end; region++) {
+            int word = (int) (region >>> 6);
+            long bit = 1L << region;
+            long current = dirtyRegions.get(word);
+            while ((current & bit) == 0 && !dirtyRegions.compareAndSet(word, current, current | bit)) {
+                current = dirtyRegions.get(word);
+            }
+        }
+        dirtyBytes.add(end - offset);
+    }
+
+    /**
+     * 上次刷新之后标记的字节数（按写入量累计，同一区域重复写入会重复计数）
+     *
+     * @return 字节数
+     */
+    public long dirtyBytes() {
+        return dirtyBytes.sum();
+    }
+
     @Override
     public long totalAllocated() {
         return fileSize;
@@ -243,6 +633,7 @@ public class MmapAllocator implements Allocator {
 
     @Override
     public void close() {
+        stopBackgroundFlush();
         try {
             // 临时文件模式：跳过持久化，直接清理
             if (isTemporary) {
@@ -257,20 +648,13 @@ public class MmapAllocator implements Allocator {
                 // 立即删除临时文件
                 TempFileManager.deleteImmediately(file, segments.toArray(new MappedByteBuffer[0]));
             } else {
-                // 持久化模式：正常刷新
-                for (MappedByteBuffer segment : segments) {
-                    if (segment != null) {
-                        segment.force();
-                    }
+                // 持久化模式：正常刷新（构造失败时分段可能不完整）
+                if (segments.size() == segmentCount) {
+                    flush();
                 }
 
-                // 关闭通道和文件
-                if (channel != null && channel.isOpen()) {
-                    channel.close();
-                }
-                if (raf != null) {
-                    raf.close();
-                }
+                // 最后一个打开者关闭共享的文件句柄并释放文件锁
+                releaseLock();
             }
         } catch (Exception e) {
             throw new RuntimeException("关闭内存映射文件失败", e);
@@ -278,16 +662,139 @@ public class MmapAllocator implements Allocator {
     }
 
     /**
-     * 异步刷新数据到磁盘
+     * 把脏区同步到磁盘，文件头所在的区域总是同步
+     * <p>
+     * 返回时，调用之前已经完成的写入都已落盘。
+     * </p>
      */
     public void flush() {
-        for (MappedByteBuffer segment : segments) {
-            if (segment != null) {
-                segment.force();
+        if (isTemporary || readOnly) {
+            return;
+        }
+        synchronized (flushLock) {
+            lastFlushMillis = System.currentTimeMillis();
+            dirtyBytes.reset();
+            long[] pending = new long[dirtyRegions.length()];
+            for (int word = 0; word < pending.length; word++) {
+                pending[word] = dirtyRegions.getAndSet(word, 0);
+            }
+            pending[0] |= 1; // 文件头
+
+            boolean[] wholeSegments = new boolean[segmentCount];
+            long regions = (fileSize + DIRTY_REGION_SIZE - 1) / DIRTY_REGION_SIZE;
+            long region = 0;
+            while (region < regions) {
+                if ((pending[(int) (region >>> 6)] & (1L << region)) == 0) {
+                    region++;
+                    continue;
+                }
+                long first = region;
+                while (region < regions && (pending[(int) (region >>> 6)] & (1L << region)) != 0) {
+                    region++;
+                }
+                forceRange(first * DIRTY_REGION_SIZE, Math.min(region * DIRTY_REGION_SIZE, fileSize), wholeSegments);
+            }
+            for (int i = 0; i < segmentCount; i++) {
+                if (wholeSegments[i]) {
+                    segments.get(i).force();
+                }
             }
         }
     }
 
+    /**
+     * 下一次刷新要同步的脏区数量，文件头所在的区域只在被标记时计入（供测试使用）
+     */
+    int pendingRegions() {
+        int count = 0;
+        for (int word = 0; word < dirtyRegions.length(); word++) {
+            count += Long.bitCount(dirtyRegions.get(word));
+        }
+        return count;
+    }
+
+    /**
+     * 启动后台刷盘线程：距上次刷新超过指定时间，或标记的字节数达到阈值时调用 {@link #flush()}
+     * <p>
+     * 后台刷新失败时忽略异常，下一次轮询时重试；关闭分配器时停止。
+     * </p>
+     *
+     * @param intervalMillis 按时间触发的间隔（毫秒），0 表示不按时间触发
+     * @param byteThreshold  按标记字节数触发的阈值，0 表示不按字节数触发
+     */
+    public synchronized void startBackgroundFlush(long intervalMillis, long byteThreshold) {
+        if (intervalMillis < 0 || byteThreshold < 0 || (intervalMillis == 0 && byteThreshold == 0)) {
+            throw new IllegalArgumentException("刷盘间隔和字节数阈值至少要设置一个正数");
+        }
+        if (isTemporary) {
+            throw new IllegalStateException("临时文件模式不支持后台刷盘");
+        }
+        if (flusher != null) {
+            throw new IllegalStateException("后台刷盘已经启动");
+        }
+        long poll = intervalMillis > 0 ? Math.min(intervalMillis, FLUSH_POLL_MILLIS) : FLUSH_POLL_MILLIS;
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "roguemap-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            if ((byteThreshold > 0 && dirtyBytes.sum() >= byteThreshold)
+                    || (intervalMillis > 0 && System.currentTimeMillis() - lastFlushMillis >= intervalMillis)) {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    // 异常无法传递给写入线程，下一次轮询时重试
+                }
+            }
+        }, poll, poll, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopBackgroundFlush() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+    }
+
+    /**
+     * 同步文件中的所有分段，不依赖脏区标记（例如重放日志直接写入数据区之后）
+     */
+    public void forceAll() {
+        synchronized (flushLock) {
+            for (MappedByteBuffer segment : segments) {
+                if (segment != null) {
+                    segment.force();
+                }
+            }
+        }
+    }
+
+    private void forceRange(long start, long end, boolean[] wholeSegments) {
+        while (start < end) {
+            int segment = (int) (start / segmentSize);
+            long segmentStart = (long) segment * segmentSize;
+            long segmentEnd = Math.min(segmentStart + segmentSize, end);
+            if (FORCE_RANGE == null) {
+                wholeSegments[segment] = true;
+            } else {
+                try {
+                    FORCE_RANGE.invokeExact(segments.get(segment), (int) (start - segmentStart),
+                            (int) (segmentEnd - start));
+                } catch (Throwable e) {
+                    throw new IllegalStateException("同步内存映射文件失败", e);
+                }
+            }
+            start = segmentEnd;
+        }
+    }
+
     /**
      * 获取文件路径
      */
@@ -325,4 +832,17 @@ public class MmapAllocator implements Allocator {
     public boolean isTemporary() {
         return isTemporary;
     }
+
+    /**
+     * 检查是否为只读映射
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("只读模式不支持写入");
+        }
+    }
 }
@@ -123,6 +123,10 @@ public class SlabAllocator implements Allocator {
 
     /**
      * Slab 管理固定大小的内存块
+     * <p>
+     * 空闲块放在无锁的 FIFO 队列中，释放时不改写块的内容：无锁读取可能在并发覆盖之后仍按旧地址解码，
+     * 先进先出让释放的块尽量晚被重用，在此之前读到的仍是完整的旧值字节。
+     * </p>
      */
     private static class Slab {
         private final int slabSize;
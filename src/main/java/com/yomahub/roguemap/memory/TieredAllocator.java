@@ -0,0 +1,191 @@
+package com.yomahub.roguemap.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 两级分配器：热层为 SlabAllocator（堆外内存），冷层为 MmapAllocator（内存映射文件）
+ *
+ * 默认先在热层分配，热层不足时落到冷层。冷层在 MmapAllocator 的顺序分配之上按大小类别
+ * 维护空闲链表（每个 2 的幂区间再分 4 档，浪费不超过 25%），空闲块的下一个指针直接写在块内，
+ * 因此降级、提升和覆盖写入释放的冷层空间可以被重用，不占用堆内存。
+ * 释放时按地址是否落在映射文件内判断所属层。
+ */
+public class TieredAllocator implements Allocator {
+
+    private static final int MIN_BLOCK = 16;
+    private static final int SMALL_CLASSES = 4; // 16、32、48、64
+    private static final int CLASS_COUNT = SMALL_CLASSES + (31 - 6) * 4;
+
+    private final SlabAllocator hot;
+    private final MmapAllocator cold;
+    private final long hotCapacity;
+    private final long[] freeHeads;
+    private final Object[] freeLocks;
+    private final AtomicLong coldUsed;
+
+    /**
+     * 创建两级分配器
+     *
+     * @param hot  热层分配器
+     * @param cold 冷层分配器
+     */
+    public TieredAllocator(SlabAllocator hot, MmapAllocator cold) {
+        if (hot == null || cold == null) {
+            throw new IllegalArgumentException("热层和冷层分配器不能为 null");
+        }
+        this.hot = hot;
+        this.cold = cold;
+        this.hotCapacity = hot.usedMemory() + hot.availableMemory();
+        this.freeHeads = new long[CLASS_COUNT];
+        this.freeLocks = new Object[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            freeLocks[i] = new Object();
+        }
+        this.coldUsed = new AtomicLong();
+    }
+
+    @Override
+    public long allocate(int size) {
+        long address = hot.allocate(size);
+        return address != 0 ? address : allocateCold(size);
+    }
+
+    /**
+     * 只在热层分配
+     *
+     * @param size 大小
+     * @return 内存地址，热层空间不足时返回 0
+     */
+    public long allocateHot(int size) {
+        return hot.allocate(size);
+    }
+
+    /**
+     * 只在冷层分配，优先重用同一大小类别的空闲块
+     *
+     * @param size 大小
+     * @return 内存地址，冷层空间不足时返回 0
+     */
+    public long allocateCold(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("大小必须为正数: " + size);
+        }
+        int sizeClass = sizeClass(size);
+        long blockSize = classSize(sizeClass);
+        if (blockSize > Integer.MAX_VALUE) {
+            return 0;
+        }
+
+        long address;
+        synchronized (freeLocks[sizeClass]) {
+            address = freeHeads[sizeClass];
+            if (address != 0) {
+                freeHeads[sizeClass] = UnsafeOps.getLong(address);
+            }
+        }
+        if (address == 0) {
+            address = cold.allocate((int) blockSize);
+            if (address == 0) {
+                return 0;
+            }
+        }
+        coldUsed.addAndGet(blockSize);
+        return address;
+    }
+
+    @Override
+    public void free(long address, int size) {
+        if (address == 0) {
+            return;
+        }
+        if (!isCold(address)) {
+            hot.free(address, size);
+            return;
+        }
+        int sizeClass = sizeClass(size);
+        synchronized (freeLocks[sizeClass]) {
+            UnsafeOps.putLong(address, freeHeads[sizeClass]);
+            freeHeads[sizeClass] = address;
+        }
+        coldUsed.addAndGet(-classSize(sizeClass));
+    }
+
+    /**
+     * 判断地址是否属于冷层
+     *
+     * @param address 内存地址
+     * @return 冷层返回 true
+     */
+    public boolean isCold(long address) {
+        return cold.containsAddress(address);
+    }
+
+    /**
+     * 获取热层已使用内存占热层容量的比例
+     *
+     * @return 0 到 1 之间的比例
+     */
+    public double hotUsageRatio() {
+        return (double) hot.usedMemory() / hotCapacity;
+    }
+
+    /**
+     * 获取热层已使用内存
+     *
+     * @return 字节数
+     */
+    public long hotUsedMemory() {
+        return hot.usedMemory();
+    }
+
+    /**
+     * 获取冷层已使用内存（按大小类别计算，不含空闲块）
+     *
+     * @return 字节数
+     */
+    public long coldUsedMemory() {
+        return coldUsed.get();
+    }
+
+    @Override
+    public long totalAllocated() {
+        return hot.totalAllocated() + cold.totalAllocated();
+    }
+
+    @Override
+    public long usedMemory() {
+        return hot.usedMemory() + coldUsed.get();
+    }
+
+    @Override
+    public long availableMemory() {
+        return hot.availableMemory() + cold.availableMemory();
+    }
+
+    @Override
+    public void close() {
+        try {
+            hot.close();
+        } finally {
+            cold.close();
+        }
+    }
+
+    static int sizeClass(int size) {
+        if (size <= SMALL_CLASSES * MIN_BLOCK) {
+            return Math.max(0, (size - 1) / MIN_BLOCK);
+        }
+        int log = 31 - Integer.numberOfLeadingZeros(size - 1);
+        int sub = ((size - 1) >>> (log - 2)) & 3;
+        return SMALL_CLASSES + (log - 6) * 4 + sub;
+    }
+
+    static long classSize(int sizeClass) {
+        if (sizeClass < SMALL_CLASSES) {
+            return (long) (sizeClass + 1) * MIN_BLOCK;
+        }
+        int log = (sizeClass - SMALL_CLASSES) / 4 + 6;
+        int sub = (sizeClass - SMALL_CLASSES) % 4;
+        return (1L << log) + (long) (sub + 1) * (1L << (log - 2));
+    }
+}
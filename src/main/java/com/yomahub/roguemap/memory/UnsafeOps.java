@@ -3,7 +3,9 @@ package com.yomahub.roguemap.memory;
 import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * 使用 sun.misc.Unsafe 实现的底层内存操作（兼容 Java 8）
@@ -197,6 +199,97 @@ public class UnsafeOps {
         return UNSAFE.compareAndSwapLong(null, address, expected, update);
     }
 
+    /**
+     * 逐字节比较两段内存是否相同（按 8 字节批量比较）
+     *
+     * @param address1 第一段内存地址
+     * @param address2 第二段内存地址
+     * @param length   比较的字节数
+     * @return 内容完全相同返回 true
+     */
+    public static boolean memoryEquals(long address1, long address2, int length) {
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (UNSAFE.getLong(address1 + i) != UNSAFE.getLong(address2 + i)) {
+                return false;
+            }
+        }
+        for (; i < length; i++) {
+            if (UNSAFE.getByte(address1 + i) != UNSAFE.getByte(address2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一段内存的 64 位哈希，与进程和平台无关，可以保存在文件中
+     * <p>
+     * 用于冻结文件和共享索引中的键，写入和查找必须使用同一个函数。
+     * </p>
+     *
+     * @param address 内存地址
+     * @param length  字节数
+     * @return 哈希值
+     */
+    public static long hash(long address, int length) {
+        long h = 0x9E3779B97F4A7C15L ^ (length * 0xC2B2AE3D27D4EB4FL);
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            h = Long.rotateLeft(h ^ mix(UNSAFE.getLong(address + i)), 27) * 0x9E3779B97F4A7C15L;
+        }
+        long tail = 0;
+        for (; i < length; i++) {
+            tail = (tail << 8) | (UNSAFE.getByte(address + i) & 0xFF);
+        }
+        return mix(h ^ mix(tail));
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * 创建指向指定堆外内存的只读 ByteBuffer 视图（本机字节序，不复制数据）
+     * <p>
+     * 视图不拥有这段内存，内存被释放后不能再访问视图。
+     * </p>
+     *
+     * @param address 内存地址
+     * @param size    字节大小
+     * @return 只读 ByteBuffer
+     */
+    public static ByteBuffer wrapReadOnly(long address, int size) {
+        ByteBuffer view = BufferViews.TEMPLATE.duplicate();
+        UNSAFE.putLong(view, BufferViews.ADDRESS_OFFSET, address);
+        UNSAFE.putInt(view, BufferViews.CAPACITY_OFFSET, size);
+        view.clear();
+        return view.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 延迟初始化 ByteBuffer 视图所需的字段偏移量
+     */
+    private static class BufferViews {
+        static final ByteBuffer TEMPLATE = ByteBuffer.allocateDirect(0);
+        static final long ADDRESS_OFFSET;
+        static final long CAPACITY_OFFSET;
+
+        static {
+            try {
+                ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+                CAPACITY_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException("获取 Buffer 字段偏移量失败", e);
+            }
+        }
+    }
+
     /**
      * 从 DirectByteBuffer 获取地址
      *
@@ -0,0 +1,19 @@
+package com.yomahub.roguemap.serialization;
+
+/**
+ * 可复用的解码目标
+ * <p>
+ * 由调用方持有并在多次读取间复用，值的字节直接填充到对象的字段中，读取路径上不产生新对象。
+ * 实现需要了解值编解码器的内存布局。
+ * </p>
+ */
+public interface MutableTarget {
+
+    /**
+     * 从堆外内存读取值并填充自身
+     *
+     * @param address 值的内存地址，仅在本方法执行期间有效
+     * @param size    值的字节大小
+     */
+    void readFrom(long address, int size);
+}
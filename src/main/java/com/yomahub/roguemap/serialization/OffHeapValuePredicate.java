@@ -0,0 +1,20 @@
+package com.yomahub.roguemap.serialization;
+
+/**
+ * 直接基于值的编码字节做判断的谓词，无需解码值
+ * <p>
+ * 对值字节在索引锁外的副本调用，地址只在调用期间有效；可能在多个线程上被并发调用。
+ * </p>
+ */
+@FunctionalInterface
+public interface OffHeapValuePredicate {
+
+    /**
+     * 判断值是否满足条件
+     *
+     * @param address 值的内存地址（布局由值编解码器决定）
+     * @param size    值的字节大小
+     * @return 满足条件返回 true
+     */
+    boolean test(long address, int size);
+}
@@ -0,0 +1,23 @@
+package com.yomahub.roguemap.serialization;
+
+/**
+ * 直接从堆外内存读取值的回调
+ * <p>
+ * 回调执行期间值的内存保证有效（不会被并发替换后释放），回调返回后地址即失效，
+ * 不能保存地址供之后使用。回调中不能对同一个 map 做写操作。
+ * </p>
+ *
+ * @param <R> 读取结果类型
+ */
+@FunctionalInterface
+public interface OffHeapValueReader<R> {
+
+    /**
+     * 读取值
+     *
+     * @param address 值的内存地址（布局由值编解码器决定）
+     * @param size    值的字节大小
+     * @return 读取结果
+     */
+    R read(long address, int size);
+}
@@ -0,0 +1,127 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计自上次检查点以来索引修改次数的索引包装
+ * <p>
+ * 计数只用于决定是否需要写入检查点，允许多计（例如没有改变条目的 compute），但不会少计。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class CheckpointIndex<K> extends ForwardingIndex<K> {
+
+    private final LongAdder modifications = new LongAdder();
+
+    public CheckpointIndex(Index<K> delegate) {
+        super(delegate);
+    }
+
+    /**
+     * 获取自上次检查点以来的修改次数
+     *
+     * @return 修改次数
+     */
+    public long modificationCount() {
+        return modifications.sum();
+    }
+
+    /**
+     * 检查点完成后扣除它已经覆盖的修改次数，检查点期间发生的修改保留到下一次
+     *
+     * @param count 检查点开始时的修改次数
+     */
+    public void checkpointed(long count) {
+        modifications.add(-count);
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        long oldAddress = delegate.put(key, address, size);
+        modifications.increment();
+        return oldAddress;
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        boolean inserted = delegate.putIfAbsent(key, address, size);
+        if (inserted) {
+            modifications.increment();
+        }
+        return inserted;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        delegate.compute(key, remapper);
+        modifications.increment();
+    }
+
+    @Override
+    public long remove(K key) {
+        long oldAddress = delegate.remove(key);
+        if (oldAddress != 0) {
+            modifications.increment();
+        }
+        return oldAddress;
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        IndexUpdateResult result = delegate.putAndGetOld(key, newAddress, newSize);
+        modifications.increment();
+        return result;
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        IndexRemoveResult result = delegate.removeAndGet(key);
+        if (result.wasPresent) {
+            modifications.increment();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        boolean replaced = delegate.putAndGetOld(key, newAddress, newSize, holder);
+        modifications.increment();
+        return replaced;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        boolean removed = delegate.removeAndGet(key, holder);
+        if (removed) {
+            modifications.increment();
+        }
+        return removed;
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        delegate.putAll(keys, addresses, sizes, oldAddresses, oldSizes);
+        modifications.add(keys.size());
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        delegate.removeAll(keys, oldAddresses, oldSizes);
+        modifications.add(keys.size());
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        modifications.increment();
+    }
+}
@@ -0,0 +1,498 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.memory.Crc32c;
+import com.yomahub.roguemap.memory.MmapAllocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 持久化 MMAP 模式的后台检查点
+ * <p>
+ * 后台线程每隔固定时间或索引累计修改到一定次数时写入检查点，文件头中的两个槽位交替使用：
+ * 新检查点完整落盘后才切换活动槽位，因此文件中始终有一个完整的检查点，进程崩溃后从它恢复。
+ * 检查点只在调用线程上分块遍历索引，不会阻塞读写；遍历期间并发的写入可能只有一部分进入快照（模糊快照）：
+ * </p>
+ * <ul>
+ *     <li>启用预写日志时，槽位记下快照开始前的 LSN，恢复时从这里重放。PUT 记录带完整的值，
+ *     重放与快照重叠的记录结果不变，关闭时只需要把日志落盘，不再写检查点。</li>
+ *     <li>未启用预写日志时，进程崩溃会丢失上一个检查点之后的写入；
+ *     正常关闭时如果上一个检查点之后有修改，再写一次检查点。</li>
+ * </ul>
+ * <p>
+ * 检查点是增量的：索引按遍历分片（段或表区间）记录被修改过的分片，每个分片单独保存为一个块，
+ * 只有变化的分片被重写，其余分片沿用上一个检查点的块，写入量与修改量而不是 map 的大小成正比。
+ * 分片块写在活动检查点没有引用的区域（每个分片在两块区域之间交替），槽位指向记录所有分片块位置的目录：
+ * </p>
+ * <pre>
+ * 目录: [分片数 (4)][CRC32C (4)] 之后每个分片 [块偏移 (8)][块大小 (8)]
+ * 块:   [条目数 (4)][CRC32C (4)] 之后每个条目 [键长度 (4)][键][值在数据文件中的偏移 (8)][值大小 (4)]
+ * </pre>
+ * <p>
+ * 校验和覆盖头部之后的全部字节，加载时可以先并行校验所有块，再写入索引。
+ * </p>
+ * <p>
+ * 分片划分随容量变化的索引（原始类型索引）扩容时所有分片都被标记，遍历期间发生扩容则重新遍历；
+ * 这类索引在重新打开后的第一个检查点重写全部分片。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class Checkpointer<K> implements AutoCloseable {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final int CURSOR_BATCH = 256;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int DIRECTORY_HEADER_SIZE = 8;
+    private static final int DIRECTORY_ENTRY_SIZE = 16;
+
+    private final CheckpointIndex<K> index;
+    private final Codec<K> keyCodec;
+    private final MmapAllocator allocator;
+    private final WriteAheadLog wal;
+    private final long intervalMillis;
+    private final long mutationThreshold;
+    private final int shardCount;
+    private final ScheduledExecutorService scheduler;
+
+    // 以下字段由 this 的监视器保护
+    private final MmapFileHeader.CheckpointSlot[] slots = new MmapFileHeader.CheckpointSlot[2];
+    private int activeSlot;
+    private final long[] blockOffsets;     // 活动检查点中每个分片块的偏移
+    private final long[] blockSizes;       // 活动检查点中每个分片块的大小
+    private final long[] blockCapacities;  // 活动检查点中每个分片块所在区域的容量
+    private final long[] spareOffsets;     // 每个分片的备用区域，活动检查点不引用，可以直接覆盖
+    private final long[] spareCapacities;
+    private final boolean[] pending;       // 需要在下一个检查点重写的分片
+    private long lastShardsWritten;
+    private long lastCheckpointMillis;
+    private boolean closed;
+
+    /**
+     * 创建并启动后台检查点
+     *
+     * @param index             统计修改次数的索引
+     * @param keyCodec          键编解码器
+     * @param allocator         持久化文件的分配器，文件头必须已经写入
+     * @param wal               预写日志，未启用时为 null
+     * @param intervalMillis    按时间触发的间隔（毫秒），0 表示不按时间触发
+     * @param mutationThreshold 按修改次数触发的阈值，0 表示不按次数触发
+     */
+    public Checkpointer(CheckpointIndex<K> index, Codec<K> keyCodec, MmapAllocator allocator,
+                        WriteAheadLog wal, long intervalMillis, long mutationThreshold) {
+        if (intervalMillis < 0 || mutationThreshold < 0 || (intervalMillis == 0 && mutationThreshold == 0)) {
+            throw new IllegalArgumentException("检查点间隔和修改次数阈值至少要设置一个正数");
+        }
+        this.index = index;
+        this.keyCodec = keyCodec;
+        this.allocator = allocator;
+        this.wal = wal;
+        this.intervalMillis = intervalMillis;
+        this.mutationThreshold = mutationThreshold;
+        this.shardCount = index.shardCount();
+        this.blockOffsets = new long[shardCount];
+        this.blockSizes = new long[shardCount];
+        this.blockCapacities = new long[shardCount];
+        this.spareOffsets = new long[shardCount];
+        this.spareCapacities = new long[shardCount];
+        this.pending = new boolean[shardCount];
+
+        MmapFileHeader header = allocator.readHeader();
+        this.activeSlot = header.getActiveSlot();
+        this.slots[0] = header.getSlot(1);
+        this.slots[1] = header.getSlot(2);
+        if (!restoreBlocks()) {
+            // 上一次会话的分片块不能沿用，第一个检查点重写全部分片
+            Arrays.fill(pending, true);
+        }
+        this.lastCheckpointMillis = System.currentTimeMillis();
+
+        long poll = intervalMillis > 0 ? Math.min(intervalMillis, POLL_INTERVAL_MILLIS) : POLL_INTERVAL_MILLIS;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "roguemap-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpointIfDue, poll, poll, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即写入一个检查点
+     */
+    public synchronized void checkpoint() {
+        if (closed) {
+            throw new IllegalStateException("检查点已关闭");
+        }
+        writeCheckpoint();
+    }
+
+    /**
+     * 获取当前活动槽位
+     *
+     * @return 1 或 2，尚未写入过检查点时为 0
+     */
+    public synchronized int getActiveSlot() {
+        return activeSlot;
+    }
+
+    /**
+     * 获取最近一个检查点重写的分片数
+     *
+     * @return 分片数
+     */
+    public synchronized long getLastShardsWritten() {
+        return lastShardsWritten;
+    }
+
+    /**
+     * 停止后台线程；未启用预写日志且上一个检查点之后有修改时，写入最后一个检查点
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (wal == null && index.modificationCount() > 0) {
+                writeCheckpoint();
+            }
+        }
+    }
+
+    private synchronized void checkpointIfDue() {
+        if (closed) {
+            return;
+        }
+        long modifications = index.modificationCount();
+        if (modifications <= 0) {
+            return;
+        }
+        if ((mutationThreshold > 0 && modifications >= mutationThreshold)
+                || (intervalMillis > 0 && System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis)) {
+            try {
+                writeCheckpoint();
+            } catch (RuntimeException e) {
+                // 异常无法传递给写入线程，上一个检查点仍然有效，下一次轮询时重试
+            }
+        }
+    }
+
+    private void writeCheckpoint() {
+        // 先记下修改次数和 LSN：之后发生的修改可能不在快照中，留给下一个检查点或日志重放
+        long modifications = index.modificationCount();
+        long walStartLsn = wal != null ? wal.currentLsn() : -1;
+        long baseAddress = allocator.getBaseAddress();
+
+        boolean[] dirty = pending.clone();
+        index.drainDirtyShards(dirty);
+        SnapshotBuffer snapshot = new SnapshotBuffer(baseAddress);
+        try {
+            long[] starts = new long[shardCount];
+            long[] ends = new long[shardCount];
+            while (true) {
+                long layoutVersion = index.shardLayoutVersion();
+                snapshot.position = 0;
+                for (int shard = 0; shard < shardCount; shard++) {
+                    if (dirty[shard]) {
+                        starts[shard] = snapshot.position;
+                        snapshot.collect(shard);
+                        ends[shard] = snapshot.position;
+                    }
+                }
+                if (index.shardLayoutVersion() == layoutVersion) {
+                    break;
+                }
+                // 遍历期间分片划分发生了变化，条目可能被遗漏，按新的划分重新遍历
+                index.drainDirtyShards(dirty);
+            }
+
+            // 变化的分片写入备用区域，活动检查点引用的块保持不变
+            long[] newOffsets = blockOffsets.clone();
+            long[] newSizes = blockSizes.clone();
+            long[] newCapacities = blockCapacities.clone();
+            long[] newSpareOffsets = spareOffsets.clone();
+            long[] newSpareCapacities = spareCapacities.clone();
+            long shardsWritten = 0;
+            for (int shard = 0; shard < shardCount; shard++) {
+                if (!dirty[shard]) {
+                    continue;
+                }
+                long size = ends[shard] - starts[shard];
+                long offset = spareOffsets[shard];
+                long capacity = spareCapacities[shard];
+                if (capacity < size) {
+                    capacity = size + size / 4;
+                    offset = allocateRegion(capacity, baseAddress);
+                }
+                UnsafeOps.copyMemory(snapshot.address + starts[shard], baseAddress + offset, size);
+                allocator.markDirty(baseAddress + offset, size);
+                newSpareOffsets[shard] = blockOffsets[shard];
+                newSpareCapacities[shard] = blockCapacities[shard];
+                newOffsets[shard] = offset;
+                newSizes[shard] = size;
+                newCapacities[shard] = capacity;
+                shardsWritten++;
+            }
+
+            int target = activeSlot == 1 ? 2 : 1;
+            MmapFileHeader.CheckpointSlot slot = slots[target - 1];
+            long directorySize = DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shardCount;
+            if (slot.capacity < directorySize) {
+                slot.indexOffset = allocateRegion(directorySize, baseAddress);
+                slot.capacity = directorySize;
+            }
+            long directory = baseAddress + slot.indexOffset;
+            UnsafeOps.putInt(directory, shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                long entry = directory + DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shard;
+                UnsafeOps.putLong(entry, newOffsets[shard]);
+                UnsafeOps.putLong(entry + 8, newSizes[shard]);
+            }
+            UnsafeOps.putInt(directory + 4, Crc32c.compute(directory + DIRECTORY_HEADER_SIZE,
+                    directorySize - DIRECTORY_HEADER_SIZE));
+            allocator.markDirty(directory, directorySize);
+            slot.indexSize = directorySize;
+            slot.dataOffset = allocator.usedMemory();
+            slot.walStartLsn = walStartLsn;
+
+            // 快照引用的日志记录和值、分片块和目录全部落盘后才能写槽位和切换
+            if (wal != null) {
+                wal.sync();
+            }
+            allocator.flush();
+            MmapFileHeader.writeSlot(baseAddress, target, slot);
+            allocator.flush();
+            MmapFileHeader.writeActiveSlot(baseAddress, target);
+            if (wal == null) {
+                // 检查点已经覆盖之前重放的日志
+                MmapFileHeader.writeDirty(baseAddress, 0);
+            }
+            allocator.flush();
+
+            activeSlot = target;
+            System.arraycopy(newOffsets, 0, blockOffsets, 0, shardCount);
+            System.arraycopy(newSizes, 0, blockSizes, 0, shardCount);
+            System.arraycopy(newCapacities, 0, blockCapacities, 0, shardCount);
+            System.arraycopy(newSpareOffsets, 0, spareOffsets, 0, shardCount);
+            System.arraycopy(newSpareCapacities, 0, spareCapacities, 0, shardCount);
+            Arrays.fill(pending, false);
+            lastShardsWritten = shardsWritten;
+            lastCheckpointMillis = System.currentTimeMillis();
+            index.checkpointed(modifications);
+        } catch (RuntimeException e) {
+            // 已经取出的修改标记留到下一个检查点
+            for (int shard = 0; shard < shardCount; shard++) {
+                pending[shard] |= dirty[shard];
+            }
+            throw e;
+        } finally {
+            snapshot.free();
+        }
+
+        if (wal != null) {
+            wal.truncateBefore(walStartLsn);
+        }
+    }
+
+    private long allocateRegion(long size, long baseAddress) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("检查点分片过大: " + size);
+        }
+        long address = allocator.allocate((int) size);
+        if (address == 0) {
+            throw new IllegalStateException("MMAP 文件空间不足，无法写入检查点");
+        }
+        return address - baseAddress;
+    }
+
+    /**
+     * 从活动检查点的目录恢复各分片块的位置
+     *
+     * @return 分片块可以沿用返回 true
+     */
+    private boolean restoreBlocks() {
+        if (activeSlot == 0 || !index.hasStableShards()) {
+            return false;
+        }
+        MmapFileHeader.CheckpointSlot slot = slots[activeSlot - 1];
+        long directory = allocator.getBaseAddress() + slot.indexOffset;
+        if (UnsafeOps.getInt(directory) != shardCount) {
+            return false;
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            long entry = directory + DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shard;
+            blockOffsets[shard] = UnsafeOps.getLong(entry);
+            blockSizes[shard] = UnsafeOps.getLong(entry + 8);
+            blockCapacities[shard] = blockSizes[shard];
+        }
+        return true;
+    }
+
+    /**
+     * 把活动槽位中的检查点加载到索引
+     * <p>
+     * 加载产生的修改标记会被清除，之后只有真正的修改才会让分片在下一个检查点中重写。
+     * </p>
+     *
+     * @param allocator 持久化文件的分配器
+     * @param slot      活动槽位
+     * @param keyCodec  键编解码器
+     * @param index     空索引
+     * @param verify    是否先校验目录和所有分片块的校验和（并行）
+     * @param <K>       键类型
+     */
+    public static <K> void load(MmapAllocator allocator, MmapFileHeader.CheckpointSlot slot,
+                                Codec<K> keyCodec, Index<K> index, boolean verify) {
+        long baseAddress = allocator.getBaseAddress();
+        long fileSize = allocator.getFileSize();
+        if (slot.indexOffset < MmapFileHeader.HEADER_SIZE || slot.indexSize < DIRECTORY_HEADER_SIZE
+                || slot.indexOffset + slot.indexSize > fileSize) {
+            throw new IllegalStateException("检查点槽位已损坏: offset=" + slot.indexOffset + ", size=" + slot.indexSize);
+        }
+
+        long directory = baseAddress + slot.indexOffset;
+        int shards = UnsafeOps.getInt(directory);
+        if (shards < 0 || DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shards != slot.indexSize) {
+            throw new IllegalStateException("检查点目录已损坏");
+        }
+        if (verify) {
+            if (UnsafeOps.getInt(directory + 4)
+                    != Crc32c.compute(directory + DIRECTORY_HEADER_SIZE, slot.indexSize - DIRECTORY_HEADER_SIZE)) {
+                throw new IllegalStateException("检查点目录校验和不匹配");
+            }
+            IntStream.range(0, shards).parallel()
+                    .filter(shard -> !blockChecksumMatches(baseAddress, directory, shard, fileSize))
+                    .findAny()
+                    .ifPresent(shard -> {
+                        throw new IllegalStateException("检查点分片块校验和不匹配: shard=" + shard);
+                    });
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            long entry = directory + DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shard;
+            long blockOffset = UnsafeOps.getLong(entry);
+            long blockSize = UnsafeOps.getLong(entry + 8);
+            if (blockSize == 0) {
+                continue;
+            }
+            if (blockOffset < MmapFileHeader.HEADER_SIZE || blockSize < 8 || blockOffset + blockSize > fileSize) {
+                throw new IllegalStateException("检查点分片块已损坏: shard=" + shard);
+            }
+            loadBlock(baseAddress, blockOffset, blockSize, fileSize, keyCodec, index);
+        }
+        index.drainDirtyShards(new boolean[index.shardCount()]);
+    }
+
+    private static boolean blockChecksumMatches(long baseAddress, long directory, int shard, long fileSize) {
+        long entry = directory + DIRECTORY_HEADER_SIZE + (long) DIRECTORY_ENTRY_SIZE * shard;
+        long blockOffset = UnsafeOps.getLong(entry);
+        long blockSize = UnsafeOps.getLong(entry + 8);
+        if (blockSize == 0) {
+            return true;
+        }
+        if (blockOffset < MmapFileHeader.HEADER_SIZE || blockSize < 8 || blockOffset + blockSize > fileSize) {
+            return false;
+        }
+        long block = baseAddress + blockOffset;
+        return UnsafeOps.getInt(block + 4) == Crc32c.compute(block + 8, blockSize - 8);
+    }
+
+    private static <K> void loadBlock(long baseAddress, long blockOffset, long blockSize, long fileSize,
+                                      Codec<K> keyCodec, Index<K> index) {
+        long p = baseAddress + blockOffset;
+        long end = p + blockSize;
+        int count = UnsafeOps.getInt(p);
+        p += 8;
+        for (int i = 0; i < count; i++) {
+            int keySize = UnsafeOps.getInt(p);
+            K key = keyCodec.decode(p + 4);
+            p += 4 + keySize;
+            long offset = UnsafeOps.getLong(p);
+            int size = UnsafeOps.getInt(p + 8);
+            p += 12;
+            if (p > end || offset < MmapFileHeader.HEADER_SIZE || offset + size > fileSize) {
+                throw new IllegalStateException("检查点数据已损坏");
+            }
+            index.put(key, baseAddress + offset, size);
+        }
+    }
+
+    /**
+     * 在堆外缓冲区中收集各分片的块，写入文件前不占用文件空间
+     */
+    private final class SnapshotBuffer implements IndexEntryConsumer {
+        private final long baseAddress;
+        long address;
+        long capacity;
+        long position;
+        private long countPosition;
+        private int count;
+
+        SnapshotBuffer(long baseAddress) {
+            this.baseAddress = baseAddress;
+            this.capacity = INITIAL_BUFFER_SIZE;
+            this.address = UnsafeOps.allocate(capacity);
+        }
+
+        /**
+         * 把一个分片追加为一个块
+         */
+        void collect(int shard) {
+            ensureCapacity(8);
+            countPosition = position;
+            position += 8;
+            count = 0;
+            IndexCursor cursor = index.cursor(shard);
+            while (cursor.advance(CURSOR_BATCH, this)) {
+                // 每批之间释放分片锁
+            }
+            UnsafeOps.putInt(address + countPosition, count);
+            UnsafeOps.putInt(address + countPosition + 4,
+                    Crc32c.compute(address + countPosition + 8, position - countPosition - 8));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Object key, long valueAddress, int size) {
+            K typedKey = (K) key;
+            int keySize = keyCodec.calculateSize(typedKey);
+            ensureCapacity(4L + keySize + 12);
+            int actualKeySize = keyCodec.encode(address + position + 4, typedKey);
+            UnsafeOps.putInt(address + position, actualKeySize);
+            position += 4 + actualKeySize;
+            UnsafeOps.putLong(address + position, valueAddress - baseAddress);
+            UnsafeOps.putInt(address + position + 8, size);
+            position += 12;
+            count++;
+        }
+
+        private void ensureCapacity(long required) {
+            if (position + required > capacity) {
+                long newCapacity = Math.max(position + required, capacity * 2);
+                if (newCapacity > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("检查点过大");
+                }
+                address = UnsafeOps.reallocate(address, newCapacity);
+                capacity = newCapacity;
+            }
+        }
+
+        void free() {
+            UnsafeOps.free(address);
+        }
+    }
+}
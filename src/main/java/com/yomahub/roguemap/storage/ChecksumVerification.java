@@ -0,0 +1,22 @@
+package com.yomahub.roguemap.storage;
+
+/**
+ * 打开持久化文件时的校验和验证方式
+ */
+public enum ChecksumVerification {
+
+    /**
+     * 不验证校验和，只检查魔数和版本
+     */
+    NONE,
+
+    /**
+     * 打开时验证文件头、检查点和索引镜像；数据页或自描述记录在第一次读取时验证
+     */
+    LAZY,
+
+    /**
+     * 打开时并行验证全部内容，包括数据页或所有存活的自描述记录
+     */
+    ALL
+}
@@ -0,0 +1,237 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexSpliterator;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把所有操作委托给底层索引的索引包装基类
+ * <p>
+ * 持久化相关的包装（预写日志、检查点）继承本类，只重写需要拦截的写操作。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public abstract class ForwardingIndex<K> implements Index<K> {
+
+    protected final Index<K> delegate;
+
+    protected ForwardingIndex(Index<K> delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("底层索引不能为 null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * 获取底层索引
+     *
+     * @return 底层索引
+     */
+    public Index<K> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 去掉所有包装，返回最内层的索引
+     *
+     * @param index 索引
+     * @return 最内层的索引
+     */
+    public static Index<?> unwrap(Index<?> index) {
+        while (index instanceof ForwardingIndex) {
+            index = ((ForwardingIndex<?>) index).getDelegate();
+        }
+        return index;
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        return delegate.put(key, address, size);
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        return delegate.putIfAbsent(key, address, size);
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        delegate.compute(key, remapper);
+    }
+
+    @Override
+    public long get(K key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public int getSize(K key) {
+        return delegate.getSize(key);
+    }
+
+    @Override
+    public long remove(K key) {
+        return delegate.remove(key);
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        return delegate.putAndGetOld(key, newAddress, newSize);
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        return delegate.removeAndGet(key);
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        return delegate.putAndGetOld(key, newAddress, newSize, holder);
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        return delegate.removeAndGet(key, holder);
+    }
+
+    @Override
+    public int shardCount() {
+        return delegate.shardCount();
+    }
+
+    @Override
+    public IndexCursor cursor(int shard) {
+        return delegate.cursor(shard);
+    }
+
+    @Override
+    public void drainDirtyShards(boolean[] dirty) {
+        delegate.drainDirtyShards(dirty);
+    }
+
+    @Override
+    public long shardLayoutVersion() {
+        return delegate.shardLayoutVersion();
+    }
+
+    @Override
+    public boolean hasStableShards() {
+        return delegate.hasStableShards();
+    }
+
+    @Override
+    public boolean supportsValueLock() {
+        return delegate.supportsValueLock();
+    }
+
+    @Override
+    public long lockValue(K key, IndexResultHolder result) {
+        return delegate.lockValue(key, result);
+    }
+
+    @Override
+    public void unlockValue(K key, long stamp) {
+        delegate.unlockValue(key, stamp);
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        delegate.putAll(keys, addresses, sizes, oldAddresses, oldSizes);
+    }
+
+    @Override
+    public void getAll(List<? extends K> keys, long[] addresses) {
+        delegate.getAll(keys, addresses);
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        delegate.removeAll(keys, oldAddresses, oldSizes);
+    }
+
+    @Override
+    public void forEach(IndexEntryConsumer consumer) {
+        delegate.forEach(consumer);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    /**
+     * 按分片分批取出底层索引的键，通过 {@link #removeAll} 在各自键的锁内删除
+     * <p>
+     * 需要在键的锁内记录每个变更的包装用它实现 {@link #clear()}：先记录再直接清空底层索引时，
+     * 两步之间落下的并发写入会被清空，记录中却保留着它。清空期间并发写入的键可能保留，与记录一致。
+     * </p>
+     */
+    @SuppressWarnings("unchecked") // 游标给出的键来自底层索引，类型为 K
+    protected void removeEach() {
+        int batchSize = IndexSpliterator.CHUNK_SIZE;
+        List<K> keys = new ArrayList<>(batchSize);
+        long[] oldAddresses = new long[batchSize];
+        int[] oldSizes = new int[batchSize];
+        for (int shard = 0; shard < delegate.shardCount(); shard++) {
+            IndexCursor cursor = delegate.cursor(shard);
+            boolean more;
+            do {
+                keys.clear();
+                more = cursor.advance(batchSize, (key, address, size) -> keys.add((K) key));
+                if (!keys.isEmpty()) {
+                    removeAll(keys, oldAddresses, oldSizes);
+                }
+            } while (more);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public int serialize(long address) {
+        return delegate.serialize(address);
+    }
+
+    @Override
+    public void deserialize(long address, int size) {
+        delegate.deserialize(address, size);
+    }
+
+    @Override
+    public int serializedSize() {
+        return delegate.serializedSize();
+    }
+
+    @Override
+    public int serializeWithOffsets(long address, long baseAddress) {
+        return delegate.serializeWithOffsets(address, baseAddress);
+    }
+
+    @Override
+    public void deserializeWithOffsets(long address, int size, long baseAddress) {
+        delegate.deserializeWithOffsets(address, size, baseAddress);
+    }
+}
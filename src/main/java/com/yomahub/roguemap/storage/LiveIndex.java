@@ -0,0 +1,189 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+import java.util.List;
+
+/**
+ * 把索引变更同步发布到映射文件中共享索引的索引包装
+ * <p>
+ * 所有写操作都转换为底层索引的 {@link Index#compute(Object, IndexRemapper)}，
+ * 在键所在的锁内确定新条目后立即发布到 {@link LiveTable}，因此同一个键在共享索引中的变更顺序与本进程的索引一致，
+ * 其他进程在发布完成后就能读到新值。读操作、遍历和共享值锁直接委托给底层索引。
+ * </p>
+ * <p>
+ * 只有地址或大小发生变化的 compute 会被发布；在原值内存上原地修改（原子数值操作）不需要发布，
+ * 读取方下一次读取值时直接看到新的字节。本包装位于最内层，外层的预写日志或检查点在它之前计算新条目。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class LiveIndex<K> extends ForwardingIndex<K> {
+
+    private final LiveTable<K> table;
+
+    public LiveIndex(Index<K> delegate, LiveTable<K> table) {
+        super(delegate);
+        this.table = table;
+    }
+
+    /**
+     * 获取共享索引
+     *
+     * @return 共享索引
+     */
+    public LiveTable<K> getTable() {
+        return table;
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT, address, size, null);
+        return mutation.oldAddress;
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT_IF_ABSENT, address, size, null);
+        return mutation.oldAddress == 0;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        mutate(key, Mutation.REMAP, 0, 0, remapper);
+    }
+
+    @Override
+    public long remove(K key) {
+        return mutate(key, Mutation.REMOVE, 0, 0, null).oldAddress;
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        return mutation.oldAddress != 0
+                ? IndexUpdateResult.withOldValue(mutation.oldAddress, mutation.oldSize)
+                : IndexUpdateResult.noOldValue();
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        return mutation.oldAddress != 0
+                ? IndexRemoveResult.removed(mutation.oldAddress, mutation.oldSize)
+                : IndexRemoveResult.notPresent();
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.PUT, addresses[i], sizes[i], null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+        }
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.REMOVE, 0, 0, null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+        }
+    }
+
+    /**
+     * 逐个键在锁内删除并发布，共享索引与本进程的索引保持一致
+     */
+    @Override
+    public void clear() {
+        removeEach();
+    }
+
+    private Mutation mutate(K key, int type, long address, int size, IndexRemapper remapper) {
+        Mutation mutation = new Mutation();
+        mutation.prepare(key, type, address, size, remapper);
+        delegate.compute(key, mutation);
+        return mutation;
+    }
+
+    /**
+     * 在键所在的锁内计算新条目，条目变化时发布到共享索引
+     */
+    private final class Mutation implements IndexRemapper {
+        static final int PUT = 0;
+        static final int PUT_IF_ABSENT = 1;
+        static final int REMOVE = 2;
+        static final int REMAP = 3;
+
+        private K key;
+        private int type;
+        private long newAddress;
+        private int newSize;
+        private IndexRemapper remapper;
+        long oldAddress;
+        int oldSize;
+
+        void prepare(K key, int type, long newAddress, int newSize, IndexRemapper remapper) {
+            this.key = key;
+            this.type = type;
+            this.newAddress = newAddress;
+            this.newSize = newSize;
+            this.remapper = remapper;
+            this.oldAddress = 0;
+            this.oldSize = 0;
+        }
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            oldAddress = address;
+            oldSize = size;
+            switch (type) {
+                case PUT:
+                    result.set(newAddress, newSize);
+                    break;
+                case PUT_IF_ABSENT:
+                    if (address == 0) {
+                        result.set(newAddress, newSize);
+                    }
+                    break;
+                case REMOVE:
+                    result.reset();
+                    break;
+                default:
+                    remapper.remap(address, size, result);
+                    break;
+            }
+
+            if (result.address == address && result.size == size) {
+                return;
+            }
+            if (result.address != 0 || address != 0) {
+                table.publish(key, result.address, result.size);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+/**
+ * 直接读取其他进程发布的共享索引的索引
+ * <p>
+ * 查找在 {@link LiveTable} 上无锁进行，不在本进程保存任何条目，写入进程发布之后立即可见。
+ * 共享值锁不加锁：值的内存只追加不回收，读到的地址在写入方替换或删除之后仍然可读。
+ * 遍历是弱一致的。写操作抛出 {@link IllegalStateException}，通常再包装一层 {@link ReadOnlyIndex}。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class LiveReaderIndex<K> implements Index<K> {
+
+    private final LiveTable<K> table;
+
+    public LiveReaderIndex(LiveTable<K> table) {
+        this.table = table;
+    }
+
+    @Override
+    public long get(K key) {
+        IndexResultHolder holder = new IndexResultHolder();
+        table.find(key, holder);
+        return holder.address;
+    }
+
+    @Override
+    public int getSize(K key) {
+        IndexResultHolder holder = new IndexResultHolder();
+        table.find(key, holder);
+        return holder.size;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return table.find(key, new IndexResultHolder());
+    }
+
+    @Override
+    public boolean supportsValueLock() {
+        return true;
+    }
+
+    @Override
+    public long lockValue(K key, IndexResultHolder result) {
+        table.find(key, result);
+        return 0;
+    }
+
+    @Override
+    public void unlockValue(K key, long stamp) {
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        IndexResultHolder current = new IndexResultHolder();
+        table.find(key, current);
+        IndexResultHolder result = new IndexResultHolder();
+        result.set(current.address, current.size);
+        remapper.remap(current.address, current.size, result);
+        if (result.address != current.address || result.size != current.size) {
+            throw readOnly();
+        }
+    }
+
+    @Override
+    public IndexCursor cursor(int shard) {
+        return table.cursor();
+    }
+
+    @Override
+    public void forEach(IndexEntryConsumer consumer) {
+        IndexCursor cursor = table.cursor();
+        while (cursor.advance(4096, consumer)) {
+            // 分批遍历所有槽位
+        }
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        throw readOnly();
+    }
+
+    @Override
+    public long remove(K key) {
+        throw readOnly();
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        throw readOnly();
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int serialize(long address) {
+        throw new UnsupportedOperationException("共享索引的读取方不保存索引");
+    }
+
+    @Override
+    public void deserialize(long address, int size) {
+        throw new UnsupportedOperationException("共享索引的读取方不保存索引");
+    }
+
+    @Override
+    public int serializedSize() {
+        throw new UnsupportedOperationException("共享索引的读取方不保存索引");
+    }
+
+    @Override
+    public int serializeWithOffsets(long address, long baseAddress) {
+        throw new UnsupportedOperationException("共享索引的读取方不保存索引");
+    }
+
+    @Override
+    public void deserializeWithOffsets(long address, int size, long baseAddress) {
+        throw new UnsupportedOperationException("共享索引的读取方不保存索引");
+    }
+
+    private static IllegalStateException readOnly() {
+        return new IllegalStateException("只读模式不支持写入");
+    }
+}
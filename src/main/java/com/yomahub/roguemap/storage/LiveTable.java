@@ -0,0 +1,563 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.memory.MmapAllocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+
+/**
+ * 位于映射文件数据区中的共享索引，一个写入进程发布，其他进程无锁读取
+ * <p>
+ * 开放寻址的哈希表，槽位数是 2 的幂，线性探测。布局（均为本机字节序）：
+ * </p>
+ * <pre>
+ * 表头 (64): [Magic "RMLV" (4)][槽位数 (4)][存活条目数 (4)][已占用槽位数 (4)][保留 (48)]
+ * 槽位 (40): [版本 (8)][键哈希 (8)][键记录偏移 (8)][值偏移 (8)][值大小 (4)][状态 (4)]
+ * 键记录:    [键长度 (4)][键]
+ * </pre>
+ * <p>
+ * 每个槽位是一个顺序锁：写入方把偶数版本 CAS 为奇数后写字段，{@code storeFence} 后以 volatile 写入下一个偶数版本；
+ * 读取方读到偶数版本后读字段，{@code loadFence} 后确认版本没有变化，否则重试。
+ * 槽位保存文件偏移而不是地址，每个进程按自己的映射换算。键记录只追加不修改，
+ * 删除只把槽位标记为墓碑，同一个键始终只占用一个槽位，读取方可以在任意时刻沿探测链查找。
+ * 值的内存在映射文件中只追加不回收，读取方拿到的值偏移在写入方替换之后仍然可读。
+ * </p>
+ * <p>
+ * 写入方在键所在的锁内调用 {@link #publish}，同一个进程中不同键的并发发布通过槽位版本的 CAS 互斥。
+ * 已占用槽位（包括墓碑）超过 3/4 时拒绝插入新键，保证探测链总能遇到空槽位。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public final class LiveTable<K> {
+
+    public static final int MAGIC = 0x524D4C56; // "RMLV"
+
+    /**
+     * 单个共享索引最多支持的条目数：表必须位于同一个映射分段中
+     */
+    public static final long MAX_ENTRIES = (1L << 25) / 4 * 3;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 40;
+    private static final int MIN_SLOTS = 16;
+    private static final int ALIGNMENT = 8;
+
+    private static final int SLOT_COUNT_OFFSET = 4;
+    private static final int ENTRY_COUNT_OFFSET = 8;
+    private static final int USED_OFFSET = 12;
+
+    private static final int HASH_OFFSET = 8;
+    private static final int KEY_OFFSET = 16;
+    private static final int VALUE_OFFSET = 24;
+    private static final int SIZE_OFFSET = 32;
+    private static final int STATE_OFFSET = 36;
+
+    private static final int EMPTY = 0;
+    private static final int FULL = 1;
+    private static final int DELETED = 2;
+
+    private static final int MAX_KEY_SCRATCH = 1024; // 超过的键每次临时分配
+    private static final int SPINS_BEFORE_YIELD = 64;
+    private static final long WRITER_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final MmapAllocator allocator;
+    private final Codec<K> keyCodec;
+    private final long offset;
+    private final long address;
+    private final int slotCount;
+    private final int mask;
+
+    private LiveTable(MmapAllocator allocator, Codec<K> keyCodec, long offset) {
+        this.allocator = allocator;
+        this.keyCodec = keyCodec;
+        this.offset = offset;
+        this.address = allocator.addressOf(offset);
+        this.slotCount = UnsafeOps.getInt(address + SLOT_COUNT_OFFSET);
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * 按预计的最大条目数计算槽位数
+     *
+     * @param maxEntries 最大条目数
+     * @return 槽位数
+     */
+    public static int slotCountFor(long maxEntries) {
+        if (maxEntries <= 0 || maxEntries > MAX_ENTRIES) {
+            throw new IllegalArgumentException("共享索引的最大条目数必须在 1 到 " + MAX_ENTRIES + " 之间");
+        }
+        long slots = MIN_SLOTS;
+        while (slots - slots / 4 < maxEntries) {
+            slots <<= 1;
+        }
+        return (int) slots;
+    }
+
+    /**
+     * 在数据区分配一个空的共享索引
+     *
+     * @param allocator  写入方的分配器
+     * @param keyCodec   键编解码器
+     * @param maxEntries 最大条目数
+     * @return 共享索引
+     */
+    public static <K> LiveTable<K> create(MmapAllocator allocator, Codec<K> keyCodec, long maxEntries) {
+        int slots = slotCountFor(maxEntries);
+        int size = HEADER_SIZE + slots * SLOT_SIZE + ALIGNMENT;
+        long raw = allocator.allocate(size);
+        if (raw == 0) {
+            throw new IllegalStateException("文件空间不足，无法分配共享索引: " + size + " 字节");
+        }
+        long start = allocator.offsetOf(raw);
+        long offset = (start + ALIGNMENT - 1) & -ALIGNMENT;
+        long address = allocator.addressOf(offset);
+        if (allocator.offsetOf(address + size - ALIGNMENT - 1) != offset + size - ALIGNMENT - 1) {
+            throw new IllegalStateException("共享索引跨越了映射分段，请减小最大条目数");
+        }
+        UnsafeOps.setMemory(address, size - ALIGNMENT, (byte) 0);
+        UnsafeOps.putInt(address + SLOT_COUNT_OFFSET, slots);
+        UnsafeOps.storeFence();
+        UnsafeOps.putIntVolatile(address, MAGIC);
+        allocator.markDirtyOffset(offset, size - ALIGNMENT);
+        return new LiveTable<>(allocator, keyCodec, offset);
+    }
+
+    /**
+     * 打开文件中已有的共享索引
+     *
+     * @param allocator 分配器，写入方或读取方的映射
+     * @param keyCodec  键编解码器
+     * @param offset    文件头中记录的共享索引偏移
+     * @return 共享索引
+     */
+    public static <K> LiveTable<K> attach(MmapAllocator allocator, Codec<K> keyCodec, long offset) {
+        if (offset < MmapFileHeader.HEADER_SIZE || (offset & (ALIGNMENT - 1)) != 0
+                || offset + HEADER_SIZE > allocator.getFileSize()) {
+            throw new IllegalStateException("共享索引偏移无效: " + offset);
+        }
+        long address = allocator.addressOf(offset);
+        int slots = UnsafeOps.getInt(address + SLOT_COUNT_OFFSET);
+        if (UnsafeOps.getIntVolatile(address) != MAGIC || slots < MIN_SLOTS || Integer.bitCount(slots) != 1
+                || offset + HEADER_SIZE + (long) slots * SLOT_SIZE > allocator.getFileSize()) {
+            throw new IllegalStateException("共享索引已失效或已损坏，偏移: " + offset);
+        }
+        return new LiveTable<>(allocator, keyCodec, offset);
+    }
+
+    /**
+     * 获取共享索引在文件中的偏移
+     *
+     * @return 文件偏移
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * 获取槽位数
+     *
+     * @return 槽位数
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * 写入方换用新的共享索引或不再维护它时调用，之后读取方的每次访问都会抛出异常
+     */
+    public void invalidate() {
+        UnsafeOps.putIntVolatile(address, 0);
+        allocator.markDirtyOffset(offset, 4);
+    }
+
+    /**
+     * 获取存活条目数
+     *
+     * @return 条目数
+     */
+    public int size() {
+        checkValid();
+        return UnsafeOps.getIntVolatile(address + ENTRY_COUNT_OFFSET);
+    }
+
+    // ========== 写入方 ==========
+
+    /**
+     * 发布键的当前条目，必须在键所在的锁内调用
+     *
+     * @param key          键
+     * @param valueAddress 写入方映射中的值地址，0 表示删除
+     * @param valueSize    值大小
+     */
+    public void publish(K key, long valueAddress, int valueSize) {
+        long valueOffset = valueAddress != 0 ? allocator.offsetOf(valueAddress) : 0;
+        if (valueOffset < 0) {
+            throw new IllegalStateException("值不在映射文件中，无法发布到共享索引");
+        }
+        withEncodedKey(key, (keyAddress, keyLength, hash) -> publish(keyAddress, keyLength, hash, valueOffset,
+                valueSize));
+    }
+
+    /**
+     * @return 键所在的槽位，删除不存在的键时为 -1
+     */
+    private int publish(long keyAddress, int keyLength, long hash, long valueOffset, int valueSize) {
+        long keyRef = 0; // 新键的键记录，重试时复用
+        while (true) {
+            int found = -1;
+            long foundVersion = 0;
+            int reusable = -1;
+            long reusableVersion = 0;
+            int empty = -1;
+            long emptyVersion = 0;
+            int i = (int) hash & mask;
+            for (int probes = 0; probes < slotCount; probes++, i = (i + 1) & mask) {
+                long slot = slotAddress(i);
+                long version = stableVersion(slot);
+                int state = UnsafeOps.getInt(slot + STATE_OFFSET);
+                if (state == EMPTY) {
+                    empty = i;
+                    emptyVersion = version;
+                    break;
+                }
+                if (keyMatches(slot, hash, keyAddress, keyLength)) {
+                    found = i;
+                    foundVersion = version;
+                    break;
+                }
+                if (state == DELETED && reusable < 0) {
+                    reusable = i;
+                    reusableVersion = version;
+                }
+            }
+
+            if (found >= 0) {
+                long slot = slotAddress(found);
+                boolean live = UnsafeOps.getInt(slot + STATE_OFFSET) == FULL;
+                if (valueOffset == 0 && !live) {
+                    return found;
+                }
+                if (!beginWrite(slot, foundVersion)) {
+                    continue;
+                }
+                if (valueOffset == 0) {
+                    UnsafeOps.putInt(slot + STATE_OFFSET, DELETED);
+                } else {
+                    UnsafeOps.putLong(slot + VALUE_OFFSET, valueOffset);
+                    UnsafeOps.putInt(slot + SIZE_OFFSET, valueSize);
+                    UnsafeOps.putInt(slot + STATE_OFFSET, FULL);
+                }
+                endWrite(slot, foundVersion);
+                if (valueOffset == 0) {
+                    addCount(ENTRY_COUNT_OFFSET, -1);
+                } else if (!live) {
+                    addCount(ENTRY_COUNT_OFFSET, 1);
+                }
+                return found;
+            }
+            if (valueOffset == 0) {
+                return -1;
+            }
+
+            int target = reusable >= 0 ? reusable : empty;
+            long targetVersion = reusable >= 0 ? reusableVersion : emptyVersion;
+            if (target < 0) {
+                throw full();
+            }
+            if (target == empty && addCount(USED_OFFSET, 1) > slotCount - slotCount / 4) {
+                addCount(USED_OFFSET, -1);
+                throw full();
+            }
+            if (keyRef == 0) {
+                keyRef = appendKey(keyAddress, keyLength);
+            }
+            long slot = slotAddress(target);
+            if (!beginWrite(slot, targetVersion)) {
+                if (target == empty) {
+                    addCount(USED_OFFSET, -1);
+                }
+                continue;
+            }
+            UnsafeOps.putLong(slot + HASH_OFFSET, hash);
+            UnsafeOps.putLong(slot + KEY_OFFSET, keyRef);
+            UnsafeOps.putLong(slot + VALUE_OFFSET, valueOffset);
+            UnsafeOps.putInt(slot + SIZE_OFFSET, valueSize);
+            UnsafeOps.putInt(slot + STATE_OFFSET, FULL);
+            endWrite(slot, targetVersion);
+            addCount(ENTRY_COUNT_OFFSET, 1);
+            return target;
+        }
+    }
+
+    /**
+     * 写入方打开文件时让共享索引与加载的索引一致，打开的读取方在此期间一直可用
+     * <p>
+     * 先把写入中途崩溃留下的槽位和指向已回收空间的槽位标记为墓碑，再逐个发布索引中的条目
+     * （已有槽位的键复用原来的键记录），最后把没有被发布的槽位标记为墓碑。
+     * 必须在数据区有新的分配之前调用。
+     * </p>
+     *
+     * @param index 写入方加载的索引
+     */
+    @SuppressWarnings("unchecked")
+    public void republish(Index<K> index) {
+        long limit = allocator.usedMemory();
+        for (int i = 0; i < slotCount; i++) {
+            long slot = slotAddress(i);
+            long version = UnsafeOps.getLongVolatile(slot);
+            int state = UnsafeOps.getInt(slot + STATE_OFFSET);
+            if ((version & 1) != 0 || (state != EMPTY && !refsWithin(slot, limit))) {
+                long even = version & ~1L;
+                UnsafeOps.putLongVolatile(slot, even + 1);
+                resetSlot(slot);
+                UnsafeOps.putInt(slot + STATE_OFFSET, DELETED);
+                endWrite(slot, even);
+            }
+        }
+
+        long[] published = new long[(slotCount + 63) >>> 6];
+        index.forEach((key, valueAddress, valueSize) -> withEncodedKey((K) key, (keyAddress, keyLength, hash) -> {
+            int slot = publish(keyAddress, keyLength, hash, allocator.offsetOf(valueAddress), valueSize);
+            published[slot >>> 6] |= 1L << slot;
+            return slot;
+        }));
+
+        int live = 0;
+        int used = 0;
+        for (int i = 0; i < slotCount; i++) {
+            long slot = slotAddress(i);
+            int state = UnsafeOps.getInt(slot + STATE_OFFSET);
+            if (state == FULL && (published[i >>> 6] & (1L << i)) == 0) {
+                long version = UnsafeOps.getLongVolatile(slot);
+                beginWrite(slot, version);
+                UnsafeOps.putInt(slot + STATE_OFFSET, DELETED);
+                endWrite(slot, version);
+                state = DELETED;
+            }
+            live += state == FULL ? 1 : 0;
+            used += state != EMPTY ? 1 : 0;
+        }
+        UnsafeOps.putIntVolatile(address + ENTRY_COUNT_OFFSET, live);
+        UnsafeOps.putIntVolatile(address + USED_OFFSET, used);
+        allocator.markDirtyOffset(offset, HEADER_SIZE);
+    }
+
+    private boolean refsWithin(long slot, long limit) {
+        long keyRef = UnsafeOps.getLong(slot + KEY_OFFSET);
+        long valueOffset = UnsafeOps.getLong(slot + VALUE_OFFSET);
+        int valueSize = UnsafeOps.getInt(slot + SIZE_OFFSET);
+        if (keyRef < MmapFileHeader.HEADER_SIZE || keyRef + 4 > limit) {
+            return false;
+        }
+        int keyLength = UnsafeOps.getInt(allocator.addressOf(keyRef));
+        return keyLength >= 0 && keyRef + 4 + keyLength <= limit
+                && (valueOffset == 0 || (valueSize >= 0 && valueOffset + valueSize <= limit));
+    }
+
+    private long appendKey(long keyAddress, int keyLength) {
+        long record = allocator.allocate(4 + keyLength);
+        if (record == 0) {
+            throw new IllegalStateException("文件空间不足，无法写入共享索引的键记录");
+        }
+        UnsafeOps.putInt(record, keyLength);
+        UnsafeOps.copyMemory(keyAddress, record + 4, keyLength);
+        allocator.markDirty(record, 4 + keyLength);
+        return allocator.offsetOf(record);
+    }
+
+    private boolean beginWrite(long slot, long version) {
+        // CAS 是完整的屏障，之后的字段写入不会被提前
+        return UnsafeOps.compareAndSwapLong(slot, version, version + 1);
+    }
+
+    private void endWrite(long slot, long version) {
+        UnsafeOps.storeFence();
+        UnsafeOps.putLongVolatile(slot, version + 2);
+        allocator.markDirtyOffset(offset + HEADER_SIZE + (slot - slotAddress(0)), SLOT_SIZE);
+    }
+
+    private static void resetSlot(long slot) {
+        UnsafeOps.putLong(slot + HASH_OFFSET, 0);
+        UnsafeOps.putLong(slot + KEY_OFFSET, 0);
+        UnsafeOps.putLong(slot + VALUE_OFFSET, 0);
+        UnsafeOps.putInt(slot + SIZE_OFFSET, 0);
+        UnsafeOps.putInt(slot + STATE_OFFSET, EMPTY);
+    }
+
+    private int addCount(int fieldOffset, int delta) {
+        long field = address + fieldOffset;
+        int current;
+        do {
+            current = UnsafeOps.getIntVolatile(field);
+        } while (!UnsafeOps.compareAndSwapInt(field, current, current + delta));
+        allocator.markDirtyOffset(offset + fieldOffset, 4);
+        return current + delta;
+    }
+
+    private IllegalStateException full() {
+        return new IllegalStateException("共享索引已满（" + slotCount + " 个槽位），需要更大的 liveIndex(maxEntries)");
+    }
+
+    // ========== 读取方 ==========
+
+    /**
+     * 无锁查找键的当前条目
+     *
+     * @param key    键
+     * @param result 输出：本进程映射中的值地址和大小，不存在时为 0
+     * @return 找到返回 true
+     */
+    public boolean find(K key, IndexResultHolder result) {
+        checkValid();
+        result.reset();
+        withEncodedKey(key, (keyAddress, keyLength, hash) -> {
+            int i = (int) hash & mask;
+            for (int probes = 0; probes < slotCount; probes++, i = (i + 1) & mask) {
+                long slot = slotAddress(i);
+                while (true) {
+                    long version = stableVersion(slot);
+                    int state = UnsafeOps.getInt(slot + STATE_OFFSET);
+                    long slotHash = UnsafeOps.getLong(slot + HASH_OFFSET);
+                    long keyRef = UnsafeOps.getLong(slot + KEY_OFFSET);
+                    long valueOffset = UnsafeOps.getLong(slot + VALUE_OFFSET);
+                    int valueSize = UnsafeOps.getInt(slot + SIZE_OFFSET);
+                    UnsafeOps.loadFence();
+                    if (UnsafeOps.getLongVolatile(slot) != version) {
+                        continue;
+                    }
+                    if (state == EMPTY) {
+                        return -1;
+                    }
+                    // 键记录只追加不修改，版本确认之后可以直接比较
+                    if (state == FULL && slotHash == hash && keyEquals(keyRef, keyAddress, keyLength)) {
+                        result.set(allocator.addressOf(valueOffset), valueSize);
+                        return i;
+                    }
+                    break;
+                }
+            }
+            return -1;
+        });
+        return result.address != 0;
+    }
+
+    /**
+     * 遍历所有槽位，每个槽位读取一次一致的快照
+     *
+     * @return 游标
+     */
+    public IndexCursor cursor() {
+        checkValid();
+        return new IndexCursor() {
+            private int next;
+
+            @Override
+            public boolean advance(int limit, IndexEntryConsumer consumer) {
+                checkValid();
+                int end = (int) Math.min(slotCount, (long) next + limit);
+                for (; next < end; next++) {
+                    long slot = slotAddress(next);
+                    while (true) {
+                        long version = stableVersion(slot);
+                        int state = UnsafeOps.getInt(slot + STATE_OFFSET);
+                        long keyRef = UnsafeOps.getLong(slot + KEY_OFFSET);
+                        long valueOffset = UnsafeOps.getLong(slot + VALUE_OFFSET);
+                        int valueSize = UnsafeOps.getInt(slot + SIZE_OFFSET);
+                        UnsafeOps.loadFence();
+                        if (UnsafeOps.getLongVolatile(slot) != version) {
+                            continue;
+                        }
+                        if (state == FULL) {
+                            K key = keyCodec.decode(allocator.addressOf(keyRef) + 4);
+                            consumer.accept(key, allocator.addressOf(valueOffset), valueSize);
+                        }
+                        break;
+                    }
+                }
+                return next < slotCount;
+            }
+        };
+    }
+
+    private void checkValid() {
+        if (UnsafeOps.getIntVolatile(address) != MAGIC) {
+            throw new IllegalStateException("共享索引已失效，写入进程换用了新的共享索引或不再维护它，需要重新打开");
+        }
+    }
+
+    // ========== 公共 ==========
+
+    private long slotAddress(int i) {
+        return address + HEADER_SIZE + (long) i * SLOT_SIZE;
+    }
+
+    /**
+     * 等待槽位不在写入中并返回它的版本；写入方在写入途中退出时，读取方等待一段时间后放弃
+     */
+    private static long stableVersion(long slot) {
+        long version = UnsafeOps.getLongVolatile(slot);
+        int spins = 0;
+        long deadline = 0;
+        while ((version & 1) != 0) {
+            if (++spins > SPINS_BEFORE_YIELD) {
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + WRITER_TIMEOUT_NANOS;
+                } else if (now - deadline > 0) {
+                    throw new IllegalStateException("共享索引的槽位一直处于写入中，写入进程可能已经退出");
+                }
+                Thread.yield();
+            }
+            version = UnsafeOps.getLongVolatile(slot);
+        }
+        return version;
+    }
+
+    private boolean keyMatches(long slot, long hash, long keyAddress, int keyLength) {
+        return UnsafeOps.getLong(slot + HASH_OFFSET) == hash
+                && keyEquals(UnsafeOps.getLong(slot + KEY_OFFSET), keyAddress, keyLength);
+    }
+
+    private boolean keyEquals(long keyRef, long keyAddress, int keyLength) {
+        if (keyRef == 0) {
+            return false;
+        }
+        long record = allocator.addressOf(keyRef);
+        return UnsafeOps.getInt(record) == keyLength && UnsafeOps.memoryEquals(record + 4, keyAddress, keyLength);
+    }
+
+    private int withEncodedKey(K key, EncodedKeyAction action) {
+        int keySize = keyCodec.calculateSize(key);
+        if (keySize < 0) {
+            throw new IllegalStateException("无法确定键的大小");
+        }
+        boolean temporary = keySize > MAX_KEY_SCRATCH;
+        long buffer = temporary ? UnsafeOps.allocate(keySize) : SCRATCH.get().address;
+        try {
+            int length = keyCodec.encode(buffer, key);
+            return action.apply(buffer, length, UnsafeOps.hash(buffer, length));
+        } finally {
+            if (temporary) {
+                UnsafeOps.free(buffer);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EncodedKeyAction {
+        int apply(long keyAddress, int keyLength, long hash);
+    }
+
+    /**
+     * 编码键的线程私有缓冲区
+     */
+    private static final class Scratch {
+        final long address = UnsafeOps.allocate(MAX_KEY_SCRATCH);
+    }
+}
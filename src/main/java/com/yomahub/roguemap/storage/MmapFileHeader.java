@@ -1,7 +1,13 @@
 package com.yomahub.roguemap.storage;
 
+import com.yomahub.roguemap.memory.Crc32c;
 import com.yomahub.roguemap.memory.UnsafeOps;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * MMAP 文件头管理
  *
@@ -16,7 +22,26 @@ import com.yomahub.roguemap.memory.UnsafeOps;
  * - Index Offset (8 bytes)
  * - Index Size (8 bytes)
  * - Is Temporary (4 bytes): 0=persistent, 1=temporary
- * - Reserved (3956 bytes)
+ * - Dirty (4 bytes): 0=上次正常关闭, 1=打开中（启用预写日志时），打开时为 1 表示需要重放日志
+ * - Active Slot (4 bytes): 0=使用上面的 Index Offset/Size, 1/2=使用对应的检查点槽位
+ * - Flags (4 bytes): bit0=数据区使用自描述记录格式, bit1=文件头带 CRC32C 校验和, bit2=数据区中有共享索引,
+ *   bit3=多 map 存储
+ * - Checkpoint Slot 1 (40 bytes) / Checkpoint Slot 2 (40 bytes)，每个槽位：
+ *   Directory Offset (8) / Directory Size (8) / Capacity (8) / Data Offset (8) / WAL Start LSN (8)
+ * - Record Sequence (8 bytes): 自描述记录已使用的最大序号，正常关闭时写入
+ * - Header CRC32C (4 bytes): 覆盖除 Dirty、Active Slot 和两个槽位之外的字段
+ * - Slot 1 CRC32C (4 bytes) / Slot 2 CRC32C (4 bytes)
+ * - Page Table CRC32C (4 bytes)
+ * - Checksum Start (8 bytes): 页校验和表覆盖的起始偏移，0 表示没有页校验和表
+ * - Page Table Offset (8 bytes): 页校验和表在文件中的偏移
+ * - Live Table Offset (8 bytes): 共享索引在文件中的偏移，设置了 bit2 时才有效并计入文件头校验和
+ * - Map Directory (3912 bytes): 设置了 bit3 时为多 map 存储的目录并计入文件头校验和，否则保留：
+ *   Map Count (4) / Reserved (4) / 每个子 map 64 字节：
+ *   Name Length (4) / Name (32, UTF-8) / Index Type (4) / Entry Count (4) / Image CRC32C (4) / Index Offset (8) / Index Size (8)
+ *
+ * 后台检查点交替写入两个槽位：先写入并落盘非活动槽位，再用一次 4 字节写入切换 Active Slot，
+ * 任何时刻崩溃，文件中都有一个完整的检查点。Dirty 和 Active Slot 单独写入，不计入文件头校验和；
+ * 每个槽位有自己的校验和，随槽位一起写入。
  */
 public class MmapFileHeader {
 
@@ -24,6 +49,57 @@ public class MmapFileHeader {
     public static final int VERSION = 1;
     public static final int HEADER_SIZE = 4096;  // 4KB
 
+    /**
+     * Flags 位：数据区的每个值都是自描述记录
+     */
+    public static final int FLAG_RECORDS = 1;
+
+    /**
+     * Flags 位：文件头和检查点槽位带 CRC32C 校验和
+     */
+    public static final int FLAG_CHECKSUMS = 2;
+
+    /**
+     * Flags 位：写入进程在数据区维护共享索引，其他进程可以实时读取
+     */
+    public static final int FLAG_LIVE_INDEX = 4;
+
+    /**
+     * Flags 位：文件是多 map 存储，各子 map 的索引镜像记录在文件头的目录中
+     */
+    public static final int FLAG_STORE = 8;
+
+    /**
+     * 目录最多记录的子 map 数量
+     */
+    public static final int MAX_MAPS;
+
+    /**
+     * 子 map 名称 UTF-8 编码后的最大字节数
+     */
+    public static final int MAX_MAP_NAME_BYTES = 32;
+
+    private static final int DIRTY_OFFSET = 44;
+    private static final int ACTIVE_SLOT_OFFSET = 48;
+    private static final int FLAGS_OFFSET = 52;
+    private static final int SLOTS_OFFSET = 56;
+    private static final int SLOT_SIZE = 40;
+    private static final int RECORD_SEQUENCE_OFFSET = SLOTS_OFFSET + 2 * SLOT_SIZE;
+    private static final int HEADER_CRC_OFFSET = RECORD_SEQUENCE_OFFSET + 8;
+    private static final int SLOT_CRC_OFFSET = HEADER_CRC_OFFSET + 4;
+    private static final int PAGE_TABLE_CRC_OFFSET = SLOT_CRC_OFFSET + 8;
+    private static final int CHECKSUM_START_OFFSET = PAGE_TABLE_CRC_OFFSET + 4;
+    private static final int PAGE_TABLE_OFFSET = CHECKSUM_START_OFFSET + 8;
+    private static final int LIVE_TABLE_OFFSET = PAGE_TABLE_OFFSET + 8;
+    private static final int RESERVED_OFFSET = LIVE_TABLE_OFFSET + 8;
+    private static final int DIRECTORY_OFFSET = RESERVED_OFFSET;
+    private static final int DIRECTORY_HEADER_SIZE = 8;
+    private static final int MAP_ENTRY_SIZE = 64;
+
+    static {
+        MAX_MAPS = (HEADER_SIZE - DIRECTORY_OFFSET - DIRECTORY_HEADER_SIZE) / MAP_ENTRY_SIZE;
+    }
+
     private int magicNumber;
     private int version;
     private int indexType;      // 0=HashIndex, 1=SegmentedHashIndex
@@ -32,6 +108,17 @@ public class MmapFileHeader {
     private long indexOffset;   // 索引数据起始位置
     private long indexSize;     // 索引数据大小
     private int isTemporary;    // 0=persistent, 1=temporary
+    private int dirty;          // 0=正常关闭, 1=打开中
+    private int activeSlot;     // 0=不使用检查点槽位, 1/2=活动槽位
+    private int flags;          // FLAG_* 位组合
+    private long recordSequence; // 自描述记录的最大序号
+    private int pageTableChecksum; // 页校验和表本身的校验和
+    private long checksumStart;    // 页校验和覆盖的起始偏移，0=没有页校验和表
+    private long pageTableOffset;  // 页校验和表的偏移
+    private long liveTableOffset;  // 共享索引的偏移
+    private List<MapEntry> maps = Collections.emptyList(); // 多 map 存储的目录
+    private boolean checksumValid = true; // 读取时计算，文件头校验和是否一致
+    private final CheckpointSlot[] slots = {new CheckpointSlot(), new CheckpointSlot()};
 
     public MmapFileHeader() {
         this.magicNumber = MAGIC_NUMBER;
@@ -52,6 +139,32 @@ public class MmapFileHeader {
         header.indexOffset = UnsafeOps.getLong(address + 24);
         header.indexSize = UnsafeOps.getLong(address + 32);
         header.isTemporary = UnsafeOps.getInt(address + 40);
+        header.dirty = UnsafeOps.getInt(address + DIRTY_OFFSET);
+        header.activeSlot = UnsafeOps.getInt(address + ACTIVE_SLOT_OFFSET);
+        header.flags = UnsafeOps.getInt(address + FLAGS_OFFSET);
+        header.recordSequence = UnsafeOps.getLong(address + RECORD_SEQUENCE_OFFSET);
+        header.pageTableChecksum = UnsafeOps.getInt(address + PAGE_TABLE_CRC_OFFSET);
+        header.checksumStart = UnsafeOps.getLong(address + CHECKSUM_START_OFFSET);
+        header.pageTableOffset = UnsafeOps.getLong(address + PAGE_TABLE_OFFSET);
+        header.liveTableOffset = UnsafeOps.getLong(address + LIVE_TABLE_OFFSET);
+        if (header.isStore()) {
+            int count = Math.min(Math.max(UnsafeOps.getInt(address + DIRECTORY_OFFSET), 0), MAX_MAPS);
+            header.maps = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                header.maps.add(MapEntry.read(mapEntryAddress(address, i)));
+            }
+        }
+        boolean checksums = header.hasChecksums();
+        if (checksums) {
+            header.checksumValid = UnsafeOps.getInt(address + HEADER_CRC_OFFSET) == headerChecksum(address);
+        }
+        for (int i = 0; i < 2; i++) {
+            header.slots[i] = CheckpointSlot.read(address + SLOTS_OFFSET + (long) i * SLOT_SIZE);
+            if (checksums) {
+                header.slots[i].checksumValid = UnsafeOps.getInt(address + SLOT_CRC_OFFSET + 4L * i)
+                        == Crc32c.compute(address + SLOTS_OFFSET + (long) i * SLOT_SIZE, SLOT_SIZE);
+            }
+        }
 
         return header;
     }
@@ -68,9 +181,90 @@ public class MmapFileHeader {
         UnsafeOps.putLong(address + 24, indexOffset);
         UnsafeOps.putLong(address + 32, indexSize);
         UnsafeOps.putInt(address + 40, isTemporary);
+        UnsafeOps.putInt(address + DIRTY_OFFSET, dirty);
+        UnsafeOps.putInt(address + ACTIVE_SLOT_OFFSET, activeSlot);
+        UnsafeOps.putInt(address + FLAGS_OFFSET, flags | FLAG_CHECKSUMS);
+        for (int i = 1; i <= 2; i++) {
+            writeSlot(address, i, slots[i - 1]);
+        }
+        UnsafeOps.putLong(address + RECORD_SEQUENCE_OFFSET, recordSequence);
+        UnsafeOps.putInt(address + PAGE_TABLE_CRC_OFFSET, pageTableChecksum);
+        UnsafeOps.putLong(address + CHECKSUM_START_OFFSET, checksumStart);
+        UnsafeOps.putLong(address + PAGE_TABLE_OFFSET, pageTableOffset);
+        UnsafeOps.putLong(address + LIVE_TABLE_OFFSET, liveTableOffset);
 
         // 清空保留区域（确保干净的头部）
-        UnsafeOps.setMemory(address + 44, HEADER_SIZE - 44, (byte) 0);
+        UnsafeOps.setMemory(address + RESERVED_OFFSET, HEADER_SIZE - RESERVED_OFFSET, (byte) 0);
+        if (isStore()) {
+            UnsafeOps.putInt(address + DIRECTORY_OFFSET, maps.size());
+            for (int i = 0; i < maps.size(); i++) {
+                maps.get(i).write(mapEntryAddress(address, i));
+            }
+        }
+        UnsafeOps.putInt(address + HEADER_CRC_OFFSET, headerChecksum(address));
+    }
+
+    /**
+     * 计算文件头的校验和，单独写入的 Dirty、Active Slot 和槽位不在其中；
+     * 共享索引偏移和多 map 目录只在设置了对应标志时计入，没有它们的旧文件校验和不变
+     */
+    private static int headerChecksum(long address) {
+        Crc32c crc = new Crc32c()
+                .update(address, DIRTY_OFFSET)
+                .update(address + FLAGS_OFFSET, 4)
+                .update(address + RECORD_SEQUENCE_OFFSET, 8)
+                .update(address + PAGE_TABLE_CRC_OFFSET, LIVE_TABLE_OFFSET - PAGE_TABLE_CRC_OFFSET);
+        int flags = UnsafeOps.getInt(address + FLAGS_OFFSET);
+        if ((flags & FLAG_LIVE_INDEX) != 0) {
+            crc.update(address + LIVE_TABLE_OFFSET, 8);
+        }
+        if ((flags & FLAG_STORE) != 0) {
+            crc.update(address + DIRECTORY_OFFSET, HEADER_SIZE - DIRECTORY_OFFSET);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 只写入一个检查点槽位，不改动头部的其他字段
+     *
+     * @param address 头部地址
+     * @param slot    槽位编号（1 或 2）
+     * @param value   槽位内容
+     */
+    public static void writeSlot(long address, int slot, CheckpointSlot value) {
+        long slotAddress = address + SLOTS_OFFSET + (long) (checkSlot(slot) - 1) * SLOT_SIZE;
+        value.write(slotAddress);
+        UnsafeOps.putInt(address + SLOT_CRC_OFFSET + 4L * (slot - 1), Crc32c.compute(slotAddress, SLOT_SIZE));
+    }
+
+    /**
+     * 切换活动槽位（单次 4 字节写入）
+     *
+     * @param address 头部地址
+     * @param slot    槽位编号（0、1 或 2）
+     */
+    public static void writeActiveSlot(long address, int slot) {
+        if (slot != 0) {
+            checkSlot(slot);
+        }
+        UnsafeOps.putIntVolatile(address + ACTIVE_SLOT_OFFSET, slot);
+    }
+
+    /**
+     * 只写入 Dirty 标记
+     *
+     * @param address 头部地址
+     * @param dirty   0=正常关闭, 1=打开中
+     */
+    public static void writeDirty(long address, int dirty) {
+        UnsafeOps.putIntVolatile(address + DIRTY_OFFSET, dirty);
+    }
+
+    private static int checkSlot(int slot) {
+        if (slot != 1 && slot != 2) {
+            throw new IllegalArgumentException("检查点槽位编号必须为 1 或 2: " + slot);
+        }
+        return slot;
     }
 
     /**
@@ -152,6 +346,142 @@ public class MmapFileHeader {
         return isTemporary == 1;
     }
 
+    public int getDirty() {
+        return dirty;
+    }
+
+    public void setDirty(int dirty) {
+        this.dirty = dirty;
+    }
+
+    public boolean isDirty() {
+        return dirty == 1;
+    }
+
+    public int getActiveSlot() {
+        return activeSlot;
+    }
+
+    public void setActiveSlot(int activeSlot) {
+        this.activeSlot = activeSlot;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+    public boolean hasRecords() {
+        return (flags & FLAG_RECORDS) != 0;
+    }
+
+    public boolean hasChecksums() {
+        return (flags & FLAG_CHECKSUMS) != 0;
+    }
+
+    public boolean hasLiveIndex() {
+        return (flags & FLAG_LIVE_INDEX) != 0;
+    }
+
+    public boolean isStore() {
+        return (flags & FLAG_STORE) != 0;
+    }
+
+    /**
+     * 获取多 map 存储的目录
+     *
+     * @return 子 map 列表，不是多 map 存储时为空
+     */
+    public List<MapEntry> getMaps() {
+        return maps;
+    }
+
+    /**
+     * 设置多 map 存储的目录，同时设置 {@link #FLAG_STORE}
+     *
+     * @param maps 子 map 列表，最多 {@link #MAX_MAPS} 个
+     */
+    public void setMaps(List<MapEntry> maps) {
+        if (maps.size() > MAX_MAPS) {
+            throw new IllegalArgumentException("子 map 数量不能超过 " + MAX_MAPS);
+        }
+        this.maps = new ArrayList<>(maps);
+        this.flags |= FLAG_STORE;
+    }
+
+    private static long mapEntryAddress(long address, int i) {
+        return address + DIRECTORY_OFFSET + DIRECTORY_HEADER_SIZE + (long) i * MAP_ENTRY_SIZE;
+    }
+
+    public long getLiveTableOffset() {
+        return liveTableOffset;
+    }
+
+    /**
+     * 设置共享索引的位置，同时设置或清除 {@link #FLAG_LIVE_INDEX}
+     *
+     * @param offset 共享索引在文件中的偏移，0 表示没有共享索引
+     */
+    public void setLiveTableOffset(long offset) {
+        this.liveTableOffset = offset;
+        this.flags = offset != 0 ? flags | FLAG_LIVE_INDEX : flags & ~FLAG_LIVE_INDEX;
+    }
+
+    /**
+     * 读取时文件头的校验和是否一致
+     *
+     * @return 一致或文件没有校验和时返回 true
+     */
+    public boolean isChecksumValid() {
+        return checksumValid;
+    }
+
+    public long getRecordSequence() {
+        return recordSequence;
+    }
+
+    public void setRecordSequence(long recordSequence) {
+        this.recordSequence = recordSequence;
+    }
+
+    public int getPageTableChecksum() {
+        return pageTableChecksum;
+    }
+
+    public long getChecksumStart() {
+        return checksumStart;
+    }
+
+    public long getPageTableOffset() {
+        return pageTableOffset;
+    }
+
+    /**
+     * 设置页校验和表
+     *
+     * @param checksumStart   校验和覆盖的起始偏移，0 表示没有页校验和表
+     * @param pageTableOffset 页校验和表的偏移
+     * @param checksum        页校验和表本身的校验和
+     */
+    public void setPageTable(long checksumStart, long pageTableOffset, int checksum) {
+        this.checksumStart = checksumStart;
+        this.pageTableOffset = pageTableOffset;
+        this.pageTableChecksum = checksum;
+    }
+
+    /**
+     * 获取检查点槽位
+     *
+     * @param slot 槽位编号（1 或 2）
+     * @return 槽位内容
+     */
+    public CheckpointSlot getSlot(int slot) {
+        return slots[checkSlot(slot) - 1];
+    }
+
     @Override
     public String toString() {
         return "MmapFileHeader{" +
@@ -163,6 +493,160 @@ public class MmapFileHeader {
                 ", indexOffset=" + indexOffset +
                 ", indexSize=" + indexSize +
                 ", isTemporary=" + isTemporary +
+                ", dirty=" + dirty +
+                ", activeSlot=" + activeSlot +
+                ", flags=" + flags +
+                ", recordSequence=" + recordSequence +
+                ", checksumStart=" + checksumStart +
+                ", pageTableOffset=" + pageTableOffset +
+                ", liveTableOffset=" + liveTableOffset +
+                ", maps=" + maps.size() +
                 '}';
     }
+
+    /**
+     * 检查点槽位
+     */
+    public static final class CheckpointSlot {
+        /**
+         * 检查点目录在文件中的偏移，目录记录每个索引分片块的位置
+         */
+        public long indexOffset;
+
+        /**
+         * 检查点目录大小
+         */
+        public long indexSize;
+
+        /**
+         * 目录区域的容量，之后的检查点不超过它时复用该区域
+         */
+        public long capacity;
+
+        /**
+         * 写入检查点时的分配偏移量，恢复后新数据分配在它之后
+         */
+        public long dataOffset;
+
+        /**
+         * 检查点覆盖到的预写日志 LSN，恢复时从这里开始重放；-1 表示未启用预写日志
+         */
+        public long walStartLsn = -1;
+
+        private boolean checksumValid = true;
+
+        static CheckpointSlot read(long address) {
+            CheckpointSlot slot = new CheckpointSlot();
+            slot.indexOffset = UnsafeOps.getLong(address);
+            slot.indexSize = UnsafeOps.getLong(address + 8);
+            slot.capacity = UnsafeOps.getLong(address + 16);
+            slot.dataOffset = UnsafeOps.getLong(address + 24);
+            slot.walStartLsn = UnsafeOps.getLong(address + 32);
+            return slot;
+        }
+
+        void write(long address) {
+            UnsafeOps.putLong(address, indexOffset);
+            UnsafeOps.putLong(address + 8, indexSize);
+            UnsafeOps.putLong(address + 16, capacity);
+            UnsafeOps.putLong(address + 24, dataOffset);
+            UnsafeOps.putLong(address + 32, walStartLsn);
+        }
+
+        /**
+         * 读取时槽位的校验和是否一致
+         *
+         * @return 一致或文件没有校验和时返回 true
+         */
+        public boolean isChecksumValid() {
+            return checksumValid;
+        }
+
+        /**
+         * 目录区域的结束偏移
+         *
+         * @return 结束偏移，槽位未使用时为 0
+         */
+        public long end() {
+            return indexOffset + capacity;
+        }
+    }
+
+    /**
+     * 多 map 存储目录中的一个子 map：名称和最近一次提交的索引镜像
+     */
+    public static final class MapEntry {
+        /**
+         * 子 map 名称
+         */
+        public final String name;
+
+        /**
+         * 索引类型，与文件头的 Index Type 含义相同
+         */
+        public final int indexType;
+
+        /**
+         * 提交时的条目数量
+         */
+        public final int entryCount;
+
+        /**
+         * 索引镜像的 CRC32C
+         */
+        public final int checksum;
+
+        /**
+         * 索引镜像在文件中的偏移
+         */
+        public final long indexOffset;
+
+        /**
+         * 索引镜像大小
+         */
+        public final long indexSize;
+
+        public MapEntry(String name, int indexType, int entryCount, int checksum, long indexOffset, long indexSize) {
+            this.name = name;
+            this.indexType = indexType;
+            this.entryCount = entryCount;
+            this.checksum = checksum;
+            this.indexOffset = indexOffset;
+            this.indexSize = indexSize;
+        }
+
+        /**
+         * 检查子 map 名称能否写入目录，创建子 map 之前调用
+         *
+         * @param name 名称
+         */
+        public static void checkMapName(String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("子 map 名称不能为空");
+            }
+            if (name.getBytes(StandardCharsets.UTF_8).length > MAX_MAP_NAME_BYTES) {
+                throw new IllegalArgumentException("子 map 名称 UTF-8 编码后不能超过 " + MAX_MAP_NAME_BYTES + " 字节: " + name);
+            }
+        }
+
+        static MapEntry read(long address) {
+            int nameLength = Math.min(Math.max(UnsafeOps.getInt(address), 0), MAX_MAP_NAME_BYTES);
+            byte[] name = new byte[nameLength];
+            UnsafeOps.copyToArray(address + 4, name, 0, nameLength);
+            return new MapEntry(nameLength > 0 ? new String(name, StandardCharsets.UTF_8) : "?",
+                    UnsafeOps.getInt(address + 36), UnsafeOps.getInt(address + 40), UnsafeOps.getInt(address + 44),
+                    UnsafeOps.getLong(address + 48), UnsafeOps.getLong(address + 56));
+        }
+
+        void write(long address) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            UnsafeOps.putInt(address, bytes.length);
+            UnsafeOps.copyFromArray(bytes, 0, address + 4, bytes.length);
+            UnsafeOps.putInt(address + 36, indexType);
+            UnsafeOps.putInt(address + 40, entryCount);
+            UnsafeOps.putInt(address + 44, checksum);
+            UnsafeOps.putLong(address + 48, indexOffset);
+            UnsafeOps.putLong(address + 56, indexSize);
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.memory.Crc32c;
+import com.yomahub.roguemap.memory.UnsafeOps;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * 持久化文件的页校验和表
+ * <p>
+ * 正常关闭时把 [起始偏移, 结束偏移) 按 64KB 分页，每页计算一个 CRC32C，表写在索引镜像之后：
+ * </p>
+ * <pre>
+ * [结束偏移 (8)] 之后每页 [CRC32C (4)]
+ * </pre>
+ * <p>
+ * 起始偏移为数据区开头时覆盖全部数据和索引镜像，为索引偏移时只覆盖索引镜像。
+ * 打开时表被复制到堆内，之后对文件的写入不影响校验；已经验证过的页记在位图中，每页只验证一次。
+ * </p>
+ */
+public final class PageChecksums {
+
+    /**
+     * 页大小
+     */
+    public static final int PAGE_SIZE = 64 * 1024;
+
+    private static final int TABLE_HEADER_SIZE = 8;
+
+    private final long baseAddress;
+    private final long start;
+    private final long end;
+    private final int[] checksums;
+    private final AtomicLongArray verified;
+
+    private PageChecksums(long baseAddress, long start, long end, int[] checksums) {
+        this.baseAddress = baseAddress;
+        this.start = start;
+        this.end = end;
+        this.checksums = checksums;
+        this.verified = new AtomicLongArray((checksums.length + 63) >>> 6);
+    }
+
+    /**
+     * 计算页校验和表的大小
+     *
+     * @param start 起始偏移
+     * @param end   结束偏移
+     * @return 字节数
+     */
+    public static long tableSize(long start, long end) {
+        return TABLE_HEADER_SIZE + 4L * pageCount(start, end);
+    }
+
+    /**
+     * 并行计算各页的校验和并写入表
+     *
+     * @param baseAddress 文件映射的基地址
+     * @param start       起始偏移
+     * @param end         结束偏移
+     * @param tableOffset 表的偏移，必须有 {@link #tableSize} 字节的空间
+     * @return 表本身的校验和，写入文件头
+     */
+    public static int write(long baseAddress, long start, long end, long tableOffset) {
+        long table = baseAddress + tableOffset;
+        int pages = pageCount(start, end);
+        UnsafeOps.putLong(table, end);
+        IntStream.range(0, pages).parallel().forEach(page ->
+                UnsafeOps.putInt(table + TABLE_HEADER_SIZE + 4L * page, pageChecksum(baseAddress, start, end, page)));
+        return Crc32c.compute(table, tableSize(start, end));
+    }
+
+    /**
+     * 读取文件头引用的页校验和表
+     *
+     * @param baseAddress 文件映射的基地址
+     * @param fileSize    文件大小
+     * @param header      文件头
+     * @return 页校验和表，文件没有页校验和表时返回 null
+     * @throws IllegalStateException 表已损坏
+     */
+    public static PageChecksums read(long baseAddress, long fileSize, MmapFileHeader header) {
+        long start = header.getChecksumStart();
+        if (start == 0) {
+            return null;
+        }
+        long tableOffset = header.getPageTableOffset();
+        if (start < MmapFileHeader.HEADER_SIZE || tableOffset < start
+                || tableOffset + TABLE_HEADER_SIZE > fileSize) {
+            throw new IllegalStateException("页校验和表已损坏: offset=" + tableOffset);
+        }
+        long table = baseAddress + tableOffset;
+        long end = UnsafeOps.getLong(table);
+        if (end < start || end > tableOffset || tableOffset + tableSize(start, end) > fileSize
+                || Crc32c.compute(table, tableSize(start, end)) != header.getPageTableChecksum()) {
+            throw new IllegalStateException("页校验和表已损坏: offset=" + tableOffset);
+        }
+        int[] checksums = new int[pageCount(start, end)];
+        for (int page = 0; page < checksums.length; page++) {
+            checksums[page] = UnsafeOps.getInt(table + TABLE_HEADER_SIZE + 4L * page);
+        }
+        return new PageChecksums(baseAddress, start, end, checksums);
+    }
+
+    /**
+     * 校验和覆盖的起始偏移
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * 校验和覆盖的结束偏移
+     */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * 并行验证一段区域覆盖到的所有页
+     *
+     * @param offset 起始偏移
+     * @param size   字节数
+     * @return 第一个不匹配的页的偏移，全部一致返回 -1
+     */
+    public long verifyRange(long offset, long size) {
+        long from = Math.max(offset, start);
+        long to = Math.min(offset + size, end);
+        if (from >= to) {
+            return -1;
+        }
+        int first = (int) ((from - start) / PAGE_SIZE);
+        int last = (int) ((to - 1 - start) / PAGE_SIZE);
+        return IntStream.rangeClosed(first, last).parallel()
+                .filter(page -> !verifyPage(page))
+                .mapToLong(page -> start + (long) page * PAGE_SIZE)
+                .min()
+                .orElse(-1);
+    }
+
+    /**
+     * 验证一个值所在的页，用于读取时的延迟验证
+     *
+     * @param address 值的地址
+     * @param size    值的大小
+     * @throws IllegalStateException 校验和不匹配
+     */
+    public void verifyValue(long address, int size) {
+        long from = Math.max(address - baseAddress, start);
+        long to = Math.min(address - baseAddress + size, end);
+        if (from >= to) {
+            return;
+        }
+        int last = (int) ((to - 1 - start) / PAGE_SIZE);
+        for (int page = (int) ((from - start) / PAGE_SIZE); page <= last; page++) {
+            if (!verifyPage(page)) {
+                throw new IllegalStateException("数据页校验和不匹配，偏移: " + (start + (long) page * PAGE_SIZE));
+            }
+        }
+    }
+
+    private boolean verifyPage(int page) {
+        long bit = 1L << page;
+        if ((verified.get(page >>> 6) & bit) != 0) {
+            return true;
+        }
+        if (pageChecksum(baseAddress, start, end, page) != checksums[page]) {
+            return false;
+        }
+        long current;
+        do {
+            current = verified.get(page >>> 6);
+        } while (!verified.compareAndSet(page >>> 6, current, current | bit));
+        return true;
+    }
+
+    private static int pageCount(long start, long end) {
+        long pages = (end - start + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (pages > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("校验区域过大: " + (end - start));
+        }
+        return (int) pages;
+    }
+
+    private static int pageChecksum(long baseAddress, long start, long end, int page) {
+        long offset = start + (long) page * PAGE_SIZE;
+        return Crc32c.compute(baseAddress + offset, Math.min(PAGE_SIZE, end - offset));
+    }
+}
@@ -0,0 +1,92 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+import java.util.List;
+
+/**
+ * 拒绝所有写操作的索引包装
+ * <p>
+ * 用于只读打开的映射文件：文件以 READ_ONLY 方式映射，任何写入都必须在到达索引或值内存之前被拒绝。
+ * 写操作抛出 {@link IllegalStateException}；compute 仍可用于不支持共享值锁的索引在锁内读取，
+ * 回调试图修改条目时才抛出。本包装位于最外层。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class ReadOnlyIndex<K> extends ForwardingIndex<K> {
+
+    public ReadOnlyIndex(Index<K> delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        throw readOnly();
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        delegate.compute(key, (address, size, result) -> {
+            remapper.remap(address, size, result);
+            if (result.address != address || result.size != size) {
+                result.set(address, size);
+                throw readOnly();
+            }
+        });
+    }
+
+    @Override
+    public long remove(K key) {
+        throw readOnly();
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        throw readOnly();
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        throw readOnly();
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    private static IllegalStateException readOnly() {
+        return new IllegalStateException("只读模式不支持写入");
+    }
+}
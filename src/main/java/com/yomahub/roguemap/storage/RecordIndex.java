@@ -0,0 +1,572 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+import com.yomahub.roguemap.memory.Crc32c;
+import com.yomahub.roguemap.memory.MmapAllocator;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * 把数据区的值写成自描述记录的索引包装
+ * <p>
+ * 每个值连同键一起写成一条记录，记录起始按 8 字节对齐：
+ * </p>
+ * <pre>
+ * [记录长度 (4)][键长度 (4)][CRC32C (4)][flags (4)][键][键长度 (4)][值长度 (4)][序号 (8)][值]
+ * </pre>
+ * <p>
+ * 索引中的地址指向值的起始位置，读路径与普通格式完全相同。CRC 覆盖键和值的字节；
+ * 序号在键所在的锁内、索引更新之前写入，同一个键的序号顺序与索引变更顺序一致，序号为 0 的记录从未生效
+ * （并发插入竞争失败、编码异常或写入途中崩溃）。删除写入墓碑记录，clear 写入清空记录。
+ * 只有地址或大小发生变化的 compute 会写入序号，在原值内存上原地修改（原子数值操作）会让 CRC 失效，
+ * 启用自描述记录的 map 不允许这类操作。
+ * </p>
+ * <p>
+ * 索引镜像丢失、损坏或上次没有正常关闭时，{@link #rebuild} 顺序扫描数据区重建任意类型的索引：
+ * 同一个键按序号取最后一次写入，墓碑和清空记录之前的写入被丢弃。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class RecordIndex<K> extends ForwardingIndex<K> {
+
+    /**
+     * 记录头大小：记录长度、键长度、CRC、flags
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * 键与值之间的尾部大小：键长度、值长度、序号
+     */
+    public static final int STAMP_SIZE = 16;
+
+    /**
+     * flags 位：墓碑记录，键在该序号被删除
+     */
+    public static final int FLAG_TOMBSTONE = 1;
+
+    /**
+     * flags 位：清空记录，该序号之前的所有写入被丢弃
+     */
+    public static final int FLAG_CLEAR = 2;
+
+    private static final int ALIGNMENT = 8;
+    private static final long TOMBSTONE_BIT = 1L << 63;
+    private static final long SEQUENCE_MASK = ~TOMBSTONE_BIT;
+
+    /**
+     * 扫描遇到无法解析的记录时，在之后这个范围内按对齐位置寻找下一条完整的记录
+     */
+    private static final long RESYNC_WINDOW = 16L * 1024 * 1024;
+
+    /**
+     * 并行重建时每个任务处理的数据量
+     */
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+
+    private final Codec<K> keyCodec;
+    private final MmapAllocator allocator;
+    private final AtomicLong sequence;
+
+    /**
+     * 创建写入自描述记录的索引
+     *
+     * @param delegate  底层索引
+     * @param keyCodec  键编解码器
+     * @param allocator 持久化文件的分配器
+     * @param sequence  文件中已使用的最大序号，新记录从它之后开始编号
+     */
+    public RecordIndex(Index<K> delegate, Codec<K> keyCodec, MmapAllocator allocator, long sequence) {
+        super(delegate);
+        this.keyCodec = keyCodec;
+        this.allocator = allocator;
+        this.sequence = new AtomicLong(sequence);
+    }
+
+    /**
+     * 获取已使用的最大序号，正常关闭时写入文件头
+     *
+     * @return 最大序号
+     */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 为键分配一条记录并写入记录头和键，值由调用方编码后调用 {@link #seal(long, int)}
+     *
+     * @param key       键
+     * @param valueSize 值的最大字节数
+     * @return 值的起始地址，空间不足时返回 0
+     */
+    public long allocate(K key, int valueSize) {
+        return allocate(key, valueSize, 0);
+    }
+
+    /**
+     * 值编码完成后写入值长度和 CRC，并把整条记录标记为脏区
+     *
+     * @param valueAddress {@link #allocate(Object, int)} 返回的值地址
+     * @param valueSize    值的实际字节数
+     */
+    public void seal(long valueAddress, int valueSize) {
+        int keySize = UnsafeOps.getInt(valueAddress - STAMP_SIZE);
+        long record = valueAddress - STAMP_SIZE - keySize - HEADER_SIZE;
+        UnsafeOps.putInt(valueAddress - 12, valueSize);
+        UnsafeOps.putInt(record + 8, crc(record + HEADER_SIZE, keySize, valueAddress, valueSize));
+        allocator.markDirty(record, UnsafeOps.getInt(record));
+    }
+
+    /**
+     * 写入记录的序号，序号在记录生效时（键所在的锁内）才确定
+     */
+    private void stamp(long valueAddress, long seq) {
+        UnsafeOps.putLong(valueAddress - 8, seq);
+        allocator.markDirty(valueAddress - 8, 8);
+    }
+
+    private long allocate(K key, int valueSize, int flags) {
+        int keySize = key != null ? keyCodec.calculateSize(key) : 0;
+        if (keySize < 0) {
+            throw new IllegalStateException("无法确定键的大小");
+        }
+        long length = align((long) HEADER_SIZE + keySize + STAMP_SIZE + valueSize);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("记录过大: " + length);
+        }
+        long record = allocator.allocate((int) length);
+        if (record == 0) {
+            return 0;
+        }
+        // 记录长度最先写入，崩溃后扫描能尽量跳过未写完的记录
+        UnsafeOps.putInt(record, (int) length);
+        UnsafeOps.putInt(record + 4, keySize);
+        UnsafeOps.putInt(record + 8, 0);
+        UnsafeOps.putInt(record + 12, flags);
+        if (key != null && keyCodec.encode(record + HEADER_SIZE, key) != keySize) {
+            throw new IllegalStateException("键编码后的大小与 calculateSize 不一致");
+        }
+        long valueAddress = record + HEADER_SIZE + keySize + STAMP_SIZE;
+        UnsafeOps.putInt(valueAddress - 16, keySize);
+        UnsafeOps.putInt(valueAddress - 12, 0);
+        UnsafeOps.putLong(valueAddress - 8, 0);
+        return valueAddress;
+    }
+
+    /**
+     * 在键所在的锁内写入删除键的墓碑记录
+     */
+    private void appendTombstone(K key) {
+        long valueAddress = allocate(key, 0, FLAG_TOMBSTONE);
+        if (valueAddress == 0) {
+            throw new OutOfMemoryError("分配墓碑记录失败");
+        }
+        seal(valueAddress, 0);
+        stamp(valueAddress, sequence.incrementAndGet() | TOMBSTONE_BIT);
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT, address, size, null);
+        return mutation.oldAddress;
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT_IF_ABSENT, address, size, null);
+        return mutation.oldAddress == 0;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        mutate(key, Mutation.REMAP, 0, 0, remapper);
+    }
+
+    @Override
+    public long remove(K key) {
+        return mutate(key, Mutation.REMOVE, 0, 0, null).oldAddress;
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        return mutation.oldAddress != 0
+                ? IndexUpdateResult.withOldValue(mutation.oldAddress, mutation.oldSize)
+                : IndexUpdateResult.noOldValue();
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        return mutation.oldAddress != 0
+                ? IndexRemoveResult.removed(mutation.oldAddress, mutation.oldSize)
+                : IndexRemoveResult.notPresent();
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.PUT, addresses[i], sizes[i], null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+        }
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.REMOVE, 0, 0, null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+        }
+    }
+
+    @Override
+    public void clear() {
+        long valueAddress = allocate(null, 0, FLAG_CLEAR);
+        if (valueAddress == 0) {
+            throw new OutOfMemoryError("分配清空记录失败");
+        }
+        seal(valueAddress, 0);
+        stamp(valueAddress, sequence.incrementAndGet());
+        delegate.clear();
+    }
+
+    private Mutation mutate(K key, int type, long address, int size, IndexRemapper remapper) {
+        Mutation mutation = new Mutation();
+        mutation.prepare(key, type, address, size, remapper);
+        delegate.compute(key, mutation);
+        return mutation;
+    }
+
+    /**
+     * 在键所在的锁内计算新条目，条目变化时写入序号或墓碑记录
+     */
+    private final class Mutation implements IndexRemapper {
+        static final int PUT = 0;
+        static final int PUT_IF_ABSENT = 1;
+        static final int REMOVE = 2;
+        static final int REMAP = 3;
+
+        private K key;
+        private int type;
+        private long newAddress;
+        private int newSize;
+        private IndexRemapper remapper;
+        long oldAddress;
+        int oldSize;
+
+        void prepare(K key, int type, long newAddress, int newSize, IndexRemapper remapper) {
+            this.key = key;
+            this.type = type;
+            this.newAddress = newAddress;
+            this.newSize = newSize;
+            this.remapper = remapper;
+            this.oldAddress = 0;
+            this.oldSize = 0;
+        }
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            oldAddress = address;
+            oldSize = size;
+            switch (type) {
+                case PUT:
+                    result.set(newAddress, newSize);
+                    break;
+                case PUT_IF_ABSENT:
+                    if (address == 0) {
+                        result.set(newAddress, newSize);
+                    }
+                    break;
+                case REMOVE:
+                    result.reset();
+                    break;
+                default:
+                    remapper.remap(address, size, result);
+                    break;
+            }
+
+            if (result.address == address && result.size == size) {
+                return;
+            }
+            if (result.address == 0) {
+                if (address != 0) {
+                    appendTombstone(key);
+                }
+            } else {
+                stamp(result.address, sequence.incrementAndGet());
+            }
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int crc(long keyAddress, int keySize, long valueAddress, int valueSize) {
+        return new Crc32c().update(keyAddress, keySize).update(valueAddress, valueSize).getValue();
+    }
+
+    /**
+     * 检查 position 处是否是结构完整的记录
+     *
+     * @return 记录长度，结构不完整时返回 0
+     */
+    private static int recordLength(long baseAddress, long position, long limit) {
+        if (limit - position < HEADER_SIZE + STAMP_SIZE) {
+            return 0;
+        }
+        long record = baseAddress + position;
+        int length = UnsafeOps.getInt(record);
+        int keySize = UnsafeOps.getInt(record + 4);
+        int flags = UnsafeOps.getInt(record + 12);
+        if (length < HEADER_SIZE + STAMP_SIZE || (length & (ALIGNMENT - 1)) != 0 || length > limit - position
+                || keySize < 0 || keySize > length - HEADER_SIZE - STAMP_SIZE
+                || (flags & ~(FLAG_TOMBSTONE | FLAG_CLEAR)) != 0) {
+            return 0;
+        }
+        long valueAddress = record + HEADER_SIZE + keySize + STAMP_SIZE;
+        int valueSize = UnsafeOps.getInt(valueAddress - 12);
+        if (UnsafeOps.getInt(valueAddress - 16) != keySize
+                || valueSize < 0 || valueSize > length - HEADER_SIZE - STAMP_SIZE - keySize) {
+            return 0;
+        }
+        return length;
+    }
+
+    private static boolean checksumMatches(long record) {
+        int keySize = UnsafeOps.getInt(record + 4);
+        long valueAddress = record + HEADER_SIZE + keySize + STAMP_SIZE;
+        int valueSize = UnsafeOps.getInt(valueAddress - 12);
+        return UnsafeOps.getInt(record + 8) == crc(record + HEADER_SIZE, keySize, valueAddress, valueSize);
+    }
+
+    /**
+     * 校验值所在记录的 CRC
+     *
+     * @param valueAddress 索引中的值地址
+     * @return 键和值的字节与记录中的 CRC 一致返回 true
+     */
+    public static boolean verify(long valueAddress) {
+        int keySize = UnsafeOps.getInt(valueAddress - STAMP_SIZE);
+        return checksumMatches(valueAddress - STAMP_SIZE - keySize - HEADER_SIZE);
+    }
+
+    /**
+     * 按索引分片并行校验所有存活记录的 CRC
+     *
+     * @param index 指向自描述记录的索引
+     * @return 第一个被发现校验和不匹配的值地址，全部一致返回 0
+     */
+    public static long verifyAll(Index<?> index) {
+        return IntStream.range(0, index.shardCount()).parallel()
+                .mapToLong(shard -> {
+                    long[] corrupt = new long[1];
+                    IndexCursor cursor = index.cursor(shard);
+                    while (corrupt[0] == 0 && cursor.advance(256, (key, address, size) -> {
+                        if (corrupt[0] == 0 && !verify(address)) {
+                            corrupt[0] = address;
+                        }
+                    })) {
+                        // 每批之间释放分片锁
+                    }
+                    return corrupt[0];
+                })
+                .filter(address -> address != 0)
+                .findAny()
+                .orElse(0);
+    }
+
+    private static long sequenceOf(long valueAddress) {
+        return UnsafeOps.getLong(valueAddress - 8) & SEQUENCE_MASK;
+    }
+
+    /**
+     * 重建结果
+     */
+    public static final class RebuildResult {
+        /**
+         * 最后一条结构完整的记录末尾在文件中的偏移，新数据应分配在这里
+         */
+        public long endOffset;
+
+        /**
+         * 扫描到的已生效记录数（包括墓碑和清空记录）
+         */
+        public long recordCount;
+
+        /**
+         * CRC 不匹配而被丢弃的记录数
+         */
+        public long corruptCount;
+
+        /**
+         * 因记录结构损坏而跳过的字节数
+         */
+        public long skippedBytes;
+
+        /**
+         * 扫描到的最大序号
+         */
+        public long maxSequence;
+    }
+
+    /**
+     * 顺序扫描数据区 [HEADER_SIZE, limit) 中的记录，把每个键最后一次生效的写入放入索引
+     * <p>
+     * 先顺序遍历记录头确定记录边界和清空记录，再把数据区按边界切分后在 ForkJoinPool 公共池上并行
+     * 校验 CRC、解码键并写入索引，同一个键按序号取最大者。遇到结构损坏的记录时在之后的
+     * 16MB 内按对齐位置寻找下一条 CRC 正确的记录，找不到则在此结束。
+     * </p>
+     *
+     * @param allocator 持久化文件的分配器
+     * @param limit     扫描的结束偏移（上次正常关闭时为文件头中的分配偏移量，否则为文件大小）
+     * @param keyCodec  键编解码器
+     * @param index     空索引，必须支持并发写入
+     * @param <K>       键类型
+     * @return 重建结果
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> RebuildResult rebuild(MmapAllocator allocator, long limit, Codec<K> keyCodec, Index<K> index) {
+        long baseAddress = allocator.getBaseAddress();
+        limit = Math.min(limit, allocator.getFileSize());
+        RebuildResult result = new RebuildResult();
+
+        // 第一遍：只读记录头，切分出由完整记录组成的区间
+        List<long[]> chunks = new ArrayList<>();
+        long clearSequence = 0;
+        long position = MmapFileHeader.HEADER_SIZE;
+        long chunkStart = position;
+        long end = position;
+        while (position < limit) {
+            int length = recordLength(baseAddress, position, limit);
+            if (length > 0) {
+                long record = baseAddress + position;
+                if ((UnsafeOps.getInt(record + 12) & FLAG_CLEAR) != 0 && checksumMatches(record)) {
+                    clearSequence = Math.max(clearSequence,
+                            sequenceOf(record + HEADER_SIZE + UnsafeOps.getInt(record + 4) + STAMP_SIZE));
+                }
+                position += length;
+                end = position;
+                if (position - chunkStart >= CHUNK_SIZE) {
+                    chunks.add(new long[]{chunkStart, position});
+                    chunkStart = position;
+                }
+                continue;
+            }
+
+            if (position > chunkStart) {
+                chunks.add(new long[]{chunkStart, position});
+            }
+            long next = resync(baseAddress, position + ALIGNMENT, Math.min(limit, position + RESYNC_WINDOW), limit);
+            if (next < 0) {
+                break;
+            }
+            result.skippedBytes += next - position;
+            position = next;
+            chunkStart = position;
+        }
+        if (position > chunkStart) {
+            chunks.add(new long[]{chunkStart, position});
+        }
+        result.endOffset = end;
+
+        // 第二遍：并行校验并写入索引
+        long discardBefore = clearSequence;
+        LongAdder records = new LongAdder();
+        LongAdder corrupt = new LongAdder();
+        LongAccumulator maxSequence = new LongAccumulator(Math::max, clearSequence);
+        IntStream.range(0, chunks.size()).parallel().forEach(i -> {
+            long[] chunk = chunks.get(i);
+            for (long p = chunk[0]; p < chunk[1]; ) {
+                long record = baseAddress + p;
+                int keySize = UnsafeOps.getInt(record + 4);
+                long valueAddress = record + HEADER_SIZE + keySize + STAMP_SIZE;
+                long stamp = UnsafeOps.getLong(valueAddress - 8);
+                long seq = stamp & SEQUENCE_MASK;
+                p += UnsafeOps.getInt(record);
+                if (seq == 0) {
+                    continue;
+                }
+                if (!checksumMatches(record)) {
+                    corrupt.increment();
+                    continue;
+                }
+                maxSequence.accumulate(seq);
+                records.increment();
+                if ((UnsafeOps.getInt(record + 12) & FLAG_CLEAR) != 0 || seq <= discardBefore) {
+                    continue;
+                }
+                int valueSize = UnsafeOps.getInt(valueAddress - 12);
+                K key = keyCodec.decode(record + HEADER_SIZE);
+                index.compute(key, (address, size, entry) -> {
+                    if (address == 0 || sequenceOf(address) < seq) {
+                        entry.set(valueAddress, valueSize);
+                    }
+                });
+            }
+        });
+
+        // 最后去掉最新记录是墓碑的键
+        List<K> deleted = new ArrayList<>();
+        index.forEach((key, address, size) -> {
+            if ((UnsafeOps.getLong(address - 8) & TOMBSTONE_BIT) != 0) {
+                deleted.add((K) key);
+            }
+        });
+        for (K key : deleted) {
+            index.remove(key);
+        }
+
+        result.recordCount = records.sum();
+        result.corruptCount = corrupt.sum();
+        result.maxSequence = maxSequence.get();
+        return result;
+    }
+
+    /**
+     * 在 [from, to) 中按对齐位置寻找下一条结构完整且 CRC 正确的记录
+     *
+     * @return 记录的偏移，找不到时返回 -1
+     */
+    private static long resync(long baseAddress, long from, long to, long limit) {
+        for (long position = align(from); position < to; position += ALIGNMENT) {
+            if (recordLength(baseAddress, position, limit) > 0 && checksumMatches(baseAddress + position)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,205 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.memory.Crc32c;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 快照导出格式
+ * <p>
+ * 快照只包含存活条目的键和值的编码字节，按顺序写出，不包含映射文件中预分配的空闲部分：
+ * </p>
+ * <pre>
+ * 头部:  [魔数 "RMSX" (4)][版本 (4)][flags (4)][预计条目数 (8)]
+ * 条目:  [键长度 (4)][键][值长度 (4)][值]   （flags 含 FLAG_GZIP 时头部之后整体 GZIP 压缩）
+ * 结尾:  [-1 (4)][条目数 (8)][所有键和值字节的 CRC32C (4)]
+ * </pre>
+ * <p>
+ * 整数按大端序写出。预计条目数是导出开始时 map 的大小，加载时用来预先确定索引容量。
+ * </p>
+ */
+public final class SnapshotFormat {
+
+    public static final int MAGIC_NUMBER = 0x524D5358; // "RMSX"
+    public static final int VERSION = 1;
+
+    /**
+     * Flags 位：头部之后的内容使用 GZIP 压缩
+     */
+    public static final int FLAG_GZIP = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int END_OF_ENTRIES = -1;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * 快照写入器，不是线程安全的
+     */
+    public static final class Writer {
+        private final DataOutputStream out;
+        private final GZIPOutputStream gzip;
+        private final Crc32c crc = new Crc32c();
+        private long count;
+
+        /**
+         * 写出头部
+         *
+         * @param out        目标流，完成后不会被关闭
+         * @param compress   是否 GZIP 压缩
+         * @param entryHint  预计条目数
+         * @throws IOException 写入失败
+         */
+        public Writer(OutputStream out, boolean compress, long entryHint) throws IOException {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC_NUMBER);
+            header.writeInt(VERSION);
+            header.writeInt(compress ? FLAG_GZIP : 0);
+            header.writeLong(entryHint);
+            header.flush();
+            this.gzip = compress ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            this.out = new DataOutputStream(new BufferedOutputStream(compress ? gzip : out, BUFFER_SIZE));
+        }
+
+        /**
+         * 写出一个条目
+         *
+         * @param bytes       键和值所在的数组
+         * @param keyOffset   键的起始位置
+         * @param keyLength   键的字节数
+         * @param valueOffset 值的起始位置
+         * @param valueLength 值的字节数
+         * @throws IOException 写入失败
+         */
+        public void write(byte[] bytes, int keyOffset, int keyLength, int valueOffset, int valueLength)
+                throws IOException {
+            out.writeInt(keyLength);
+            out.write(bytes, keyOffset, keyLength);
+            out.writeInt(valueLength);
+            out.write(bytes, valueOffset, valueLength);
+            crc.update(bytes, keyOffset, keyLength).update(bytes, valueOffset, valueLength);
+            count++;
+        }
+
+        /**
+         * 写出结尾并刷新，压缩时结束压缩流
+         *
+         * @return 写出的条目数
+         */
+        public long finish() throws IOException {
+            out.writeInt(END_OF_ENTRIES);
+            out.writeLong(count);
+            out.writeInt(crc.getValue());
+            out.flush();
+            if (gzip != null) {
+                gzip.finish();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 快照读取器，不是线程安全的
+     */
+    public static final class Reader {
+        private final DataInputStream in;
+        private final long entryHint;
+        private final Crc32c crc = new Crc32c();
+        private long count;
+        private byte[] key = new byte[64];
+        private byte[] value = new byte[256];
+        private int keyLength;
+        private int valueLength;
+
+        /**
+         * 读取并检查头部
+         *
+         * @param in 快照流，完成后不会被关闭
+         * @throws IOException 读取失败
+         */
+        public Reader(InputStream in) throws IOException {
+            BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+            DataInputStream header = new DataInputStream(buffered);
+            if (header.readInt() != MAGIC_NUMBER) {
+                throw new IllegalStateException("不是 RogueMap 快照");
+            }
+            int version = header.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("不支持的快照版本: " + version);
+            }
+            int flags = header.readInt();
+            this.entryHint = header.readLong();
+            this.in = (flags & FLAG_GZIP) != 0
+                    ? new DataInputStream(new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE))
+                    : header;
+        }
+
+        /**
+         * 导出开始时 map 的大小
+         */
+        public long entryHint() {
+            return entryHint;
+        }
+
+        /**
+         * 读取下一个条目
+         *
+         * @return 读到条目返回 true，到达结尾返回 false（此时已校验条目数和 CRC）
+         * @throws IOException 读取失败
+         */
+        public boolean next() throws IOException {
+            keyLength = in.readInt();
+            if (keyLength == END_OF_ENTRIES) {
+                long expectedCount = in.readLong();
+                int expectedCrc = in.readInt();
+                if (expectedCount != count || expectedCrc != crc.getValue()) {
+                    throw new IllegalStateException("快照已损坏: 条目数或校验和不匹配");
+                }
+                return false;
+            }
+            if (keyLength < 0) {
+                throw new IllegalStateException("快照已损坏: 键长度 " + keyLength);
+            }
+            key = ensureCapacity(key, keyLength);
+            in.readFully(key, 0, keyLength);
+            valueLength = in.readInt();
+            if (valueLength < 0) {
+                throw new IllegalStateException("快照已损坏: 值长度 " + valueLength);
+            }
+            value = ensureCapacity(value, valueLength);
+            in.readFully(value, 0, valueLength);
+            crc.update(key, 0, keyLength).update(value, 0, valueLength);
+            count++;
+            return true;
+        }
+
+        public byte[] key() {
+            return key;
+        }
+
+        public int keyLength() {
+            return keyLength;
+        }
+
+        public byte[] value() {
+            return value;
+        }
+
+        public int valueLength() {
+            return valueLength;
+        }
+
+        private static byte[] ensureCapacity(byte[] buffer, int length) {
+            return buffer.length >= length ? buffer : new byte[Math.max(length, buffer.length * 2)];
+        }
+    }
+}
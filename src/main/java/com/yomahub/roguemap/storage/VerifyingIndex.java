@@ -0,0 +1,159 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexCursor;
+import com.yomahub.roguemap.index.IndexEntryConsumer;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+
+import java.util.List;
+
+/**
+ * 读取时验证校验和的索引包装
+ * <p>
+ * 用于 {@link ChecksumVerification#LAZY}：打开时只验证索引，值在第一次被读取（或原地修改）之前才验证，
+ * 打开大文件不需要先读完整个数据区。按页校验时每页只验证一次；自描述记录每次读取都验证记录自身的 CRC，
+ * 只针对打开时已经存在的记录。校验和不匹配时抛出 {@link IllegalStateException}，不会返回损坏的值。
+ * </p>
+ * <p>
+ * 覆盖和删除返回旧值之前先查一次当前地址并验证；之后并发写入的新值不在打开时的文件内容中，不需要验证。
+ * 本包装位于其他持久化包装的最内层。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class VerifyingIndex<K> extends ForwardingIndex<K> {
+
+    private final PageChecksums pages;  // 为 null 时验证自描述记录
+    private final long recordLimit;     // 自描述记录模式下打开时数据区的结束地址
+
+    /**
+     * 按页校验和验证值
+     *
+     * @param delegate 底层索引
+     * @param pages    页校验和表
+     */
+    public VerifyingIndex(Index<K> delegate, PageChecksums pages) {
+        super(delegate);
+        if (pages == null) {
+            throw new IllegalArgumentException("页校验和表不能为 null");
+        }
+        this.pages = pages;
+        this.recordLimit = 0;
+    }
+
+    /**
+     * 按自描述记录的 CRC 验证值
+     *
+     * @param delegate    底层索引
+     * @param recordLimit 打开时数据区的结束地址，之后写入的记录不验证
+     */
+    public VerifyingIndex(Index<K> delegate, long recordLimit) {
+        super(delegate);
+        this.pages = null;
+        this.recordLimit = recordLimit;
+    }
+
+    private void verify(long address, int size) {
+        if (address == 0) {
+            return;
+        }
+        if (pages != null) {
+            pages.verifyValue(address, size);
+        } else if (address < recordLimit && !RecordIndex.verify(address)) {
+            throw new IllegalStateException("记录校验和不匹配，地址: 0x" + Long.toHexString(address));
+        }
+    }
+
+    private void verifyCurrent(K key) {
+        long address = delegate.get(key);
+        if (address != 0) {
+            verify(address, delegate.getSize(key));
+        }
+    }
+
+    @Override
+    public long get(K key) {
+        long address = delegate.get(key);
+        if (address != 0) {
+            verify(address, delegate.getSize(key));
+        }
+        return address;
+    }
+
+    @Override
+    public void getAll(List<? extends K> keys, long[] addresses) {
+        delegate.getAll(keys, addresses);
+        for (int i = 0; i < addresses.length && i < keys.size(); i++) {
+            if (addresses[i] != 0) {
+                verify(addresses[i], delegate.getSize(keys.get(i)));
+            }
+        }
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        delegate.compute(key, (address, size, result) -> {
+            verify(address, size);
+            remapper.remap(address, size, result);
+        });
+    }
+
+    @Override
+    public long lockValue(K key, IndexResultHolder result) {
+        long stamp = delegate.lockValue(key, result);
+        if (result.address != 0) {
+            try {
+                verify(result.address, result.size);
+            } catch (RuntimeException e) {
+                delegate.unlockValue(key, stamp);
+                throw e;
+            }
+        }
+        return stamp;
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        verifyCurrent(key);
+        return delegate.putAndGetOld(key, newAddress, newSize);
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        verifyCurrent(key);
+        return delegate.putAndGetOld(key, newAddress, newSize, holder);
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        verifyCurrent(key);
+        return delegate.removeAndGet(key);
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        verifyCurrent(key);
+        return delegate.removeAndGet(key, holder);
+    }
+
+    @Override
+    public IndexCursor cursor(int shard) {
+        IndexCursor cursor = delegate.cursor(shard);
+        return (limit, consumer) -> cursor.advance(limit, verifying(consumer));
+    }
+
+    @Override
+    public void forEach(IndexEntryConsumer consumer) {
+        delegate.forEach(verifying(consumer));
+    }
+
+    private IndexEntryConsumer verifying(IndexEntryConsumer consumer) {
+        return (key, address, size) -> {
+            verify(address, size);
+            consumer.accept(key, address, size);
+        };
+    }
+}
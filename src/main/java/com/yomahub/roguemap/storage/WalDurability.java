@@ -0,0 +1,23 @@
+package com.yomahub.roguemap.storage;
+
+/**
+ * 预写日志的刷盘策略
+ */
+public enum WalDurability {
+
+    /**
+     * 每个写操作返回前日志已 fsync 到磁盘；并发写入的日志合并为一次 fsync（组提交）
+     */
+    SYNC,
+
+    /**
+     * 后台线程按固定间隔把日志写入文件并 fsync，掉电最多丢失一个间隔内的写入
+     */
+    PERIODIC,
+
+    /**
+     * 每个写操作返回前日志已写入文件（操作系统页缓存），由操作系统决定何时落盘；
+     * 进程被杀死不丢数据，掉电可能丢失尚未落盘的部分
+     */
+    OS
+}
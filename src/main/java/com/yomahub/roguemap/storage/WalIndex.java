@@ -0,0 +1,223 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.index.IndexRemapper;
+import com.yomahub.roguemap.index.IndexRemoveResult;
+import com.yomahub.roguemap.index.IndexResultHolder;
+import com.yomahub.roguemap.index.IndexUpdateResult;
+import com.yomahub.roguemap.serialization.Codec;
+
+import java.util.List;
+
+/**
+ * 把索引变更写入预写日志的索引包装
+ * <p>
+ * 所有写操作都转换为底层索引的 {@link Index#compute(Object, IndexRemapper)}，
+ * 在键所在的锁内确定新条目后追加日志记录，锁释放后再按刷盘策略提交，
+ * 因此同一个键的日志顺序与索引变更顺序一致，fsync 不会阻塞其他键的读写。
+ * 读操作、遍历和共享值锁直接委托给底层索引。
+ * </p>
+ * <p>
+ * 只有地址或大小发生变化的 compute 会被记录，在原值内存上原地修改（原子数值操作）不会写入日志，
+ * 启用预写日志的 map 不允许这类操作。批量写入逐个在键的锁内记录，整批只提交一次；
+ * 清空也逐个键删除并记录，不会丢失或多出与清空并发的写入。
+ * </p>
+ *
+ * @param <K> 键类型
+ */
+public class WalIndex<K> extends ForwardingIndex<K> {
+
+    private final Codec<K> keyCodec;
+    private final WriteAheadLog log;
+    private final long baseAddress;
+
+    /**
+     * 创建记录预写日志的索引
+     *
+     * @param delegate    底层索引
+     * @param keyCodec    键编解码器
+     * @param log         预写日志
+     * @param baseAddress 数据文件映射的基地址，日志中的值位置记录为相对它的偏移
+     */
+    public WalIndex(Index<K> delegate, Codec<K> keyCodec, WriteAheadLog log, long baseAddress) {
+        super(delegate);
+        this.keyCodec = keyCodec;
+        this.log = log;
+        this.baseAddress = baseAddress;
+    }
+
+    /**
+     * 获取预写日志
+     *
+     * @return 预写日志
+     */
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    @Override
+    public long put(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT, address, size, null);
+        return mutation.oldAddress;
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, long address, int size) {
+        Mutation mutation = mutate(key, Mutation.PUT_IF_ABSENT, address, size, null);
+        return mutation.oldAddress == 0;
+    }
+
+    @Override
+    public void compute(K key, IndexRemapper remapper) {
+        mutate(key, Mutation.REMAP, 0, 0, remapper);
+    }
+
+    @Override
+    public long remove(K key) {
+        return mutate(key, Mutation.REMOVE, 0, 0, null).oldAddress;
+    }
+
+    @Override
+    public IndexUpdateResult putAndGetOld(K key, long newAddress, int newSize) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        return mutation.oldAddress != 0
+                ? IndexUpdateResult.withOldValue(mutation.oldAddress, mutation.oldSize)
+                : IndexUpdateResult.noOldValue();
+    }
+
+    @Override
+    public IndexRemoveResult removeAndGet(K key) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        return mutation.oldAddress != 0
+                ? IndexRemoveResult.removed(mutation.oldAddress, mutation.oldSize)
+                : IndexRemoveResult.notPresent();
+    }
+
+    @Override
+    public boolean putAndGetOld(K key, long newAddress, int newSize, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.PUT, newAddress, newSize, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public boolean removeAndGet(K key, IndexResultHolder holder) {
+        Mutation mutation = mutate(key, Mutation.REMOVE, 0, 0, null);
+        holder.set(mutation.oldAddress, mutation.oldSize);
+        return mutation.oldAddress != 0;
+    }
+
+    @Override
+    public void putAll(List<? extends K> keys, long[] addresses, int[] sizes,
+                       long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        long lsn = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.PUT, addresses[i], sizes[i], null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+            lsn = Math.max(lsn, mutation.lsn);
+        }
+        if (lsn != 0) {
+            log.commit(lsn);
+        }
+    }
+
+    @Override
+    public void removeAll(List<? extends K> keys, long[] oldAddresses, int[] oldSizes) {
+        Mutation mutation = new Mutation();
+        long lsn = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            mutation.prepare(keys.get(i), Mutation.REMOVE, 0, 0, null);
+            delegate.compute(keys.get(i), mutation);
+            oldAddresses[i] = mutation.oldAddress;
+            oldSizes[i] = mutation.oldSize;
+            lsn = Math.max(lsn, mutation.lsn);
+        }
+        if (lsn != 0) {
+            log.commit(lsn);
+        }
+    }
+
+    /**
+     * 逐个键在锁内删除并记录 DELETE，每批提交一次
+     */
+    @Override
+    public void clear() {
+        removeEach();
+    }
+
+    private Mutation mutate(K key, int type, long address, int size, IndexRemapper remapper) {
+        Mutation mutation = new Mutation();
+        mutation.prepare(key, type, address, size, remapper);
+        delegate.compute(key, mutation);
+        if (mutation.lsn != 0) {
+            log.commit(mutation.lsn);
+        }
+        return mutation;
+    }
+
+    /**
+     * 在键所在的锁内计算新条目，条目变化时追加日志
+     */
+    private final class Mutation implements IndexRemapper {
+        static final int PUT = 0;
+        static final int PUT_IF_ABSENT = 1;
+        static final int REMOVE = 2;
+        static final int REMAP = 3;
+
+        private K key;
+        private int type;
+        private long newAddress;
+        private int newSize;
+        private IndexRemapper remapper;
+        long oldAddress;
+        int oldSize;
+        long lsn;
+
+        void prepare(K key, int type, long newAddress, int newSize, IndexRemapper remapper) {
+            this.key = key;
+            this.type = type;
+            this.newAddress = newAddress;
+            this.newSize = newSize;
+            this.remapper = remapper;
+            this.oldAddress = 0;
+            this.oldSize = 0;
+            this.lsn = 0;
+        }
+
+        @Override
+        public void remap(long address, int size, IndexResultHolder result) {
+            oldAddress = address;
+            oldSize = size;
+            switch (type) {
+                case PUT:
+                    result.set(newAddress, newSize);
+                    break;
+                case PUT_IF_ABSENT:
+                    if (address == 0) {
+                        result.set(newAddress, newSize);
+                    }
+                    break;
+                case REMOVE:
+                    result.reset();
+                    break;
+                default:
+                    remapper.remap(address, size, result);
+                    break;
+            }
+
+            if (result.address == address && result.size == size) {
+                return;
+            }
+            if (result.address == 0) {
+                if (address != 0) {
+                    lsn = log.appendDelete(keyCodec, key);
+                }
+            } else {
+                lsn = log.appendPut(keyCodec, key, result.address - baseAddress, result.address, result.size);
+            }
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package com.yomahub.roguemap.storage;
+
+import com.yomahub.roguemap.index.Index;
+import com.yomahub.roguemap.memory.UnsafeOps;
+import com.yomahub.roguemap.serialization.Codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化 MMAP 模式的预写日志（WAL）
+ * <p>
+ * 记录上次检查点（关闭时保存的索引或后台检查点）之后的每个索引变更，进程崩溃后在下次打开时重放。
+ * 日志文件与数据文件同目录，文件名为数据文件名加 ".wal"。文件以 16 字节的文件头开始，之后是连续的记录：
+ * </p>
+ * <pre>
+ * 文件头: [Magic 0x52574C47 "RWLG" (4)][Version (4)][起始 LSN (8)]
+ * [payload 长度 (4)][payload 的 CRC32 (4)][payload]
+ * PUT:    [类型 1 (1)][键长度 (4)][键][值在数据文件中的偏移 (8)][值大小 (4)][值字节]
+ * DELETE: [类型 2 (1)][键长度 (4)][键]
+ * </pre>
+ * <p>
+ * PUT 记录带上值的字节，重放时写回数据文件，因此日志落盘即可恢复，不需要同时刷新映射的数据页。
+ * 记录在键所在的锁内追加到内存缓冲区，保证同一个键的记录顺序与索引变更顺序一致；
+ * 写入文件和 fsync 在锁外进行，缓冲区中积累的记录一次写出（组提交）。
+ * 重放遇到长度或校验和不合法的记录时停止，之后的内容视为崩溃时未写完的尾部并截断。
+ * </p>
+ * <p>
+ * LSN 是记录在整个日志历史中的逻辑字节位置：文件中第一条记录从文件头记录的起始 LSN 开始。
+ * 检查点记下它覆盖到的 LSN，之后可以用 {@link #truncateBefore(long)} 丢弃该 LSN 之前的记录，
+ * 截断不会改变后续记录的 LSN。
+ * </p>
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int FILE_MAGIC = 0x52574C47; // "RWLG"
+    private static final int FILE_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 检查点之前的记录达到该大小才重写日志文件，避免频繁检查点反复复制小文件
+     */
+    static final long COMPACT_THRESHOLD = 1024 * 1024;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private final WalDurability durability;
+    private final ScheduledExecutorService flusher;
+
+    // 追加缓冲区（堆外），由 appendLock 保护
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private long buffer;
+    private int bufferCapacity;
+    private int bufferPosition;
+    private long spare;
+    private int spareCapacity;
+    private long appendedLsn;
+
+    // 写出与 fsync 由 flushLock 串行化，保证记录按 LSN 顺序写入文件
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private long baseLsn;
+    private volatile long writtenLsn;
+    private volatile long durableLsn;
+    private volatile boolean closed;
+
+    /**
+     * 打开预写日志
+     *
+     * @param file                日志文件
+     * @param durability          刷盘策略
+     * @param flushIntervalMillis PERIODIC 策略的刷盘间隔（毫秒）
+     * @param baseLsn             文件中第一条记录的 LSN（重放后取 {@link ReplayResult#baseLsn}）
+     * @param validLength         保留的有效长度，之后的内容被截断（重放后为有效记录的末尾，
+     *                            否则为 0，表示以 baseLsn 为起点重新创建日志文件）
+     */
+    public WriteAheadLog(File file, WalDurability durability, long flushIntervalMillis,
+                         long baseLsn, long validLength) {
+        if (durability == null) {
+            throw new IllegalArgumentException("刷盘策略不能为 null");
+        }
+        if (baseLsn < 0) {
+            throw new IllegalArgumentException("起始 LSN 不能为负数");
+        }
+        this.file = file;
+        this.durability = durability;
+        try {
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            if (validLength < FILE_HEADER_SIZE) {
+                channel.truncate(0);
+                writeFileHeader(channel, baseLsn);
+                validLength = FILE_HEADER_SIZE;
+            } else {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            channel.force(true);
+            this.baseLsn = baseLsn;
+            this.appendedLsn = baseLsn + validLength - FILE_HEADER_SIZE;
+            this.writtenLsn = appendedLsn;
+            this.durableLsn = appendedLsn;
+        } catch (IOException e) {
+            throw new RuntimeException("打开预写日志失败: " + file.getAbsolutePath(), e);
+        }
+
+        this.bufferCapacity = INITIAL_BUFFER_SIZE;
+        this.buffer = UnsafeOps.allocate(bufferCapacity);
+        this.spareCapacity = INITIAL_BUFFER_SIZE;
+        this.spare = UnsafeOps.allocate(spareCapacity);
+
+        if (durability == WalDurability.PERIODIC) {
+            if (flushIntervalMillis <= 0) {
+                throw new IllegalArgumentException("刷盘间隔必须为正数");
+            }
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "roguemap-wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly,
+                    flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * 获取数据文件对应的日志文件
+     *
+     * @param dataFilePath 数据文件路径
+     * @return 日志文件
+     */
+    public static File logFile(String dataFilePath) {
+        return new File(dataFilePath + ".wal");
+    }
+
+    /**
+     * 追加 PUT 记录，调用方应持有键所在的锁
+     *
+     * @param keyCodec     键编解码器
+     * @param key          键
+     * @param offset       值在数据文件中的偏移
+     * @param valueAddress 值的内存地址
+     * @param size         值大小
+     * @param <K>          键类型
+     * @return 记录末尾的 LSN，用于 {@link #commit(long)}
+     */
+    public <K> long appendPut(Codec<K> keyCodec, K key, long offset, long valueAddress, int size) {
+        int keySize = keyCodec.calculateSize(key);
+        int payloadSize = 1 + 4 + keySize + 8 + 4 + size;
+        appendLock.lock();
+        try {
+            long record = reserve(payloadSize);
+            long p = record + RECORD_HEADER_SIZE;
+            UnsafeOps.putByte(p, PUT);
+            int actualKeySize = keyCodec.encode(p + 5, key);
+            UnsafeOps.putInt(p + 1, actualKeySize);
+            p += 5 + actualKeySize;
+            UnsafeOps.putLong(p, offset);
+            UnsafeOps.putInt(p + 8, size);
+            UnsafeOps.copyMemory(valueAddress, p + 12, size);
+            return seal(record, 5 + actualKeySize + 12 + size);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 追加 DELETE 记录，调用方应持有键所在的锁
+     *
+     * @param keyCodec 键编解码器
+     * @param key      键
+     * @param <K>      键类型
+     * @return 记录末尾的 LSN
+     */
+    public <K> long appendDelete(Codec<K> keyCodec, K key) {
+        int keySize = keyCodec.calculateSize(key);
+        appendLock.lock();
+        try {
+            long record = reserve(1 + 4 + keySize);
+            long p = record + RECORD_HEADER_SIZE;
+            UnsafeOps.putByte(p, DELETE);
+            int actualKeySize = keyCodec.encode(p + 5, key);
+            UnsafeOps.putInt(p + 1, actualKeySize);
+            return seal(record, 5 + actualKeySize);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 按刷盘策略提交到 lsn 为止的记录，调用方不能持有索引锁
+     * <p>
+     * SYNC：写入文件并 fsync 后返回；OS：写入文件后返回；PERIODIC：立即返回，由后台线程刷盘。
+     * </p>
+     *
+     * @param lsn 追加记录时返回的 LSN
+     */
+    public void commit(long lsn) {
+        switch (durability) {
+            case SYNC:
+                if (durableLsn < lsn) {
+                    flush(lsn, true);
+                }
+                break;
+            case OS:
+                if (writtenLsn < lsn) {
+                    flush(lsn, false);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 把所有已追加的记录写入文件并 fsync
+     */
+    public void sync() {
+        flush(Long.MAX_VALUE, true);
+    }
+
+    /**
+     * 获取已追加的最后一条记录末尾的 LSN
+     * <p>
+     * 在此之前追加的记录对应的索引变更都已完成，之后开始的快照一定能看到它们。
+     * </p>
+     *
+     * @return 当前 LSN
+     */
+    public long currentLsn() {
+        appendLock.lock();
+        try {
+            return appendedLsn;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 检查点完成后清空日志，后续记录从当前 LSN 继续编号
+     */
+    public void reset() {
+        flushLock.lock();
+        try {
+            sync();
+            channel.truncate(0);
+            writeFileHeader(channel, writtenLsn);
+            channel.position(FILE_HEADER_SIZE);
+            channel.force(true);
+            baseLsn = writtenLsn;
+        } catch (IOException e) {
+            throw new RuntimeException("清空预写日志失败: " + file.getAbsolutePath(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃 lsn 之前的记录（已被检查点覆盖）
+     * <p>
+     * 把 lsn 之后的记录复制到临时文件并 fsync，再原子地替换日志文件，任何时刻崩溃都留下一份完整的日志。
+     * 需要丢弃的部分小于 {@link #COMPACT_THRESHOLD} 时不做任何事。
+     * </p>
+     *
+     * @param lsn 检查点覆盖到的 LSN
+     */
+    public void truncateBefore(long lsn) {
+        flushLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            flush(Long.MAX_VALUE, false);
+            lsn = Math.min(lsn, writtenLsn);
+            if (lsn - baseLsn < COMPACT_THRESHOLD) {
+                return;
+            }
+
+            File temp = new File(file.getPath() + ".tmp");
+            long from = FILE_HEADER_SIZE + (lsn - baseLsn);
+            long end = channel.size();
+            try (RandomAccessFile out = new RandomAccessFile(temp, "rw");
+                 FileChannel target = out.getChannel()) {
+                target.truncate(0);
+                writeFileHeader(target, lsn);
+                long copied = 0;
+                while (copied < end - from) {
+                    copied += channel.transferTo(from + copied, end - from - copied, target);
+                }
+                target.force(true);
+            }
+            channel.close();
+            raf.close();
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            channel.position(channel.size());
+            baseLsn = lsn;
+            durableLsn = writtenLsn;
+        } catch (IOException e) {
+            throw new RuntimeException("截断预写日志失败: " + file.getAbsolutePath(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 获取日志文件
+     *
+     * @return 日志文件
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 获取刷盘策略
+     *
+     * @return 刷盘策略
+     */
+    public WalDurability getDurability() {
+        return durability;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdownNow();
+            try {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushLock.lock();
+        try {
+            try {
+                channel.close();
+                raf.close();
+            } catch (IOException e) {
+                throw new RuntimeException("关闭预写日志失败: " + file.getAbsolutePath(), e);
+            }
+        } finally {
+            UnsafeOps.free(buffer);
+            UnsafeOps.free(spare);
+            buffer = 0;
+            spare = 0;
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 在缓冲区中预留一条记录的空间，返回记录起始地址
+     */
+    private long reserve(int payloadSize) {
+        if (closed) {
+            throw new IllegalStateException("预写日志已关闭");
+        }
+        long required = (long) bufferPosition + RECORD_HEADER_SIZE + payloadSize;
+        if (required > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("预写日志记录过大: " + payloadSize);
+        }
+        if (required > bufferCapacity) {
+            int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(required, 2L * bufferCapacity));
+            buffer = UnsafeOps.reallocate(buffer, newCapacity);
+            bufferCapacity = newCapacity;
+        }
+        return buffer + bufferPosition;
+    }
+
+    /**
+     * 写入记录头（长度与校验和）并推进缓冲区位置
+     */
+    private long seal(long record, int payloadSize) {
+        UnsafeOps.putInt(record, payloadSize);
+        UnsafeOps.putInt(record + 4, crc(record + RECORD_HEADER_SIZE, payloadSize));
+        int recordSize = RECORD_HEADER_SIZE + payloadSize;
+        bufferPosition += recordSize;
+        appendedLsn += recordSize;
+        return appendedLsn;
+    }
+
+    private void flush(long lsn, boolean force) {
+        flushLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (force ? durableLsn >= lsn : writtenLsn >= lsn) {
+                return; // 其他线程已经一并提交
+            }
+
+            // 交换缓冲区，写文件期间追加线程继续写入另一块缓冲区
+            long pending;
+            int pendingSize;
+            long pendingLsn;
+            appendLock.lock();
+            try {
+                pending = buffer;
+                pendingSize = bufferPosition;
+                pendingLsn = appendedLsn;
+                int pendingCapacity = bufferCapacity;
+                buffer = spare;
+                bufferCapacity = spareCapacity;
+                bufferPosition = 0;
+                spare = pending;
+                spareCapacity = pendingCapacity;
+            } finally {
+                appendLock.unlock();
+            }
+
+            if (pendingSize > 0) {
+                ByteBuffer view = UnsafeOps.wrapReadOnly(pending, pendingSize);
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+            writtenLsn = pendingLsn;
+            if (force) {
+                channel.force(false);
+                durableLsn = pendingLsn;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("写入预写日志失败: " + file.getAbsolutePath(), e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush(Long.MAX_VALUE, true);
+        } catch (RuntimeException e) {
+            // 异常无法传递给写入线程，文件错误会在关闭时的 sync 中再次抛出
+        }
+    }
+
+    private static void writeFileHeader(FileChannel channel, long baseLsn) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(baseLsn).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    private static int crc(long address, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(UnsafeOps.wrapReadOnly(address, size));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 重放结果
+     */
+    public static final class ReplayResult {
+        /**
+         * 有效记录在文件中的末尾位置，之后的内容应被截断；为 0 表示文件不存在或文件头无效
+         */
+        public long validLength;
+
+        /**
+         * 文件中第一条记录的 LSN
+         */
+        public long baseLsn;
+
+        /**
+         * 最后一条有效记录末尾的 LSN
+         */
+        public long endLsn;
+
+        /**
+         * 重放的记录数
+         */
+        public long recordCount;
+
+        /**
+         * PUT 记录写回的值在数据文件中的最大结束偏移
+         */
+        public long maxDataEnd;
+    }
+
+    /**
+     * 把日志中的记录按顺序应用到索引，PUT 记录的值字节写回数据文件
+     *
+     * @param file        日志文件
+     * @param fromLsn     从该 LSN 开始重放（检查点覆盖到的 LSN），小于 0 表示从文件中第一条记录开始
+     * @param keyCodec    键编解码器
+     * @param index       已从检查点恢复的索引
+     * @param baseAddress 数据文件映射的基地址
+     * @param dataLimit   数据文件大小，偏移超出的记录视为损坏
+     * @param <K>         键类型
+     * @return 重放结果
+     */
+    public static <K> ReplayResult replay(File file, long fromLsn, Codec<K> keyCodec, Index<K> index,
+                                          long baseAddress, long dataLimit) {
+        ReplayResult result = new ReplayResult();
+        result.baseLsn = Math.max(fromLsn, 0);
+        result.endLsn = result.baseLsn;
+        if (!file.exists()) {
+            return result;
+        }
+
+        ByteBuffer header = ByteBuffer.allocateDirect(FILE_HEADER_SIZE).order(ByteOrder.nativeOrder());
+        ByteBuffer payload = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            long fileSize = channel.size();
+            if (fileSize < FILE_HEADER_SIZE) {
+                return result;
+            }
+            readFully(channel, header, 0);
+            long baseLsn = header.getLong(8);
+            if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION || baseLsn < 0) {
+                return result;
+            }
+            long position = FILE_HEADER_SIZE;
+            if (fromLsn > baseLsn) {
+                position += fromLsn - baseLsn;
+                if (position > fileSize) {
+                    // 检查点比日志中保存的记录更新，日志从检查点的 LSN 重新开始
+                    return result;
+                }
+            }
+            result.baseLsn = baseLsn;
+            while (position + RECORD_HEADER_SIZE <= fileSize) {
+                header.clear().limit(RECORD_HEADER_SIZE);
+                readFully(channel, header, position);
+                int payloadSize = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (payloadSize <= 0 || position + RECORD_HEADER_SIZE + payloadSize > fileSize) {
+                    break; // 未写完的尾部
+                }
+
+                if (payload.capacity() < payloadSize) {
+                    payload = ByteBuffer.allocateDirect(payloadSize);
+                }
+                payload.clear().limit(payloadSize);
+                readFully(channel, payload, position + RECORD_HEADER_SIZE);
+                long p = UnsafeOps.getDirectBufferAddress(payload);
+                if (crc(p, payloadSize) != checksum || !apply(p, payloadSize, keyCodec, index,
+                        baseAddress, dataLimit, result)) {
+                    break;
+                }
+
+                position += RECORD_HEADER_SIZE + payloadSize;
+                result.recordCount++;
+            }
+            result.validLength = position;
+            result.endLsn = baseLsn + position - FILE_HEADER_SIZE;
+        } catch (IOException e) {
+            throw new RuntimeException("重放预写日志失败: " + file.getAbsolutePath(), e);
+        }
+        return result;
+    }
+
+    private static <K> boolean apply(long p, int payloadSize, Codec<K> keyCodec, Index<K> index,
+                                     long baseAddress, long dataLimit, ReplayResult result) {
+        byte type = UnsafeOps.getByte(p);
+        if (type != PUT && type != DELETE) {
+            return false;
+        }
+
+        int keySize = UnsafeOps.getInt(p + 1);
+        if (keySize < 0 || 5L + keySize > payloadSize) {
+            return false;
+        }
+        K key = keyCodec.decode(p + 5);
+        if (type == DELETE) {
+            index.remove(key);
+            return true;
+        }
+
+        long q = p + 5 + keySize;
+        if (5L + keySize + 12 > payloadSize) {
+            return false;
+        }
+        long offset = UnsafeOps.getLong(q);
+        int size = UnsafeOps.getInt(q + 8);
+        if (size < 0 || 5L + keySize + 12 + size != payloadSize
+                || offset < MmapFileHeader.HEADER_SIZE || offset + size > dataLimit) {
+            return false;
+        }
+        UnsafeOps.copyMemory(q + 12, baseAddress + offset, size);
+        index.put(key, baseAddress + offset, size);
+        result.maxDataEnd = Math.max(result.maxDataEnd, offset + size);
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new IOException("预写日志意外结束");
+            }
+            position += read;
+        }
+    }
+}
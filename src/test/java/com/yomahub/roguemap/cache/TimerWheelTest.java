@@ -0,0 +1,98 @@
+package com.yomahub.roguemap.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TimerWheel 测试类
+ *
+ * 使用手动推进的时间测试分层时间轮：
+ * - 各层的到期时间
+ * - 到期精度（不早于到期时间，最多晚一个最低层桶宽）
+ * - 回调要求的重新调度
+ */
+class TimerWheelTest {
+
+    private static final long START = 1_000_000_000L;
+    private static final long TICK = 1L << TimerWheel.SHIFTS[0];
+
+    /**
+     * 测试不同层的节点在到期后一个桶宽内被处理，且不会提前
+     */
+    @Test
+    void testExpiresAcrossLevels() {
+        TimerWheel<String> wheel = new TimerWheel<>(START);
+        long[] delays = {10, 5_000, 120_000, 3_600_000, 2L * 24 * 3_600_000};
+        for (long delay : delays) {
+            wheel.schedule(new TimerWheel.Node<>("k" + delay, delay, START + delay));
+        }
+        assertEquals(delays.length, wheel.size());
+
+        List<Long> fired = new ArrayList<>();
+        long now = START;
+        long end = START + delays[delays.length - 1] + 2 * TICK;
+        while (now < end) {
+            now += 500;
+            long current = now;
+            wheel.advance(current, (node, time) -> {
+                long delay = node.address();
+                assertTrue(time >= START + delay, "节点提前到期: " + delay);
+                assertTrue(time <= START + delay + 2 * TICK, "节点到期过晚: " + delay);
+                fired.add(delay);
+                return 0;
+            });
+        }
+
+        assertEquals(delays.length, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * 测试回调返回新的到期时间时节点被重新调度
+     */
+    @Test
+    void testReschedule() {
+        TimerWheel<String> wheel = new TimerWheel<>(START);
+        wheel.schedule(new TimerWheel.Node<>("k", 1, START + 1_000));
+
+        int[] calls = new int[1];
+        TimerWheel.Expirer<String> expirer = (node, time) -> {
+            calls[0]++;
+            return calls[0] == 1 ? time + 10_000 : 0;
+        };
+
+        wheel.advance(START + 3_000, expirer);
+        assertEquals(1, calls[0]);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(START + 8_000, expirer);
+        assertEquals(1, calls[0]);
+
+        wheel.advance(START + 16_000, expirer);
+        assertEquals(2, calls[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * 测试长时间未推进后一次推进处理所有到期节点
+     */
+    @Test
+    void testLargeJump() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(START);
+        for (int i = 0; i < 1000; i++) {
+            wheel.schedule(new TimerWheel.Node<>(i, i, START + i * 1_000L));
+        }
+
+        int[] fired = new int[1];
+        wheel.advance(START + 10_000_000, (node, time) -> {
+            fired[0]++;
+            return 0;
+        });
+        assertEquals(1000, fired[0]);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,49 @@
+package com.yomahub.roguemap.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Crc32c 测试类
+ *
+ * 验证 CRC32C 的标准测试向量，以及 JDK 实现与查表实现的结果一致
+ */
+class Crc32cTest {
+
+    @Test
+    void testKnownVector() {
+        byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xE3069283, new Crc32c().update(bytes, 0, bytes.length).getValue());
+
+        long address = UnsafeOps.allocate(bytes.length);
+        try {
+            UnsafeOps.copyFromArray(bytes, 0, address, bytes.length);
+            assertEquals(0xE3069283, Crc32c.compute(address, bytes.length));
+            assertEquals(0xE3069283, Crc32c.computeTable(address, bytes.length));
+        } finally {
+            UnsafeOps.free(address);
+        }
+    }
+
+    @Test
+    void testIncrementalMatchesTable() {
+        int size = 200_003;
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        long address = UnsafeOps.allocate(size);
+        try {
+            UnsafeOps.copyFromArray(bytes, 0, address, size);
+            int expected = Crc32c.computeTable(address, size);
+            assertEquals(expected, Crc32c.compute(address, size));
+            // 分段追加与一次计算结果相同
+            assertEquals(expected, new Crc32c().update(address, 1000).update(bytes, 1000, size - 1000).getValue());
+        } finally {
+            UnsafeOps.free(address);
+        }
+        assertEquals(0, Crc32c.compute(0, 0));
+    }
+}
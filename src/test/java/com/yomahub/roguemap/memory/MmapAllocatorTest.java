@@ -0,0 +1,138 @@
+package com.yomahub.roguemap.memory;
+
+import com.yomahub.roguemap.index.IntPrimitiveIndex;
+import com.yomahub.roguemap.index.LongPrimitiveIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MmapAllocator 测试类
+ *
+ * 测试脏区跟踪与刷盘，包括：
+ * - 写入方标记脏区（分配本身不标记），包括原始类型索引的累加
+ * - 刷新只同步脏区，跨过一次刷新才写完的值由下一次刷新同步
+ * - 后台刷盘按字节数阈值触发
+ */
+class MmapAllocatorTest {
+
+    private static final String TEST_FILE = "target/test-mmap-allocator.db";
+
+    private MmapAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        new File(TEST_FILE).delete();
+        allocator = new MmapAllocator(TEST_FILE, 16L * 1024 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (allocator != null) {
+            allocator.close();
+        }
+        new File(TEST_FILE).delete();
+    }
+
+    /**
+     * 测试写入方标记的脏区，分配本身不标记，刷新后清除
+     */
+    @Test
+    void testDirtyRegions() {
+        assertEquals(0, allocator.pendingRegions());
+
+        long small = allocator.allocate(100);
+        assertEquals(0, allocator.pendingRegions());
+        allocator.markDirty(small, 100);
+        assertEquals(100, allocator.dirtyBytes());
+        assertEquals(1, allocator.pendingRegions());
+
+        // 跨越多个 64KB 区域
+        long large = allocator.allocate(3 * MmapAllocator.DIRTY_REGION_SIZE);
+        allocator.markDirty(large, 3 * MmapAllocator.DIRTY_REGION_SIZE);
+        assertEquals(4, allocator.pendingRegions());
+
+        allocator.flush();
+        assertEquals(0, allocator.dirtyBytes());
+        assertEquals(0, allocator.pendingRegions());
+
+        // 分配之后跨过一次刷新才写完的值，在写完时标记，由下一次刷新同步
+        long late = allocator.allocate(8);
+        allocator.flush();
+        UnsafeOps.putLong(late, 42L);
+        allocator.markDirty(late, 8);
+        assertEquals(1, allocator.pendingRegions());
+        allocator.flush();
+        assertEquals(0, allocator.pendingRegions());
+
+        allocator.markDirty(small, 8);
+        assertEquals(8, allocator.dirtyBytes());
+        assertEquals(1, allocator.pendingRegions());
+
+        // 不属于映射的地址被忽略
+        long offHeap = UnsafeOps.allocate(16);
+        try {
+            allocator.markDirty(offHeap, 16);
+        } finally {
+            UnsafeOps.free(offHeap);
+        }
+        assertEquals(8, allocator.dirtyBytes());
+    }
+
+    /**
+     * 测试原始类型索引累加新键和原地累加已有键时都标记脏区
+     */
+    @Test
+    void testPrimitiveAddMarksDirty() {
+        LongPrimitiveIndex longIndex = new LongPrimitiveIndex();
+        IntPrimitiveIndex intIndex = new IntPrimitiveIndex();
+        longIndex.addToLong(1L, 1L, allocator);
+        intIndex.addToInt(1, 1, allocator);
+        assertEquals(12, allocator.dirtyBytes());
+        allocator.flush();
+        assertEquals(0, allocator.pendingRegions());
+
+        assertEquals(1L, longIndex.addToLong(1L, 1L, allocator));
+        assertEquals(8, allocator.dirtyBytes());
+        assertEquals(1, intIndex.addToInt(1, 1, allocator));
+        assertEquals(12, allocator.dirtyBytes());
+    }
+
+    /**
+     * 测试刷新后的数据在重新映射后可读
+     */
+    @Test
+    void testFlushedDataVisibleAfterReopen() {
+        long address = allocator.allocate(8);
+        UnsafeOps.putLong(address, 0x1234_5678_9ABCL);
+        allocator.markDirty(address, 8);
+        long offset = address - allocator.getBaseAddress();
+        allocator.flush();
+        allocator.close();
+
+        allocator = new MmapAllocator(TEST_FILE, 16L * 1024 * 1024);
+        assertEquals(0x1234_5678_9ABCL, UnsafeOps.getLong(allocator.getBaseAddress() + offset));
+    }
+
+    /**
+     * 测试后台刷盘按字节数阈值触发
+     */
+    @Test
+    void testBackgroundFlush() throws InterruptedException {
+        assertThrows(IllegalArgumentException.class, () -> allocator.startBackgroundFlush(0, 0));
+
+        allocator.startBackgroundFlush(0, 4096);
+        assertThrows(IllegalStateException.class, () -> allocator.startBackgroundFlush(0, 4096));
+        allocator.markDirty(allocator.allocate(8192), 8192);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (allocator.dirtyBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, allocator.dirtyBytes());
+    }
+}
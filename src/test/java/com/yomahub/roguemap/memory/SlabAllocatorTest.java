@@ -12,7 +12,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * 测试 Slab 内存分配器的功能，包括：
  * - 基本的内存分配和释放
  * - 多种大小的内存分配
- * - 内存重用机制
+ * - 内存重用机制（释放不改写内容，先进先出重用）
  * - 内存限制
  * - 统计信息
  * - 异常处理
@@ -127,6 +127,31 @@ class SlabAllocatorTest {
         allocator.free(addr2, 64);
     }
 
+    /**
+     * 测试释放不改写块内容，且空闲块按先进先出重用
+     *
+     * 验证：
+     * 1. 释放后块中的字节保持不变（并发读取者不会读到空闲链表指针）
+     * 2. 最先释放的块最先被重用
+     */
+    @Test
+    void testFreeKeepsContentsAndReusesInOrder() {
+        long addr1 = allocator.allocate(16);
+        long addr2 = allocator.allocate(16);
+        UnsafeOps.putLong(addr1, 0x1111_2222_3333_4444L);
+        UnsafeOps.putLong(addr2, 0x5555_6666_7777_8888L);
+
+        allocator.free(addr1, 16);
+        allocator.free(addr2, 16);
+        assertEquals(0x1111_2222_3333_4444L, UnsafeOps.getLong(addr1));
+        assertEquals(0x5555_6666_7777_8888L, UnsafeOps.getLong(addr2));
+
+        assertEquals(addr1, allocator.allocate(16));
+        assertEquals(addr2, allocator.allocate(16));
+        allocator.free(addr1, 16);
+        allocator.free(addr2, 16);
+    }
+
     /**
      * 测试内存限制
      *
@@ -0,0 +1,86 @@
+package com.yomahub.roguemap.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TieredAllocator 测试类
+ *
+ * 测试两级分配器的功能，包括：
+ * - 冷层大小类别的划分
+ * - 热层不足时落到冷层
+ * - 按地址判断所属层并释放
+ * - 冷层空闲块的重用
+ */
+class TieredAllocatorTest {
+
+    private TieredAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new TieredAllocator(new SlabAllocator(1024), new MmapAllocator(null, 1024 * 1024, true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (allocator != null) {
+            allocator.close();
+        }
+    }
+
+    /**
+     * 测试大小类别覆盖请求大小且浪费不超过 25%
+     */
+    @Test
+    void testSizeClasses() {
+        int previous = -1;
+        for (int size = 1; size <= 1 << 20; size++) {
+            int sizeClass = TieredAllocator.sizeClass(size);
+            long classSize = TieredAllocator.classSize(sizeClass);
+            assertTrue(classSize >= size, "类别大小不足: " + size);
+            if (size > 64) {
+                assertTrue(classSize <= size * 1.25 + 1, "类别浪费过多: " + size);
+            }
+            assertTrue(sizeClass >= previous, "类别应随大小单调递增");
+            previous = sizeClass;
+        }
+    }
+
+    /**
+     * 测试热层不足时落到冷层，释放按地址路由
+     */
+    @Test
+    void testSpillToCold() {
+        long hot = allocator.allocate(512);
+        assertNotEquals(0, hot);
+        assertFalse(allocator.isCold(hot));
+
+        long cold = allocator.allocate(2048);
+        assertNotEquals(0, cold);
+        assertTrue(allocator.isCold(cold));
+        assertTrue(allocator.coldUsedMemory() >= 2048);
+
+        allocator.free(cold, 2048);
+        assertEquals(0, allocator.coldUsedMemory());
+        allocator.free(hot, 512);
+        assertEquals(0, allocator.hotUsedMemory());
+    }
+
+    /**
+     * 测试冷层释放的块被同一大小类别重用
+     */
+    @Test
+    void testColdBlockReuse() {
+        long first = allocator.allocateCold(100);
+        allocator.free(first, 100);
+
+        long second = allocator.allocateCold(110);
+        assertEquals(first, second, "同一类别的空闲块应该被重用");
+
+        long third = allocator.allocateCold(100);
+        assertNotEquals(second, third);
+    }
+}
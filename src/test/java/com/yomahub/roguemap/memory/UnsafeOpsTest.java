@@ -256,4 +256,32 @@ class UnsafeOpsTest {
             UnsafeOps.free(address);
         }
     }
+
+    /**
+     * 测试只读 ByteBuffer 视图
+     *
+     * 验证视图直接映射堆外内存（不复制）且不可写
+     */
+    @Test
+    void testWrapReadOnly() {
+        long address = UnsafeOps.allocate(16);
+        try {
+            UnsafeOps.putInt(address, 42);
+            UnsafeOps.putLong(address + 8, 7L);
+
+            java.nio.ByteBuffer view = UnsafeOps.wrapReadOnly(address, 16);
+            assertTrue(view.isReadOnly());
+            assertEquals(16, view.remaining());
+            assertEquals(42, view.getInt(0));
+            assertEquals(7L, view.getLong(8));
+
+            // 修改底层内存后视图立即可见
+            UnsafeOps.putInt(address, 43);
+            assertEquals(43, view.getInt(0));
+
+            assertThrows(java.nio.ReadOnlyBufferException.class, () -> view.putInt(0, 1));
+        } finally {
+            UnsafeOps.free(address);
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package com.yomahub.roguemap.mmap;
+
+import com.yomahub.roguemap.FrozenMap;
+import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.serialization.StringCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 冻结 map 文件测试
+ */
+public class FrozenMapTest {
+
+    private static final Path FROZEN_FILE = Paths.get("target/test-frozen.rmf");
+    private static final Path SNAPSHOT_FILE = Paths.get("target/test-frozen.rms");
+
+    @BeforeEach
+    public void setUp() {
+        deleteTestFiles();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        deleteTestFiles();
+    }
+
+    private void deleteTestFiles() {
+        new File(FROZEN_FILE.toString()).delete();
+        new File(FROZEN_FILE + ".tmp").delete();
+        new File(SNAPSHOT_FILE.toString()).delete();
+    }
+
+    @Test
+    public void testFreezeRogueMap() {
+        RogueMap<String, String> source = RogueMap.<String, String>offHeap()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build();
+        for (int i = 0; i < 20000; i++) {
+            source.put("key" + i, "value" + i);
+        }
+        assertEquals(20000, source.freezeTo(FROZEN_FILE));
+        source.close();
+        assertFalse(new File(FROZEN_FILE + ".tmp").exists());
+
+        try (FrozenMap<String, String> frozen = FrozenMap.open(FROZEN_FILE, new StringCodec(), new StringCodec())) {
+            assertEquals(20000, frozen.size());
+            for (int i = 0; i < 20000; i++) {
+                assertEquals("value" + i, frozen.get("key" + i));
+            }
+            assertNull(frozen.get("missing"));
+            assertFalse(frozen.containsKey("key20000"));
+            assertTrue(frozen.containsKey("key0"));
+            frozen.verify();
+
+            Map<String, String> all = new HashMap<>();
+            frozen.forEach(all::put);
+            assertEquals(20000, all.size());
+            assertEquals("value123", all.get("key123"));
+        }
+    }
+
+    @Test
+    public void testWriterKeepsLastValue() {
+        try (FrozenMap.Writer<Long, Long> writer = FrozenMap.writer(FROZEN_FILE, PrimitiveCodecs.LONG,
+                PrimitiveCodecs.LONG)) {
+            for (long i = 0; i < 1000; i++) {
+                writer.add(i, i);
+            }
+            writer.add(7L, 700L);
+            writer.add(0L, -1L);
+            assertEquals(1000, writer.finish());
+        }
+
+        try (FrozenMap<Long, Long> frozen = FrozenMap.open(FROZEN_FILE, PrimitiveCodecs.LONG, PrimitiveCodecs.LONG)) {
+            assertEquals(1000, frozen.size());
+            assertEquals(700L, frozen.get(7L));
+            assertEquals(-1L, frozen.get(0L));
+            assertEquals(999L, frozen.get(999L));
+            assertNull(frozen.get(1000L));
+        }
+    }
+
+    @Test
+    public void testEmptyAndUnfinished() {
+        try (FrozenMap.Writer<String, String> writer = FrozenMap.writer(FROZEN_FILE, new StringCodec(),
+                new StringCodec())) {
+            writer.add("a", "b");
+            // 未调用 finish 关闭时不生成目标文件
+        }
+        assertFalse(new File(FROZEN_FILE.toString()).exists());
+        assertFalse(new File(FROZEN_FILE + ".tmp").exists());
+
+        try (FrozenMap.Writer<String, String> writer = FrozenMap.writer(FROZEN_FILE, new StringCodec(),
+                new StringCodec())) {
+            assertEquals(0, writer.finish());
+        }
+        try (FrozenMap<String, String> frozen = FrozenMap.open(FROZEN_FILE, new StringCodec(), new StringCodec())) {
+            assertTrue(frozen.isEmpty());
+            assertNull(frozen.get("a"));
+            frozen.verify();
+        }
+    }
+
+    @Test
+    public void testFromSnapshot() {
+        RogueMap<Long, String> source = RogueMap.<Long, String>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(new StringCodec())
+                .primitiveIndex()
+                .build();
+        for (long i = 1; i <= 5000; i++) {
+            source.put(i, "v" + i);
+        }
+        source.exportTo(SNAPSHOT_FILE, true);
+        source.close();
+
+        assertEquals(5000, FrozenMap.fromSnapshot(SNAPSHOT_FILE, FROZEN_FILE));
+        try (FrozenMap<Long, String> frozen = FrozenMap.open(FROZEN_FILE, PrimitiveCodecs.LONG, new StringCodec())) {
+            assertEquals(5000, frozen.size());
+            assertEquals("v4321", frozen.get(4321L));
+        }
+    }
+
+    @Test
+    public void testCorruptionDetected() throws Exception {
+        try (FrozenMap.Writer<String, String> writer = FrozenMap.writer(FROZEN_FILE, new StringCodec(),
+                new StringCodec())) {
+            for (int i = 0; i < 100; i++) {
+                writer.add("key" + i, "value" + i);
+            }
+            writer.finish();
+        }
+
+        // 翻转数据区的一个字节：打开不受影响，完整校验能发现
+        flipByte(FrozenMap.HEADER_SIZE + 10);
+        try (FrozenMap<String, String> frozen = FrozenMap.open(FROZEN_FILE, new StringCodec(), new StringCodec())) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, frozen::verify);
+            assertTrue(e.getMessage().contains("数据已损坏"), e.getMessage());
+        }
+
+        // 文件头损坏时拒绝打开
+        flipByte(8);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> FrozenMap.open(FROZEN_FILE, new StringCodec(), new StringCodec()));
+        assertTrue(e.getMessage().contains("冻结文件头已损坏"), e.getMessage());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        try (FrozenMap.Writer<Long, Long> writer = FrozenMap.writer(FROZEN_FILE, PrimitiveCodecs.LONG,
+                PrimitiveCodecs.LONG)) {
+            for (long i = 0; i < 100000; i++) {
+                writer.add(i, i * 3);
+            }
+            writer.finish();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (FrozenMap<Long, Long> frozen = FrozenMap.open(FROZEN_FILE, PrimitiveCodecs.LONG, PrimitiveCodecs.LONG)) {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                final long start = t;
+                futures[t] = executor.submit(() -> {
+                    for (long i = start; i < 100000; i += 4) {
+                        assertEquals(i * 3, frozen.get(i));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void flipByte(long offset) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(FROZEN_FILE.toFile(), "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x01);
+        }
+    }
+}
@@ -4,11 +4,23 @@ import com.yomahub.roguemap.RogueMap;
 import com.yomahub.roguemap.serialization.KryoObjectCodec;
 import com.yomahub.roguemap.serialization.PrimitiveCodecs;
 import com.yomahub.roguemap.serialization.StringCodec;
+import com.yomahub.roguemap.storage.ChecksumVerification;
+import com.yomahub.roguemap.storage.WalDurability;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +41,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class MmapFunctionalTest {
 
     private static final String TEST_FILE = "target/test-mmap-functional.db";
+    private static final String SNAPSHOT_FILE = "target/test-mmap-functional.rms";
 
     @BeforeEach
     public void setUp() {
@@ -45,6 +58,14 @@ public class MmapFunctionalTest {
         if (file.exists()) {
             file.delete();
         }
+        File wal = new File(TEST_FILE + ".wal");
+        if (wal.exists()) {
+            wal.delete();
+        }
+        File snapshot = new File(SNAPSHOT_FILE);
+        if (snapshot.exists()) {
+            snapshot.delete();
+        }
     }
 
     // ========== 基本持久化测试 ==========
@@ -225,6 +246,27 @@ public class MmapFunctionalTest {
         map4.close();
     }
 
+    @Test
+    public void testConditionalUpdatesDoNotConsumeFileSpace() {
+        RogueMap<String, String> map = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build();
+
+        // 期望值编码到临时内存，不占用文件空间：比较次数远超文件容量也不会耗尽
+        map.put("key", "value");
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(map.remove("key", "unexpected-value"));
+            assertFalse(map.replace("key", "unexpected-value", "other"));
+        }
+        assertTrue(map.replace("key", "value", "value2"));
+        assertTrue(map.remove("key", "value2"));
+        assertFalse(map.containsKey("key"));
+        map.close();
+    }
+
     // ========== 删除操作持久化测试 ==========
 
     @Test
@@ -711,8 +753,960 @@ public class MmapFunctionalTest {
         map.close();
     }
 
+    // ========== 预写日志测试 ==========
+
+    private RogueMap<String, String> openWithWal(WalDurability durability) {
+        return RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .writeAheadLog(durability)
+                .build();
+    }
+
+    @Test
+    public void testWalRecoversWithoutClose() {
+        // 第一个会话：写入后正常关闭，形成检查点
+        RogueMap<String, String> map1 = openWithWal(WalDurability.SYNC);
+        map1.put("a", "1");
+        map1.put("b", "2");
+        map1.close();
+        assertEquals(16, new File(TEST_FILE + ".wal").length(), "正常关闭后日志应只剩文件头");
+
+        // 第二个会话：写入后不关闭，模拟进程崩溃
+        RogueMap<String, String> crashed = openWithWal(WalDurability.SYNC);
+        crashed.put("b", "22");
+        crashed.put("c", "3");
+        crashed.remove("a");
+        crashed.putAll(Collections.singletonMap("d", "4"));
+        assertTrue(new File(TEST_FILE + ".wal").length() > 16);
+
+        // 重新打开：检查点之上重放日志
+        RogueMap<String, String> map2 = openWithWal(WalDurability.SYNC);
+        assertEquals(3, map2.size());
+        assertNull(map2.get("a"));
+        assertEquals("22", map2.get("b"));
+        assertEquals("3", map2.get("c"));
+        assertEquals("4", map2.get("d"));
+
+        // 重放后继续写入，新值不能覆盖重放的数据
+        map2.put("e", "5");
+        assertEquals("3", map2.get("c"));
+        map2.close();
+
+        RogueMap<String, String> map3 = openWithWal(WalDurability.OS);
+        assertEquals(4, map3.size());
+        assertEquals("22", map3.get("b"));
+        assertEquals("5", map3.get("e"));
+        map3.close();
+    }
+
+    @Test
+    public void testWalIgnoresTornTail() throws Exception {
+        RogueMap<String, String> crashed = openWithWal(WalDurability.OS);
+        crashed.put("k1", "v1");
+        crashed.put("k2", "v2");
+
+        // 模拟崩溃时写了一半的记录
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE + ".wal", "rw")) {
+            long length = raf.length();
+            raf.seek(length);
+            raf.writeInt(Integer.reverseBytes(100));
+            raf.write(new byte[] {1, 2, 3});
+        }
+
+        RogueMap<String, String> map = openWithWal(WalDurability.OS);
+        assertEquals(2, map.size());
+        assertEquals("v1", map.get("k1"));
+        assertEquals("v2", map.get("k2"));
+
+        map.put("k3", "v3");
+        map.close();
+
+        RogueMap<String, String> reopened = openWithWal(WalDurability.OS);
+        assertEquals(3, reopened.size());
+        assertEquals("v3", reopened.get("k3"));
+        reopened.close();
+    }
+
+    @Test
+    public void testWalClearConcurrentWithPuts() throws Exception {
+        RogueMap<String, String> crashed = openWithWal(WalDurability.OS);
+        for (int i = 0; i < 20000; i++) {
+            crashed.put("k" + i, "v" + i);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100000 && !stop.get(); i++) {
+                crashed.put("w" + i, "v" + i);
+                written.incrementAndGet();
+            }
+        });
+        writer.start();
+        while (written.get() < 100 && writer.isAlive()) {
+            Thread.yield();
+        }
+        crashed.clear();
+        stop.set(true);
+        writer.join();
+        Map<String, String> expected = new HashMap<>(crashed.asConcurrentMap());
+
+        // 与清空并发的写入在日志中的顺序必须与索引一致，重放后内容相同
+        RogueMap<String, String> map = openWithWal(WalDurability.OS);
+        assertEquals(expected, new HashMap<>(map.asConcurrentMap()));
+        map.close();
+    }
+
+    @Test
+    public void testWalPeriodicFlush() throws Exception {
+        RogueMap<String, String> crashed = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .writeAheadLog(Duration.ofMillis(5))
+                .build();
+        for (int i = 0; i < 100; i++) {
+            crashed.put("key" + i, "value" + i);
+        }
+        crashed.flush();
+
+        RogueMap<String, String> map = openWithWal(WalDurability.SYNC);
+        assertEquals(100, map.size());
+        assertEquals("value42", map.get("key42"));
+        map.close();
+    }
+
+    @Test
+    public void testWalInvalidConfig() {
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .writeAheadLog(WalDurability.SYNC)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, String>mmap()
+                .writeAheadLog(WalDurability.PERIODIC));
+
+        try (RogueMap<String, Long> map = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .writeAheadLog(WalDurability.OS)
+                .build()) {
+            assertThrows(IllegalStateException.class, () -> map.addAndGet("counter", 1));
+        }
+    }
+
+    // ========== 后台检查点测试 ==========
+
+    private RogueMap<String, String> openWithCheckpoint(WalDurability durability) {
+        RogueMap.MmapBuilder<String, String> builder = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .checkpointInterval(Duration.ofHours(1));
+        if (durability != null) {
+            builder.writeAheadLog(durability);
+        }
+        return builder.build();
+    }
+
+    private int readActiveSlot() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "r")) {
+            raf.seek(48);
+            return Integer.reverseBytes(raf.readInt());
+        }
+    }
+
+    @Test
+    public void testCheckpointRecoversWithoutClose() throws Exception {
+        RogueMap<String, String> crashed = openWithCheckpoint(null);
+        crashed.put("a", "1");
+        crashed.put("b", "2");
+        crashed.checkpoint();
+        assertEquals(1, readActiveSlot());
+        crashed.put("b", "22");
+        crashed.checkpoint();
+        assertEquals(2, readActiveSlot(), "检查点应交替写入两个槽位");
+
+        // 检查点之后的写入没有预写日志保护，崩溃后丢失
+        crashed.put("c", "3");
+
+        RogueMap<String, String> map = openWithCheckpoint(null);
+        assertEquals(2, map.size());
+        assertEquals("1", map.get("a"));
+        assertEquals("22", map.get("b"));
+        assertNull(map.get("c"));
+
+        // 正常关闭时写入最后一个检查点
+        map.put("d", "4");
+        map.remove("a");
+        map.close();
+
+        RogueMap<String, String> reopened = openWithCheckpoint(null);
+        assertEquals(2, reopened.size());
+        assertEquals("4", reopened.get("d"));
+        assertNull(reopened.get("a"));
+        reopened.close();
+
+        // 不启用检查点也能读取检查点写入的文件
+        RogueMap<String, String> plain = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build();
+        assertEquals("22", plain.get("b"));
+        plain.put("e", "5");
+        assertEquals("4", plain.get("d"));
+        plain.close();
+    }
+
+    @Test
+    public void testCheckpointTriggeredByMutations() throws Exception {
+        RogueMap<String, String> crashed = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .checkpointMutations(100)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            crashed.put("key" + i, "value" + i);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readActiveSlot() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotEquals(0, readActiveSlot(), "达到修改次数后应写入检查点");
+
+        RogueMap<String, String> map = openWithCheckpoint(null);
+        assertEquals(100, map.size());
+        assertEquals("value42", map.get("key42"));
+        map.close();
+    }
+
+    @Test
+    public void testCheckpointWithWalReplaysTail() {
+        RogueMap<String, String> crashed = openWithCheckpoint(WalDurability.SYNC);
+        crashed.put("a", "1");
+        crashed.put("b", "2");
+        crashed.checkpoint();
+        crashed.put("c", "3");
+        crashed.remove("a");
+
+        // 从检查点开始重放日志
+        RogueMap<String, String> map = openWithCheckpoint(WalDurability.SYNC);
+        assertEquals(2, map.size());
+        assertNull(map.get("a"));
+        assertEquals("2", map.get("b"));
+        assertEquals("3", map.get("c"));
+
+        // 关闭时只把日志落盘，下次打开继续重放
+        map.put("d", "4");
+        map.close();
+
+        RogueMap<String, String> reopened = openWithCheckpoint(WalDurability.OS);
+        assertEquals(3, reopened.size());
+        assertEquals("4", reopened.get("d"));
+        reopened.close();
+    }
+
+    @Test
+    public void testCheckpointTruncatesWal() {
+        String value = createLargeString(2048);
+        RogueMap<String, String> crashed = openWithCheckpoint(WalDurability.OS);
+        for (int i = 0; i < 1000; i++) {
+            crashed.put("key" + i, value + i);
+        }
+        File walFile = new File(TEST_FILE + ".wal");
+        assertTrue(walFile.length() > 1024 * 1024);
+
+        crashed.checkpoint();
+        assertTrue(walFile.length() < 1024, "检查点之前的日志应被丢弃");
+        crashed.put("key0", "updated");
+
+        RogueMap<String, String> map = openWithCheckpoint(WalDurability.OS);
+        assertEquals(1000, map.size());
+        assertEquals("updated", map.get("key0"));
+        assertEquals(value + 999, map.get("key999"));
+        map.close();
+    }
+
+    /**
+     * 读取活动检查点目录中每个分片块的偏移
+     */
+    private long[] readCheckpointBlocks() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "r")) {
+            int slot = readActiveSlot();
+            raf.seek(56 + (slot - 1) * 40L);
+            long directory = Long.reverseBytes(raf.readLong());
+            raf.seek(directory);
+            long[] blocks = new long[Integer.reverseBytes(raf.readInt())];
+            for (int i = 0; i < blocks.length; i++) {
+                raf.seek(directory + 8 + i * 16L);
+                blocks[i] = Long.reverseBytes(raf.readLong());
+            }
+            return blocks;
+        }
+    }
+
+    private int countChanged(long[] before, long[] after) {
+        assertEquals(before.length, after.length);
+        int changed = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    @Test
+    public void testIncrementalCheckpointRewritesDirtySegmentsOnly() throws Exception {
+        RogueMap<String, String> crashed = openWithCheckpoint(null);
+        for (int i = 0; i < 10000; i++) {
+            crashed.put("key" + i, "value" + i);
+        }
+        crashed.checkpoint();
+        long[] full = readCheckpointBlocks();
+        assertEquals(64, full.length);
+
+        crashed.put("key42", "updated");
+        crashed.checkpoint();
+        long[] incremental = readCheckpointBlocks();
+        assertEquals(1, countChanged(full, incremental), "只有被修改的段应该被重写");
+
+        crashed.checkpoint();
+        assertEquals(0, countChanged(incremental, readCheckpointBlocks()), "没有修改时不应重写任何段");
+
+        RogueMap<String, String> map = openWithCheckpoint(null);
+        assertEquals(10000, map.size());
+        assertEquals("updated", map.get("key42"));
+        assertEquals("value9999", map.get("key9999"));
+
+        // 重新打开后继续沿用上一次会话的段
+        long[] restored = readCheckpointBlocks();
+        map.remove("key7");
+        map.checkpoint();
+        assertEquals(1, countChanged(restored, readCheckpointBlocks()));
+        map.close();
+
+        RogueMap<String, String> reopened = openWithCheckpoint(null);
+        assertEquals(9999, reopened.size());
+        assertNull(reopened.get("key7"));
+        reopened.close();
+    }
+
+    @Test
+    public void testIncrementalCheckpointWithPrimitiveIndex() throws Exception {
+        RogueMap.MmapBuilder<Long, Long> builder = RogueMap.<Long, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .checkpointInterval(Duration.ofHours(1));
+
+        RogueMap<Long, Long> crashed = builder.build();
+        for (long i = 1; i <= 5000; i++) {
+            crashed.put(i, i * 10);
+        }
+        crashed.checkpoint();
+        long[] full = readCheckpointBlocks();
+
+        crashed.put(1L, -1L);
+        crashed.checkpoint();
+        long[] incremental = readCheckpointBlocks();
+        assertEquals(1, countChanged(full, incremental), "只有被修改的表区间应该被重写");
+
+        // 扩容会改变所有区间的划分
+        for (long i = 5001; i <= 20000; i++) {
+            crashed.put(i, i * 10);
+        }
+        crashed.remove(2L);
+        crashed.checkpoint();
+
+        RogueMap<Long, Long> map = builder.build();
+        assertEquals(19999, map.size());
+        assertEquals(-1L, map.get(1L));
+        assertNull(map.get(2L));
+        assertEquals(200000L, map.get(20000L));
+        map.close();
+    }
+
+    @Test
+    public void testCheckpointInvalidConfig() {
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .checkpointInterval(Duration.ofSeconds(1))
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, String>mmap()
+                .checkpointInterval(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, String>mmap()
+                .checkpointMutations(0));
+
+        try (RogueMap<String, String> map = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build()) {
+            assertThrows(IllegalStateException.class, map::checkpoint);
+        }
+    }
+
+    // ========== 自描述记录测试 ==========
+
+    private RogueMap<String, String> openWithRecords(boolean rebuildIndex) {
+        RogueMap.MmapBuilder<String, String> builder = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .selfDescribingRecords();
+        if (rebuildIndex) {
+            builder.rebuildIndex();
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testRecordsRecoverWithoutClose() {
+        RogueMap<String, String> map1 = openWithRecords(false);
+        map1.put("a", "1");
+        map1.put("b", "2");
+        map1.put("x", "9");
+        map1.close();
+
+        // 第二个会话：写入后不关闭，模拟进程崩溃
+        RogueMap<String, String> crashed = openWithRecords(false);
+        crashed.put("b", "22");
+        crashed.set("c", "3");
+        crashed.remove("a");
+        crashed.putAll(Collections.singletonMap("d", "4"));
+        crashed.compute("x", (k, v) -> v + "9");
+        crashed.setIfAbsent("c", "ignored");
+        crashed.replace("d", "4", "44");
+        crashed.delete("missing");
+
+        // 重新打开：扫描数据区重建索引
+        RogueMap<String, String> map2 = openWithRecords(false);
+        assertEquals(4, map2.size());
+        assertNull(map2.get("a"));
+        assertEquals("22", map2.get("b"));
+        assertEquals("3", map2.get("c"));
+        assertEquals("44", map2.get("d"));
+        assertEquals("99", map2.get("x"));
+
+        // 重建后继续写入，新记录必须排在已有记录之后
+        map2.put("b", "222");
+        map2.put("a", "11");
+        map2.close();
+
+        RogueMap<String, String> map3 = openWithRecords(true);
+        assertEquals(5, map3.size());
+        assertEquals("11", map3.get("a"));
+        assertEquals("222", map3.get("b"));
+        map3.close();
+    }
+
+    @Test
+    public void testRecordsHonourClearAndTombstones() {
+        RogueMap<String, String> crashed = openWithRecords(false);
+        for (int i = 0; i < 100; i++) {
+            crashed.put("key" + i, "old" + i);
+        }
+        crashed.clear();
+        crashed.put("key1", "new1");
+        crashed.put("key2", "new2");
+        crashed.remove("key2");
+        crashed.put("key2", "newer2");
+        crashed.remove("key1");
+
+        RogueMap<String, String> map = openWithRecords(false);
+        assertEquals(1, map.size());
+        assertNull(map.get("key1"));
+        assertEquals("newer2", map.get("key2"));
+        assertNull(map.get("key50"));
+        map.close();
+    }
+
+    @Test
+    public void testRecordsRebuildPrimitiveIndexInParallel() {
+        RogueMap<Long, String> crashed = RogueMap.<Long, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(new StringCodec())
+                .primitiveIndex()
+                .selfDescribingRecords()
+                .build();
+        // 超过一个扫描分块，重建时并行处理
+        String padding = createLargeString(200);
+        for (long i = 1; i <= 20000; i++) {
+            crashed.put(i, padding + i);
+        }
+        for (long i = 2; i <= 20000; i += 2) {
+            crashed.put(i, "even" + i);
+        }
+        for (long i = 5; i <= 20000; i += 5) {
+            crashed.remove(i);
+        }
+
+        RogueMap<Long, String> map = RogueMap.<Long, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(new StringCodec())
+                .primitiveIndex()
+                .selfDescribingRecords()
+                .build();
+        assertEquals(16000, map.size());
+        for (long i = 1; i <= 20000; i++) {
+            if (i % 5 == 0) {
+                assertNull(map.get(i));
+            } else if (i % 2 == 0) {
+                assertEquals("even" + i, map.get(i));
+            } else {
+                assertEquals(padding + i, map.get(i));
+            }
+        }
+        map.close();
+    }
+
+    @Test
+    public void testRecordsRebuildIndexAfterCorruption() throws Exception {
+        RogueMap<String, String> map1 = openWithRecords(false);
+        for (int i = 0; i < 1000; i++) {
+            map1.put("key" + i, "value" + i);
+        }
+        map1.put("key7", "latest");
+        map1.close();
+
+        // 破坏关闭时保存的索引镜像
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw")) {
+            raf.seek(24);
+            long indexOffset = Long.reverseBytes(raf.readLong());
+            raf.seek(indexOffset);
+            raf.write(new byte[4096]);
+        }
+
+        RogueMap<String, String> map2 = openWithRecords(true);
+        assertEquals(1000, map2.size());
+        assertEquals("value0", map2.get("key0"));
+        assertEquals("latest", map2.get("key7"));
+        assertEquals("value999", map2.get("key999"));
+        map2.close();
+    }
+
+    @Test
+    public void testRecordsSkipCorruptRecord() throws Exception {
+        RogueMap<String, String> crashed = openWithRecords(false);
+        crashed.put("k", "first-value");
+        crashed.put("k", "second-value");
+        crashed.put("other", "v");
+
+        // 翻转最新记录中的一个字节，CRC 不匹配的记录被丢弃，回退到上一次写入
+        byte[] target = "second-value".getBytes("UTF-8");
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw")) {
+            byte[] data = new byte[64 * 1024];
+            raf.seek(4096);
+            raf.readFully(data);
+            int position = indexOf(data, target);
+            assertTrue(position >= 0);
+            raf.seek(4096 + position);
+            raf.write('S');
+        }
+
+        RogueMap<String, String> map = openWithRecords(false);
+        assertEquals(2, map.size());
+        assertEquals("first-value", map.get("k"));
+        assertEquals("v", map.get("other"));
+        map.close();
+    }
+
+    @Test
+    public void testRecordsInvalidConfig() {
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .selfDescribingRecords()
+                .build());
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .selfDescribingRecords()
+                .writeAheadLog(WalDurability.OS)
+                .build());
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .rebuildIndex()
+                .build());
+
+        try (RogueMap<String, Long> map = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .selfDescribingRecords()
+                .build()) {
+            assertThrows(IllegalStateException.class, () -> map.addAndGet("counter", 1));
+            map.put("counter", 1L);
+        }
+
+        // 已有数据的文件必须以同样的格式打开
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build());
+    }
+
+    // ========== 校验和测试 ==========
+
+    private RogueMap<String, String> openWithChecksums(ChecksumVerification verification, boolean records) {
+        RogueMap.MmapBuilder<String, String> builder = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(64 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .verifyChecksums(verification);
+        if (records) {
+            builder.selfDescribingRecords();
+        } else {
+            builder.pageChecksums();
+        }
+        return builder.build();
+    }
+
+    private void writeChecksumFixture(boolean records) {
+        RogueMap<String, String> map = openWithChecksums(ChecksumVerification.LAZY, records);
+        // 要破坏的值写在最前面，和索引镜像不在同一页
+        map.put("target", "target-value");
+        String padding = createLargeString(100);
+        for (int i = 0; i < 2000; i++) {
+            map.put("key" + i, padding + i);
+        }
+        map.close();
+    }
+
+    /**
+     * 把数据区中第一次出现的字节序列的第一个字节改掉
+     */
+    private void corruptData(String text) throws Exception {
+        byte[] target = text.getBytes("UTF-8");
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw")) {
+            raf.seek(24);
+            long indexOffset = Long.reverseBytes(raf.readLong());
+            byte[] data = new byte[(int) indexOffset - 4096];
+            raf.seek(4096);
+            raf.readFully(data);
+            int position = indexOf(data, target);
+            assertTrue(position >= 0);
+            raf.seek(4096 + position);
+            raf.write('X');
+        }
+    }
+
+    private static void flipByte(long offset) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x01);
+        }
+    }
+
+    @Test
+    public void testChecksumsDetectHeaderCorruption() throws Exception {
+        writeChecksumFixture(false);
+        flipByte(12); // 条目数
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> openWithChecksums(ChecksumVerification.LAZY, false));
+        assertTrue(e.getMessage().contains("文件头校验和不匹配"));
+
+        RogueMap<String, String> map = openWithChecksums(ChecksumVerification.NONE, false);
+        assertEquals("target-value", map.get("target"));
+        map.close();
+    }
+
+    @Test
+    public void testChecksumsDetectIndexImageCorruption() throws Exception {
+        writeChecksumFixture(false);
+        long indexOffset;
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "r")) {
+            raf.seek(24);
+            indexOffset = Long.reverseBytes(raf.readLong());
+        }
+        flipByte(indexOffset + 1000);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> openWithChecksums(ChecksumVerification.LAZY, false));
+        assertTrue(e.getMessage().contains("索引镜像校验和不匹配"));
+    }
+
+    @Test
+    public void testPageChecksumsVerifyDataPages() throws Exception {
+        writeChecksumFixture(false);
+        corruptData("target-value");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> openWithChecksums(ChecksumVerification.ALL, false));
+        assertTrue(e.getMessage().contains("数据页校验和不匹配"));
+
+        // 延迟验证：损坏的页第一次被读取时才报错，其他页正常读取
+        RogueMap<String, String> lazy = openWithChecksums(ChecksumVerification.LAZY, false);
+        assertEquals(createLargeString(100) + 1999, lazy.get("key1999"));
+        assertThrows(IllegalStateException.class, () -> lazy.get("target"));
+        lazy.close();
+
+        RogueMap<String, String> unchecked = openWithChecksums(ChecksumVerification.NONE, false);
+        assertEquals("Xarget-value", unchecked.get("target"));
+        unchecked.close();
+    }
+
+    @Test
+    public void testRecordChecksumsVerifiedOnOpenOrRead() throws Exception {
+        writeChecksumFixture(true);
+        corruptData("target-value");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> openWithChecksums(ChecksumVerification.ALL, true));
+        assertTrue(e.getMessage().contains("记录校验和不匹配"));
+
+        RogueMap<String, String> lazy = openWithChecksums(ChecksumVerification.LAZY, true);
+        assertEquals(createLargeString(100) + 1999, lazy.get("key1999"));
+        assertThrows(IllegalStateException.class, () -> lazy.get("target"));
+        assertThrows(IllegalStateException.class, () -> lazy.put("target", "new"));
+        lazy.close();
+    }
+
+    @Test
+    public void testChecksumsDetectCheckpointBlockCorruption() throws Exception {
+        RogueMap<String, String> crashed = openWithCheckpoint(null);
+        for (int i = 0; i < 1000; i++) {
+            crashed.put("key" + i, "value" + i);
+        }
+        crashed.checkpoint();
+
+        long corruptBlock = -1;
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "r")) {
+            for (long block : readCheckpointBlocks()) {
+                raf.seek(block);
+                if (Integer.reverseBytes(raf.readInt()) > 0) {
+                    corruptBlock = block;
+                    break;
+                }
+            }
+        }
+        assertTrue(corruptBlock > 0);
+        flipByte(corruptBlock + 10);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> openWithCheckpoint(null));
+        assertTrue(e.getMessage().contains("检查点分片块校验和不匹配"));
+    }
+
+    @Test
+    public void testChecksumsInvalidConfig() {
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, String>mmap()
+                .verifyChecksums(null));
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .pageChecksums()
+                .build());
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .pageChecksums()
+                .checkpointInterval(Duration.ofSeconds(1))
+                .build());
+    }
+
+    // ========== 后台刷盘测试 ==========
+
+    @Test
+    public void testBackgroundFlush() throws Exception {
+        RogueMap<String, Long> map = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .backgroundFlush(Duration.ofMillis(10))
+                .backgroundFlushBytes(64 * 1024)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, (long) i);
+        }
+        // 原地修改也会被标记并同步
+        assertEquals(1001L, map.addAndGet("key1", 1000));
+        Thread.sleep(50);
+        map.close();
+
+        RogueMap<String, Long> reopened = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        assertEquals(1000, reopened.size());
+        assertEquals(1001L, reopened.get("key1"));
+        reopened.close();
+
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, Long>mmap()
+                .backgroundFlush(Duration.ZERO));
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .backgroundFlushBytes(1024)
+                .build());
+    }
+
+    @Test
+    public void testExportAndBulkLoad() {
+        for (boolean compress : new boolean[]{false, true}) {
+            deleteTestFile();
+            RogueMap<String, String> source = RogueMap.<String, String>offHeap()
+                    .keyCodec(new StringCodec())
+                    .valueCodec(new StringCodec())
+                    .build();
+            for (int i = 0; i < 10000; i++) {
+                source.put("key" + i, "value" + i);
+            }
+            source.put("empty", "");
+            assertEquals(10001, source.exportTo(Paths.get(SNAPSHOT_FILE), compress));
+            source.close();
+
+            RogueMap<String, String> loaded = RogueMap.bulkLoad(Paths.get(SNAPSHOT_FILE),
+                    RogueMap.<String, String>mmap()
+                            .persistent(TEST_FILE)
+                            .allocateSize(10 * 1024 * 1024L)
+                            .keyCodec(new StringCodec())
+                            .valueCodec(new StringCodec()));
+            assertEquals(10001, loaded.size());
+            assertEquals("value9999", loaded.get("key9999"));
+            assertEquals("", loaded.get("empty"));
+            loaded.put("extra", "x");
+            loaded.close();
+
+            RogueMap<String, String> reopened = RogueMap.<String, String>mmap()
+                    .persistent(TEST_FILE)
+                    .allocateSize(10 * 1024 * 1024L)
+                    .keyCodec(new StringCodec())
+                    .valueCodec(new StringCodec())
+                    .build();
+            assertEquals(10002, reopened.size());
+            assertEquals("value0", reopened.get("key0"));
+            assertEquals("x", reopened.get("extra"));
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testExportStreamToPrimitiveIndex() {
+        RogueMap<Long, Long> source = RogueMap.<Long, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+        for (long i = 1; i <= 5000; i++) {
+            source.put(i, i * 2);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5000, source.exportTo(out, true));
+        source.close();
+        deleteTestFile();
+
+        RogueMap<Long, Long> loaded = RogueMap.bulkLoad(new ByteArrayInputStream(out.toByteArray()),
+                RogueMap.<Long, Long>mmap()
+                        .persistent(TEST_FILE)
+                        .allocateSize(10 * 1024 * 1024L)
+                        .keyCodec(PrimitiveCodecs.LONG)
+                        .valueCodec(PrimitiveCodecs.LONG)
+                        .primitiveIndex());
+        assertEquals(5000, loaded.size());
+        assertEquals(10000L, loaded.get(5000L));
+        loaded.close();
+    }
+
+    @Test
+    public void testBulkLoadRejectsCorruptSnapshotAndExistingFile() throws Exception {
+        RogueMap<String, String> source = RogueMap.<String, String>offHeap()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build();
+        for (int i = 0; i < 100; i++) {
+            source.put("key" + i, "value" + i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.exportTo(out, false);
+        source.close();
+
+        byte[] corrupted = out.toByteArray();
+        int position = indexOf(corrupted, "value42".getBytes("UTF-8"));
+        corrupted[position] ^= 0x01;
+        RuntimeException e = assertThrows(RuntimeException.class, () -> RogueMap.bulkLoad(
+                new ByteArrayInputStream(corrupted), RogueMap.<String, String>mmap()
+                        .persistent(TEST_FILE)
+                        .allocateSize(10 * 1024 * 1024L)
+                        .keyCodec(new StringCodec())
+                        .valueCodec(new StringCodec())));
+        assertTrue(e.getMessage().contains("快照已损坏"), e.getMessage());
+        // 加载失败时删除新建的文件
+        assertFalse(new File(TEST_FILE).exists());
+
+        RogueMap<String, String> existing = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .build();
+        existing.put("a", "b");
+        existing.close();
+        assertThrows(IllegalStateException.class, () -> RogueMap.bulkLoad(
+                new ByteArrayInputStream(out.toByteArray()), RogueMap.<String, String>mmap()
+                        .persistent(TEST_FILE)
+                        .allocateSize(10 * 1024 * 1024L)
+                        .keyCodec(new StringCodec())
+                        .valueCodec(new StringCodec())));
+        assertTrue(new File(TEST_FILE).exists());
+    }
+
     // ========== 辅助方法 ==========
 
+    private static int indexOf(byte[] data, byte[] target) {
+        outer:
+        for (int i = 0; i <= data.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
     private String createLargeString(int length) {
         StringBuilder sb = new StringBuilder(length);
         for (int i = 0; i < length; i++) {
@@ -0,0 +1,321 @@
+package com.yomahub.roguemap.mmap;
+
+import com.yomahub.roguemap.LongLongRogueMap;
+import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.serialization.StringCodec;
+import com.yomahub.roguemap.storage.WalDurability;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MMAP 共享索引（单写多读实时共享）测试
+ */
+public class MmapLiveSharingTest {
+
+    private static final String TEST_FILE = "target/test-mmap-live.db";
+
+    @BeforeEach
+    public void setUp() {
+        deleteTestFiles();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        deleteTestFiles();
+    }
+
+    private void deleteTestFiles() {
+        new File(TEST_FILE).delete();
+        new File(TEST_FILE + ".wal").delete();
+    }
+
+    private RogueMap<String, Long> openWriter() {
+        return RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .liveIndex(10000)
+                .build();
+    }
+
+    private RogueMap<String, Long> openReader() {
+        return RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .liveReader()
+                .build();
+    }
+
+    @Test
+    public void testReaderSeesWrites() {
+        RogueMap<String, Long> writer = openWriter();
+        for (int i = 0; i < 1000; i++) {
+            writer.put("key" + i, (long) i);
+        }
+
+        RogueMap<String, Long> reader = openReader();
+        assertEquals(1000, reader.size());
+        assertEquals(500L, reader.get("key500"));
+        assertNull(reader.get("missing"));
+
+        // 写入方的修改不需要重新打开就能读到
+        writer.put("key1", 100L);
+        writer.remove("key2");
+        writer.put("new", -1L);
+        writer.addAndGet("key3", 10L);
+        assertEquals(100L, reader.get("key1"));
+        assertNull(reader.get("key2"));
+        assertFalse(reader.containsKey("key2"));
+        assertEquals(-1L, reader.get("new"));
+        assertEquals(13L, reader.get("key3"));
+        assertEquals(1000, reader.size());
+
+        // 删除后再写入复用原来的槽位
+        writer.put("key2", 2L);
+        assertEquals(2L, reader.get("key2"));
+
+        Map<String, Long> all = new HashMap<>();
+        reader.entries().forEachRemaining(e -> all.put(e.getKey(), e.getValue()));
+        assertEquals(1001, all.size());
+        assertEquals(100L, all.get("key1"));
+
+        assertThrows(IllegalStateException.class, () -> reader.put("key1", 1L));
+        assertThrows(IllegalStateException.class, () -> reader.remove("key1"));
+        assertThrows(IllegalStateException.class, () -> reader.addAndGet("key1", 1L));
+        assertThrows(IllegalStateException.class, reader::clear);
+
+        writer.clear();
+        assertEquals(0, reader.size());
+        assertNull(reader.get("key1"));
+        writer.put("after", 1L);
+        assertEquals(1L, reader.get("after"));
+
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testReaderSurvivesWriterRestart() {
+        RogueMap<String, Long> writer = openWriter();
+        for (int i = 0; i < 100; i++) {
+            writer.put("key" + i, (long) i);
+        }
+        RogueMap<String, Long> reader = openReader();
+        writer.close();
+
+        // 写入方关闭后仍然可以读取
+        assertEquals(42L, reader.get("key42"));
+
+        RogueMap<String, Long> restarted = openWriter();
+        assertEquals(100, restarted.size());
+        restarted.put("key42", 4200L);
+        restarted.remove("key0");
+        assertEquals(4200L, reader.get("key42"));
+        assertNull(reader.get("key0"));
+        assertEquals(99, reader.size());
+        restarted.close();
+
+        // 不带共享索引的读写打开让读取方失效
+        RogueMap<String, Long> plain = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        plain.put("key1", 1000L);
+        assertThrows(IllegalStateException.class, () -> reader.get("key1"));
+        reader.close();
+        plain.close();
+        assertThrows(IllegalStateException.class, this::openReader);
+
+        // 再次启用后重新发布全部条目
+        RogueMap<String, Long> again = openWriter();
+        RogueMap<String, Long> reopened = openReader();
+        assertEquals(99, reopened.size());
+        assertEquals(1000L, reopened.get("key1"));
+        reopened.close();
+        again.close();
+    }
+
+    @Test
+    public void testRepublishAfterCrash() {
+        RogueMap<String, Long> first = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .writeAheadLog(WalDurability.SYNC)
+                .liveIndex(1000)
+                .build();
+        first.put("a", 1L);
+        first.put("b", 2L);
+        first.close();
+
+        // 写入后不关闭，模拟进程崩溃
+        RogueMap<String, Long> crashed = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .writeAheadLog(WalDurability.SYNC)
+                .liveIndex(1000)
+                .build();
+        crashed.put("b", 22L);
+        crashed.put("c", 3L);
+        crashed.remove("a");
+
+        RogueMap<String, Long> recovered = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .writeAheadLog(WalDurability.SYNC)
+                .liveIndex(1000)
+                .build();
+        RogueMap<String, Long> reader = openReader();
+        assertEquals(2, reader.size());
+        assertNull(reader.get("a"));
+        assertEquals(22L, reader.get("b"));
+        assertEquals(3L, reader.get("c"));
+        reader.close();
+        recovered.close();
+    }
+
+    @Test
+    public void testConcurrentWriterAndReaders() throws Exception {
+        RogueMap<String, Long> writer = openWriter();
+        RogueMap<String, Long> reader = openReader();
+        int keys = 100;
+        int rounds = 200;
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] readers = new Future<?>[3];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = executor.submit(() -> {
+                    long[] seen = new long[keys];
+                    while (!done.get()) {
+                        for (int k = 0; k < keys; k++) {
+                            Long value = reader.get("key" + k);
+                            if (value != null) {
+                                // 每个键的值只增不减，读到的总是某次完整发布的值
+                                assertTrue(value >= seen[k], "key" + k + ": " + value + " < " + seen[k]);
+                                seen[k] = value;
+                            }
+                        }
+                    }
+                });
+            }
+            Future<?> writes = executor.submit(() -> {
+                for (long round = 0; round < rounds; round++) {
+                    for (int k = 0; k < keys; k++) {
+                        writer.put("key" + k, round * 1000 + k);
+                    }
+                }
+                done.set(true);
+            });
+            writes.get(60, TimeUnit.SECONDS);
+            for (Future<?> future : readers) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        assertEquals((rounds - 1) * 1000L + 7, reader.get("key7"));
+        assertEquals(keys, reader.size());
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testClearConcurrentWithWrites() throws Exception {
+        RogueMap<String, Long> writer = openWriter();
+        RogueMap<String, Long> reader = openReader();
+        for (int i = 0; i < 5000; i++) {
+            writer.put("key" + i, (long) i);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger written = new AtomicInteger();
+        Thread putter = new Thread(() -> {
+            for (int i = 0; i < 4000 && !stop.get(); i++) {
+                writer.put("w" + i, (long) i);
+                written.incrementAndGet();
+            }
+        });
+        putter.start();
+        while (written.get() < 100 && putter.isAlive()) {
+            Thread.yield();
+        }
+        writer.clear();
+        stop.set(true);
+        putter.join();
+
+        // 与清空并发的写入在共享索引中与写入方的索引一致
+        for (int i = 0; i < 4000; i++) {
+            assertEquals(writer.get("w" + i), reader.get("w" + i), "w" + i);
+        }
+        assertNull(reader.get("key1"));
+        assertEquals(writer.size(), reader.size());
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void testInvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<String, Long>mmap().liveIndex(0));
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .liveIndex(100)
+                .build());
+
+        // 文件没有共享索引
+        RogueMap<String, Long> plain = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        plain.put("a", 1L);
+        plain.close();
+        IllegalStateException e = assertThrows(IllegalStateException.class, this::openReader);
+        assertTrue(e.getMessage().contains("liveIndex"), e.getMessage());
+        deleteTestFiles();
+
+        // 超过容量时拒绝新键，已有的键仍可更新
+        RogueMap<Long, Long> small = RogueMap.<Long, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(20 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .liveIndex(12)
+                .build();
+        for (long i = 1; i <= 12; i++) {
+            small.put(i, i);
+        }
+        assertThrows(IllegalStateException.class, () -> small.put(13L, 13L));
+        small.put(1L, 100L);
+        assertEquals(100L, small.get(1L));
+        assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(small));
+        small.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.yomahub.roguemap.mmap;
+
+import com.yomahub.roguemap.LongLongRogueMap;
+import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.serialization.StringCodec;
+import com.yomahub.roguemap.storage.WalDurability;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MMAP 只读打开测试
+ */
+public class MmapReadOnlyTest {
+
+    private static final String TEST_FILE = "target/test-mmap-readonly.db";
+
+    @BeforeEach
+    public void setUp() {
+        new File(TEST_FILE).delete();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        new File(TEST_FILE).delete();
+    }
+
+    private void writeFixture() {
+        RogueMap<String, Long> map = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.put("key" + i, (long) i);
+        }
+        map.close();
+    }
+
+    private RogueMap<String, Long> openReadOnly() {
+        return RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .readOnly()
+                .build();
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        writeFixture();
+        byte[] before = Files.readAllBytes(new File(TEST_FILE).toPath());
+
+        RogueMap<String, Long> first = openReadOnly();
+        RogueMap<String, Long> second = openReadOnly();
+        assertEquals(1000, first.size());
+        assertEquals(999L, first.get("key999"));
+        assertEquals(5L, second.get("key5"));
+        assertNull(second.get("missing"));
+        first.close();
+        // 第一个读者关闭后第二个仍然可用
+        assertEquals(7L, second.get("key7"));
+        second.close();
+
+        // 关闭时不保存索引，文件内容不变
+        assertArrayEquals(before, Files.readAllBytes(new File(TEST_FILE).toPath()));
+    }
+
+    @Test
+    public void testWritesRejected() {
+        writeFixture();
+        RogueMap<String, Long> map = openReadOnly();
+        assertThrows(IllegalStateException.class, () -> map.put("key1", 100L));
+        assertThrows(IllegalStateException.class, () -> map.put("new", 1L));
+        assertThrows(IllegalStateException.class, () -> map.remove("key1"));
+        assertThrows(IllegalStateException.class, () -> map.putAll(Collections.singletonMap("a", 1L)));
+        assertThrows(IllegalStateException.class, () -> map.removeAll(Arrays.asList("key1", "key2")));
+        assertThrows(IllegalStateException.class, () -> map.addAndGet("key1", 1L));
+        assertThrows(IllegalStateException.class, () -> map.computeIfAbsent("new", k -> 1L));
+        assertThrows(IllegalStateException.class, map::clear);
+        assertEquals(1L, map.get("key1"));
+        assertEquals(1000, map.size());
+        map.close();
+    }
+
+    @Test
+    public void testReadersAndWriterExcludeEachOther() {
+        writeFixture();
+        RogueMap<String, Long> reader = openReadOnly();
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build());
+        reader.close();
+
+        RogueMap<String, Long> writer = RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        assertThrows(IllegalStateException.class, this::openReadOnly);
+        writer.put("extra", 1L);
+        writer.close();
+
+        RogueMap<String, Long> reopened = openReadOnly();
+        assertEquals(1001, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void testInvalidOptions() {
+        assertThrows(IllegalStateException.class, this::openReadOnly);
+        assertFalse(new File(TEST_FILE).exists());
+
+        writeFixture();
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .persistent(TEST_FILE)
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .writeAheadLog(WalDurability.SYNC)
+                .readOnly()
+                .build());
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, Long>mmap()
+                .temporary()
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.LONG)
+                .readOnly()
+                .build());
+
+        RogueMap<Long, Long> map = RogueMap.<Long, Long>mmap()
+                .persistent(TEST_FILE + ".long")
+                .allocateSize(10 * 1024 * 1024L)
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+        map.put(1L, 1L);
+        map.close();
+        RogueMap<Long, Long> readOnly = RogueMap.<Long, Long>mmap()
+                .persistent(TEST_FILE + ".long")
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .readOnly()
+                .build();
+        assertEquals(1L, readOnly.get(1L));
+        assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(readOnly));
+        readOnly.close();
+        new File(TEST_FILE + ".long").delete();
+    }
+}
@@ -1,11 +1,15 @@
 package com.yomahub.roguemap.mmap;
 
+import com.yomahub.roguemap.LongLongRogueMap;
 import com.yomahub.roguemap.RogueMap;
 import com.yomahub.roguemap.serialization.PrimitiveCodecs;
 import com.yomahub.roguemap.serialization.StringCodec;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,4 +72,99 @@ public class MmapTemporaryTest {
             System.out.println("成功测试 " + operations + " 次操作");
         }
     }
+
+    @Test
+    public void testTemporaryFileBatchOperations() {
+        try (RogueMap<Long, Long> map = RogueMap.<Long, Long>mmap()
+                .temporary()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .allocateSize(10 * 1024 * 1024)
+                .build()) {
+
+            Map<Long, Long> entries = new HashMap<>();
+            for (long i = 1; i <= 1000; i++) {
+                entries.put(i, i * 2);
+            }
+            map.putAll(entries);
+            assertEquals(1000, map.size());
+
+            Map<Long, Long> found = map.getAll(entries.keySet());
+            assertEquals(entries, found);
+
+            assertEquals(500, map.removeAll(Arrays.asList(entries.keySet().toArray(new Long[0])).subList(0, 500)));
+            assertEquals(500, map.size());
+        }
+    }
+
+    @Test
+    public void testTieredStorageSpillsAndPromotes() throws InterruptedException {
+        try (RogueMap<Long, String> map = RogueMap.<Long, String>tiered()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(StringCodec.INSTANCE)
+                .hotMemory(64 * 1024)
+                .coldSize(16 * 1024 * 1024)
+                .watermarks(0.5, 0.8)
+                .build()) {
+
+            // 写入量远超热层容量，超出部分落到冷层
+            int count = 5000;
+            for (long i = 1; i <= count; i++) {
+                map.put(i, "value-" + i);
+            }
+            assertEquals(count, map.size());
+
+            // 等待后台线程把热层降到低水位以下
+            long deadline = System.currentTimeMillis() + 5000;
+            while (map.demotionCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(map.demotionCount() > 0, "热层超过高水位后应该降级");
+
+            for (long i = 1; i <= count; i++) {
+                assertEquals("value-" + i, map.get(i));
+            }
+
+            // 反复读取冷层中的键会提升回热层（热层降到高水位以下后），值保持不变
+            deadline = System.currentTimeMillis() + 5000;
+            while (map.promotionCount() == 0 && System.currentTimeMillis() < deadline) {
+                for (long i = count - 20; i <= count; i++) {
+                    assertEquals("value-" + i, map.get(i));
+                }
+                Thread.sleep(10);
+            }
+            assertTrue(map.promotionCount() > 0, "冷层热点键应该被提升");
+
+            // 覆盖和删除释放的冷层空间可以重用
+            for (long i = 1; i <= count; i++) {
+                map.put(i, "updated-" + i);
+            }
+            for (long i = 1; i <= count; i += 2) {
+                map.remove(i);
+            }
+            for (long i = 2; i <= count; i += 2) {
+                assertEquals("updated-" + i, map.get(i));
+            }
+            assertEquals(count / 2, map.size());
+        }
+    }
+
+    @Test
+    public void testTieredInvalidConfig() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RogueMap.<Long, String>tiered().watermarks(0.9, 0.5));
+        assertThrows(IllegalArgumentException.class,
+                () -> RogueMap.<Long, String>tiered().watermarks(0.5, 1.5));
+        assertThrows(IllegalArgumentException.class,
+                () -> RogueMap.<Long, String>tiered().hotMemory(0));
+
+        // 原始类型视图不经过值锁读取，降级释放旧内存后会读到已释放的地址
+        try (RogueMap<Long, Long> map = RogueMap.<Long, Long>tiered()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build()) {
+            assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(map));
+        }
+    }
 }
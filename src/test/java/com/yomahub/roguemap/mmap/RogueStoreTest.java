@@ -0,0 +1,204 @@
+package com.yomahub.roguemap.mmap;
+
+import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.RogueStore;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.serialization.StringCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多 map 存储测试
+ */
+public class RogueStoreTest {
+
+    private static final String TEST_FILE = "target/test-rogue-store.db";
+    private static final long ALLOCATE_SIZE = 20 * 1024 * 1024L;
+
+    @BeforeEach
+    public void setUp() {
+        new File(TEST_FILE).delete();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        new File(TEST_FILE).delete();
+    }
+
+    private static RogueMap<String, String> users(RogueStore store) {
+        return store.<String, String>map("users")
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(StringCodec.INSTANCE)
+                .build();
+    }
+
+    private static RogueMap<Long, Long> counters(RogueStore store) {
+        return store.<Long, Long>map("counters")
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+    }
+
+    @Test
+    public void testMapsSurviveReopen() {
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            RogueMap<String, String> users = users(store);
+            RogueMap<Long, Long> counters = counters(store);
+            for (int i = 0; i < 1000; i++) {
+                users.put("user" + i, "name" + i);
+                counters.put(i + 1L, i * 10L);
+            }
+            users.remove("user0");
+            assertEquals(new HashSet<>(Arrays.asList("counters", "users")), store.mapNames());
+        }
+
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            assertEquals(new HashSet<>(Arrays.asList("counters", "users")), store.mapNames());
+            RogueMap<String, String> users = users(store);
+            RogueMap<Long, Long> counters = counters(store);
+            assertEquals(999, users.size());
+            assertNull(users.get("user0"));
+            assertEquals("name500", users.get("user500"));
+            assertEquals(1000, counters.size());
+            assertEquals(9990L, counters.get(1000L));
+
+            // 子 map 之间互不影响
+            users.clear();
+            assertEquals(1000, counters.size());
+        }
+    }
+
+    @Test
+    public void testReopenMapInSession() {
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            RogueMap<String, String> users = users(store);
+            users.put("a", "1");
+            assertThrows(IllegalStateException.class, () -> users(store));
+
+            // 关闭子 map 后再次打开，存储仍然可用
+            users.close();
+            RogueMap<String, String> again = users(store);
+            assertEquals("1", again.get("a"));
+            again.put("b", "2");
+        }
+
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            assertEquals(2, users(store).size());
+        }
+    }
+
+    @Test
+    public void testFlushIsAtomicAcrossMaps() {
+        RogueStore crashed = RogueStore.open(TEST_FILE, ALLOCATE_SIZE);
+        RogueMap<String, String> users = users(crashed);
+        RogueMap<Long, Long> counters = counters(crashed);
+        users.put("a", "1");
+        counters.put(1L, 1L);
+        crashed.flush();
+
+        // 提交之后的修改没有再提交，模拟进程崩溃
+        users.put("b", "2");
+        users.remove("a");
+        counters.put(2L, 2L);
+
+        try (RogueStore recovered = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            RogueMap<String, String> recoveredUsers = users(recovered);
+            RogueMap<Long, Long> recoveredCounters = counters(recovered);
+            assertEquals(1, recoveredUsers.size());
+            assertEquals("1", recoveredUsers.get("a"));
+            assertNull(recoveredUsers.get("b"));
+            assertEquals(1, recoveredCounters.size());
+            assertEquals(1L, recoveredCounters.get(1L));
+        }
+    }
+
+    @Test
+    public void testRemoveMap() {
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            users(store).put("a", "1");
+            RogueMap<Long, Long> counters = counters(store);
+            counters.put(1L, 1L);
+            assertThrows(IllegalStateException.class, () -> store.removeMap("counters"));
+            counters.close();
+            assertTrue(store.removeMap("counters"));
+            assertFalse(store.removeMap("counters"));
+        }
+
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            assertEquals(new HashSet<>(Arrays.asList("users")), store.mapNames());
+            assertEquals(0, counters(store).size());
+        }
+    }
+
+    @Test
+    public void testInvalidOptions() {
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            assertThrows(IllegalArgumentException.class, () -> store.map(""));
+            assertThrows(IllegalArgumentException.class, () -> store.map("0123456789012345678901234567890123"));
+            assertThrows(IllegalStateException.class, () -> store.<String, String>map("users").build());
+
+            for (int i = 0; i < 61; i++) {
+                store.<Long, Long>map("map" + i)
+                        .keyCodec(PrimitiveCodecs.LONG)
+                        .valueCodec(PrimitiveCodecs.LONG)
+                        .build()
+                        .put((long) i, (long) i);
+            }
+            assertThrows(IllegalStateException.class, () -> users(store));
+        }
+
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            assertEquals(61, store.mapNames().size());
+            assertEquals(60L, store.<Long, Long>map("map60")
+                    .keyCodec(PrimitiveCodecs.LONG)
+                    .valueCodec(PrimitiveCodecs.LONG)
+                    .build()
+                    .get(60L));
+        }
+    }
+
+    @Test
+    public void testFileKindMismatch() {
+        RogueStore.open(TEST_FILE, ALLOCATE_SIZE).close();
+        assertThrows(IllegalStateException.class, () -> RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(ALLOCATE_SIZE)
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(StringCodec.INSTANCE)
+                .build());
+        new File(TEST_FILE).delete();
+
+        RogueMap<String, String> plain = RogueMap.<String, String>mmap()
+                .persistent(TEST_FILE)
+                .allocateSize(ALLOCATE_SIZE)
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(StringCodec.INSTANCE)
+                .build();
+        plain.put("a", "1");
+        plain.close();
+        assertThrows(IllegalStateException.class, () -> RogueStore.open(TEST_FILE, ALLOCATE_SIZE));
+    }
+
+    @Test
+    public void testCorruptDirectoryDetected() throws Exception {
+        try (RogueStore store = RogueStore.open(TEST_FILE, ALLOCATE_SIZE)) {
+            users(store).put("a", "1");
+        }
+
+        // 修改目录中的名称字节
+        try (RandomAccessFile raf = new RandomAccessFile(TEST_FILE, "rw")) {
+            raf.seek(184 + 8 + 4);
+            raf.write('x');
+        }
+        assertThrows(IllegalStateException.class, () -> RogueStore.open(TEST_FILE, ALLOCATE_SIZE));
+    }
+}
@@ -1,13 +1,27 @@
 package com.yomahub.roguemap.offheap;
 
+import com.yomahub.roguemap.LongLongRogueMap;
 import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.memory.UnsafeOps;
 import com.yomahub.roguemap.serialization.KryoObjectCodec;
+import com.yomahub.roguemap.serialization.MutableTarget;
 import com.yomahub.roguemap.serialization.PrimitiveCodecs;
 import com.yomahub.roguemap.serialization.StringCodec;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -164,6 +178,933 @@ public class OffHeapFunctionalTest {
         assertEquals("value3", map.get("key3"));
     }
 
+    // ========== 无返回值写入测试 ==========
+
+    @Test
+    public void testSetAndDelete() {
+        assertTrue(map.set("key1", "value1"));
+        assertFalse(map.set("key1", "value2"));
+        assertEquals("value2", map.get("key1"));
+        assertEquals(1, map.size());
+
+        assertTrue(map.delete("key1"));
+        assertFalse(map.delete("key1"));
+        assertFalse(map.delete(null));
+        assertNull(map.get("key1"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testSetIfAbsent() {
+        assertTrue(map.setIfAbsent("key1", "value1"));
+        assertFalse(map.setIfAbsent("key1", "value2"));
+        assertEquals("value1", map.get("key1"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testSetIfAbsentAllIndexTypes() {
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(basicMap, primitiveMap)) {
+                assertTrue(m.setIfAbsent(1L, 10L));
+                assertFalse(m.setIfAbsent(1L, 20L));
+                assertFalse(m.set(1L, 30L));
+                assertEquals(30L, m.get(1L));
+                assertTrue(m.delete(1L));
+                assertEquals(0, m.size());
+            }
+        } finally {
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentSetIfAbsent() throws InterruptedException {
+        int threadCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        AtomicInteger winners = new AtomicInteger();
+
+        for (int t = 0; t < threadCount; t++) {
+            final int threadId = t;
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        if (map.setIfAbsent("key" + i, "thread" + threadId)) {
+                            winners.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        latch.await();
+        executor.shutdown();
+
+        assertEquals(1000, winners.get());
+        assertEquals(1000, map.size());
+    }
+
+    // ========== 遍历测试 ==========
+
+    @Test
+    public void testIterationAllIndexTypes() {
+        RogueMap<Long, Long> segmentedMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(segmentedMap, basicMap, primitiveMap)) {
+                assertFalse(m.keys().hasNext());
+
+                for (long i = 1; i <= 10000; i++) {
+                    m.put(i, i * 2);
+                }
+
+                Set<Long> keys = new HashSet<>();
+                Iterator<Long> it = m.keys();
+                while (it.hasNext()) {
+                    assertTrue(keys.add(it.next()));
+                }
+                assertEquals(10000, keys.size());
+
+                long sum = 0;
+                Iterator<Map.Entry<Long, Long>> entries = m.entries();
+                while (entries.hasNext()) {
+                    Map.Entry<Long, Long> entry = entries.next();
+                    assertEquals(entry.getKey() * 2, entry.getValue().longValue());
+                    sum += entry.getValue();
+                }
+                assertEquals(10000L * 10001, sum);
+
+                assertEquals(10000L * 10001, m.stream().parallel().mapToLong(Map.Entry::getValue).sum());
+                assertEquals(10000, m.keyStream().parallel().distinct().count());
+            }
+        } finally {
+            segmentedMap.close();
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testIterationWithConcurrentWrites() throws InterruptedException {
+        for (int i = 0; i < 5000; i++) {
+            map.put("key" + i, "value" + i);
+        }
+
+        Thread writer = new Thread(() -> {
+            for (int i = 5000; i < 10000; i++) {
+                map.put("key" + i, "value" + i);
+                map.remove("key" + (i - 5000));
+            }
+        });
+        writer.start();
+
+        Iterator<Map.Entry<String, String>> it = map.entries();
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            assertEquals(entry.getKey().replace("key", "value"), entry.getValue());
+        }
+        writer.join();
+
+        assertEquals(5000, map.keyStream().count());
+    }
+
+    @Test
+    public void testParallelBulkOperationsAllIndexTypes() {
+        RogueMap<Long, Long> segmentedMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(segmentedMap, basicMap, primitiveMap)) {
+                for (long i = 1; i <= 10000; i++) {
+                    m.put(i, i);
+                }
+
+                AtomicInteger visited = new AtomicInteger();
+                m.parallelForEach((k, v) -> {
+                    assertEquals(k, v);
+                    visited.incrementAndGet();
+                });
+                assertEquals(10000, visited.get());
+
+                assertEquals(Long.valueOf(10000L * 10001 / 2), m.parallelReduce((k, v) -> v, Long::sum));
+                assertNull(m.parallelReduce((k, v) -> null, Long::sum));
+
+                // 按编码字节删除偶数值，不解码
+                assertEquals(5000, m.removeIfRaw((address, size) -> (UnsafeOps.getLong(address) & 1) == 0));
+                assertEquals(5000, m.size());
+                assertNull(m.get(2L));
+
+                m.replaceAll((k, v) -> v * 10);
+                assertEquals(30L, m.get(3L));
+
+                assertEquals(2500, m.removeIf((k, v) -> k % 4 == 1));
+                assertEquals(2500, m.size());
+                assertNull(m.get(1L));
+                assertEquals(30L, m.get(3L));
+            }
+        } finally {
+            segmentedMap.close();
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testRemoveIfPredicateRunsOutsideLocks() {
+        RogueMap<Long, Long> segmentedMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(segmentedMap, primitiveMap)) {
+                for (long i = 1; i <= 1000; i++) {
+                    m.put(i, i);
+                }
+
+                // 谓词在锁外执行，可以读写本 map；判断之后值被修改的条目不会被删除
+                int removed = m.removeIf((k, v) -> {
+                    assertEquals(v, m.get(k));
+                    if (k % 10 == 0) {
+                        m.put(k, -k);
+                    }
+                    return k % 2 == 0;
+                });
+                assertEquals(400, removed);
+                assertEquals(600, m.size());
+                assertNull(m.get(2L));
+                assertEquals(-10L, m.get(10L));
+                assertEquals(3L, m.get(3L));
+            }
+        } finally {
+            segmentedMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    // ========== 零拷贝读取测试 ==========
+
+    @Test
+    public void testZeroCopyReads() {
+        RogueMap<String, String> basicMap = RogueMap.<String, String>offHeap()
+                .keyCodec(new StringCodec())
+                .valueCodec(new StringCodec())
+                .basicIndex()
+                .build();
+
+        try {
+            for (RogueMap<String, String> m : Arrays.asList(map, basicMap)) {
+                m.put("key", "hello");
+
+                // StringCodec 布局：[4 字节长度][UTF-8 字节]
+                assertEquals(Integer.valueOf(5), m.withValue("key", (address, size) -> UnsafeOps.getInt(address)));
+                assertNull(m.withValue("missing", (address, size) -> size));
+
+                assertEquals(9, (int) m.withValueBuffer("key", buffer -> buffer.remaining()));
+                assertEquals((byte) 'h', (byte) m.withValueBuffer("key", buffer -> buffer.get(4)));
+
+                Utf8Target target = new Utf8Target();
+                assertTrue(m.getInto("key", target));
+                assertEquals("hello", target.toString());
+                m.put("key", "hi");
+                assertTrue(m.getInto("key", target));
+                assertEquals("hi", target.toString());
+                assertFalse(m.getInto("missing", target));
+            }
+        } finally {
+            basicMap.close();
+        }
+    }
+
+    // ========== 原子读-改-写测试 ==========
+
+    @Test
+    public void testAtomicOperations() {
+        assertNull(map.putIfAbsent("key", "v1"));
+        assertEquals("v1", map.putIfAbsent("key", "v2"));
+
+        assertFalse(map.replace("key", "v2", "v3"));
+        assertTrue(map.replace("key", "v1", "v3"));
+        assertEquals("v3", map.get("key"));
+        assertFalse(map.replace("missing", "v1", "v2"));
+
+        assertEquals("v3!", map.compute("key", (k, v) -> v + "!"));
+        assertNull(map.compute("key", (k, v) -> null));
+        assertFalse(map.containsKey("key"));
+        assertNull(map.compute("key", (k, v) -> null));
+
+        assertEquals("a", map.computeIfAbsent("key", k -> "a"));
+        assertEquals("a", map.computeIfAbsent("key", k -> "b"));
+        assertNull(map.computeIfAbsent("other", k -> null));
+
+        assertEquals("a", map.merge("merged", "a", String::concat));
+        assertEquals("ab", map.merge("merged", "b", String::concat));
+        assertNull(map.merge("merged", "c", (a, b) -> null));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testConcurrentMergeAllIndexTypes() throws InterruptedException {
+        RogueMap<Long, Long> segmentedMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(segmentedMap, basicMap, primitiveMap)) {
+                int threadCount = 8;
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+                CountDownLatch latch = new CountDownLatch(threadCount);
+
+                for (int t = 0; t < threadCount; t++) {
+                    executor.submit(() -> {
+                        try {
+                            for (int i = 0; i < 1000; i++) {
+                                m.merge(1L + (i % 10), 1L, Long::sum);
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+
+                latch.await();
+                executor.shutdown();
+
+                assertEquals(10, m.size());
+                for (long key = 1; key <= 10; key++) {
+                    assertEquals(800L, m.get(key));
+                }
+                assertTrue(m.replace(1L, 800L, 0L));
+                assertEquals(0L, m.get(1L));
+            }
+        } finally {
+            segmentedMap.close();
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentCountersAllIndexTypes() throws InterruptedException {
+        RogueMap<Long, Long> segmentedMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(segmentedMap, basicMap, primitiveMap)) {
+                int threadCount = 8;
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+                CountDownLatch latch = new CountDownLatch(threadCount);
+
+                for (int t = 0; t < threadCount; t++) {
+                    executor.submit(() -> {
+                        try {
+                            for (int i = 0; i < 10000; i++) {
+                                m.incrementAndGet(1L + (i % 4));
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+
+                latch.await();
+                executor.shutdown();
+
+                for (long key = 1; key <= 4; key++) {
+                    assertEquals(20000L, m.get(key));
+                }
+                assertEquals(20000L, m.getAndAdd(1L, 5));
+                assertEquals(20010L, m.addAndGet(1L, 5));
+                assertTrue(m.compareAndSet(1L, 20010L, 7L));
+                assertFalse(m.compareAndSet(1L, 20010L, 8L));
+                assertFalse(m.compareAndSet(99L, 0L, 1L));
+                assertEquals(7L, m.get(1L));
+            }
+        } finally {
+            segmentedMap.close();
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testIntegerAndDoubleCounters() {
+        try (RogueMap<String, Integer> intMap = RogueMap.<String, Integer>offHeap()
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.INTEGER)
+                .build();
+             RogueMap<String, Double> doubleMap = RogueMap.<String, Double>offHeap()
+                .keyCodec(new StringCodec())
+                .valueCodec(PrimitiveCodecs.DOUBLE)
+                .build()) {
+
+            assertEquals(Integer.MAX_VALUE, intMap.addAndGet("a", Integer.MAX_VALUE));
+            assertEquals(Integer.MIN_VALUE, intMap.incrementAndGet("a"));
+            assertEquals(Integer.MIN_VALUE, intMap.get("a").intValue());
+
+            assertEquals(1.5, doubleMap.addAndGet("d", 1.5), 0.0);
+            assertEquals(3.75, doubleMap.addAndGet("d", 2.25), 0.0);
+            assertEquals(3.75, doubleMap.get("d"), 0.0);
+        }
+
+        assertThrows(IllegalStateException.class, () -> map.incrementAndGet("key"));
+    }
+
+    // ========== ConcurrentMap 视图测试 ==========
+
+    @Test
+    public void testConcurrentMapView() {
+        ConcurrentMap<String, String> view = map.asConcurrentMap();
+
+        assertNull(view.put("a", "1"));
+        assertEquals("1", view.putIfAbsent("a", "2"));
+        assertTrue(view.replace("a", "1", "3"));
+        assertEquals("3", view.replace("a", "4"));
+        assertNull(view.replace("missing", "x"));
+        assertFalse(view.remove("a", "3"));
+        assertTrue(view.remove("a", "4"));
+        assertTrue(view.isEmpty());
+
+        Map<String, String> source = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            source.put("key" + i, "value" + i);
+        }
+        view.putAll(source);
+        assertEquals(source, view);
+        assertEquals(source, new HashMap<>(view));
+        assertEquals(source.hashCode(), view.hashCode());
+        assertTrue(view.containsValue("value5"));
+        assertFalse(view.containsKey(1));
+        assertNull(view.get(1));
+
+        assertEquals("value1!", view.computeIfPresent("key1", (k, v) -> v + "!"));
+        assertNull(view.computeIfPresent("missing", (k, v) -> v));
+        assertEquals("value2+", view.merge("key2", "+", String::concat));
+
+        // 视图是惰性的，修改直接作用于底层 map
+        assertTrue(view.keySet().remove("key3"));
+        assertFalse(map.containsKey("key3"));
+        assertTrue(view.entrySet().remove(new AbstractMap.SimpleEntry<>("key4", "value4")));
+        assertTrue(view.values().removeIf(v -> v.equals("value5")));
+        assertTrue(view.keySet().removeAll(Arrays.asList("key6", "key7")));
+        assertEquals(95, map.size());
+
+        // 类型不匹配的元素被忽略；谓词在调用线程上顺序执行，可以访问视图
+        assertFalse(view.keySet().removeAll(Arrays.asList(1, 2L)));
+        Thread caller = Thread.currentThread();
+        assertTrue(view.keySet().removeIf(k -> {
+            assertSame(caller, Thread.currentThread());
+            return k.equals("key10") && view.containsKey(k);
+        }));
+        assertTrue(view.entrySet().removeIf(e -> e.getKey().equals("key11") && view.get("key12") != null));
+        assertEquals(93, map.size());
+
+        for (Map.Entry<String, String> entry : view.entrySet()) {
+            if (entry.getKey().equals("key8")) {
+                entry.setValue("changed");
+            }
+        }
+        assertEquals("changed", map.get("key8"));
+
+        Iterator<String> it = view.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith("key9")) {
+                it.remove();
+            }
+        }
+        assertFalse(map.containsKey("key9"));
+        assertFalse(map.containsKey("key95"));
+
+        assertEquals(view.size(), view.keySet().parallelStream().count());
+        assertThrows(NullPointerException.class, () -> view.put(null, "x"));
+        assertThrows(NullPointerException.class, () -> view.put("x", null));
+
+        view.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    // ========== 缓存模式测试 ==========
+
+    @Test
+    public void testBoundedCacheEviction() {
+        AtomicInteger evicted = new AtomicInteger();
+        RogueMap<Long, Long> cache = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .maxMemory(1024 * 1024)
+                .maximumWeight(16 * 1000)
+                .evictionListener((k, v) -> {
+                    assertEquals(k, v);
+                    evicted.incrementAndGet();
+                })
+                .build();
+
+        try {
+            // 写入量远超 maxMemory，缓存模式下淘汰而不是抛出 OutOfMemoryError
+            for (long i = 0; i < 100000; i++) {
+                cache.put(i, i);
+            }
+
+            assertTrue(cache.size() <= 1000);
+            assertEquals(100000, cache.size() + cache.evictionCount());
+            assertEquals(cache.evictionCount(), evicted.get());
+
+            // 剩余条目仍然可读
+            Iterator<Map.Entry<Long, Long>> it = cache.entries();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> entry = it.next();
+                assertEquals(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testBoundedCacheKeepsHotKeys() {
+        RogueMap<Long, Long> cache = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .segmentedIndex(16)
+                .maxMemory(1024 * 1024)
+                .maximumWeight(16 * 1000)
+                .build();
+
+        try {
+            for (long hot = 0; hot < 10; hot++) {
+                cache.put(hot, hot);
+            }
+
+            // 冷键只写一次，热键持续被读取
+            java.util.Random random = new java.util.Random(42);
+            for (int i = 0; i < 20000; i++) {
+                long cold = random.nextLong() | Long.MIN_VALUE;
+                cache.set(cold, cold);
+                if (i % 10 == 0) {
+                    for (long hot = 0; hot < 10; hot++) {
+                        assertEquals(Long.valueOf(hot), cache.get(hot));
+                    }
+                }
+            }
+
+            assertTrue(cache.evictionCount() > 0);
+            for (long hot = 0; hot < 10; hot++) {
+                assertEquals(Long.valueOf(hot), cache.get(hot));
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testBoundedCacheCounters() {
+        RogueMap<Long, Long> cache = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .maxMemory(64 * 1024)
+                .maximumWeight(32 * 1024)
+                .build();
+
+        try {
+            // 新的计数键同样参与淘汰，不会超出最大权重后抛出 OutOfMemoryError
+            for (long i = 1; i <= 100000; i++) {
+                assertEquals(1L, cache.incrementAndGet(i));
+            }
+            assertTrue(cache.evictionCount() > 0);
+            assertTrue(cache.size() * 16L <= 32 * 1024);
+            assertEquals(2L, cache.incrementAndGet(100000L));
+
+            // 原始类型视图绕过淘汰，缓存模式不能包装
+            assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(cache));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testBoundedCacheComputeAndMerge() {
+        // 最大权重等于最大内存：锁内分配失败时需要释放锁淘汰后重试，而不是抛出 OutOfMemoryError
+        RogueMap<String, String> cache = RogueMap.<String, String>offHeap()
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(StringCodec.INSTANCE)
+                .maxMemory(64 * 1024)
+                .maximumWeight(64 * 1024)
+                .build();
+
+        try {
+            ConcurrentMap<String, String> view = cache.asConcurrentMap();
+            for (int i = 0; i < 20000; i++) {
+                // 不同长度的值落在不同的大小等级，也会遇到最大权重以下的分配失败
+                String value = repeat('v', i % 200);
+                String key = "key" + i;
+                switch (i % 3) {
+                    case 0:
+                        assertEquals(value, cache.compute(key, (k, old) -> value));
+                        break;
+                    case 1:
+                        assertEquals(value, cache.merge(key, value, (old, v) -> old + v));
+                        break;
+                    default:
+                        assertEquals(value, view.compute(key, (k, old) -> value));
+                        break;
+                }
+            }
+            assertTrue(cache.evictionCount() > 0);
+            assertEquals(repeat('v', 19999 % 200), cache.get("key19999"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testBoundedCacheInvalidConfig() {
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<Long, Long>offHeap().maximumWeight(0));
+        assertThrows(IllegalStateException.class, () -> RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .maxMemory(1024)
+                .maximumWeight(2048)
+                .build());
+    }
+
+    // ========== 过期测试 ==========
+
+    @Test
+    public void testPerEntryTtl() throws InterruptedException {
+        RogueMap<String, Long> ttlMap = RogueMap.<String, Long>offHeap()
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .segmentedIndex(16)
+                .variableExpiration()
+                .build();
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                ttlMap.put("short" + i, (long) i, Duration.ofMillis(50));
+            }
+            ttlMap.put("long", 1L, Duration.ofHours(1));
+            ttlMap.put("forever", 2L);
+            assertEquals(Long.valueOf(0L), ttlMap.get("short0"));
+
+            Thread.sleep(100);
+
+            // 过期后立即不可见，即使尚未回收
+            assertNull(ttlMap.get("short0"));
+            assertFalse(ttlMap.containsKey("short1"));
+            assertFalse(ttlMap.getAll(Arrays.asList("short2", "long")).containsKey("short2"));
+            assertEquals(2, ttlMap.keyStream().count());
+            assertTrue(ttlMap.setIfAbsent("short3", 3L));
+            assertNull(ttlMap.putIfAbsent("short4", 4L));
+
+            // 时间轮跨过最小刻度后回收
+            Thread.sleep(1200);
+            ttlMap.cleanUp();
+            assertEquals(4, ttlMap.size());
+            assertEquals(98, ttlMap.expiredCount());
+            assertEquals(Long.valueOf(1L), ttlMap.get("long"));
+            assertEquals(Long.valueOf(2L), ttlMap.get("forever"));
+            assertEquals(Long.valueOf(3L), ttlMap.get("short3"));
+
+            // 覆盖写入会重新计算到期时间
+            ttlMap.put("long", 5L, Duration.ofMillis(50));
+            Thread.sleep(100);
+            assertNull(ttlMap.get("long"));
+        } finally {
+            ttlMap.close();
+        }
+    }
+
+    @Test
+    public void testRemoveAllSkipsExpired() throws InterruptedException {
+        RogueMap<String, Long> ttlMap = RogueMap.<String, Long>offHeap()
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .segmentedIndex(16)
+                .variableExpiration()
+                .build();
+
+        try {
+            ttlMap.put("short1", 1L, Duration.ofMillis(50));
+            ttlMap.put("short2", 2L, Duration.ofMillis(50));
+            ttlMap.put("long", 3L, Duration.ofHours(1));
+            ttlMap.put("forever", 4L);
+
+            Thread.sleep(100);
+
+            // 已过期但尚未回收的条目与 delete 一样不计入删除数量
+            assertEquals(2, ttlMap.removeAll(Arrays.asList("short1", "short2", "long", "forever", "missing")));
+            assertFalse(ttlMap.delete("short1"));
+            assertEquals(0, ttlMap.size());
+        } finally {
+            ttlMap.close();
+        }
+    }
+
+    @Test
+    public void testExpireAfterWriteAndAccess() throws InterruptedException {
+        RogueMap<Long, Long> writeMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .expireAfterWrite(Duration.ofMillis(200))
+                .build();
+        RogueMap<Long, Long> accessMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .expireAfterAccess(Duration.ofMillis(2000))
+                .build();
+
+        try {
+            for (long i = 1; i <= 1000; i++) {
+                writeMap.put(i, i);
+                accessMap.put(i, i);
+            }
+
+            // 持续访问的键续期，其余键过期
+            for (int round = 0; round < 4; round++) {
+                Thread.sleep(500);
+                assertEquals(Long.valueOf(7L), accessMap.get(7L));
+            }
+            Thread.sleep(1100);
+            assertNull(writeMap.get(1L));
+            assertNull(accessMap.get(1L));
+            assertEquals(Long.valueOf(7L), accessMap.get(7L));
+
+            writeMap.cleanUp();
+            accessMap.cleanUp();
+            assertEquals(0, writeMap.size());
+            assertEquals(1000, writeMap.expiredCount());
+            assertEquals(1, accessMap.size());
+            assertEquals(999, accessMap.expiredCount());
+
+            // 启用过期后原子计数器不可用
+            assertThrows(IllegalStateException.class, () -> writeMap.incrementAndGet(1L));
+        } finally {
+            writeMap.close();
+            accessMap.close();
+        }
+
+        assertThrows(IllegalStateException.class, () -> map.put("a", "1", Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<Long, Long>offHeap()
+                .expireAfterWrite(Duration.ZERO));
+    }
+
+    // ========== 近端缓存测试 ==========
+
+    @Test
+    public void testNearCache() {
+        RogueMap<String, String> cached = RogueMap.<String, String>offHeap()
+                .keyCodec(StringCodec.INSTANCE)
+                .valueCodec(StringCodec.INSTANCE)
+                .nearCache(100)
+                .build();
+
+        try {
+            cached.put("hot", "v1");
+            String first = cached.get("hot");
+            assertEquals("v1", first);
+            // 第二次读取命中近端缓存，返回同一个对象
+            assertSame(first, cached.get("hot"));
+
+            // 写入后失效
+            cached.put("hot", "v2");
+            assertEquals("v2", cached.get("hot"));
+            cached.set("hot", "v3");
+            assertEquals("v3", cached.get("hot"));
+            cached.compute("hot", (k, v) -> v + "!");
+            assertEquals("v3!", cached.get("hot"));
+            cached.putAll(Collections.singletonMap("hot", "v4"));
+            assertEquals("v4", cached.get("hot"));
+            assertEquals("v4", cached.getAll(Collections.singletonList("hot")).get("hot"));
+
+            // 删除后失效，重新插入不会命中旧值
+            cached.remove("hot");
+            assertNull(cached.get("hot"));
+            cached.put("hot", "v5");
+            assertEquals("v5", cached.get("hot"));
+            cached.delete("hot");
+            cached.put("hot", "v6");
+            assertEquals("v6", cached.get("hot"));
+
+            // 容量有限：热点键在大量冷读中保持缓存
+            String hot = cached.get("hot");
+            for (int i = 0; i < 2000; i++) {
+                cached.put("cold" + i, "c" + i);
+                assertEquals("c" + i, cached.get("cold" + i));
+                assertSame(hot, cached.get("hot"));
+            }
+
+            cached.clear();
+            assertNull(cached.get("hot"));
+        } finally {
+            cached.close();
+        }
+    }
+
+    @Test
+    public void testNearCacheRejectsInPlaceUpdates() {
+        RogueMap<Long, Long> cached = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .nearCacheBytes(1024 * 1024)
+                .build();
+
+        try {
+            cached.put(1L, 1L);
+            assertEquals(Long.valueOf(1L), cached.get(1L));
+            assertThrows(IllegalStateException.class, () -> cached.incrementAndGet(1L));
+            assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(cached));
+        } finally {
+            cached.close();
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> RogueMap.<Long, Long>offHeap().nearCache(0));
+    }
+
+    // ========== 批量操作测试 ==========
+
+    @Test
+    public void testBatchOperations() {
+        Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            entries.put("key" + i, "value" + i);
+        }
+        map.put("key0", "old");
+        map.putAll(entries);
+        assertEquals(500, map.size());
+        assertEquals("value0", map.get("key0"));
+
+        Map<String, String> found = map.getAll(Arrays.asList("key1", "key499", "missing", null));
+        assertEquals(2, found.size());
+        assertEquals("value1", found.get("key1"));
+        assertEquals("value499", found.get("key499"));
+
+        assertEquals(2, map.removeAll(Arrays.asList("key1", "key2", "missing")));
+        assertEquals(498, map.size());
+        assertNull(map.get("key1"));
+    }
+
+    @Test
+    public void testBatchOperationsAllIndexTypes() {
+        RogueMap<Long, Long> basicMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .basicIndex()
+                .build();
+        RogueMap<Long, Long> primitiveMap = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .build();
+
+        try {
+            for (RogueMap<Long, Long> m : Arrays.asList(basicMap, primitiveMap)) {
+                Long[] keys = new Long[1000];
+                Long[] values = new Long[1000];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = i + 1L;
+                    values[i] = i * 10L;
+                }
+                m.putAll(keys, values);
+                m.putAll(keys, values);
+                assertEquals(1000, m.size());
+
+                Map<Long, Long> found = m.getAll(Arrays.asList(1L, 500L, 5000L));
+                assertEquals(2, found.size());
+                assertEquals(4990L, found.get(500L));
+
+                assertEquals(1000, m.removeAll(Arrays.asList(keys)));
+                assertTrue(m.isEmpty());
+            }
+        } finally {
+            basicMap.close();
+            primitiveMap.close();
+        }
+    }
+
+    @Test
+    public void testBatchPutLengthMismatch() {
+        assertThrows(IllegalArgumentException.class, () ->
+                map.putAll(new String[]{"a", "b"}, new String[]{"1"}));
+        assertEquals(0, map.size());
+    }
+
     // ========== 不同数据类型测试 ==========
 
     @Test
@@ -525,6 +1466,28 @@ public class OffHeapFunctionalTest {
         return sb.toString();
     }
 
+    /**
+     * 复用字节缓冲区的 StringCodec 解码目标
+     */
+    private static class Utf8Target implements MutableTarget {
+        private byte[] bytes = new byte[16];
+        private int length;
+
+        @Override
+        public void readFrom(long address, int size) {
+            length = UnsafeOps.getInt(address);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            UnsafeOps.copyToArray(address + 4, bytes, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
     /**
      * 测试用户对象
      */
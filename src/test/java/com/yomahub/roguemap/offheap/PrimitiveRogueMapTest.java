@@ -0,0 +1,142 @@
+package com.yomahub.roguemap.offheap;
+
+import com.yomahub.roguemap.IntIntRogueMap;
+import com.yomahub.roguemap.LongLongRogueMap;
+import com.yomahub.roguemap.LongObjRogueMap;
+import com.yomahub.roguemap.RogueMap;
+import com.yomahub.roguemap.serialization.PrimitiveCodecs;
+import com.yomahub.roguemap.serialization.StringCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 原始类型视图功能测试
+ *
+ * 测试 LongLongRogueMap、IntIntRogueMap、LongObjRogueMap 的基本操作和 addTo 原子性
+ */
+public class PrimitiveRogueMapTest {
+
+    private static LongLongRogueMap newLongLongMap() {
+        return LongLongRogueMap.wrap(RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .primitiveIndex()
+                .maxMemory(50 * 1024 * 1024)
+                .build());
+    }
+
+    @Test
+    public void testLongLongBasicOperations() {
+        try (LongLongRogueMap map = newLongLongMap()) {
+            assertEquals(-1L, map.get(1L, -1L));
+            assertEquals(0L, map.put(1L, 100L));
+            assertEquals(100L, map.get(1L, -1L));
+            assertEquals(100L, map.put(1L, 200L));
+            assertEquals(200L, map.get(1L, -1L));
+            assertTrue(map.containsKey(1L));
+            assertEquals(1, map.size());
+
+            assertEquals(200L, map.remove(1L));
+            assertFalse(map.containsKey(1L));
+            assertEquals(0L, map.remove(1L));
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testLongLongAddTo() {
+        try (LongLongRogueMap map = newLongLongMap()) {
+            assertEquals(0L, map.addTo(7L, 5L));
+            assertEquals(5L, map.addTo(7L, 10L));
+            assertEquals(15L, map.get(7L, 0L));
+            assertEquals(15L, map.unwrap().get(7L));
+        }
+    }
+
+    @Test
+    public void testLongLongConcurrentAddTo() throws InterruptedException {
+        try (LongLongRogueMap map = newLongLongMap()) {
+            int threadCount = 8;
+            int opsPerThread = 10000;
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            CountDownLatch latch = new CountDownLatch(threadCount);
+
+            for (int t = 0; t < threadCount; t++) {
+                executor.submit(() -> {
+                    try {
+                        for (int i = 0; i < opsPerThread; i++) {
+                            map.addTo(i % 100 + 1, 1L);
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+
+            latch.await();
+            executor.shutdown();
+
+            assertEquals(100, map.size());
+            for (long key = 1; key <= 100; key++) {
+                assertEquals(threadCount * opsPerThread / 100, map.get(key, 0L));
+            }
+        }
+    }
+
+    @Test
+    public void testIntIntBasicOperations() {
+        try (IntIntRogueMap map = IntIntRogueMap.wrap(RogueMap.<Integer, Integer>offHeap()
+                .keyCodec(PrimitiveCodecs.INTEGER)
+                .valueCodec(PrimitiveCodecs.INTEGER)
+                .primitiveIndex()
+                .build())) {
+            for (int i = 1; i <= 1000; i++) {
+                map.put(i, i * 2);
+            }
+            assertEquals(1000, map.size());
+            assertEquals(20, map.get(10, -1));
+            assertEquals(-1, map.get(5000, -1));
+
+            assertEquals(20, map.addTo(10, 3));
+            assertEquals(23, map.get(10, -1));
+            assertEquals(23, map.remove(10));
+            assertEquals(999, map.size());
+        }
+    }
+
+    @Test
+    public void testLongObjBasicOperations() {
+        try (LongObjRogueMap<String> map = LongObjRogueMap.wrap(RogueMap.<Long, String>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(StringCodec.INSTANCE)
+                .primitiveIndex()
+                .build())) {
+            assertNull(map.put(1L, "one"));
+            assertEquals("one", map.get(1L));
+            assertEquals("one", map.put(1L, "uno"));
+            assertEquals("uno", map.get(1L));
+            assertEquals("none", map.getOrDefault(2L, "none"));
+            assertEquals("uno", map.remove(1L));
+            assertNull(map.get(1L));
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testWrapRequiresPrimitiveIndex() {
+        RogueMap<Long, Long> map = RogueMap.<Long, Long>offHeap()
+                .keyCodec(PrimitiveCodecs.LONG)
+                .valueCodec(PrimitiveCodecs.LONG)
+                .build();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> LongLongRogueMap.wrap(map));
+        } finally {
+            map.close();
+        }
+    }
+}